@@ -0,0 +1,135 @@
+//////////////////////////////////////////////////////////////////////
+// BenchmarkDatabase.java			Author: Justin Brown
+//
+// An embedded Derby database made from scratch for a benchmark run in
+// a directory of its own, and thrown away afterwards. Can fill it with
+// sales and inventory made up the same way every time.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class BenchmarkDatabase {
+	// Sales saved to the database in one batch while filling it
+	private static final int FILL_BATCH = 500;
+
+	// Made up sales are spread over this time before now
+	private static final long FILL_SPAN_MS = 365L * 24 * 60 * 60 * 1000;
+
+	private File home;
+	private DatabaseManager db;
+
+	// Sequence written as the journal checkpoint with each batch
+	private long sequence;
+
+	/*
+	 * Makes a new database in a temporary directory and connects to it. Derby reads the directory
+	 * once as it starts, so the engine is shut down again by close.
+	 */
+	public BenchmarkDatabase() throws Exception {
+		home = Files.createTempDirectory("project2-bench").toFile();
+		System.setProperty("derby.system.home", home.getAbsolutePath());
+		System.setProperty("derby.stream.error.file", new File(home, "derby.log").getAbsolutePath());
+
+		db = new DatabaseManager();
+		if(!db.connect())
+			throw new SQLException("Unable to make the benchmark database in " + home);
+	}
+
+	// Getter for the database
+	public DatabaseManager getDatabase() {
+		return db;
+	}
+
+	// Getter for the directory the database is in
+	public File getHome() {
+		return home;
+	}
+
+	/*
+	 * Saves count made up sales of one to five items each, oldest first, in batches
+	 */
+	public void fillSales(int count) throws SQLException {
+		Random random = new Random(count);
+		long start = System.currentTimeMillis() - FILL_SPAN_MS;
+
+		ArrayList<Transaction> batch = new ArrayList<Transaction>(FILL_BATCH);
+		for(int i = 0; i < count; i++) {
+			Transaction t = makeSale(random, 1 + random.nextInt(5));
+			t.setTime(start + FILL_SPAN_MS / count * i);
+			batch.add(t);
+
+			if(batch.size() == FILL_BATCH || i == count - 1) {
+				db.saveTransactions(batch, ++sequence);
+				batch.clear();
+			}
+		}
+	}
+
+	/*
+	 * Adds count made up inventory items named "Item 1" and so on, with the same number as their code
+	 */
+	public void fillInventory(int count) throws SQLException {
+		Random random = new Random(count);
+		for(int i = 1; i <= count; i++) {
+			db.addInventoryItem("Item " + i, 1 + random.nextInt(10000), i);
+		}
+	}
+
+	// Returns the next sequence number for saveTransactions
+	public long nextSequence() {
+		return ++sequence;
+	}
+
+	/*
+	 * Makes up a sale of a number of items, with its totals calculated
+	 */
+	public static Transaction makeSale(Random random, int items) {
+		Transaction t = new Transaction();
+		for(int i = 0; i < items; i++) {
+			Item item = new Item();
+			item.setName("Item " + (1 + random.nextInt(1000)));
+			item.setPrice(1 + random.nextInt(10000));
+			item.setQuantity(1 + random.nextInt(3));
+			t.addItem(item);
+		}
+
+		t.calculate();
+		return t;
+	}
+
+	/*
+	 * Closes the database, shuts Derby down and deletes the directory
+	 */
+	public void close() throws SQLException, IOException {
+		db.close();
+
+		try {
+			DriverManager.getConnection("jdbc:derby:;shutdown=true");
+		} catch(SQLException ex) {
+			// Derby always reports a shutdown as an exception, XJ015 is the one that means it went well
+			if(!"XJ015".equals(ex.getSQLState()))
+				throw ex;
+		}
+
+		delete(home);
+	}
+
+	// Deletes a file or a directory and everything in it
+	private static void delete(File file) throws IOException {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+
+		if(!file.delete())
+			throw new IOException("Unable to delete " + file);
+	}
+}
@@ -0,0 +1,51 @@
+//////////////////////////////////////////////////////////////////////
+// CalculateWorkload.java			Author: Justin Brown
+//
+// Works out the totals of large baskets of items.
+//////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import bench.Workload;
+
+public class CalculateWorkload implements Workload {
+	// Operations, in the order CalculateBenchmark numbers them
+	private static final int BUILD = 0;
+	private static final int CALCULATE = 1;
+	private static final int VERIFY = 2;
+
+	private ArrayList<Item> items;
+	private Transaction basket;
+
+	public void setUp(int size) {
+		basket = BenchmarkDatabase.makeSale(new Random(size), size);
+		items = basket.getItems();
+	}
+
+	public Object run(int operation) {
+		switch(operation) {
+			case BUILD:
+				// Calculated after every item, as the transaction screen does
+				Transaction t = new Transaction();
+				for(int i = 0; i < items.size(); i++) {
+					t.addItem(items.get(i));
+					t.calculate();
+				}
+				return t;
+
+			case CALCULATE:
+				basket.calculate();
+				return basket;
+
+			case VERIFY:
+				return basket.verifyTotals();
+
+			default:
+				throw new IllegalArgumentException("No operation " + operation);
+		}
+	}
+
+	public void tearDown() {
+	}
+}
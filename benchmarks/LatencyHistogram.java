@@ -0,0 +1,106 @@
+//////////////////////////////////////////////////////////////////////
+// LatencyHistogram.java			Author: Justin Brown
+//
+// Counts how long operations took, in nanoseconds, in buckets that
+// are never more than about 1.5% wide, so percentiles can be read
+// off it without keeping every time. Values under 128 have a bucket
+// each. Above that the top seven bits of a value pick its bucket
+// within its power of two. Not thread safe, give each thread its
+// own and add them together at the end.
+//////////////////////////////////////////////////////////////////////
+
+public class LatencyHistogram {
+	// Buckets for exact values, then 64 for each power of two from 128 up
+	private static final int EXACT = 128;
+	private static final int PER_POWER = 64;
+	private static final int BUCKETS = EXACT + 57 * PER_POWER;
+
+	private long[] counts;
+	private long count;
+	private long total;
+	private long max;
+
+	// Constructor
+	public LatencyHistogram() {
+		counts = new long[BUCKETS];
+	}
+
+	/*
+	 * Counts one operation that took a number of nanoseconds
+	 */
+	public void record(long nanos) {
+		if(nanos < 0)
+			nanos = 0;
+
+		counts[bucketOf(nanos)]++;
+		count++;
+		total += nanos;
+		max = Math.max(max, nanos);
+	}
+
+	/*
+	 * Adds the operations counted by another histogram to this one
+	 */
+	public void add(LatencyHistogram other) {
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+
+		count += other.count;
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	// Returns the number of operations counted
+	public long getCount() {
+		return count;
+	}
+
+	// Returns the mean time in nanoseconds, 0 if nothing was counted
+	public long getMean() {
+		return count == 0 ? 0 : total / count;
+	}
+
+	// Returns the longest time in nanoseconds
+	public long getMax() {
+		return max;
+	}
+
+	/*
+	 * Returns the time in nanoseconds that a fraction of the operations, such as 0.99, took no longer than.
+	 * It is the top of the bucket the percentile falls in, so it errs on the slow side.
+	 */
+	public long getPercentile(double fraction) {
+		if(count == 0)
+			return 0;
+
+		long wanted = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= wanted)
+				return Math.min(highestIn(i), max);
+		}
+
+		return max;
+	}
+
+	// Returns the bucket a time goes in
+	private static int bucketOf(long nanos) {
+		if(nanos < EXACT)
+			return (int) nanos;
+
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - 6;
+		return EXACT + (shift - 1) * PER_POWER + (int) (nanos >>> shift) - PER_POWER;
+	}
+
+	// Returns the highest time that goes in a bucket
+	private static long highestIn(int bucket) {
+		if(bucket < EXACT)
+			return bucket;
+
+		int shift = (bucket - EXACT) / PER_POWER + 1;
+		long top = (bucket - EXACT) % PER_POWER + PER_POWER;
+		return ((top + 1) << shift) - 1;
+	}
+}
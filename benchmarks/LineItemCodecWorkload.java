@@ -0,0 +1,55 @@
+//////////////////////////////////////////////////////////////////////
+// LineItemCodecWorkload.java			Author: Justin Brown
+//
+// Writes the items of a made up sale as ITEMS column text, and reads
+// the text back.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Random;
+
+import bench.Workload;
+
+public class LineItemCodecWorkload implements Workload {
+	// Operations, in the order LineItemCodecBenchmark numbers them
+	private static final int ENCODE = 0;
+	private static final int DECODE = 1;
+
+	private LineItemCodec codec;
+	private ArrayList<Item> items;
+	private String encoded;
+	private StringBuilder out;
+	private ArrayList<Item> decoded;
+
+	public void setUp(int size) throws Exception {
+		codec = new LineItemCodec();
+		items = BenchmarkDatabase.makeSale(new Random(size), size).getItems();
+
+		out = new StringBuilder();
+		codec.encode(items, out);
+		encoded = out.toString();
+
+		decoded = new ArrayList<Item>(size);
+	}
+
+	public Object run(int operation) throws Exception {
+		switch(operation) {
+			case ENCODE:
+				out.setLength(0);
+				codec.encode(items, out);
+				return out;
+
+			case DECODE:
+				decoded.clear();
+				codec.decode(new StringReader(encoded), decoded);
+				return decoded;
+
+			default:
+				throw new IllegalArgumentException("No operation " + operation);
+		}
+	}
+
+	public void tearDown() {
+	}
+}
@@ -0,0 +1,489 @@
+//////////////////////////////////////////////////////////////////////
+// LoadGenerator.java			Author: Justin Brown
+//
+// Puts a store's worth of registers on the database at once, without
+// the UI. The registers share one CheckoutEngine as MainFrame uses it.
+// Each rings up baskets of random items, looking each up in the
+// inventory by scanner code or by name, and commits the sale through
+// the sale journal as Save & Print does. Reporters run sales reports
+// over random spans at the same time. At the end the
+// throughput and the latency percentiles of each kind of operation
+// are printed. Runs against a new database filled with a catalog and
+// a history of made up sales, deleted afterwards.
+//
+// With --connect the registers and reporters are instead clients of a
+// StoreServer, each with its own connection, on virtual threads where
+// the runtime has them. The catalog is added to the server's inventory
+// if it isn't there yet, and the server's own sales are the history.
+// Several can be run against one server at once.
+//
+//     java -cp target/benchmarks.jar LoadGenerator --registers 16 --seconds 60
+//     java -cp target/benchmarks.jar StoreServer
+//     java -cp target/benchmarks.jar LoadGenerator --connect localhost:7070 --registers 2000
+//
+// Options, with their defaults:
+//     --registers 8        registers ringing up sales at once
+//     --reporters 1        threads running reports at once
+//     --seconds 30         how long to run for
+//     --catalog 1000       items in the inventory
+//     --history 1000       sales in the database before the run
+//     --basket 10          average items in a basket
+//     --item-think 200     average milliseconds between items
+//     --sale-think 2000    average milliseconds between sales
+//     --report-think 5000  average milliseconds between reports
+//     --direct             save straight to the database rather than
+//                          through the journal
+//     --store              load the sales into memory first, so
+//                          reports are added up there
+//     --connect host:port  ring up sales on a store server
+//     --secret-file path   the store server's shared secret
+// Think times are random around their average, 0 runs flat out.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LoadGenerator {
+	// Report spans and grand total ranges picked from at random, as offered on the reports tab
+	private static final long HOUR_IN_MS = 60 * 60 * 1000;
+	private static final long[] REPORT_SPANS = { HOUR_IN_MS, 24 * HOUR_IN_MS, 7 * 24 * HOUR_IN_MS, 30 * 24 * HOUR_IN_MS, 365 * 24 * HOUR_IN_MS };
+	private static final long[][] REPORT_RANGES = {
+		{ DatabaseManager.NO_MINIMUM, DatabaseManager.NO_MAXIMUM },
+		{ DatabaseManager.NO_MINIMUM, 10000 },
+		{ 10000, 50000 },
+		{ 50000, 100000 },
+		{ 100000, DatabaseManager.NO_MAXIMUM }
+	};
+
+	// How long the journal is given to write the last sales at the end
+	private static final long CLOSE_TIMEOUT_MS = 60000;
+
+	// Settings
+	private int registers = 8;
+	private int reporters = 1;
+	private int seconds = 30;
+	private int catalog = 1000;
+	private int history = 1000;
+	private int basket = 10;
+	private long itemThinkMs = 200;
+	private long saleThinkMs = 2000;
+	private long reportThinkMs = 5000;
+	private boolean direct = false;
+	private boolean store = false;
+	private String host;
+	private int port;
+	private byte[] secret;
+
+	// What the registers work against, a database here or a store server
+	private BenchmarkDatabase database;
+	private CheckoutEngine engine;
+
+	// When the registers stop, by System.nanoTime
+	private long deadline;
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		if(!generator.parse(args)) {
+			System.out.println("Usage: LoadGenerator [--registers n] [--reporters n] [--seconds n] [--catalog n] [--history n]");
+			System.out.println("                     [--basket n] [--item-think ms] [--sale-think ms] [--report-think ms] [--direct] [--store]");
+			System.out.println("                     [--connect host:port]");
+			System.exit(1);
+		}
+
+		generator.run();
+	}
+
+	// Reads the options, returns false if one isn't understood
+	private boolean parse(String[] args) {
+		try {
+			for(int i = 0; i < args.length; i++) {
+				String option = args[i];
+				if(option.equals("--direct")) {
+					direct = true;
+					continue;
+				}
+				if(option.equals("--store")) {
+					store = true;
+					continue;
+				}
+
+				if(i + 1 == args.length)
+					return false;
+				if(option.equals("--connect")) {
+					String address = args[++i];
+					int colon = address.lastIndexOf(':');
+					host = colon < 0 ? address : address.substring(0, colon);
+					port = colon < 0 ? StoreProtocol.DEFAULT_PORT : Integer.parseInt(address.substring(colon + 1));
+					continue;
+				}
+				if(option.equals("--secret-file")) {
+					try {
+						secret = StoreProtocol.readSecret(new File(args[++i]));
+					} catch(IOException ex) {
+						System.out.println(ex.getMessage());
+						return false;
+					}
+					continue;
+				}
+				long value = Long.parseLong(args[++i]);
+				if(value < 0)
+					return false;
+
+				if(option.equals("--registers"))
+					registers = (int) value;
+				else if(option.equals("--reporters"))
+					reporters = (int) value;
+				else if(option.equals("--seconds"))
+					seconds = (int) value;
+				else if(option.equals("--catalog"))
+					catalog = (int) value;
+				else if(option.equals("--history"))
+					history = (int) value;
+				else if(option.equals("--basket"))
+					basket = (int) value;
+				else if(option.equals("--item-think"))
+					itemThinkMs = value;
+				else if(option.equals("--sale-think"))
+					saleThinkMs = value;
+				else if(option.equals("--report-think"))
+					reportThinkMs = value;
+				else
+					return false;
+			}
+		} catch(NumberFormatException ex) {
+			return false;
+		}
+
+		return catalog > 0 && basket > 0;
+	}
+
+	/*
+	 * Sets up the database, runs the registers and reporters until the time is up and prints the results
+	 */
+	private void run() throws Exception {
+		DatabaseManager db = null;
+		ExecutorService threads;
+
+		if(host == null) {
+			System.out.println("Filling a new database with " + catalog + " items and " + history + " sales...");
+			database = new BenchmarkDatabase();
+			database.fillInventory(catalog);
+			database.fillSales(history);
+
+			db = database.getDatabase();
+			engine = new CheckoutEngine(db, direct ? null : new File(database.getHome(), "Project2DB.journal"));
+			engine.open();
+			engine.loadInventory();
+			if(store)
+				engine.loadSalesStore();
+
+			// The journal and JDBC wait holding monitors, which would pin virtual threads
+			threads = Executors.newCachedThreadPool();
+		} else {
+			System.out.println("Making sure " + host + ":" + port + " has the " + catalog + " items...");
+			seedCatalog();
+
+			threads = SessionThreads.newExecutor("Register");
+		}
+
+		System.out.println("Running " + registers + " registers and " + reporters + " reporters for " + seconds + " seconds...");
+		long start = System.nanoTime();
+		deadline = start + seconds * 1000000000L;
+
+		ArrayList<Register> registerThreads = new ArrayList<Register>();
+		for(int i = 0; i < registers; i++) {
+			Register register = new Register(i);
+			registerThreads.add(register);
+			threads.execute(register);
+		}
+
+		ArrayList<Reporter> reporterThreads = new ArrayList<Reporter>();
+		for(int i = 0; i < reporters; i++) {
+			Reporter reporter = new Reporter(i);
+			reporterThreads.add(reporter);
+			threads.execute(reporter);
+		}
+
+		threads.shutdown();
+		while(!threads.awaitTermination(1, TimeUnit.SECONDS)) {
+			// Registers finish the request they are on once the time is up
+		}
+
+		LatencyHistogram lookups = new LatencyHistogram();
+		LatencyHistogram saves = new LatencyHistogram();
+		LatencyHistogram reports = new LatencyHistogram();
+		long sales = 0;
+		long lines = 0;
+		long failures = 0;
+
+		for(Register register : registerThreads) {
+			lookups.add(register.lookups);
+			saves.add(register.saves);
+			sales += register.sales;
+			lines += register.lines;
+			failures += register.failures;
+		}
+		for(Reporter reporter : reporterThreads) {
+			reports.add(reporter.reports);
+			failures += reporter.failures;
+		}
+
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		System.out.println();
+		if(host == null) {
+			// Let the journal catch up, so the database holds every sale acknowledged
+			engine.close(CLOSE_TIMEOUT_MS);
+			int saved = db.countTransactions(Integer.MAX_VALUE) - history;
+
+			System.out.println(String.format("Sales %d (%.1f/s), items %d (%.1f/s), saved to the database %d, failures %d",
+					sales, sales / elapsed, lines, lines / elapsed, saved, failures));
+		} else {
+			System.out.println(String.format("Sales %d (%.1f/s), items %d (%.1f/s), failures %d",
+					sales, sales / elapsed, lines, lines / elapsed, failures));
+		}
+		System.out.println();
+		System.out.println(String.format("%-12s %10s %10s %10s %10s %10s %10s %10s", "Operation", "Count", "Per sec", "Mean ms", "p50 ms", "p99 ms", "p999 ms", "Max ms"));
+		print(host == null ? "Item lookup" : "Add item", lookups, elapsed);
+		print(host != null ? "Commit" : direct ? "Save" : "Journal save", saves, elapsed);
+		print("Report", reports, elapsed);
+
+		if(database != null)
+			database.close();
+	}
+
+	/*
+	 * Adds the catalog items the server doesn't have yet, with the prices BenchmarkDatabase gives them.
+	 * Another generator adding the same item at the same time is turned down, which is fine.
+	 */
+	private void seedCatalog() throws IOException {
+		StoreClient client = new StoreClient(host, port, secret);
+		try {
+			Random random = new Random(catalog);
+			for(int i = 1; i <= catalog; i++) {
+				long price = 1 + random.nextInt(10000);
+				if(client.findByCode(i) != null)
+					continue;
+
+				try {
+					client.addItem("Item " + i, price, i);
+				} catch(IOException ex) {
+					// Already added by another generator
+				}
+			}
+		}
+		finally {
+			client.close();
+		}
+	}
+
+	// Prints a line of the results table
+	private static void print(String name, LatencyHistogram histogram, double elapsed) {
+		System.out.println(String.format("%-12s %10d %10.1f %10.3f %10.3f %10.3f %10.3f %10.3f", name,
+				histogram.getCount(), histogram.getCount() / elapsed, histogram.getMean() / 1e6,
+				histogram.getPercentile(0.50) / 1e6, histogram.getPercentile(0.99) / 1e6,
+				histogram.getPercentile(0.999) / 1e6, histogram.getMax() / 1e6));
+	}
+
+	/*
+	 * Waits a random time around an average, or not at all for an average of 0.
+	 * Returns false if the run is over.
+	 */
+	private boolean think(Random random, long averageMs) throws InterruptedException {
+		if(averageMs > 0) {
+			long ms = (long) (-Math.log(1 - random.nextDouble()) * averageMs);
+			long left = (deadline - System.nanoTime()) / 1000000;
+			Thread.sleep(Math.max(0, Math.min(ms, left)));
+		}
+
+		return System.nanoTime() < deadline;
+	}
+
+	// A register ringing up sales, its own counts are added up once it is done
+	private class Register implements Runnable {
+		private String name;
+		private Random random;
+
+		// The register's connection when it rings up sales on a store server
+		private StoreClient client;
+
+		LatencyHistogram lookups = new LatencyHistogram();
+		LatencyHistogram saves = new LatencyHistogram();
+		long sales;
+		long lines;
+		long failures;
+
+		Register(int number) {
+			name = "Register " + (number + 1);
+			random = new Random(number);
+		}
+
+		public void run() {
+			try {
+				if(host != null)
+					client = new StoreClient(host, port, secret);
+
+				while(think(random, saleThinkMs)) {
+					if(client == null)
+						ringUpSale();
+					else
+						ringUpRemoteSale();
+				}
+			} catch(InterruptedException ex) {
+				// Stop early
+			} catch(IOException ex) {
+				failures++;
+				System.out.println(name + ": lost the store server: " + ex.getMessage());
+			}
+			finally {
+				if(client != null)
+					client.close();
+			}
+		}
+
+		// Rings up a basket of about the average size and saves it, unless the time runs out part way
+		private void ringUpSale() throws InterruptedException {
+			Basket sale = engine.openBasket();
+			int size = 1 + random.nextInt(2 * basket - 1);
+
+			for(int i = 0; i < size; i++) {
+				if(!think(random, itemThinkMs))
+					return;
+
+				// Half the items are scanned and half picked by name
+				int number = 1 + random.nextInt(catalog);
+				long began = System.nanoTime();
+				InventoryItem found = random.nextBoolean() ? engine.scan(number) : engine.getInventory().findByName("Item " + number);
+				lookups.record(System.nanoTime() - began);
+
+				if(found == null) {
+					failures++;
+					continue;
+				}
+
+				engine.addLine(sale, found.getName(), found.getPrice(), 1 + random.nextInt(3));
+				lines++;
+			}
+
+			if(sale.isEmpty())
+				return;
+
+			long began = System.nanoTime();
+			try {
+				engine.commitSale(sale);
+
+				saves.record(System.nanoTime() - began);
+				sales++;
+			} catch(Exception ex) {
+				failures++;
+				System.out.println(name + ": unable to save a sale: " + ex.getMessage());
+			}
+		}
+
+		/*
+		 * Rings up a sale on the store server as ringUpSale does. A scan is one request, picking by name is
+		 * a lookup then a line, as a register's item picker does it. A sale cut short by the time running out
+		 * is left in the server's basket and dropped when the register disconnects.
+		 */
+		private void ringUpRemoteSale() throws InterruptedException, IOException {
+			int size = 1 + random.nextInt(2 * basket - 1);
+
+			for(int i = 0; i < size; i++) {
+				if(!think(random, itemThinkMs))
+					return;
+
+				int number = 1 + random.nextInt(catalog);
+				int quantity = 1 + random.nextInt(3);
+				long began = System.nanoTime();
+				boolean added;
+				if(random.nextBoolean()) {
+					added = client.scan(number, quantity) != null;
+				} else {
+					InventoryItem found = client.findByName("Item " + number);
+					if(found != null)
+						client.addLine(found.getName(), found.getPrice(), quantity);
+					added = found != null;
+				}
+				lookups.record(System.nanoTime() - began);
+
+				if(!added) {
+					failures++;
+					continue;
+				}
+				lines++;
+			}
+
+			if(client.getLineCount() == 0)
+				return;
+
+			long began = System.nanoTime();
+			try {
+				client.commit();
+
+				saves.record(System.nanoTime() - began);
+				sales++;
+			} catch(IOException ex) {
+				// Turned down by the server, the sale stays in the basket
+				failures++;
+				System.out.println(name + ": unable to save a sale: " + ex.getMessage());
+				client.clear();
+			}
+		}
+	}
+
+	// Runs reports over random spans and grand total ranges
+	private class Reporter implements Runnable {
+		private String name;
+		private Random random;
+
+		// The reporter's connection when it runs reports on a store server
+		private StoreClient client;
+
+		LatencyHistogram reports = new LatencyHistogram();
+		long failures;
+
+		Reporter(int number) {
+			name = "Reporter " + (number + 1);
+			random = new Random(-1 - number);
+		}
+
+		public void run() {
+			try {
+				if(host != null)
+					client = new StoreClient(host, port, secret);
+
+				while(think(random, reportThinkMs)) {
+					long span = REPORT_SPANS[random.nextInt(REPORT_SPANS.length)];
+					long[] range = REPORT_RANGES[random.nextInt(REPORT_RANGES.length)];
+					long from = System.currentTimeMillis() - span;
+
+					long began = System.nanoTime();
+					try {
+						if(client == null)
+							engine.runReport(from, range[0], range[1]);
+						else
+							client.runReport(from, range[0], range[1]);
+						reports.record(System.nanoTime() - began);
+					} catch(Exception ex) {
+						failures++;
+						System.out.println(name + ": unable to run a report: " + ex.getMessage());
+					}
+				}
+			} catch(InterruptedException ex) {
+				// Stop early
+			} catch(IOException ex) {
+				failures++;
+				System.out.println(name + ": lost the store server: " + ex.getMessage());
+			}
+			finally {
+				if(client != null)
+					client.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+//////////////////////////////////////////////////////////////////////
+// PriceLookupWorkload.java			Author: Justin Brown
+//
+// Looks up items in turn from an inventory filled with made up items,
+// the way a price is found when an item is picked or scanned.
+//////////////////////////////////////////////////////////////////////
+
+import bench.Workload;
+
+public class PriceLookupWorkload implements Workload {
+	// Operations, in the order PriceLookupBenchmark numbers them
+	private static final int CACHE_BY_NAME = 0;
+	private static final int CACHE_BY_CODE = 1;
+	private static final int DATABASE_BY_NAME = 2;
+
+	private BenchmarkDatabase database;
+	private InventoryCache inventory;
+
+	// The names looked up, and the next one to look up
+	private String[] names;
+	private int next;
+
+	public void setUp(int size) throws Exception {
+		database = new BenchmarkDatabase();
+		database.fillInventory(size);
+
+		inventory = new InventoryCache(database.getDatabase());
+		inventory.load();
+
+		names = new String[size];
+		for(int i = 0; i < size; i++) {
+			names[i] = "Item " + (i + 1);
+		}
+	}
+
+	public Object run(int operation) throws Exception {
+		int index = next;
+		next = (next + 1) % names.length;
+
+		switch(operation) {
+			case CACHE_BY_NAME:
+				return inventory.findByName(names[index]);
+
+			case CACHE_BY_CODE:
+				return inventory.findByCode(index + 1);
+
+			case DATABASE_BY_NAME:
+				return database.getDatabase().findItemByName(names[index]);
+
+			default:
+				throw new IllegalArgumentException("No operation " + operation);
+		}
+	}
+
+	public void tearDown() throws Exception {
+		database.close();
+	}
+}
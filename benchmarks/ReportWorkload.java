@@ -0,0 +1,66 @@
+//////////////////////////////////////////////////////////////////////
+// ReportWorkload.java			Author: Justin Brown
+//
+// Runs the last month's sales report over a database filled with
+// sales, and over a sales store read from it.
+//////////////////////////////////////////////////////////////////////
+
+import java.sql.Timestamp;
+
+import bench.Workload;
+
+public class ReportWorkload implements Workload {
+	// Operations, in the order ReportBenchmark numbers them
+	private static final int DATABASE_BANDS = 0;
+	private static final int DATABASE_RANGE = 1;
+	private static final int STORE_BANDS = 2;
+	private static final int STORE_RANGE = 3;
+
+	// The report covers the last 30 days, from part way through an hour
+	private static final long SPAN_MS = 30L * 24 * 60 * 60 * 1000 + 17 * 60 * 1000;
+
+	// A grand total range that lines up with the rollup's bands, $100 to $500, and one that doesn't
+	private static final long BAND_MIN = 10000;
+	private static final long BAND_MAX = 50000;
+	private static final long RANGE_MIN = 1234;
+	private static final long RANGE_MAX = 56789;
+
+	private BenchmarkDatabase database;
+	private SalesStore store;
+	private Timestamp from;
+
+	public void setUp(int transactions) throws Exception {
+		database = new BenchmarkDatabase();
+		database.fillSales(transactions);
+
+		store = new SalesStore();
+		database.getDatabase().loadSales(store);
+
+		from = new Timestamp(System.currentTimeMillis() - SPAN_MS);
+	}
+
+	public Object run(int operation) throws Exception {
+		DatabaseManager db = database.getDatabase();
+
+		switch(operation) {
+			case DATABASE_BANDS:
+				return db.generateReport(from, BAND_MIN, BAND_MAX);
+
+			case DATABASE_RANGE:
+				return db.generateReport(from, RANGE_MIN, RANGE_MAX);
+
+			case STORE_BANDS:
+				return store.report(from.getTime(), Long.MAX_VALUE, BAND_MIN, BAND_MAX);
+
+			case STORE_RANGE:
+				return store.report(from.getTime(), Long.MAX_VALUE, RANGE_MIN, RANGE_MAX);
+
+			default:
+				throw new IllegalArgumentException("No operation " + operation);
+		}
+	}
+
+	public void tearDown() throws Exception {
+		database.close();
+	}
+}
@@ -0,0 +1,51 @@
+//////////////////////////////////////////////////////////////////////
+// SaveTransactionWorkload.java			Author: Justin Brown
+//
+// Saves the same made up sale over and over, alone or in batches.
+//////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import bench.Workload;
+
+public class SaveTransactionWorkload implements Workload {
+	// Operations, in the order SaveTransactionBenchmark numbers them
+	private static final int SAVE_ONE = 0;
+	private static final int SAVE_BATCH = 1;
+
+	// Sales in a batch
+	private static final int BATCH_SIZE = 100;
+
+	private BenchmarkDatabase database;
+	private Transaction sale;
+	private ArrayList<Transaction> batch;
+
+	public void setUp(int lines) throws Exception {
+		database = new BenchmarkDatabase();
+		sale = BenchmarkDatabase.makeSale(new Random(lines), lines);
+
+		batch = new ArrayList<Transaction>(BATCH_SIZE);
+		for(int i = 0; i < BATCH_SIZE; i++) {
+			batch.add(sale);
+		}
+	}
+
+	public Object run(int operation) throws Exception {
+		switch(operation) {
+			case SAVE_ONE:
+				return database.getDatabase().saveTransaction(sale);
+
+			case SAVE_BATCH:
+				database.getDatabase().saveTransactions(batch, database.nextSequence());
+				return batch;
+
+			default:
+				throw new IllegalArgumentException("No operation " + operation);
+		}
+	}
+
+	public void tearDown() throws Exception {
+		database.close();
+	}
+}
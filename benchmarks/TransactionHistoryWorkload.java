@@ -0,0 +1,66 @@
+//////////////////////////////////////////////////////////////////////
+// TransactionHistoryWorkload.java			Author: Justin Brown
+//
+// Reads the transaction history of a database filled with sales, as
+// TransactionsTableModel does when it is refreshed and scrolled.
+//////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+
+import bench.Workload;
+
+public class TransactionHistoryWorkload implements Workload {
+	// Operations, in the order TransactionHistoryBenchmark numbers them
+	private static final int LOAD_NEWER = 0;
+	private static final int FIRST_PAGE = 1;
+	private static final int PAGE_BY_OFFSET = 2;
+	private static final int PAGE_BY_KEY = 3;
+
+	// Rows in a page, as the table reads them, and sales saved between refreshes
+	private static final int PAGE_SIZE = 100;
+	private static final int NEWER = 10;
+
+	private BenchmarkDatabase database;
+	private int maxId;
+	private int middleOffset;
+
+	// The last row of the page before the one in the middle of the history
+	private Transaction beforeMiddle;
+
+	public void setUp(int transactions) throws Exception {
+		database = new BenchmarkDatabase();
+		database.fillSales(transactions);
+
+		DatabaseManager db = database.getDatabase();
+		maxId = db.getLastTransactionId();
+		middleOffset = transactions / 2 / PAGE_SIZE * PAGE_SIZE;
+
+		ArrayList<Transaction> previous = db.loadTransactionPage(maxId, null, middleOffset - PAGE_SIZE, PAGE_SIZE);
+		beforeMiddle = previous.get(previous.size() - 1);
+	}
+
+	public Object run(int operation) throws Exception {
+		DatabaseManager db = database.getDatabase();
+
+		switch(operation) {
+			case LOAD_NEWER:
+				return db.loadTransactionsAfter(maxId - NEWER);
+
+			case FIRST_PAGE:
+				return db.loadTransactionPage(maxId, null, 0, PAGE_SIZE);
+
+			case PAGE_BY_OFFSET:
+				return db.loadTransactionPage(maxId, null, middleOffset, PAGE_SIZE);
+
+			case PAGE_BY_KEY:
+				return db.loadTransactionPage(maxId, beforeMiddle, middleOffset, PAGE_SIZE);
+
+			default:
+				throw new IllegalArgumentException("No operation " + operation);
+		}
+	}
+
+	public void tearDown() throws Exception {
+		database.close();
+	}
+}
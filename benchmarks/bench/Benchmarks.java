@@ -0,0 +1,42 @@
+//////////////////////////////////////////////////////////////////////
+// Benchmarks.java			Author: Justin Brown
+//
+// Runs the benchmark suite. Takes the usual JMH options, for example
+//     java -jar target/benchmarks.jar Report -p transactions=100000
+// and writes the results as JSON to jmh-result.json unless told to
+// write them somewhere else or in another format with -rf and -rff.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class Benchmarks {
+	// Where the results go when no file is given
+	private static final String RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if(commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+		if(commandLine.shouldList()) {
+			new Runner(commandLine).list();
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+		if(!commandLine.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if(!commandLine.getResult().hasValue() && !commandLine.getResultFormat().hasValue())
+			options.result(RESULT_FILE);
+
+		new Runner(options.build()).run();
+	}
+}
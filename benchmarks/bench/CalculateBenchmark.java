@@ -0,0 +1,63 @@
+//////////////////////////////////////////////////////////////////////
+// CalculateBenchmark.java			Author: Justin Brown
+//
+// Building a basket of a number of items, calculating the totals
+// after each as the transaction screen does, then working out the
+// totals of a full basket and checking them against its items.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CalculateBenchmark {
+	@Param({ "100", "10000", "100000" })
+	public int items;
+
+	private Workload workload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		workload = Workloads.create("CalculateWorkload", items);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object build() throws Exception {
+		return workload.run(0);
+	}
+
+	@Benchmark
+	public Object calculate() throws Exception {
+		return workload.run(1);
+	}
+
+	@Benchmark
+	public Object verify() throws Exception {
+		return workload.run(2);
+	}
+}
@@ -0,0 +1,57 @@
+//////////////////////////////////////////////////////////////////////
+// LineItemCodecBenchmark.java			Author: Justin Brown
+//
+// Writing and reading the ITEMS column text of a transaction with
+// LineItemCodec, for transactions of a number of items.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineItemCodecBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int items;
+
+	private Workload workload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		workload = Workloads.create("LineItemCodecWorkload", items);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object encode() throws Exception {
+		return workload.run(0);
+	}
+
+	@Benchmark
+	public Object decode() throws Exception {
+		return workload.run(1);
+	}
+}
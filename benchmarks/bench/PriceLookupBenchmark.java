@@ -0,0 +1,63 @@
+//////////////////////////////////////////////////////////////////////
+// PriceLookupBenchmark.java			Author: Justin Brown
+//
+// Looking up an item's price by name and by scanner code in the
+// inventory cache, and by name in the database, over an inventory of
+// a number of items.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceLookupBenchmark {
+	@Param({ "100", "10000" })
+	public int inventory;
+
+	private Workload workload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		workload = Workloads.create("PriceLookupWorkload", inventory);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object cacheByName() throws Exception {
+		return workload.run(0);
+	}
+
+	@Benchmark
+	public Object cacheByCode() throws Exception {
+		return workload.run(1);
+	}
+
+	@Benchmark
+	public Object databaseByName() throws Exception {
+		return workload.run(2);
+	}
+}
@@ -0,0 +1,68 @@
+//////////////////////////////////////////////////////////////////////
+// ReportBenchmark.java			Author: Justin Brown
+//
+// Generating sales reports over a number of saved sales, from the
+// database and from the in-memory sales store. A range that lines up
+// with the rollup's bands and one that doesn't are timed for each.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+	@Param({ "1000", "10000" })
+	public int transactions;
+
+	private Workload workload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		workload = Workloads.create("ReportWorkload", transactions);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object databaseBands() throws Exception {
+		return workload.run(0);
+	}
+
+	@Benchmark
+	public Object databaseRange() throws Exception {
+		return workload.run(1);
+	}
+
+	@Benchmark
+	public Object storeBands() throws Exception {
+		return workload.run(2);
+	}
+
+	@Benchmark
+	public Object storeRange() throws Exception {
+		return workload.run(3);
+	}
+}
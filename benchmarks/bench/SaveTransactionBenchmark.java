@@ -0,0 +1,58 @@
+//////////////////////////////////////////////////////////////////////
+// SaveTransactionBenchmark.java			Author: Justin Brown
+//
+// Saving sales to the database: one at a time as DatabaseManager.saveTransaction
+// does, and in batches of 100 as the sale journal's writer does. The
+// size is the number of items in each sale.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveTransactionBenchmark {
+	@Param({ "1", "10", "100" })
+	public int lines;
+
+	private Workload workload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		workload = Workloads.create("SaveTransactionWorkload", lines);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object saveOne() throws Exception {
+		return workload.run(0);
+	}
+
+	@Benchmark
+	public Object saveBatch() throws Exception {
+		return workload.run(1);
+	}
+}
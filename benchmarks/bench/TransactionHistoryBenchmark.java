@@ -0,0 +1,68 @@
+//////////////////////////////////////////////////////////////////////
+// TransactionHistoryBenchmark.java			Author: Justin Brown
+//
+// Reading the transaction history the way the recent transactions
+// table does: the sales saved since it last looked, the first page,
+// and a page deep in the history read by offset and by key.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionHistoryBenchmark {
+	@Param({ "1000", "10000" })
+	public int transactions;
+
+	private Workload workload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		workload = Workloads.create("TransactionHistoryWorkload", transactions);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		workload.tearDown();
+	}
+
+	@Benchmark
+	public Object loadNewer() throws Exception {
+		return workload.run(0);
+	}
+
+	@Benchmark
+	public Object firstPage() throws Exception {
+		return workload.run(1);
+	}
+
+	@Benchmark
+	public Object pageByOffset() throws Exception {
+		return workload.run(2);
+	}
+
+	@Benchmark
+	public Object pageByKey() throws Exception {
+		return workload.run(3);
+	}
+}
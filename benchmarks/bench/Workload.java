@@ -0,0 +1,22 @@
+//////////////////////////////////////////////////////////////////////
+// Workload.java			Author: Justin Brown
+//
+// The part of a benchmark that uses the program. Workloads are
+// written in the default package alongside the program's classes,
+// the benchmarks in this package only see them through this
+// interface. Each workload can run a few operations, numbered by
+// constants of its own.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+public interface Workload {
+	// Builds the data for a run, size is the benchmark's size parameter
+	void setUp(int size) throws Exception;
+
+	// Runs an operation once, returning something for the benchmark to consume
+	Object run(int operation) throws Exception;
+
+	// Frees what setUp made
+	void tearDown() throws Exception;
+}
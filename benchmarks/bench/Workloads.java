@@ -0,0 +1,23 @@
+//////////////////////////////////////////////////////////////////////
+// Workloads.java			Author: Justin Brown
+//
+// Makes workloads by the name of their class, the benchmarks can't
+// name classes in the default package any other way.
+//////////////////////////////////////////////////////////////////////
+
+package bench;
+
+public final class Workloads {
+	// Constructor, only static methods
+	private Workloads() {
+	}
+
+	/*
+	 * Makes the named workload and sets it up for a size
+	 */
+	public static Workload create(String className, int size) throws Exception {
+		Workload workload = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+		workload.setUp(size);
+		return workload;
+	}
+}
@@ -0,0 +1,169 @@
+//////////////////////////////////////////////////////////////////////
+// AsyncDatabase.java			Author: Justin Brown
+//
+// Runs database work on its own threads so the Swing event dispatch
+// thread never waits on a query. Each task returns a Future, and its
+// result or failure is handed back to a callback on the event
+// dispatch thread. Keeps count of the tasks in flight so the UI can
+// show that something is happening.
+//
+// Work that waits on something other than the database, such as a
+// store server, is submitted as a Callable and can run on one without
+// a database at all. Given one thread the tasks run in the order they
+// were submitted.
+//////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+public class AsyncDatabase {
+	// The database the tasks run against
+	private DatabaseManager dbManager;
+
+	// Threads the tasks run on
+	private ExecutorService executor;
+
+	// Number of tasks submitted that haven't reported back yet, only touched on the event dispatch thread
+	private int inFlight;
+
+	// Told whenever the number of tasks in flight changes, on the event dispatch thread
+	private ArrayList<ChangeListener> listeners;
+
+	// Constructor, runs up to threads tasks at once
+	public AsyncDatabase(DatabaseManager db, int threads) {
+		this(db, threads, "Database");
+	}
+
+	/*
+	 * Constructor for work that doesn't touch a database, only Callables can be submitted.
+	 * The threads are named for what they wait on.
+	 */
+	public AsyncDatabase(String name, int threads) {
+		this(null, threads, name);
+	}
+
+	private AsyncDatabase(DatabaseManager db, int threads, final String name) {
+		dbManager = db;
+		listeners = new ArrayList<ChangeListener>();
+
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + " " + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/*
+	 * Runs a task in the background. The callback, if there is one, is told the outcome on the event
+	 * dispatch thread. Must be called on the event dispatch thread.
+	 */
+	public <T> Future<T> submit(final DatabaseTask<T> task, DatabaseCallback<T> callback) {
+		if(dbManager == null)
+			throw new IllegalStateException("There is no database to run the task against.");
+
+		return submit(new Callable<T>() {
+			public T call() throws Exception {
+				return task.run(dbManager);
+			}
+		}, callback);
+	}
+
+	/*
+	 * Runs work that doesn't need the database in the background, such as a request to a store server,
+	 * telling the callback as submit does for a DatabaseTask. Must be called on the event dispatch thread.
+	 */
+	public <T> Future<T> submit(final Callable<T> task, final DatabaseCallback<T> callback) {
+		setInFlight(inFlight + 1);
+
+		return executor.submit(new Callable<T>() {
+			public T call() throws Exception {
+				T result = null;
+				Exception failure = null;
+
+				try {
+					result = task.call();
+				} catch(Exception ex) {
+					failure = ex;
+				}
+
+				finish(callback, result, failure);
+
+				if(failure != null)
+					throw failure;
+
+				return result;
+			}
+		});
+	}
+
+	// Getter for the database the tasks run against, null if there isn't one
+	public DatabaseManager getDatabaseManager() {
+		return dbManager;
+	}
+
+	// Returns the number of tasks that haven't finished yet
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	// Adds a listener told when the number of tasks in flight changes
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/*
+	 * Stops taking new tasks and waits up to timeoutMs for the running ones to finish.
+	 * Returns true if they all finished.
+	 */
+	public boolean shutdown(long timeoutMs) {
+		executor.shutdown();
+
+		try {
+			return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	// Hands a task's outcome back to the event dispatch thread
+	private <T> void finish(final DatabaseCallback<T> callback, final T result, final Exception failure) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				setInFlight(inFlight - 1);
+
+				if(callback == null) {
+					if(failure != null)
+						System.out.println(failure.getMessage());
+				} else if(failure != null) {
+					callback.failed(failure);
+				} else {
+					callback.succeeded(result);
+				}
+			}
+		});
+	}
+
+	// Updates the count of tasks in flight and tells the listeners
+	private void setInFlight(int value) {
+		inFlight = value;
+
+		ChangeEvent event = new ChangeEvent(this);
+		for(ChangeListener listener : listeners) {
+			listener.stateChanged(event);
+		}
+	}
+}
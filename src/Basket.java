@@ -0,0 +1,84 @@
+//////////////////////////////////////////////////////////////////////
+// Basket.java			Author: Justin Brown
+//
+// The sale a register is ringing up, opened by a CheckoutEngine and
+// handed back to it to add lines and to commit. Holds the items and
+// keeps the totals up to date as they are added. Each register has
+// its own, but every method is synchronized so a basket can be read
+// from another thread, a display say, while it is being filled.
+//////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Basket {
+	// The sale being rung up, replaced by a new one each time it is committed or cleared
+	private Transaction transaction;
+
+	// Constructor, use CheckoutEngine.openBasket
+	Basket() {
+		transaction = new Transaction();
+	}
+
+	/*
+	 * Adds items to the basket and works the totals out once for all of them
+	 */
+	synchronized void add(List<Item> items) {
+		for(Item item : items) {
+			transaction.addItem(item);
+		}
+
+		transaction.calculate();
+	}
+
+	/*
+	 * Takes the sale out of the basket to be saved, leaving the basket empty
+	 */
+	synchronized Transaction take() {
+		Transaction sale = transaction;
+		transaction = new Transaction();
+		return sale;
+	}
+
+	/*
+	 * Puts back a sale taken out to be saved, when saving it failed, so it isn't lost
+	 */
+	synchronized void putBack(Transaction sale) {
+		transaction = sale;
+	}
+
+	// Empties the basket
+	public synchronized void clear() {
+		transaction = new Transaction();
+	}
+
+	// Returns a copy of the items in the basket, in the order they were added
+	public synchronized ArrayList<Item> getItems() {
+		return new ArrayList<Item>(transaction.getItems());
+	}
+
+	// Returns the number of lines in the basket
+	public synchronized int getLineCount() {
+		return transaction.getItems().size();
+	}
+
+	// Returns true if nothing has been added
+	public synchronized boolean isEmpty() {
+		return transaction.getItems().isEmpty();
+	}
+
+	// Getter for the sub total
+	public synchronized long getSubTotal() {
+		return transaction.getSubTotal();
+	}
+
+	// Getter for the sales tax
+	public synchronized long getSalesTax() {
+		return transaction.getSalesTax();
+	}
+
+	// Getter for the grand total
+	public synchronized long getGrandTotal() {
+		return transaction.getGrandTotal();
+	}
+}
@@ -0,0 +1,72 @@
+//////////////////////////////////////////////////////////////////////
+// CachedFormatRenderer.java			Author: Justin Brown
+//
+// A table cell renderer that shows numbers and dates through a
+// Format, keeping the text of the values it has shown recently. A
+// table repaints the same few values over and over as it scrolls, so
+// most cells are drawn with text that was formatted earlier and no
+// new strings are made. One renderer can be shared by every column
+// and table that shows values the same way. Like all Swing renderers
+// it is only used on the event dispatch thread.
+//////////////////////////////////////////////////////////////////////
+
+import java.text.Format;
+import java.util.Date;
+
+import javax.swing.table.DefaultTableCellRenderer;
+
+
+public class CachedFormatRenderer extends DefaultTableCellRenderer {
+	private static final long serialVersionUID = 1L;
+
+	// Number of texts kept, a power of two
+	private static final int CACHE_SIZE = 1024;
+
+	// Formats the values not in the cache
+	private Format format;
+
+	// The value each slot holds the text of, as the bits of a double or a date's time, and the text
+	private long[] keys;
+	private String[] texts;
+
+	// Constructor, alignment is one of the SwingConstants
+	public CachedFormatRenderer(Format format, int alignment) {
+		this.format = format;
+		setHorizontalAlignment(alignment);
+
+		keys = new long[CACHE_SIZE];
+		texts = new String[CACHE_SIZE];
+	}
+
+	/*
+	 * Sets the text shown for a cell, nulls are left blank
+	 */
+	@Override
+	protected void setValue(Object value) {
+		if(value == null) {
+			setText("");
+			return;
+		}
+
+		long key;
+		if(value instanceof Date)
+			key = ((Date) value).getTime();
+		else if(value instanceof Number)
+			key = Double.doubleToLongBits(((Number) value).doubleValue());
+		else {
+			setText(value.toString());
+			return;
+		}
+
+		// Each value has one slot it can be kept in, a value wanting the same slot replaces it
+		long h = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h ^ (h >>> 32)) & (CACHE_SIZE - 1);
+
+		if(texts[slot] == null || keys[slot] != key) {
+			keys[slot] = key;
+			texts[slot] = format.format(value);
+		}
+
+		setText(texts[slot]);
+	}
+}
@@ -0,0 +1,45 @@
+//////////////////////////////////////////////////////////////////////
+// CentsFormat.java			Author: Justin Brown
+//
+// A Format that shows a whole number of cents as currency, so the
+// amounts the table models hand out can be drawn by a
+// CachedFormatRenderer. Not thread safe, like the formats it wraps.
+//////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.text.FieldPosition;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+
+public class CentsFormat extends Format {
+	private static final long serialVersionUID = 1L;
+
+	// Formats the amount once it is in units
+	private NumberFormat currency;
+
+	// Constructor
+	public CentsFormat() {
+		currency = NumberFormat.getCurrencyInstance();
+	}
+
+	/*
+	 * Formats a Number holding a whole number of cents
+	 */
+	@Override
+	public StringBuffer format(Object cents, StringBuffer toAppendTo, FieldPosition pos) {
+		return currency.format(BigDecimal.valueOf(((Number) cents).longValue(), 2), toAppendTo, pos);
+	}
+
+	/*
+	 * Reads currency text back as a Long number of cents, or returns null if it isn't any
+	 */
+	@Override
+	public Object parseObject(String source, ParsePosition pos) {
+		Number amount = currency.parse(source, pos);
+		if(amount == null)
+			return null;
+
+		return Money.parse(amount.toString());
+	}
+}
@@ -0,0 +1,375 @@
+//////////////////////////////////////////////////////////////////////
+// CheckoutEngine.java			Author: Justin Brown
+//
+// Everything a register does apart from drawing it: ringing items up
+// into a basket, committing the sale, looking back through the sales
+// history and running sales reports, over the inventory cache, the
+// sale journal and the database. Nothing here knows about Swing, so
+// any number of registers can share one engine, each with its own
+// basket, from whatever threads they run on. Every method is safe to
+// call from several threads at once. Methods that read or write the
+// database wait on it, a UI calls them off its event thread.
+//
+// Sales are saved through the sale journal when the engine is given
+// one, and straight to the database when it isn't.
+//
+// Every line is checked as it goes in a basket and again as its sale
+// is committed, whichever register it came from: a name that fits
+// the database, a price from 0 up to MAX_PRICE and a quantity from 1
+// up to MAX_QUANTITY, in a basket of at most MAX_BASKET_LINES lines.
+// A line that breaks them is turned down with an
+// IllegalArgumentException, so it never reaches the journal.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.ChangeListener;
+
+public class CheckoutEngine {
+	// Transactions whose items are moved into the transaction_items table at a time
+	private static final int MIGRATION_CHUNK_SIZE = 500;
+
+	// The most a register can charge for one of something, $1,000,000, and the most of it on one line
+	public static final long MAX_PRICE = 100000000L;
+	public static final int MAX_QUANTITY = 10000;
+
+	// The most lines a basket can hold, so its totals can't overflow
+	public static final int MAX_BASKET_LINES = 10000;
+
+	// Where everything is stored
+	private DatabaseManager dbManager;
+
+	// The inventory, kept in memory and written through to the database
+	private InventoryCache inventory;
+
+	// Sales are saved here first if there is one, it writes them to the database in the background
+	private SaleJournal journal;
+
+	// Every sale saved, held in memory for reports once it has been read in
+	private SalesStore salesStore;
+	private volatile boolean salesStoreLoaded;
+
+	// Constructor, journalFile may be null to save sales straight to the database
+	public CheckoutEngine(DatabaseManager db, File journalFile) {
+		dbManager = db;
+		inventory = new InventoryCache(db);
+		salesStore = new SalesStore();
+
+		if(journalFile != null)
+			journal = new SaleJournal(journalFile, db);
+	}
+
+	/*
+	 * Opens the journal, replaying any sales the database missed, and starts moving the items of old
+	 * transactions into the transaction_items table in the background. Call loadInventory before
+	 * ringing anything up.
+	 */
+	public void open() throws IOException, SQLException {
+		if(journal != null)
+			journal.open();
+
+		migrateTransactionItems();
+	}
+
+	/*
+	 * Writes the sales the journal holds to the database, waiting up to timeoutMs.
+	 * Any it can't write are replayed when the engine is next opened. The database is left open.
+	 */
+	public void close(long timeoutMs) {
+		if(journal != null)
+			journal.close(timeoutMs);
+	}
+
+	// Getter for the database the engine works on
+	public DatabaseManager getDatabase() {
+		return dbManager;
+	}
+
+	// Getter for the inventory, items are added and changed through it
+	public InventoryCache getInventory() {
+		return inventory;
+	}
+
+	/*
+	 * Tells a listener each time journalled sales reach the database, on the journal's writer thread.
+	 * Nothing is told when sales are saved straight to the database, they are there once commitSale returns.
+	 */
+	public void addSaleListener(ChangeListener listener) {
+		if(journal != null)
+			journal.addChangeListener(listener);
+	}
+
+	/*
+	 * Reads the inventory into memory
+	 */
+	public void loadInventory() throws SQLException {
+		inventory.load();
+	}
+
+	/*
+	 * Reads every sale saved into memory, reports are added up there from then on. Until it is done
+	 * they read the database. Returns the number of sales read.
+	 */
+	public int loadSalesStore() throws SQLException {
+		int added = dbManager.loadSales(salesStore);
+		salesStoreLoaded = true;
+		return added;
+	}
+
+	// Returns the sales store, whether or not it has been loaded
+	public SalesStore getSalesStore() {
+		return salesStore;
+	}
+
+	/*
+	 * Starts a new sale for a register
+	 */
+	public Basket openBasket() {
+		return new Basket();
+	}
+
+	/*
+	 * Returns the active item with a scanner code, or null if there is none
+	 */
+	public InventoryItem scan(long code) {
+		InventoryItem item = inventory.findByCode(code);
+		if(item == null || !item.isActive())
+			return null;
+
+		return item;
+	}
+
+	/*
+	 * Adds a line to a basket. The price is whatever the register charged, a name that is in the
+	 * inventory is linked to its item and any other name is sold as it is. Returns the line added.
+	 */
+	public Item addLine(Basket basket, String name, long price, int quantity) {
+		checkLine(name, price, quantity);
+		checkRoom(basket, 1);
+
+		InventoryItem found = inventory.findByName(name);
+
+		Item item = new Item();
+		item.setItemID(found == null ? 0 : found.getID());
+		item.setName(name);
+		item.setPrice(price);
+		item.setQuantity(quantity);
+
+		ArrayList<Item> lines = new ArrayList<Item>(1);
+		lines.add(item);
+		basket.add(lines);
+
+		return item;
+	}
+
+	/*
+	 * Adds a quantity of an inventory item to a basket at its default price, such as a scan. The line is linked
+	 * to the item itself, names aren't unique so it isn't looked up again. Returns the line added.
+	 */
+	public Item addItem(Basket basket, InventoryItem found, int quantity) {
+		checkLine(found.getName(), found.getPrice(), quantity);
+		checkRoom(basket, 1);
+
+		Item item = new Item();
+		item.setItemID(found.getID());
+		item.setName(found.getName());
+		item.setPrice(found.getPrice());
+		item.setQuantity(quantity);
+
+		ArrayList<Item> lines = new ArrayList<Item>(1);
+		lines.add(item);
+		basket.add(lines);
+
+		return item;
+	}
+
+	/*
+	 * Adds one of each of a list of inventory items to a basket at their default prices, such as a burst
+	 * of scans. The totals are worked out once for the lot. Returns the lines added, in the same order.
+	 * If any of them can't be added none is.
+	 */
+	public ArrayList<Item> addItems(Basket basket, List<InventoryItem> items) {
+		for(InventoryItem found : items) {
+			checkLine(found.getName(), found.getPrice(), 1);
+		}
+		checkRoom(basket, items.size());
+
+		ArrayList<Item> lines = new ArrayList<Item>(items.size());
+		for(InventoryItem found : items) {
+			Item item = new Item();
+			item.setItemID(found.getID());
+			item.setName(found.getName());
+			item.setPrice(found.getPrice());
+			item.setQuantity(1);
+			lines.add(item);
+		}
+
+		basket.add(lines);
+		return lines;
+	}
+
+	/*
+	 * Saves the sale in a basket, dated now, and empties the basket for the next one. Returns the sale for
+	 * its receipt. Once it returns the sale is safe, its id is set when it reaches the database. If saving
+	 * fails the sale is left in the basket so it isn't lost. Throws IllegalArgumentException if the basket
+	 * is empty or a line in it breaks the line rules.
+	 */
+	public Transaction commitSale(Basket basket) throws IOException, SQLException {
+		ArrayList<Basket> baskets = new ArrayList<Basket>(1);
+		baskets.add(basket);
+		return commitSales(baskets).get(0);
+	}
+
+	/*
+	 * Saves the sales in several baskets together, as commitSale does for one. Through the journal they
+	 * share a single write to disk, and either all of them are saved or none is. Straight to the database
+	 * they are saved one at a time. If an exception is thrown every sale not saved is left in its basket.
+	 * Returns the sales in the same order as the baskets.
+	 */
+	public ArrayList<Transaction> commitSales(List<Basket> baskets) throws IOException, SQLException {
+		ArrayList<Transaction> sales = new ArrayList<Transaction>(baskets.size());
+		long now = System.currentTimeMillis();
+
+		int saved = 0;
+		try {
+			for(Basket basket : baskets) {
+				Transaction sale = basket.take();
+				sales.add(sale);
+
+				if(sale.getItems().isEmpty())
+					throw new IllegalArgumentException("There are no items in the basket.");
+
+				// A line the journal can't write to the database would hold up every sale after it
+				if(sale.getItems().size() > MAX_BASKET_LINES)
+					throw new IllegalArgumentException("The basket is full at " + MAX_BASKET_LINES + " lines.");
+				for(Item item : sale.getItems()) {
+					checkLine(item.getName(), item.getPrice(), item.getQuantity());
+				}
+
+				sale.setTime(now);
+
+				// The totals are kept as items are added, check them against the items once before saving
+				if(!sale.verifyTotals()) {
+					System.out.println("Transaction totals didn't match its items, recalculated.");
+					sale.recalculate();
+				}
+			}
+
+			if(journal != null) {
+				journal.appendAll(sales);
+				saved = sales.size();
+			} else {
+				for(Transaction sale : sales) {
+					sale.setID(dbManager.saveTransaction(sale));
+					saved++;
+				}
+			}
+		}
+		finally {
+			for(int i = saved; i < sales.size(); i++) {
+				baskets.get(i).putBack(sales.get(i));
+			}
+		}
+
+		return sales;
+	}
+
+	/*
+	 * Returns the transactions saved after an id, oldest first, with their totals but not their items
+	 */
+	public ArrayList<Transaction> getHistory(int afterId) throws SQLException {
+		return dbManager.loadTransactionsAfter(afterId);
+	}
+
+	/*
+	 * Returns the id of the last transaction saved and the number saved up to it, for paging back through the history
+	 */
+	public int[] getHistorySize() throws SQLException {
+		int maxId = dbManager.getLastTransactionId();
+		return new int[]{ maxId, dbManager.countTransactions(maxId) };
+	}
+
+	/*
+	 * Returns a page of the transactions with an id up to maxId, most recent first, with their totals but not their
+	 * items. after is the last transaction of the previous page if it is known, otherwise offset rows are skipped.
+	 */
+	public ArrayList<Transaction> getHistoryPage(int maxId, Transaction after, int offset, int limit) throws SQLException {
+		return dbManager.loadTransactionPage(maxId, after, offset, limit);
+	}
+
+	/*
+	 * Returns a saved transaction with its items, for showing its receipt. Once the sales store is loaded it is
+	 * read from there, sales it doesn't hold yet and any held without their items are read from the database.
+	 */
+	public Transaction loadReceipt(int id) throws SQLException {
+		if(salesStoreLoaded) {
+			Transaction held = salesStore.find(id);
+			if(held != null && !held.getItems().isEmpty())
+				return held;
+		}
+
+		Transaction t = new Transaction();
+		t.setID(id);
+		dbManager.loadTransactionItems(t);
+		return t;
+	}
+
+	/*
+	 * Totals the sales from a time up to now with a grand total from minTotal up to but not including maxTotal,
+	 * DatabaseManager.NO_MINIMUM and NO_MAXIMUM leave either end open. Once the sales store is loaded it catches
+	 * up with the sales saved since and the report is added up there, until then the database adds it up.
+	 */
+	public SalesReport runReport(long from, long minTotal, long maxTotal) throws SQLException {
+		if(!salesStoreLoaded)
+			return dbManager.generateReport(new Timestamp(from), minTotal, maxTotal);
+
+		dbManager.loadSales(salesStore);
+		return salesStore.report(from, Long.MAX_VALUE, minTotal, maxTotal);
+	}
+
+	/*
+	 * Checks a line keeps to the rules every register follows, throws IllegalArgumentException saying why if not
+	 */
+	public static void checkLine(String name, long price, int quantity) {
+		if(name == null || name.trim().equals("") || name.length() > DatabaseManager.MAX_LINE_NAME_LENGTH)
+			throw new IllegalArgumentException("A line's name must be 1 to " + DatabaseManager.MAX_LINE_NAME_LENGTH + " characters.");
+		if(price < 0 || price > MAX_PRICE)
+			throw new IllegalArgumentException("The price must be from " + Money.format(0) + " to " + Money.format(MAX_PRICE) + ".");
+		if(quantity < 1 || quantity > MAX_QUANTITY)
+			throw new IllegalArgumentException("The quantity must be from 1 to " + MAX_QUANTITY + ".");
+	}
+
+	// Checks a basket has room for more lines, throws IllegalArgumentException if not
+	private static void checkRoom(Basket basket, int lines) {
+		if(basket.getLineCount() + lines > MAX_BASKET_LINES)
+			throw new IllegalArgumentException("The basket is full at " + MAX_BASKET_LINES + " lines.");
+	}
+
+	/*
+	 * Moves the items of transactions saved before the transaction_items table existed into it.
+	 * Runs in the background a chunk at a time, a restart carries on with whatever is left.
+	 */
+	private void migrateTransactionItems() {
+		Thread migration = new Thread(new Runnable() {
+			public void run() {
+				try {
+					int lastId = 0;
+					do {
+						lastId = dbManager.migrateTransactionItems(lastId, MIGRATION_CHUNK_SIZE);
+					} while(lastId > 0);
+				}
+				catch(SQLException ex) {
+					System.out.println("Unable to migrate transaction items: " + ex.getMessage());
+				}
+			}
+		}, "Transaction items migration");
+
+		migration.setDaemon(true);
+		migration.start();
+	}
+}
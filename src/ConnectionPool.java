@@ -0,0 +1,292 @@
+//////////////////////////////////////////////////////////////////////
+// ConnectionPool.java			Author: Justin Brown
+//
+// A bounded pool of database connections. Each connection comes with
+// its own statement cache, so a statement compiled once is reused by
+// whoever borrows that connection next. Connections are opened as
+// they are needed up to the limit, after that borrowers wait for one
+// to be returned. Keeps track of how long borrowers waited and how
+// busy the connections were.
+//////////////////////////////////////////////////////////////////////
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+public class ConnectionPool {
+	// Connections idle for longer than this are checked before being handed out
+	private static final long VALIDATE_AFTER_IDLE_MS = 30 * 1000;
+
+	// Seconds to wait for a connection to answer when checking it
+	private static final int VALIDATE_TIMEOUT_SECONDS = 2;
+
+	// Where and how to connect
+	private String url;
+	private DatabaseManager dbManager;
+
+	// Most connections open at once, and how long to wait for one
+	private int maxSize;
+	private long borrowTimeoutMs;
+
+	// Idle connections, the most recently returned last, and when each was returned
+	private ArrayList<StatementCache> idle;
+	private IdentityHashMap<StatementCache, Long> idleSince;
+
+	// Connections currently borrowed, and when they were borrowed
+	private IdentityHashMap<StatementCache, Long> borrowed;
+
+	// Number of connections open, idle and borrowed
+	private int size;
+	private boolean closed;
+
+	// Statistics
+	private long createdAt;
+	private long borrowCount;
+	private long waitCount;
+	private long totalWaitNanos;
+	private long maxWaitNanos;
+	private long busyNanos;
+	private int peakBorrowed;
+	private int discardCount;
+
+	// Constructor
+	public ConnectionPool(String url, DatabaseManager db, int maxSize, long borrowTimeoutMs) {
+		this.url = url;
+		this.dbManager = db;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMs = borrowTimeoutMs;
+
+		idle = new ArrayList<StatementCache>();
+		idleSince = new IdentityHashMap<StatementCache, Long>();
+		borrowed = new IdentityHashMap<StatementCache, Long>();
+		createdAt = System.nanoTime();
+	}
+
+	/*
+	 * Borrows a connection, waiting for one to be returned if they are all in use.
+	 * It must be handed back with release once the caller is done with it.
+	 */
+	public StatementCache borrow() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + borrowTimeoutMs * 1000000L;
+		boolean waited = false;
+
+		while(true) {
+			StatementCache cache = null;
+			long idleMs = 0;
+			boolean open = false;
+
+			synchronized(this) {
+				while(!closed && idle.isEmpty() && size >= maxSize) {
+					long remaining = deadline - System.nanoTime();
+					if(remaining <= 0)
+						throw new SQLException("Timed out waiting for a database connection.");
+
+					waited = true;
+					try {
+						wait(Math.max(1, remaining / 1000000L));
+					} catch(InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted waiting for a database connection.");
+					}
+				}
+
+				if(closed)
+					throw new SQLException("The connection pool is closed.");
+
+				if(!idle.isEmpty()) {
+					cache = idle.remove(idle.size() - 1);
+					idleMs = (System.nanoTime() - idleSince.remove(cache)) / 1000000L;
+				} else {
+					// Reserve the slot now, the connection is opened outside the lock
+					size++;
+					open = true;
+				}
+			}
+
+			if(open) {
+				try {
+					cache = new StatementCache(DriverManager.getConnection(url), dbManager);
+				} catch(SQLException ex) {
+					synchronized(this) {
+						size--;
+						notifyAll();
+					}
+					throw ex;
+				}
+			} else if(idleMs > VALIDATE_AFTER_IDLE_MS && !isValid(cache)) {
+				// Drop the broken connection and try again
+				discard(cache);
+				continue;
+			}
+
+			synchronized(this) {
+				long now = System.nanoTime();
+				long waitNanos = now - start;
+
+				borrowed.put(cache, now);
+				borrowCount++;
+				if(waited)
+					waitCount++;
+				totalWaitNanos += waitNanos;
+				maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+				peakBorrowed = Math.max(peakBorrowed, borrowed.size());
+			}
+
+			return cache;
+		}
+	}
+
+	/*
+	 * Returns a borrowed connection to the pool. Any uncommitted work is rolled back.
+	 */
+	public void release(StatementCache cache) {
+		boolean healthy = true;
+
+		// Put the connection back the way the next borrower expects it
+		try {
+			Connection conn = cache.getConnection();
+			if(conn.isClosed()) {
+				healthy = false;
+			} else if(!conn.getAutoCommit()) {
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+		} catch(SQLException ex) {
+			healthy = false;
+		}
+
+		synchronized(this) {
+			Long borrowedAt = borrowed.remove(cache);
+			if(borrowedAt == null)
+				return;
+
+			busyNanos += System.nanoTime() - borrowedAt;
+
+			if(healthy && !closed) {
+				idle.add(cache);
+				idleSince.put(cache, System.nanoTime());
+				notifyAll();
+				return;
+			}
+		}
+
+		discard(cache);
+	}
+
+	/*
+	 * Closes the idle connections, connections still borrowed are closed when they are returned
+	 */
+	public void close() {
+		ArrayList<StatementCache> toClose;
+
+		synchronized(this) {
+			closed = true;
+			toClose = new ArrayList<StatementCache>(idle);
+			idle.clear();
+			idleSince.clear();
+			notifyAll();
+		}
+
+		for(StatementCache cache : toClose) {
+			discard(cache);
+		}
+	}
+
+	// Getter for the most connections the pool will open
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	// Returns the number of connections open
+	public synchronized int getSize() {
+		return size;
+	}
+
+	// Returns the number of connections currently borrowed
+	public synchronized int getBorrowed() {
+		return borrowed.size();
+	}
+
+	// Returns the most connections that were borrowed at once
+	public synchronized int getPeakBorrowed() {
+		return peakBorrowed;
+	}
+
+	// Returns the number of times a connection was borrowed
+	public synchronized long getBorrowCount() {
+		return borrowCount;
+	}
+
+	// Returns the number of borrows that had to wait for a connection to be returned
+	public synchronized long getWaitCount() {
+		return waitCount;
+	}
+
+	// Returns the average time a borrow took, in milliseconds
+	public synchronized double getAverageWaitMillis() {
+		return borrowCount == 0 ? 0 : totalWaitNanos / 1000000.0 / borrowCount;
+	}
+
+	// Returns the longest time a borrow took, in milliseconds
+	public synchronized double getMaxWaitMillis() {
+		return maxWaitNanos / 1000000.0;
+	}
+
+	// Returns the number of connections dropped because they were broken
+	public synchronized int getDiscardCount() {
+		return discardCount;
+	}
+
+	/*
+	 * Returns the fraction of the pool's capacity that has been in use since it was created, from 0 to 1
+	 */
+	public synchronized double getUtilization() {
+		long now = System.nanoTime();
+		long busy = busyNanos;
+
+		// Count the connections that are out right now up to this moment
+		for(Long borrowedAt : borrowed.values()) {
+			busy += now - borrowedAt;
+		}
+
+		long capacity = (now - createdAt) * maxSize;
+		return capacity == 0 ? 0 : (double) busy / capacity;
+	}
+
+	// Returns a one line summary of the statistics
+	public synchronized String getStatistics() {
+		return String.format("connections %d/%d, borrowed %d (peak %d), borrows %d, waited %d, avg wait %.3fms, max wait %.3fms, utilization %.1f%%, discarded %d",
+				size, maxSize, borrowed.size(), peakBorrowed, borrowCount, waitCount,
+				getAverageWaitMillis(), getMaxWaitMillis(), getUtilization() * 100, discardCount);
+	}
+
+	// Checks that a connection still works
+	private boolean isValid(StatementCache cache) {
+		try {
+			return cache.getConnection().isValid(VALIDATE_TIMEOUT_SECONDS);
+		} catch(SQLException ex) {
+			return false;
+		}
+	}
+
+	// Closes a connection and frees its slot in the pool
+	private void discard(StatementCache cache) {
+		cache.close();
+
+		try {
+			cache.getConnection().close();
+		} catch(SQLException ex) {
+			System.out.println(ex.getMessage());
+		}
+
+		synchronized(this) {
+			size--;
+			if(!closed)
+				discardCount++;
+			notifyAll();
+		}
+	}
+}
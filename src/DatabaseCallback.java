@@ -0,0 +1,19 @@
+//////////////////////////////////////////////////////////////////////
+// DatabaseCallback.java			Author: Justin Brown
+//
+// Receives the outcome of a DatabaseTask. Both methods are called on
+// the Swing event dispatch thread so they can update the UI directly.
+//////////////////////////////////////////////////////////////////////
+
+public interface DatabaseCallback<T> {
+	
+	/*
+	 * Called with the result when the task finishes
+	 */
+	public void succeeded(T result);
+	
+	/*
+	 * Called with the exception if the task fails
+	 */
+	public void failed(Exception ex);
+}
@@ -5,29 +5,130 @@
 // tables to connecting, updating and deleting information.
 //////////////////////////////////////////////////////////////////////
 
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 public class DatabaseManager {
 	// Unmutable strings to refer to the table names
 	public final String TABLE_INVENTORY = "inventory";
 	public final String TABLE_TRANSACTIONS = "transactions";
+	public final String TABLE_TRANSACTION_ITEMS = "transaction_items";
+	public final String TABLE_JOURNAL_CHECKPOINT = "journal_checkpoint";
+	public final String TABLE_SALES_ROLLUP = "sales_rollup";
+	public final String TABLE_SCHEMA_VERSION = "schema_version";
+	
+	// Indexes, each named for the table it is on
+	public final String INDEX_TRANSACTIONS_DATE = "TRANSACTIONS_DATE";
+	public final String INDEX_TRANSACTIONS_GRAND_TOTAL = "TRANSACTIONS_GRAND_TOTAL";
+	public final String INDEX_INVENTORY_NAME = "INVENTORY_NAME";
+	public final String INDEX_INVENTORY_ACTIVE_NAME = "INVENTORY_ACTIVE_NAME";
+	
+	// Constraints
+	public final String CONSTRAINT_INVENTORY_CODE = "INVENTORY_CODE";
+	
+	// Longest names the tables hold. A line keeps the name it was sold under, which needn't be an inventory
+	// name: a register can ring up any name, and old transactions' ITEMS text had no limit at all.
+	public static final int MAX_ITEM_NAME_LENGTH = 32;
+	public static final int MAX_LINE_NAME_LENGTH = 128;
+	
+	// The schema version this code expects, each version is one step in applyMigration
+	private final int SCHEMA_VERSION = 10;
 	
 	// The driver to connect with
 	private String driver = "org.apache.derby.jdbc.EmbeddedDriver";
 	private String protocol = "jdbc:derby:";
 	private String dbName = "Project2DB";
 	
-	private Connection connection;
+	// Names of the statements that can be prepared through the statement cache
+	public final String STMT_LAST_TRANSACTION_ID = "lastTransactionId";
+	public final String STMT_COUNT_TRANSACTIONS = "countTransactions";
+	public final String STMT_TRANSACTIONS_AFTER = "transactionsAfter";
+	public final String STMT_TRANSACTION_PAGE_BY_KEY = "transactionPageByKey";
+	public final String STMT_TRANSACTION_PAGE_BY_OFFSET = "transactionPageByOffset";
+	public final String STMT_INSERT_TRANSACTION = "insertTransaction";
+	public final String STMT_TRANSACTION_ITEMS = "transactionItems";
+	public final String STMT_SALES_BETWEEN = "salesBetween";
+	public final String STMT_SALE_ITEMS_BETWEEN = "saleItemsBetween";
+	public final String STMT_TRANSACTION_ITEMS_CLOB = "transactionItemsClob";
+	public final String STMT_INSERT_TRANSACTION_ITEM = "insertTransactionItem";
+	public final String STMT_UNMIGRATED_TRANSACTIONS = "unmigratedTransactions";
+	public final String STMT_CLEAR_TRANSACTION_ITEMS_CLOB = "clearTransactionItemsClob";
+	public final String STMT_JOURNAL_CHECKPOINT = "journalCheckpoint";
+	public final String STMT_SET_JOURNAL_CHECKPOINT = "setJournalCheckpoint";
+	public final String STMT_REPORT = "report";
+	public final String STMT_REPORT_BY_DATE = "reportByDate";
+	public final String STMT_ROLLUP_REPORT = "rollupReport";
+	public final String STMT_UPDATE_SALES_ROLLUP = "updateSalesRollup";
+	public final String STMT_INSERT_SALES_ROLLUP = "insertSalesRollup";
+	public final String STMT_INVENTORY = "inventory";
+	public final String STMT_ACTIVE_ITEM_NAMES = "activeItemNames";
+	public final String STMT_ITEM_BY_NAME = "itemByName";
+	public final String STMT_INSERT_INVENTORY_ITEM = "insertInventoryItem";
+	public final String STMT_UPDATE_INVENTORY_ITEM = "updateInventoryItem";
+	public final String STMT_IMPORT_INVENTORY_ITEM = "importInventoryItem";
+	public final String STMT_SET_ITEM_ACTIVE = "setItemActive";
+	public final String STMT_SET_ITEM_PRICE = "setItemPrice";
+	
+	// The sales rollup keeps totals per hour, split into bands of grand total.
+	// A transaction is in the first band whose limit is above its grand total, or the last band if none is.
+	private final long HOUR_IN_MS = 60 * 60 * 1000;
+	private final long[] VALUE_BAND_LIMITS = { 10000, 50000, 100000 };
+	
+	// Inventory rows sent to the database in one batch while importing
+	private final int IMPORT_BATCH_SIZE = 1000;
+	
+	// Bounds a report uses for "no lower limit" and "no upper limit"
+	public static final long NO_MINIMUM = Long.MIN_VALUE;
+	public static final long NO_MAXIMUM = Long.MAX_VALUE;
+	
+	// Later than any transaction date, the latest timestamp Derby will take
+	private final long END_OF_TIME = Timestamp.valueOf("9999-12-31 23:59:59").getTime();
+	
+	// Most connections open at once, and how long to wait for one before giving up
+	private final int POOL_SIZE = 4;
+	private final long POOL_TIMEOUT_MS = 30 * 1000;
+	
+	// The pool of connections, each with its own prepared statements
+	private ConnectionPool pool;
+	
+	// Held while a save writes and commits. Derby 10.8 can't hand out TRANSACTION_IDs to saves writing at once:
+	// the loser takes the id under its own transaction, and other connections reading the data dictionary then
+	// wait on it until the lock timeout. Saves are a millisecond or two, so they take turns instead. The sale
+	// journal saves from one thread, so only saves made straight to the database from several threads wait here.
+	private final Object saveLock = new Object();
+	
+	// Highest TRANSACTION_ID saved since connecting, every id up to it is committed since saves take turns
+	private volatile int lastSavedId;
+	
+	// The sql for each statement name, and the names of the inserts that return a generated key
+	private HashMap<String, String> statementSql;
+	private HashSet<String> generatedKeyStatements;
 	
 	public DatabaseManager() throws InstantiationException, IllegalAccessException, ClassNotFoundException {
-		Class.forName(driver).newInstance();		
+		Class.forName(driver).newInstance();
+		
+		statementSql = new HashMap<String, String>();
+		generatedKeyStatements = new HashSet<String>();
+		registerStatements();
 	}
 	
 	public boolean connect() {
+		Connection connection;
 		try {
 			// Connect to the database, creating it if needed
 			connection = DriverManager.getConnection(protocol + dbName + ";create=true");
@@ -38,35 +139,68 @@ public class DatabaseManager {
 		}
 		
 		try {
-			// Derby has no built in query to check if a table exists or not
-			// So just try to create the tables every time and fail silently if they already exist.
-			createInventoryTable();			
+			// Bring the schema up to date
+			migrateSchema(connection);
 		}
 		catch(SQLException ex) {
-			System.out.println(ex.getMessage());
+			System.out.println("Unable to update the database schema: " + ex.getMessage());
+			
+			try {
+				connection.close();
+			}
+			catch(SQLException closeEx) {
+				System.out.println(closeEx.getMessage());
+			}
+			return false;
 		}
 		
 		try {
-			createTransactionsTable();
+			connection.close();
 		}
 		catch(SQLException ex) {
 			System.out.println(ex.getMessage());
 		}
 		
+		// Everything else goes through the pool
+		pool = new ConnectionPool(protocol + dbName, this, POOL_SIZE, POOL_TIMEOUT_MS);
+		
 		return true;		
 	}
 	
-	// Executes a query for the string passed in
-	public ResultSet executeQuery(String query) throws SQLException {
-		
-		Statement smt = connection.createStatement();
-		
-		return smt.executeQuery(query);
+	/*
+	 * Borrows a connection from the pool. Its statements are prepared by name through the returned cache.
+	 * Every borrow must be matched by a release, usually in a finally block.
+	 */
+	public StatementCache borrow() throws SQLException {
+		return pool.borrow();
 	}
 	
-	// Return the database connection
-	public Connection getConnection() {
-		return connection;
+	// Returns a borrowed connection to the pool
+	public void release(StatementCache cache) {
+		pool.release(cache);
+	}
+	
+	// Getter for the connection pool, used to look at its statistics
+	public ConnectionPool getPool() {
+		return pool;
+	}
+	
+	// Returns the sql for a statement name, or null if there is no such statement
+	public String getStatementSql(String name) {
+		return statementSql.get(name);
+	}
+	
+	// Returns true if the named statement is an insert that returns its generated key
+	public boolean returnsGeneratedKeys(String name) {
+		return generatedKeyStatements.contains(name);
+	}
+	
+	/*
+	 * Closes the connections and their cached statements
+	 */
+	public void close() throws SQLException {
+		System.out.println("Connection pool: " + pool.getStatistics());
+		pool.close();
 	}
 	
 	// Return the database name
@@ -74,12 +208,1276 @@ public class DatabaseManager {
 		return dbName;
 	}
 	
+	// Returns the highest transaction id saved so far, or 0 if there are none
+	public int getLastTransactionId() throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			ResultSet result = statements.get(STMT_LAST_TRANSACTION_ID).executeQuery();
+			
+			int id = 0;
+			if(result.next()) {
+				id = result.getInt(1);
+			}
+			
+			result.close();
+			return id;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	// Returns the number of transactions with an id up to and including maxId
+	public int countTransactions(int maxId) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			PreparedStatement ps = statements.get(STMT_COUNT_TRANSACTIONS);
+			ps.setInt(1, maxId);
+			ResultSet result = ps.executeQuery();
+			
+			int count = 0;
+			if(result.next()) {
+				count = result.getInt(1);
+			}
+			
+			result.close();
+			return count;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Loads the transactions saved after the given id, oldest first.
+	 * Only the totals are read, the items are loaded on demand by loadTransactionItems.
+	 */
+	public ArrayList<Transaction> loadTransactionsAfter(int id) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			PreparedStatement ps = statements.get(STMT_TRANSACTIONS_AFTER);
+			ps.setInt(1, id);
+			
+			return readTransactions(ps.executeQuery());
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Adds the transactions saved after the last one in a sales store to it, with their items, and returns how
+	 * many. The transactions and the items are read side by side in id order. Transactions whose items are still
+	 * in the ITEMS column are added without them. They are read
+	 * into a store of their own without holding the one given, so reports using it go on while the database is
+	 * read, then added to it in one go. Two loads at once may read the same transactions, the store keeps only
+	 * the first copy of each. Only sales known to be committed are read, so a load never waits on a save still
+	 * in progress, and once the store has everything saved so far the database isn't asked at all.
+	 */
+	public int loadSales(SalesStore store) throws SQLException {
+		int after = store.getLastTransactionId();
+		int upTo = lastSavedId;
+		if(upTo != 0 && upTo <= after)
+			return 0;
+		
+		SalesStore read = new SalesStore();
+		
+		StatementCache statements = pool.borrow();
+		try {
+			// Until something is saved the last id in the database is as far as can be read
+			if(upTo == 0) {
+				ResultSet last = statements.get(STMT_LAST_TRANSACTION_ID).executeQuery();
+				if(last.next())
+					upTo = last.getInt(1);
+				last.close();
+			}
+			
+			PreparedStatement ps = statements.get(STMT_SALES_BETWEEN);
+			ps.setInt(1, after);
+			ps.setInt(2, upTo);
+			ResultSet sales = ps.executeQuery();
+			
+			ps = statements.get(STMT_SALE_ITEMS_BETWEEN);
+			ps.setInt(1, after);
+			ps.setInt(2, upTo);
+			ResultSet lines = ps.executeQuery();
+			
+			boolean haveLine = lines.next();
+			while(sales.next()) {
+				int id = sales.getInt("TRANSACTION_ID");
+				read.append(id, sales.getTimestamp("DATE").getTime(), sales.getLong("SUBTOTAL"),
+						sales.getLong("SALES_TAX"), sales.getLong("GRAND_TOTAL"));
+				
+				// Skip the items of any transaction not read, then take this one's
+				while(haveLine && lines.getInt(1) < id) {
+					haveLine = lines.next();
+				}
+				while(haveLine && lines.getInt(1) == id) {
+					read.appendLine(lines.getInt(2), lines.getString(3), lines.getLong(4), lines.getInt(5));
+					haveLine = lines.next();
+				}
+			}
+			
+			lines.close();
+			sales.close();
+		}
+		finally {
+			pool.release(statements);
+		}
+		
+		return store.appendAll(read);
+	}
+	
+	/*
+	 * Loads one page of transactions with an id up to maxId, most recent first.
+	 * When the last transaction of the previous page is known the page is found by its key (DATE, TRANSACTION_ID),
+	 * otherwise the database has to skip over offset rows to find it.
+	 */
+	public ArrayList<Transaction> loadTransactionPage(int maxId, Transaction after, int offset, int limit) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			PreparedStatement ps;
+			if(after != null) {
+				// Keyset: everything that sorts after the previous page's last row
+				ps = statements.get(STMT_TRANSACTION_PAGE_BY_KEY);
+				Timestamp date = new Timestamp(after.getTime());
+				ps.setInt(1, maxId);
+				ps.setTimestamp(2, date);
+				ps.setTimestamp(3, date);
+				ps.setInt(4, after.getID());
+			} else {
+				ps = statements.get(STMT_TRANSACTION_PAGE_BY_OFFSET);
+				ps.setInt(1, maxId);
+				ps.setInt(2, offset);
+			}
+			ps.setMaxRows(limit);
+			
+			return readTransactions(ps.executeQuery());
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Saves a transaction and its items in one database transaction.
+	 * Returns the generated TRANSACTION_ID.
+	 */
+	public int saveTransaction(Transaction t) throws SQLException {
+		int id = 0;
+		
+		StatementCache statements = pool.borrow();
+		Connection connection = statements.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			
+			synchronized(saveLock) {
+				id = insertTransaction(statements, t);
+				
+				ArrayList<Transaction> saved = new ArrayList<Transaction>(1);
+				saved.add(t);
+				addToSalesRollup(statements, saved);
+				
+				connection.commit();
+				lastSavedId = id;
+			}
+		}
+		finally {
+			// The pool rolls back anything left uncommitted
+			pool.release(statements);
+		}
+		
+		return id;
+	}
+	
+	/*
+	 * Saves a batch of journalled transactions with a single commit, recording journalSequence as the
+	 * last journal entry written in the same commit. Each transaction's id is set once it is committed.
+	 */
+	public void saveTransactions(List<Transaction> transactions, long journalSequence) throws SQLException {
+		int[] ids = new int[transactions.size()];
+		
+		StatementCache statements = pool.borrow();
+		Connection connection = statements.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			
+			synchronized(saveLock) {
+				for(int i = 0; i < ids.length; i++) {
+					ids[i] = insertTransaction(statements, transactions.get(i));
+				}
+				
+				addToSalesRollup(statements, transactions);
+				
+				PreparedStatement ps = statements.get(STMT_SET_JOURNAL_CHECKPOINT);
+				ps.setLong(1, journalSequence);
+				ps.executeUpdate();
+				
+				connection.commit();
+				if(ids.length > 0)
+					lastSavedId = ids[ids.length - 1];
+			}
+		}
+		finally {
+			// The pool rolls back anything left uncommitted
+			pool.release(statements);
+		}
+		
+		for(int i = 0; i < ids.length; i++) {
+			transactions.get(i).setID(ids[i]);
+		}
+	}
+	
+	// Returns the sequence number of the last journal entry written to the database, or 0 if there is none
+	public long getJournalCheckpoint() throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			ResultSet result = statements.get(STMT_JOURNAL_CHECKPOINT).executeQuery();
+			
+			long sequence = 0;
+			if(result.next()) {
+				sequence = result.getLong(1);
+			}
+			
+			result.close();
+			return sequence;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Reads the items of a saved transaction into it.
+	 * Transactions that haven't been migrated yet still have their items in the ITEMS column.
+	 * The migration can move them between the two reads, then the ITEMS column is empty and
+	 * the items table is read again.
+	 */
+	public void loadTransactionItems(Transaction t) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			loadTransactionItems(statements, t);
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	// Reads the items of a saved transaction using a borrowed connection
+	private void loadTransactionItems(StatementCache statements, Transaction t) throws SQLException {
+		if(readTransactionItems(statements, t))
+			return;
+		
+		PreparedStatement ps = statements.get(STMT_TRANSACTION_ITEMS_CLOB);
+		ps.setInt(1, t.getID());
+		ResultSet result = ps.executeQuery();
+		
+		Clob items = null;
+		if(result.next()) {
+			items = result.getClob("ITEMS");
+			
+			if(items != null) {
+				for(Item it : decodeItems(new LineItemCodec(), items)) {
+					t.addItem(it);
+				}
+			}
+		}
+		
+		result.close();
+		
+		// The ITEMS column is cleared in the same commit that fills the items table
+		if(items == null)
+			readTransactionItems(statements, t);
+	}
+	
+	// Reads a transaction's rows of the items table into it, returns false if it has none
+	private boolean readTransactionItems(StatementCache statements, Transaction t) throws SQLException {
+		PreparedStatement ps = statements.get(STMT_TRANSACTION_ITEMS);
+		ps.setInt(1, t.getID());
+		ResultSet result = ps.executeQuery();
+		
+		boolean found = false;
+		while(result.next()) {
+			Item it = new Item();
+			it.setItemID(result.getInt("ITEM_ID"));
+			it.setName(result.getString("NAME"));
+			it.setPrice(result.getLong("PRICE"));
+			it.setQuantity(result.getInt("QUANTITY"));
+			
+			t.addItem(it);
+			found = true;
+		}
+		
+		result.close();
+		return found;
+	}
+	
+	/*
+	 * Moves the items of up to chunkSize transactions after afterId from the old ITEMS column into the
+	 * transaction_items table. Each chunk is committed on its own and a transaction's ITEMS is cleared in the
+	 * same commit as its items are inserted, so the migration can be stopped at any point and picks up where
+	 * it left off. Returns the id of the last transaction converted, zero once there are none left.
+	 */
+	public int migrateTransactionItems(int afterId, int chunkSize) throws SQLException {
+		// Use a connection of our own so the migration doesn't hold up the UI
+		StatementCache cache = pool.borrow();
+		Connection conn = cache.getConnection();
+		int lastId = 0;
+		
+		try {
+			conn.setAutoCommit(false);
+			
+			// Match the item names against the inventory
+			HashMap<String, Integer> itemIds = new HashMap<String, Integer>();
+			ResultSet result = cache.get(STMT_INVENTORY).executeQuery();
+			while(result.next()) {
+				itemIds.put(result.getString("NAME"), result.getInt("ITEM_ID"));
+			}
+			result.close();
+			
+			LineItemCodec codec = new LineItemCodec();
+			PreparedStatement select = cache.get(STMT_UNMIGRATED_TRANSACTIONS);
+			select.setInt(1, afterId);
+			select.setMaxRows(chunkSize);
+			PreparedStatement clear = cache.get(STMT_CLEAR_TRANSACTION_ITEMS_CLOB);
+			
+			result = select.executeQuery();
+			while(result.next()) {
+				int id = result.getInt("TRANSACTION_ID");
+				Clob items = result.getClob("ITEMS");
+				
+				ArrayList<Item> decoded = decodeItems(codec, items);
+				for(Item it : decoded) {
+					Integer itemId = itemIds.get(it.getName());
+					if(itemId != null)
+						it.setItemID(itemId);
+					
+					// The old column had no limit, cut a longer name to fit rather than stop the migration
+					if(it.getName().length() > MAX_LINE_NAME_LENGTH)
+						it.setName(it.getName().substring(0, MAX_LINE_NAME_LENGTH));
+				}
+				
+				insertTransactionItems(cache, id, decoded);
+				
+				clear.setInt(1, id);
+				clear.executeUpdate();
+				lastId = id;
+			}
+			result.close();
+			
+			conn.commit();
+		}
+		finally {
+			pool.release(cache);
+		}
+		
+		return lastId;
+	}
+	
+	/*
+	 * Totals the transactions made since a date with a grand total from minTotal up to but not including maxTotal, in cents.
+	 * When the grand total range lines up with the rollup's bands the whole hours are read from the rollup,
+	 * leaving only the transactions in the part hour at the start to be read one by one.
+	 */
+	public SalesReport generateReport(Timestamp from, long minTotal, long maxTotal) throws SQLException {
+		long start = from.getTime();
+		int firstBand = bandStartingAt(minTotal);
+		int lastBand = bandEndingAt(maxTotal);
+		
+		StatementCache statements = pool.borrow();
+		try {
+			SalesReport report = new SalesReport();
+			
+			// A range that doesn't line up with the bands has to be read from the transactions
+			if(firstBand < 0 || lastBand < 0) {
+				readReportTransactions(statements, STMT_REPORT, report, start, END_OF_TIME, minTotal, maxTotal);
+				return report;
+			}
+			
+			// Whole hours come from the rollup
+			long firstHour = (long) Math.ceil((double) start / HOUR_IN_MS);
+			PreparedStatement ps = statements.get(STMT_ROLLUP_REPORT);
+			ps.setLong(1, firstHour);
+			ps.setInt(2, firstBand);
+			ps.setInt(3, lastBand);
+			ResultSet results = ps.executeQuery();
+			
+			if(results.next()) {
+				report.add(results.getInt(1), results.getLong(2), results.getLong(3));
+			}
+			results.close();
+			
+			// The part of an hour before the first whole one comes from the transactions
+			if(start < firstHour * HOUR_IN_MS)
+				readReportTransactions(statements, STMT_REPORT_BY_DATE, report, start, firstHour * HOUR_IN_MS, minTotal, maxTotal);
+			
+			return report;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Rebuilds the sales rollup from the transactions. Saves wait until it is done.
+	 */
+	public void rebuildSalesRollup() throws SQLException {
+		StatementCache statements = pool.borrow();
+		Connection connection = statements.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			
+			rebuildSalesRollup(connection);
+			
+			connection.commit();
+		}
+		finally {
+			// The pool rolls back anything left uncommitted
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Loads every item in the inventory
+	 */
+	public ArrayList<InventoryItem> loadInventory() throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			ResultSet results = statements.get(STMT_INVENTORY).executeQuery();
+			
+			ArrayList<InventoryItem> items = new ArrayList<InventoryItem>();
+			while(results.next()) {
+				items.add(readInventoryItem(results));
+			}
+			results.close();
+			
+			return items;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Loads the names of the active inventory items in alphabetical order
+	 */
+	public ArrayList<String> loadActiveItemNames() throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			ResultSet results = statements.get(STMT_ACTIVE_ITEM_NAMES).executeQuery();
+			
+			ArrayList<String> itemNames = new ArrayList<String>();
+			while(results.next()) {
+				itemNames.add(results.getString("NAME"));
+			}
+			results.close();
+			
+			return itemNames;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Finds an inventory item by its name, returns null if there isn't one
+	 */
+	public InventoryItem findItemByName(String name) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			PreparedStatement ps = statements.get(STMT_ITEM_BY_NAME);
+			ps.setString(1, name);
+			ResultSet results = ps.executeQuery();
+			
+			InventoryItem item = null;
+			if(results.next()) {
+				item = readInventoryItem(results);
+			}
+			results.close();
+			
+			return item;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Adds a new active item to the inventory and returns it with its generated id. A code of 0 means it has none.
+	 */
+	public InventoryItem addInventoryItem(String name, long price, long code) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			PreparedStatement ps = statements.get(STMT_INSERT_INVENTORY_ITEM);
+			ps.setString(1, name);
+			ps.setLong(2, price);
+			setItemCode(ps, 3, code);
+			ps.executeUpdate();
+			
+			InventoryItem item = new InventoryItem();
+			item.setName(name);
+			item.setPrice(price);
+			item.setActive(true);
+			item.setCode(code);
+			
+			ResultSet rs = ps.getGeneratedKeys();
+			if(rs.next()) {
+				item.setID(rs.getInt(1));
+			}
+			rs.close();
+			
+			return item;
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Adds every item read from an inventory file in one transaction, sending the inserts a batch at a time.
+	 * The file should have been checked first, a line that isn't an item stops the import and nothing is added.
+	 * Returns the number of items added.
+	 */
+	public int importInventory(InventoryCsvReader reader, int total, ImportProgress progress) throws SQLException, IOException {
+		StatementCache statements = pool.borrow();
+		Connection connection = statements.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			
+			// A failed import can leave rows batched on the cached statement
+			PreparedStatement ps = statements.get(STMT_IMPORT_INVENTORY_ITEM);
+			ps.clearBatch();
+			int count = 0;
+			
+			while(reader.next()) {
+				InventoryItem item = reader.getItem();
+				if(item == null)
+					throw new IOException("Line " + reader.getLineNumber() + ": " + reader.getError());
+				
+				ps.setString(1, item.getName());
+				ps.setLong(2, item.getPrice());
+				ps.setInt(3, item.isActive() ? 1 : 0);
+				setItemCode(ps, 4, item.getCode());
+				ps.addBatch();
+				count++;
+				
+				if(count % IMPORT_BATCH_SIZE == 0) {
+					ps.executeBatch();
+					progress.importing(count, total);
+				}
+			}
+			
+			if(count % IMPORT_BATCH_SIZE != 0) {
+				ps.executeBatch();
+				progress.importing(count, total);
+			}
+			
+			connection.commit();
+			return count;
+		}
+		finally {
+			// The pool rolls back anything left uncommitted
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Saves the name, price, code and active flag of an inventory item
+	 */
+	public void updateInventoryItem(InventoryItem item) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			PreparedStatement ps = statements.get(STMT_UPDATE_INVENTORY_ITEM);
+			ps.setString(1, item.getName());
+			ps.setLong(2, item.getPrice());
+			ps.setInt(3, item.isActive() ? 1 : 0);
+			setItemCode(ps, 4, item.getCode());
+			ps.setInt(5, item.getID());
+			ps.executeUpdate();
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Activates or deactivates an inventory item
+	 */
+	public void setItemActive(int id, boolean active) throws SQLException {
+		StatementCache statements = pool.borrow();
+		try {
+			PreparedStatement ps = statements.get(STMT_SET_ITEM_ACTIVE);
+			ps.setInt(1, active ? 1 : 0);
+			ps.setInt(2, id);
+			ps.executeUpdate();
+		}
+		finally {
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Activates or deactivates a set of inventory items, sent as one batch and committed together
+	 */
+	public void setItemsActive(int[] ids, boolean active) throws SQLException {
+		StatementCache statements = pool.borrow();
+		Connection connection = statements.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			
+			PreparedStatement ps = statements.get(STMT_SET_ITEM_ACTIVE);
+			ps.clearBatch();
+			for(int id : ids) {
+				ps.setInt(1, active ? 1 : 0);
+				ps.setInt(2, id);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+			
+			connection.commit();
+		}
+		finally {
+			// The pool rolls back anything left uncommitted
+			pool.release(statements);
+		}
+	}
+	
+	/*
+	 * Sets the default prices of a set of inventory items, sent as one batch and committed together
+	 */
+	public void setItemPrices(int[] ids, long[] prices) throws SQLException {
+		StatementCache statements = pool.borrow();
+		Connection connection = statements.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			
+			PreparedStatement ps = statements.get(STMT_SET_ITEM_PRICE);
+			ps.clearBatch();
+			for(int i = 0; i < ids.length; i++) {
+				ps.setLong(1, prices[i]);
+				ps.setInt(2, ids[i]);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+			
+			connection.commit();
+		}
+		finally {
+			// The pool rolls back anything left uncommitted
+			pool.release(statements);
+		}
+	}
+	
+	// Turns the current row of an inventory query into an item
+	private InventoryItem readInventoryItem(ResultSet results) throws SQLException {
+		InventoryItem item = new InventoryItem();
+		
+		item.setID(results.getInt("ITEM_ID"));
+		item.setName(results.getString("NAME"));
+		item.setPrice(results.getLong("DEFAULT_PRICE"));
+		item.setActive(results.getBoolean("ACTIVE"));
+		
+		// A missing code reads back as 0
+		item.setCode(results.getLong("CODE"));
+		
+		return item;
+	}
+	
+	// Binds an item's code, which is stored as null when the item hasn't got one so the codes can be unique
+	private void setItemCode(PreparedStatement ps, int index, long code) throws SQLException {
+		if(code == 0)
+			ps.setNull(index, Types.BIGINT);
+		else
+			ps.setLong(index, code);
+	}
+	
+	// Inserts a transaction and its items using a borrowed connection, returns the generated TRANSACTION_ID
+	private int insertTransaction(StatementCache statements, Transaction t) throws SQLException {
+		int id = 0;
+		
+		PreparedStatement ps = statements.get(STMT_INSERT_TRANSACTION);
+		ps.setTimestamp(1, new Timestamp(t.getTime()));
+		ps.setLong(2, t.getSubTotal());
+		ps.setLong(3, t.getSalesTax());
+		ps.setLong(4, t.getGrandTotal());
+		ps.executeUpdate();
+		
+		ResultSet rs = ps.getGeneratedKeys();
+		if(rs.next()) {
+			id = rs.getInt(1);
+		}
+		rs.close();
+		
+		insertTransactionItems(statements, id, t.getItems());
+		
+		return id;
+	}
+	
+	// Adds transactions dated from start up to end with a grand total in the range to a report, using one of the report statements
+	private void readReportTransactions(StatementCache statements, String name, SalesReport report, long start, long end, long minTotal, long maxTotal) throws SQLException {
+		PreparedStatement ps = statements.get(name);
+		ps.setTimestamp(1, new Timestamp(start));
+		ps.setTimestamp(2, new Timestamp(end));
+		ps.setLong(3, minTotal);
+		ps.setLong(4, maxTotal);
+		ResultSet results = ps.executeQuery();
+		
+		// Loop through and add the numbers to our totals
+		while(results.next()) {
+			report.add(results.getLong("GRAND_TOTAL"), results.getLong("SALES_TAX"));
+		}
+		results.close();
+	}
+	
+	// Returns the value band a grand total falls in
+	private int valueBand(long grandTotal) {
+		int band = 0;
+		while(band < VALUE_BAND_LIMITS.length && grandTotal >= VALUE_BAND_LIMITS[band]) {
+			band++;
+		}
+		return band;
+	}
+	
+	// Returns the band that starts at a report's minimum grand total, or -1 if none does
+	private int bandStartingAt(long minTotal) {
+		if(minTotal <= NO_MINIMUM)
+			return 0;
+		
+		for(int i = 0; i < VALUE_BAND_LIMITS.length; i++) {
+			if(VALUE_BAND_LIMITS[i] == minTotal)
+				return i + 1;
+		}
+		return -1;
+	}
+	
+	// Returns the band that ends at a report's maximum grand total, or -1 if none does
+	private int bandEndingAt(long maxTotal) {
+		if(maxTotal >= NO_MAXIMUM)
+			return VALUE_BAND_LIMITS.length;
+		
+		for(int i = 0; i < VALUE_BAND_LIMITS.length; i++) {
+			if(VALUE_BAND_LIMITS[i] == maxTotal)
+				return i;
+		}
+		return -1;
+	}
+	
+	/*
+	 * Adds saved transactions to the sales rollup. The totals are gathered per bucket first,
+	 * so a batch of sales in the same hour updates its bucket once.
+	 */
+	private void addToSalesRollup(StatementCache statements, List<Transaction> transactions) throws SQLException {
+		HashMap<Long, long[]> buckets = new HashMap<Long, long[]>();
+		for(Transaction t : transactions) {
+			addToBucket(buckets, t.getTime(), t.getGrandTotal(), t.getSalesTax());
+		}
+		
+		PreparedStatement update = statements.get(STMT_UPDATE_SALES_ROLLUP);
+		PreparedStatement insert = null;
+		
+		for(Map.Entry<Long, long[]> bucket : buckets.entrySet()) {
+			long hour = bucket.getKey() >> 3;
+			int band = (int) (bucket.getKey() & 7);
+			long[] totals = bucket.getValue();
+			
+			update.setLong(1, totals[0]);
+			update.setLong(2, totals[1]);
+			update.setLong(3, totals[2]);
+			update.setLong(4, hour);
+			update.setInt(5, band);
+			
+			// First sale in this bucket
+			if(update.executeUpdate() == 0) {
+				if(insert == null)
+					insert = statements.get(STMT_INSERT_SALES_ROLLUP);
+				
+				insert.setLong(1, hour);
+				insert.setInt(2, band);
+				insert.setLong(3, totals[0]);
+				insert.setLong(4, totals[1]);
+				insert.setLong(5, totals[2]);
+				insert.executeUpdate();
+			}
+		}
+	}
+	
+	// Adds a transaction to its bucket's totals: count, revenue and sales tax. Buckets are keyed by hour and band.
+	private void addToBucket(HashMap<Long, long[]> buckets, long time, long grandTotal, long salesTax) {
+		long hour = time >= 0 ? time / HOUR_IN_MS : (time + 1) / HOUR_IN_MS - 1;
+		long key = (hour << 3) | valueBand(grandTotal);
+		
+		long[] totals = buckets.get(key);
+		if(totals == null) {
+			totals = new long[3];
+			buckets.put(key, totals);
+		}
+		
+		totals[0]++;
+		totals[1] += grandTotal;
+		totals[2] += salesTax;
+	}
+	
+	/*
+	 * Replaces the sales rollup with totals read from the transactions, within the connection's transaction.
+	 * The transactions table is locked against saves so none is missed or counted twice.
+	 */
+	private void rebuildSalesRollup(Connection connection) throws SQLException {
+		Statement stmt = connection.createStatement();
+		stmt.executeUpdate("LOCK TABLE " + dbName + "." + TABLE_TRANSACTIONS + " IN SHARE MODE");
+		stmt.executeUpdate("DELETE FROM " + dbName + "." + TABLE_SALES_ROLLUP);
+		
+		HashMap<Long, long[]> buckets = new HashMap<Long, long[]>();
+		ResultSet results = stmt.executeQuery("SELECT DATE, GRAND_TOTAL, SALES_TAX FROM " + dbName + "." + TABLE_TRANSACTIONS);
+		while(results.next()) {
+			addToBucket(buckets, results.getTimestamp(1).getTime(), results.getLong(2), results.getLong(3));
+		}
+		results.close();
+		stmt.close();
+		
+		PreparedStatement insert = connection.prepareStatement(getStatementSql(STMT_INSERT_SALES_ROLLUP));
+		for(Map.Entry<Long, long[]> bucket : buckets.entrySet()) {
+			long[] totals = bucket.getValue();
+			
+			insert.setLong(1, bucket.getKey() >> 3);
+			insert.setInt(2, (int) (bucket.getKey() & 7));
+			insert.setLong(3, totals[0]);
+			insert.setLong(4, totals[1]);
+			insert.setLong(5, totals[2]);
+			insert.addBatch();
+		}
+		insert.executeBatch();
+		insert.close();
+		
+		System.out.println("Sales rollup rebuilt: " + buckets.size() + " buckets.");
+	}
+	
+	// Inserts the items of a transaction as a single batch
+	private void insertTransactionItems(StatementCache cache, int id, ArrayList<Item> items) throws SQLException {
+		PreparedStatement ps = cache.get(STMT_INSERT_TRANSACTION_ITEM);
+		
+		for(int i = 0; i < items.size(); i++) {
+			Item it = items.get(i);
+			
+			ps.setInt(1, id);
+			ps.setInt(2, i + 1);
+			
+			// Items that aren't in the inventory don't reference it
+			if(it.getItemID() > 0)
+				ps.setInt(3, it.getItemID());
+			else
+				ps.setNull(3, Types.INTEGER);
+			
+			ps.setString(4, it.getName());
+			ps.setLong(5, it.getPrice());
+			ps.setInt(6, it.getQuantity());
+			ps.addBatch();
+		}
+		
+		ps.executeBatch();
+	}
+	
+	// Reads the items stored in a clob, streaming it rather than loading it into a string first
+	private ArrayList<Item> decodeItems(LineItemCodec codec, Clob items) throws SQLException {
+		ArrayList<Item> decoded = new ArrayList<Item>();
+		Reader reader = items.getCharacterStream();
+		
+		try {
+			codec.decode(reader, decoded);
+			reader.close();
+		}
+		catch(IOException ex) {
+			throw new SQLException("Unable to read the transaction items: " + ex.getMessage(), ex);
+		}
+		
+		return decoded;
+	}
+	
+	// Turns the rows of a transaction query into transactions and closes the result set
+	private ArrayList<Transaction> readTransactions(ResultSet result) throws SQLException {
+		ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+		
+		while(result.next()) {
+			Transaction t = new Transaction();
+			
+			t.setID(result.getInt("TRANSACTION_ID"));
+			t.setTime(result.getTimestamp("DATE").getTime());
+			t.setSubTotal(result.getLong("SUBTOTAL"));
+			t.setSalesTax(result.getLong("SALES_TAX"));
+			t.setGrandTotal(result.getLong("GRAND_TOTAL"));
+			
+			transactions.add(t);
+		}
+		
+		result.close();
+		return transactions;
+	}
+	
+	/*
+	 * Sets up the sql behind each statement name
+	 */
+	private void registerStatements() {
+		String transactions = dbName + "." + TABLE_TRANSACTIONS;
+		String transactionItems = dbName + "." + TABLE_TRANSACTION_ITEMS;
+		String inventory = dbName + "." + TABLE_INVENTORY;
+		String journalCheckpoint = dbName + "." + TABLE_JOURNAL_CHECKPOINT;
+		String salesRollup = dbName + "." + TABLE_SALES_ROLLUP;
+		String transactionColumns = "SELECT TRANSACTION_ID, DATE, SUBTOTAL, SALES_TAX, GRAND_TOTAL FROM " + transactions;
+		
+		registerStatement(STMT_LAST_TRANSACTION_ID, "SELECT MAX(TRANSACTION_ID) FROM " + transactions);
+		registerStatement(STMT_COUNT_TRANSACTIONS, "SELECT COUNT(*) FROM " + transactions + " WHERE TRANSACTION_ID <= ?");
+		registerStatement(STMT_TRANSACTIONS_AFTER, transactionColumns +
+				" WHERE TRANSACTION_ID > ?" +
+				" ORDER BY TRANSACTION_ID ASC");
+		
+		// Only a page of rows is read, but the optimizer plans for all of them and would rather sort a table scan.
+		// Reading the date index in order stops after the page.
+		String byDate = " --DERBY-PROPERTIES index=" + INDEX_TRANSACTIONS_DATE + "\n";
+		registerStatement(STMT_TRANSACTION_PAGE_BY_KEY, transactionColumns + byDate +
+				" WHERE TRANSACTION_ID <= ? AND DATE <= ? AND (DATE < ? OR TRANSACTION_ID < ?)" +
+				" ORDER BY DATE DESC, TRANSACTION_ID DESC");
+		registerStatement(STMT_TRANSACTION_PAGE_BY_OFFSET, transactionColumns + byDate +
+				" WHERE TRANSACTION_ID <= ?" +
+				" ORDER BY DATE DESC, TRANSACTION_ID DESC" +
+				" OFFSET ? ROWS");
+		registerStatement(STMT_INSERT_TRANSACTION, "INSERT INTO " + transactions +
+				" (DATE, SUBTOTAL, SALES_TAX, GRAND_TOTAL) VALUES (?, ?, ?, ?)");
+		generatedKeyStatements.add(STMT_INSERT_TRANSACTION);
+		registerStatement(STMT_TRANSACTION_ITEMS, "SELECT ITEM_ID, NAME, PRICE, QUANTITY FROM " + transactionItems +
+				" WHERE TRANSACTION_ID = ?" +
+				" ORDER BY LINE_NO ASC");
+		registerStatement(STMT_SALES_BETWEEN, transactionColumns +
+				" WHERE TRANSACTION_ID > ? AND TRANSACTION_ID <= ?" +
+				" ORDER BY TRANSACTION_ID ASC");
+		registerStatement(STMT_SALE_ITEMS_BETWEEN, "SELECT TRANSACTION_ID, ITEM_ID, NAME, PRICE, QUANTITY FROM " + transactionItems +
+				" WHERE TRANSACTION_ID > ? AND TRANSACTION_ID <= ?" +
+				" ORDER BY TRANSACTION_ID ASC, LINE_NO ASC");
+		registerStatement(STMT_TRANSACTION_ITEMS_CLOB, "SELECT ITEMS FROM " + transactions + " WHERE TRANSACTION_ID = ?");
+		registerStatement(STMT_INSERT_TRANSACTION_ITEM, "INSERT INTO " + transactionItems +
+				" (TRANSACTION_ID, LINE_NO, ITEM_ID, NAME, PRICE, QUANTITY) VALUES (?, ?, ?, ?, ?, ?)");
+		registerStatement(STMT_UNMIGRATED_TRANSACTIONS, "SELECT TRANSACTION_ID, ITEMS FROM " + transactions +
+				" WHERE TRANSACTION_ID > ? AND ITEMS IS NOT NULL" +
+				" ORDER BY TRANSACTION_ID ASC");
+		registerStatement(STMT_JOURNAL_CHECKPOINT, "SELECT LAST_SEQUENCE FROM " + journalCheckpoint + " WHERE ID = 1");
+		registerStatement(STMT_SET_JOURNAL_CHECKPOINT, "UPDATE " + journalCheckpoint + " SET LAST_SEQUENCE = ? WHERE ID = 1");
+		registerStatement(STMT_CLEAR_TRANSACTION_ITEMS_CLOB, "UPDATE " + transactions + " SET ITEMS = NULL WHERE TRANSACTION_ID = ?");
+		
+		// The report filters on a date and a grand total range, the unused filters are given bounds that match everything
+		registerStatement(STMT_REPORT, "SELECT GRAND_TOTAL, SALES_TAX FROM " + transactions +
+				" WHERE DATE >= ? AND DATE < ? AND GRAND_TOTAL >= ? AND GRAND_TOTAL < ?");
+		
+		// The same report over a short span of time, the optimizer can't tell that from the parameters so it is told to use the date index
+		registerStatement(STMT_REPORT_BY_DATE, "SELECT GRAND_TOTAL, SALES_TAX FROM " + transactions + byDate +
+				" WHERE DATE >= ? AND DATE < ? AND GRAND_TOTAL >= ? AND GRAND_TOTAL < ?");
+		registerStatement(STMT_ROLLUP_REPORT, "SELECT SUM(TRANSACTION_COUNT), SUM(REVENUE), SUM(SALES_TAX) FROM " + salesRollup +
+				" WHERE BUCKET_HOUR >= ? AND VALUE_BAND >= ? AND VALUE_BAND <= ?");
+		registerStatement(STMT_UPDATE_SALES_ROLLUP, "UPDATE " + salesRollup +
+				" SET TRANSACTION_COUNT = TRANSACTION_COUNT + ?, REVENUE = REVENUE + ?, SALES_TAX = SALES_TAX + ?" +
+				" WHERE BUCKET_HOUR = ? AND VALUE_BAND = ?");
+		registerStatement(STMT_INSERT_SALES_ROLLUP, "INSERT INTO " + salesRollup +
+				" (BUCKET_HOUR, VALUE_BAND, TRANSACTION_COUNT, REVENUE, SALES_TAX) VALUES (?, ?, ?, ?, ?)");
+		
+		registerStatement(STMT_INVENTORY, "SELECT ITEM_ID, NAME, DEFAULT_PRICE, ACTIVE, CODE FROM " + inventory);
+		registerStatement(STMT_ACTIVE_ITEM_NAMES, "SELECT NAME FROM " + inventory +
+				" WHERE ACTIVE = 1" +
+				" ORDER BY NAME ASC");
+		registerStatement(STMT_ITEM_BY_NAME, "SELECT ITEM_ID, NAME, DEFAULT_PRICE, ACTIVE, CODE FROM " + inventory + " WHERE NAME = ?");
+		registerStatement(STMT_INSERT_INVENTORY_ITEM, "INSERT INTO " + inventory + " (NAME, DEFAULT_PRICE, CODE) VALUES (?, ?, ?)");
+		generatedKeyStatements.add(STMT_INSERT_INVENTORY_ITEM);
+		registerStatement(STMT_IMPORT_INVENTORY_ITEM, "INSERT INTO " + inventory + " (NAME, DEFAULT_PRICE, ACTIVE, CODE) VALUES (?, ?, ?, ?)");
+		registerStatement(STMT_UPDATE_INVENTORY_ITEM, "UPDATE " + inventory +
+				" SET NAME = ?, DEFAULT_PRICE = ?, ACTIVE = ?, CODE = ?" +
+				" WHERE ITEM_ID = ?");
+		registerStatement(STMT_SET_ITEM_ACTIVE, "UPDATE " + inventory + " SET ACTIVE = ? WHERE ITEM_ID = ?");
+		registerStatement(STMT_SET_ITEM_PRICE, "UPDATE " + inventory + " SET DEFAULT_PRICE = ? WHERE ITEM_ID = ?");
+	}
+	
+	// Adds a statement name and its sql
+	private void registerStatement(String name, String sql) {
+		statementSql.put(name, sql);
+	}
+	
+	/*
+	 * Applies the migrations the database hasn't had yet, in order. Each one is committed together
+	 * with the new version number, so a failed migration leaves the database at the version before it.
+	 * Databases made before the schema was versioned start at version 0, so the early steps
+	 * check the catalog for what is already there.
+	 */
+	private void migrateSchema(Connection connection) throws SQLException {
+		String schemaVersion = dbName + "." + TABLE_SCHEMA_VERSION;
+		
+		connection.setAutoCommit(false);
+		try {
+			if(!tableExists(connection, TABLE_SCHEMA_VERSION)) {
+				Statement stmt = connection.createStatement();
+				stmt.executeUpdate("create table " + schemaVersion + " (VERSION int NOT NULL)");
+				stmt.executeUpdate("insert into " + schemaVersion + " (VERSION) values (0)");
+				stmt.close();
+				connection.commit();
+			}
+			
+			Statement stmt = connection.createStatement();
+			ResultSet result = stmt.executeQuery("SELECT VERSION FROM " + schemaVersion);
+			int version = result.next() ? result.getInt(1) : 0;
+			result.close();
+			stmt.close();
+			
+			if(version > SCHEMA_VERSION)
+				throw new SQLException("The database is at schema version " + version + ", newer than this program's " + SCHEMA_VERSION + ".");
+			
+			PreparedStatement update = connection.prepareStatement("UPDATE " + schemaVersion + " SET VERSION = ?");
+			while(version < SCHEMA_VERSION) {
+				version++;
+				System.out.println("Migrating the database to schema version " + version);
+				
+				applyMigration(connection, version);
+				
+				update.setInt(1, version);
+				update.executeUpdate();
+				connection.commit();
+			}
+			update.close();
+		}
+		catch(SQLException ex) {
+			connection.rollback();
+			throw ex;
+		}
+		finally {
+			connection.setAutoCommit(true);
+		}
+	}
+	
+	/*
+	 * Makes the changes that take the schema from version - 1 to version
+	 */
+	private void applyMigration(Connection connection, int version) throws SQLException {
+		switch(version) {
+			// The original tables
+			case 1:
+				if(!tableExists(connection, TABLE_INVENTORY))
+					createInventoryTable(connection);
+				break;
+				
+			case 2:
+				if(!tableExists(connection, TABLE_TRANSACTIONS))
+					createTransactionsTable(connection);
+				break;
+				
+			// Line items moved out of the ITEMS clob
+			case 3:
+				if(!tableExists(connection, TABLE_TRANSACTION_ITEMS))
+					createTransactionItemsTable(connection);
+				break;
+				
+			// The sale journal's checkpoint
+			case 4:
+				if(!tableExists(connection, TABLE_JOURNAL_CHECKPOINT))
+					createJournalCheckpointTable(connection);
+				break;
+				
+			// Hourly report totals, filled when the amounts are moved to cents
+			case 5:
+				if(!tableExists(connection, TABLE_SALES_ROLLUP))
+					createSalesRollupTable(connection);
+				break;
+				
+			// The history is read newest first and reports by date, an index in descending order serves both without a sort.
+			// It replaces the ascending index some databases already have.
+			case 6:
+				if(indexExists(connection, INDEX_TRANSACTIONS_DATE))
+					executeUpdate(connection, "drop index " + dbName + "." + INDEX_TRANSACTIONS_DATE);
+				executeUpdate(connection, "create index " + dbName + "." + INDEX_TRANSACTIONS_DATE + " on " + dbName + "." + TABLE_TRANSACTIONS +
+						" (DATE DESC, TRANSACTION_ID DESC)");
+				break;
+				
+			// Reports over a grand total range
+			case 7:
+				if(!indexExists(connection, INDEX_TRANSACTIONS_GRAND_TOTAL))
+					executeUpdate(connection, "create index " + dbName + "." + INDEX_TRANSACTIONS_GRAND_TOTAL + " on " + dbName + "." + TABLE_TRANSACTIONS +
+							" (GRAND_TOTAL)");
+				break;
+				
+			// The price lookup by name, and the active item names in order
+			case 8:
+				if(!indexExists(connection, INDEX_INVENTORY_NAME))
+					executeUpdate(connection, "create index " + dbName + "." + INDEX_INVENTORY_NAME + " on " + dbName + "." + TABLE_INVENTORY +
+							" (NAME)");
+				if(!indexExists(connection, INDEX_INVENTORY_ACTIVE_NAME))
+					executeUpdate(connection, "create index " + dbName + "." + INDEX_INVENTORY_ACTIVE_NAME + " on " + dbName + "." + TABLE_INVENTORY +
+							" (ACTIVE, NAME)");
+				break;
+				
+			// Scanner codes. Items without one are left null, a unique constraint allows any number of those.
+			case 9:
+				executeUpdate(connection, "alter table " + dbName + "." + TABLE_INVENTORY + " add column CODE bigint");
+				executeUpdate(connection, "alter table " + dbName + "." + TABLE_INVENTORY +
+						" add constraint " + CONSTRAINT_INVENTORY_CODE + " unique (CODE)");
+				break;
+				
+			// Amounts of money held as whole cents in place of doubles. The grand total index goes with its column
+			// and is made again, and the rollup is refilled with the bands worked out in cents. The amounts are
+			// rounded by Money.fromDouble itself, called as a function for the length of the migration, so they
+			// come out as they would from an old items column or anywhere else the program reads a double.
+			case 10:
+				executeUpdate(connection, "create function " + dbName + ".TO_CENTS(AMOUNT double) returns bigint" +
+						" language java parameter style java no sql returns null on null input external name 'Money.fromDouble'");
+				
+				convertToCents(connection, TABLE_INVENTORY, "DEFAULT_PRICE");
+				
+				if(indexExists(connection, INDEX_TRANSACTIONS_GRAND_TOTAL))
+					executeUpdate(connection, "drop index " + dbName + "." + INDEX_TRANSACTIONS_GRAND_TOTAL);
+				convertToCents(connection, TABLE_TRANSACTIONS, "SUBTOTAL");
+				convertToCents(connection, TABLE_TRANSACTIONS, "SALES_TAX");
+				convertToCents(connection, TABLE_TRANSACTIONS, "GRAND_TOTAL");
+				executeUpdate(connection, "create index " + dbName + "." + INDEX_TRANSACTIONS_GRAND_TOTAL + " on " + dbName + "." + TABLE_TRANSACTIONS +
+						" (GRAND_TOTAL)");
+				
+				convertToCents(connection, TABLE_TRANSACTION_ITEMS, "PRICE");
+				executeUpdate(connection, "drop function " + dbName + ".TO_CENTS");
+				
+				executeUpdate(connection, "drop table " + dbName + "." + TABLE_SALES_ROLLUP);
+				createSalesRollupTable(connection);
+				rebuildSalesRollup(connection);
+				break;
+		}
+	}
+	
+	/*
+	 * Replaces a double column of amounts with a bigint column of cents under the same name, rounding each to the cent.
+	 * Uses the TO_CENTS function migration 10 makes.
+	 */
+	private void convertToCents(Connection connection, String table, String column) throws SQLException {
+		String name = dbName + "." + table;
+		String cents = column + "_CENTS";
+		
+		executeUpdate(connection, "alter table " + name + " add column " + cents + " bigint");
+		executeUpdate(connection, "update " + name + " set " + cents + " = " + dbName + ".TO_CENTS(" + column + ")");
+		executeUpdate(connection, "alter table " + name + " drop column " + column);
+		executeUpdate(connection, "rename column " + name + "." + cents + " to " + column);
+		executeUpdate(connection, "alter table " + name + " alter column " + column + " NOT NULL");
+	}
+	
+	/*
+	 * Checks the plans of the queries that should be using an index. Returns a description of each
+	 * query that doesn't, with the scans it does use, so an empty list means every plan is as expected.
+	 * The grand total report is left out, whether its index beats a table scan depends on the range asked for.
+	 * The plan is chosen when a statement is compiled, so each is run with placeholder parameters
+	 * and closed straight away, before it reads anything.
+	 */
+	public ArrayList<String> checkQueryPlans() throws SQLException {
+		ArrayList<String> problems = new ArrayList<String>();
+		
+		StatementCache statements = pool.borrow();
+		try {
+			checkQueryPlans(statements.getConnection(), problems);
+		}
+		finally {
+			pool.release(statements);
+		}
+		
+		return problems;
+	}
+	
+	// Checks the query plans on a connection, adding any that don't use their index to problems
+	private void checkQueryPlans(Connection connection, ArrayList<String> problems) throws SQLException {
+		String[][] expected = {
+			{ STMT_TRANSACTION_PAGE_BY_KEY, INDEX_TRANSACTIONS_DATE },
+			{ STMT_TRANSACTION_PAGE_BY_OFFSET, INDEX_TRANSACTIONS_DATE },
+			{ STMT_REPORT_BY_DATE, INDEX_TRANSACTIONS_DATE },
+			{ STMT_ITEM_BY_NAME, INDEX_INVENTORY_NAME },
+			{ STMT_ACTIVE_ITEM_NAMES, INDEX_INVENTORY_ACTIVE_NAME }
+		};
+		
+		Statement stmt = connection.createStatement();
+		stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+		
+		try {
+			for(String[] check : expected) {
+				PreparedStatement ps = connection.prepareStatement(getStatementSql(check[0]));
+				
+				ParameterMetaData parameters = ps.getParameterMetaData();
+				for(int i = 1; i <= parameters.getParameterCount(); i++) {
+					switch(parameters.getParameterType(i)) {
+						case Types.TIMESTAMP:
+							ps.setTimestamp(i, new Timestamp(0));
+							break;
+						case Types.VARCHAR:
+							ps.setString(i, "");
+							break;
+						default:
+							ps.setInt(i, 0);
+							break;
+					}
+				}
+				
+				ps.executeQuery().close();
+				ps.close();
+				
+				ResultSet result = stmt.executeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()");
+				String plan = result.next() ? result.getString(1) : "";
+				result.close();
+				
+				if(!plan.contains("using index " + check[1])) {
+					StringBuilder problem = new StringBuilder(check[0] + " does not use index " + check[1]);
+					
+					// Show the scans it does use
+					for(String line : plan.split("\n")) {
+						if(line.contains("Scan ResultSet"))
+							problem.append("\n    ").append(line.trim());
+					}
+					
+					problems.add(problem.toString());
+				}
+			}
+		}
+		finally {
+			stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)");
+			stmt.close();
+		}
+	}
+	
+	// Returns true if a table exists in our schema, looked up in Derby's catalog
+	private boolean tableExists(Connection connection, String table) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM SYS.SYSTABLES t, SYS.SYSSCHEMAS s" +
+				" WHERE t.SCHEMAID = s.SCHEMAID AND s.SCHEMANAME = ? AND t.TABLENAME = ?");
+		ps.setString(1, dbName.toUpperCase());
+		ps.setString(2, table.toUpperCase());
+		
+		ResultSet result = ps.executeQuery();
+		boolean exists = result.next();
+		result.close();
+		ps.close();
+		
+		return exists;
+	}
+	
+	// Returns true if an index exists in our schema, looked up in Derby's catalog
+	private boolean indexExists(Connection connection, String index) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM SYS.SYSCONGLOMERATES c, SYS.SYSSCHEMAS s" +
+				" WHERE c.SCHEMAID = s.SCHEMAID AND s.SCHEMANAME = ? AND c.CONGLOMERATENAME = ? AND c.ISINDEX");
+		ps.setString(1, dbName.toUpperCase());
+		ps.setString(2, index.toUpperCase());
+		
+		ResultSet result = ps.executeQuery();
+		boolean exists = result.next();
+		result.close();
+		ps.close();
+		
+		return exists;
+	}
+	
+	// Runs a single ddl statement
+	private void executeUpdate(Connection connection, String sql) throws SQLException {
+		Statement stmt = connection.createStatement();
+		stmt.executeUpdate(sql);
+		stmt.close();
+	}
+	
 	// Create the items table
-	private void createInventoryTable() throws SQLException {
+	private void createInventoryTable(Connection connection) throws SQLException {
 		String createString = 
 			"create table " + dbName + "." + TABLE_INVENTORY +
 			"(ITEM_ID int NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), " +
-			"NAME varchar(32) NOT NULL, " +
+			"NAME varchar(" + MAX_ITEM_NAME_LENGTH + ") NOT NULL, " +
 			"DEFAULT_PRICE double NOT NULL, " +
 			"ACTIVE smallint DEFAULT 1 NOT NULL, " +
 			"PRIMARY KEY (ITEM_ID))";
@@ -90,7 +1488,7 @@ public class DatabaseManager {
 	}
 	
 	// Create the transactions table
-	private void createTransactionsTable() throws SQLException {
+	private void createTransactionsTable(Connection connection) throws SQLException {
 		String createString = "" +
 				"create table " + dbName + "." + TABLE_TRANSACTIONS +
 				"(TRANSACTION_ID int NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1)," +
@@ -106,4 +1504,56 @@ public class DatabaseManager {
 		stmt.executeUpdate(createString);
 		stmt.close();		
 	}
+	
+	// Create the transaction items table, one row per item sold
+	private void createTransactionItemsTable(Connection connection) throws SQLException {
+		String createString = "" +
+				"create table " + dbName + "." + TABLE_TRANSACTION_ITEMS +
+				"(TRANSACTION_ID int NOT NULL, " +
+				"LINE_NO int NOT NULL, " +
+				"ITEM_ID int, " +
+				"NAME varchar(" + MAX_LINE_NAME_LENGTH + ") NOT NULL, " +
+				"PRICE double NOT NULL, " +
+				"QUANTITY int NOT NULL, " +
+				"PRIMARY KEY (TRANSACTION_ID, LINE_NO), " +
+				"FOREIGN KEY (TRANSACTION_ID) REFERENCES " + dbName + "." + TABLE_TRANSACTIONS + " (TRANSACTION_ID), " +
+				"FOREIGN KEY (ITEM_ID) REFERENCES " + dbName + "." + TABLE_INVENTORY + " (ITEM_ID))";
+		
+		Statement stmt = connection.createStatement();
+		
+		stmt.executeUpdate(createString);
+		stmt.close();
+	}
+	
+	// Create the journal checkpoint table, a single row holding the last sale journal entry written
+	private void createJournalCheckpointTable(Connection connection) throws SQLException {
+		String createString = "" +
+				"create table " + dbName + "." + TABLE_JOURNAL_CHECKPOINT +
+				"(ID int NOT NULL, " +
+				"LAST_SEQUENCE bigint NOT NULL, " +
+				"PRIMARY KEY (ID))";
+		
+		Statement stmt = connection.createStatement();
+		
+		stmt.executeUpdate(createString);
+		stmt.executeUpdate("insert into " + dbName + "." + TABLE_JOURNAL_CHECKPOINT + " (ID, LAST_SEQUENCE) values (1, 0)");
+		stmt.close();
+	}
+	
+	// Create the sales rollup table, totals of the transactions per hour and grand total band, in cents
+	private void createSalesRollupTable(Connection connection) throws SQLException {
+		String createString = "" +
+				"create table " + dbName + "." + TABLE_SALES_ROLLUP +
+				"(BUCKET_HOUR bigint NOT NULL, " +
+				"VALUE_BAND smallint NOT NULL, " +
+				"TRANSACTION_COUNT bigint NOT NULL, " +
+				"REVENUE bigint NOT NULL, " +
+				"SALES_TAX bigint NOT NULL, " +
+				"PRIMARY KEY (BUCKET_HOUR, VALUE_BAND))";
+		
+		Statement stmt = connection.createStatement();
+		
+		stmt.executeUpdate(createString);
+		stmt.close();
+	}
 }
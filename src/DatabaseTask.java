@@ -0,0 +1,16 @@
+//////////////////////////////////////////////////////////////////////
+// DatabaseTask.java			Author: Justin Brown
+//
+// A piece of database work to be run in the background by the
+// AsyncDatabase, returning a result of type T.
+//////////////////////////////////////////////////////////////////////
+
+import java.sql.SQLException;
+
+public interface DatabaseTask<T> {
+	
+	/*
+	 * Does the work, called on a database thread
+	 */
+	public T run(DatabaseManager db) throws SQLException;
+}
@@ -0,0 +1,20 @@
+//////////////////////////////////////////////////////////////////////
+// ImportProgress.java			Author: Justin Brown
+//
+// Told how far an inventory import has got. Called on the thread
+// doing the import, so a UI has to pass the numbers on to the event
+// dispatch thread itself.
+//////////////////////////////////////////////////////////////////////
+
+public interface ImportProgress {
+
+	/*
+	 * Called while the file is being checked, with the number of items checked so far
+	 */
+	public void checking(int items);
+
+	/*
+	 * Called after each batch is inserted, with the number inserted so far and the number in the file
+	 */
+	public void importing(int items, int total);
+}
@@ -0,0 +1,432 @@
+//////////////////////////////////////////////////////////////////////
+// InventoryCache.java			Author: Justin Brown
+//
+// Keeps the whole inventory in memory, indexed by item id and by
+// name and by scanner code, so ringing up an item never waits on
+// the database. It is loaded once and every change goes through it:
+// the database is written first and the cache is only updated once
+// that succeeds. The items it hands out are never changed afterwards,
+// an edit replaces the cached item instead.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+public class InventoryCache {
+	// Most problems listed when an import file is turned down
+	private static final int MAX_IMPORT_ERRORS = 10;
+
+	// How often the check of an import file reports progress, in items
+	private static final int CHECK_PROGRESS_INTERVAL = 5000;
+
+	// Past this many names changing at once the active names are sorted again rather than edited one by one
+	private static final int REBUILD_NAMES_AFTER = 256;
+
+	// Where the inventory is stored
+	private DatabaseManager dbManager;
+
+	// The items by id, in id order
+	private TreeMap<Integer, InventoryItem> byId;
+
+	// The item each name refers to. Names aren't unique, an active item is preferred then the lowest id.
+	private HashMap<String, InventoryItem> byName;
+
+	// The ids of every item with each name, so a name is worked out again without looking at the rest
+	private HashMap<String, ArrayList<Integer>> idsByName;
+
+	// Names of the active items, searchable by prefix and kept up to date as items change
+	private ItemNameIndex activeNames;
+	
+	// The items that have a scanner code, by code. The database keeps the codes unique.
+	private ItemCodeMap byCode;
+
+	// Held while writing so changes reach the database and the cache in the same order
+	private final Object writeLock = new Object();
+
+	// Constructor
+	public InventoryCache(DatabaseManager db) {
+		dbManager = db;
+
+		byId = new TreeMap<Integer, InventoryItem>();
+		byName = new HashMap<String, InventoryItem>();
+		idsByName = new HashMap<String, ArrayList<Integer>>();
+		activeNames = new ItemNameIndex();
+		byCode = new ItemCodeMap();
+	}
+
+	/*
+	 * Reads the whole inventory from the database, replacing anything cached
+	 */
+	public void load() throws SQLException {
+		synchronized(writeLock) {
+			ArrayList<InventoryItem> items = dbManager.loadInventory();
+
+			synchronized(this) {
+				byId.clear();
+				byName.clear();
+				idsByName.clear();
+				byCode.clear();
+
+				for(InventoryItem item : items) {
+					byId.put(item.getID(), item);
+					byCode.put(item.getCode(), item);
+				}
+
+				// One pass in id order, an active item takes a name over from an inactive one
+				for(InventoryItem item : byId.values()) {
+					addId(item.getName(), item.getID());
+
+					InventoryItem named = byName.get(item.getName());
+					if(named == null || (item.isActive() && !named.isActive()))
+						byName.put(item.getName(), item);
+				}
+
+				buildActiveNames();
+			}
+		}
+	}
+
+	// Returns the item with an id, or null if there isn't one
+	public synchronized InventoryItem findById(int id) {
+		return byId.get(id);
+	}
+
+	// Returns the item a name refers to, or null if there isn't one
+	public synchronized InventoryItem findByName(String name) {
+		return byName.get(name);
+	}
+
+	// Returns the item a scanner code belongs to, or null if there isn't one
+	public synchronized InventoryItem findByCode(long code) {
+		return byCode.get(code);
+	}
+
+	// Returns all the items in id order
+	public synchronized ArrayList<InventoryItem> getItems() {
+		return new ArrayList<InventoryItem>(byId.values());
+	}
+
+	// Returns the names of the active items in alphabetical order
+	public synchronized ArrayList<String> getActiveNames() {
+		return activeNames.toList();
+	}
+
+	// Returns the number of distinct active item names
+	public synchronized int getActiveCount() {
+		return activeNames.size();
+	}
+
+	// Returns up to limit active item names starting with prefix, ignoring case, in alphabetical order
+	public synchronized String[] findActiveNames(String prefix, int limit) {
+		return activeNames.startingWith(prefix, limit);
+	}
+
+	/*
+	 * Adds a new active item to the inventory and returns it with its generated id. A code of 0 means it has none.
+	 */
+	public InventoryItem addItem(String name, long price, long code) throws SQLException {
+		synchronized(writeLock) {
+			InventoryItem item = dbManager.addInventoryItem(name, price, code);
+			put(item);
+			return item;
+		}
+	}
+
+	/*
+	 * Saves the name, price, code and active flag of an item. Returns the item as it is now cached.
+	 */
+	public InventoryItem updateItem(InventoryItem item) throws SQLException {
+		synchronized(writeLock) {
+			dbManager.updateInventoryItem(item);
+
+			InventoryItem saved = copyOf(item);
+			put(saved);
+			return saved;
+		}
+	}
+
+	/*
+	 * Activates or deactivates an item
+	 */
+	public void setItemActive(int id, boolean active) throws SQLException {
+		synchronized(writeLock) {
+			dbManager.setItemActive(id, active);
+
+			InventoryItem item = findById(id);
+			if(item != null) {
+				item = copyOf(item);
+				item.setActive(active);
+				put(item);
+			}
+		}
+	}
+
+	/*
+	 * Activates or deactivates a set of items with one batch of updates in one transaction.
+	 * Returns the items that changed, as they are now.
+	 */
+	public ArrayList<InventoryItem> setItemsActive(int[] ids, boolean active) throws SQLException {
+		synchronized(writeLock) {
+			ArrayList<InventoryItem> changed = new ArrayList<InventoryItem>();
+			for(int id : ids) {
+				InventoryItem item = findById(id);
+				if(item == null || item.isActive() == active)
+					continue;
+
+				item = copyOf(item);
+				item.setActive(active);
+				changed.add(item);
+			}
+
+			if(changed.isEmpty())
+				return changed;
+
+			dbManager.setItemsActive(idsOf(changed), active);
+			putAll(changed);
+			return changed;
+		}
+	}
+
+	/*
+	 * Changes the default price of a set of items with one batch of updates in one transaction.
+	 * Nothing is changed if the new price of any of them would be below zero.
+	 * Returns the items that changed, as they are now.
+	 */
+	public ArrayList<InventoryItem> changePrices(int[] ids, PriceChange change) throws SQLException {
+		synchronized(writeLock) {
+			ArrayList<InventoryItem> changed = new ArrayList<InventoryItem>();
+			for(int id : ids) {
+				InventoryItem item = findById(id);
+				if(item == null)
+					continue;
+
+				long price = change.apply(item.getPrice());
+				if(price == item.getPrice())
+					continue;
+
+				item = copyOf(item);
+				item.setPrice(price);
+				changed.add(item);
+			}
+
+			if(changed.isEmpty())
+				return changed;
+
+			long[] prices = new long[changed.size()];
+			for(int i = 0; i < prices.length; i++) {
+				prices[i] = changed.get(i).getPrice();
+			}
+
+			dbManager.setItemPrices(idsOf(changed), prices);
+			putAll(changed);
+			return changed;
+		}
+	}
+
+	/*
+	 * Adds every item in an inventory CSV file, see InventoryCsvReader for the layout. The whole file is
+	 * checked first and turned down with a list of its problems if any line is wrong or reuses a code,
+	 * otherwise the items are added in one transaction and the cache is loaded again once at the end.
+	 * Returns the number of items added.
+	 */
+	public int importItems(File file, ImportProgress progress) throws SQLException, IOException {
+		synchronized(writeLock) {
+			// Check every line before changing anything, reading the file a line at a time
+			ArrayList<String> errors = new ArrayList<String>();
+			int errorCount = 0;
+			HashSet<Long> codes = new HashSet<Long>();
+
+			InventoryCsvReader reader = new InventoryCsvReader(file);
+			try {
+				while(reader.next()) {
+					InventoryItem item = reader.getItem();
+					String error = reader.getError();
+
+					if(item != null && item.getCode() != 0) {
+						InventoryItem existing = findByCode(item.getCode());
+						if(existing != null)
+							error = "code " + item.getCode() + " is already used by \"" + existing.getName() + "\"";
+						else if(!codes.add(item.getCode()))
+							error = "code " + item.getCode() + " is used more than once in the file";
+					}
+
+					if(error != null) {
+						errorCount++;
+						if(errors.size() < MAX_IMPORT_ERRORS)
+							errors.add("Line " + reader.getLineNumber() + ": " + error);
+					}
+
+					if(reader.getItemCount() % CHECK_PROGRESS_INTERVAL == 0)
+						progress.checking(reader.getItemCount());
+				}
+			}
+			finally {
+				reader.close();
+			}
+
+			int total = reader.getItemCount();
+			progress.checking(total);
+
+			if(errorCount > 0) {
+				StringBuilder message = new StringBuilder("Nothing was imported, " + errorCount + " of the " + total + " items have problems:");
+				for(String error : errors) {
+					message.append("\n").append(error);
+				}
+				if(errorCount > errors.size())
+					message.append("\n...");
+
+				throw new IOException(message.toString());
+			}
+
+			// Then add them all
+			reader = new InventoryCsvReader(file);
+			int count;
+			try {
+				count = dbManager.importInventory(reader, total, progress);
+			}
+			finally {
+				reader.close();
+			}
+
+			// Indexing the whole inventory once beats adding the items to it one at a time
+			load();
+			return count;
+		}
+	}
+
+	// Adds or replaces an item in the cache
+	private synchronized void put(InventoryItem item) {
+		HashSet<String> names = new HashSet<String>();
+		replace(item, names);
+
+		for(String name : names) {
+			indexActiveName(name);
+		}
+	}
+
+	// Adds or replaces a set of items in the cache, the names they touch are worked out once at the end
+	private synchronized void putAll(List<InventoryItem> items) {
+		HashSet<String> names = new HashSet<String>();
+		for(InventoryItem item : items) {
+			replace(item, names);
+		}
+
+		if(names.size() > REBUILD_NAMES_AFTER) {
+			buildActiveNames();
+		} else {
+			for(String name : names) {
+				indexActiveName(name);
+			}
+		}
+	}
+
+	// Stores an item by id, code and name, adding the names whose item may have changed to a set
+	private void replace(InventoryItem item, HashSet<String> names) {
+		InventoryItem previous = byId.put(item.getID(), item);
+
+		// The item's old code is free once it has changed
+		if(previous != null && previous.getCode() != item.getCode() && byCode.get(previous.getCode()) == previous)
+			byCode.remove(previous.getCode());
+		byCode.put(item.getCode(), item);
+
+		// Renaming an item can hand its old name to another item
+		if(previous != null && !previous.getName().equals(item.getName())) {
+			removeId(previous.getName(), item.getID());
+			indexName(previous.getName());
+			names.add(previous.getName());
+		}
+		if(previous == null || !previous.getName().equals(item.getName()))
+			addId(item.getName(), item.getID());
+
+		indexName(item.getName());
+		names.add(item.getName());
+	}
+
+	// Works out which item a name refers to, an active item first then the lowest id
+	private void indexName(String name) {
+		InventoryItem best = null;
+
+		ArrayList<Integer> ids = idsByName.get(name);
+		if(ids != null) {
+			for(int id : ids) {
+				InventoryItem item = byId.get(id);
+
+				if(best == null || (item.isActive() && !best.isActive())
+						|| (item.isActive().equals(best.isActive()) && item.getID() < best.getID()))
+					best = item;
+			}
+		}
+
+		if(best == null)
+			byName.remove(name);
+		else
+			byName.put(name, best);
+	}
+
+	// Offers a name for sale while the item it refers to is active
+	private void indexActiveName(String name) {
+		InventoryItem item = byName.get(name);
+
+		if(item != null && item.isActive())
+			activeNames.add(name);
+		else
+			activeNames.remove(name);
+	}
+
+	// Sorts the names of the active items into the name index in one go
+	private void buildActiveNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		for(InventoryItem item : byName.values()) {
+			if(item.isActive())
+				names.add(item.getName());
+		}
+		activeNames.build(names);
+	}
+
+	// Records that an item has a name
+	private void addId(String name, int id) {
+		ArrayList<Integer> ids = idsByName.get(name);
+		if(ids == null) {
+			ids = new ArrayList<Integer>(1);
+			idsByName.put(name, ids);
+		}
+		ids.add(id);
+	}
+
+	// Records that an item no longer has a name
+	private void removeId(String name, int id) {
+		ArrayList<Integer> ids = idsByName.get(name);
+		if(ids == null)
+			return;
+
+		ids.remove(Integer.valueOf(id));
+		if(ids.isEmpty())
+			idsByName.remove(name);
+	}
+
+	// Returns the ids of a list of items
+	private static int[] idsOf(List<InventoryItem> items) {
+		int[] ids = new int[items.size()];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = items.get(i).getID();
+		}
+		return ids;
+	}
+
+	// Returns a copy of an item, so the one passed in can't change the cache
+	private InventoryItem copyOf(InventoryItem item) {
+		InventoryItem copy = new InventoryItem();
+		copy.setID(item.getID());
+		copy.setName(item.getName());
+		copy.setPrice(item.getPrice());
+		copy.setActive(item.isActive());
+		copy.setCode(item.getCode());
+		return copy;
+	}
+}
@@ -0,0 +1,193 @@
+//////////////////////////////////////////////////////////////////////
+// InventoryCsvReader.java			Author: Justin Brown
+//
+// Reads inventory items from a CSV file one line at a time, so a
+// file of any size can be checked or imported without holding it in
+// memory. Each line is:
+//     name, default price[, code[, active]]
+// A name holding a comma can be put in double quotes, with a quote
+// inside it written twice. The code is optional and the item is
+// active unless the last column says otherwise. A first line naming
+// the columns is skipped, as are blank lines.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+public class InventoryCsvReader {
+	// Longest name the inventory table holds
+	public static final int MAX_NAME_LENGTH = DatabaseManager.MAX_ITEM_NAME_LENGTH;
+
+	// The file being read
+	private BufferedReader in;
+
+	// Number of the line last read, and how many item lines have been read
+	private int lineNumber;
+	private int itemCount;
+
+	// The item on the line last read, or what is wrong with the line
+	private InventoryItem item;
+	private String error;
+
+	// Constructor
+	public InventoryCsvReader(File file) throws IOException {
+		in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 64 * 1024);
+		lineNumber = 0;
+		itemCount = 0;
+	}
+
+	/*
+	 * Reads the next item line. Returns false at the end of the file. Afterwards getItem holds the item,
+	 * or it is null and getError says what is wrong with the line.
+	 */
+	public boolean next() throws IOException {
+		while(true) {
+			String line = in.readLine();
+			if(line == null)
+				return false;
+
+			lineNumber++;
+
+			// Some editors start a UTF-8 file with a byte order mark
+			if(lineNumber == 1 && line.startsWith("\uFEFF"))
+				line = line.substring(1);
+
+			if(line.trim().equals(""))
+				continue;
+
+			ArrayList<String> fields = split(line);
+
+			// A heading line in place of the first item
+			if(itemCount == 0 && fields.get(0).equalsIgnoreCase("name"))
+				continue;
+
+			itemCount++;
+			parse(fields);
+			return true;
+		}
+	}
+
+	// Returns the item on the line last read, or null if the line is wrong
+	public InventoryItem getItem() {
+		return item;
+	}
+
+	// Returns what is wrong with the line last read, or null if it is fine
+	public String getError() {
+		return error;
+	}
+
+	// Returns the number of the line last read, counting from 1
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	// Returns the number of item lines read so far
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	// Closes the file
+	public void close() throws IOException {
+		in.close();
+	}
+
+	// Turns the fields of a line into an item, or sets the error
+	private void parse(ArrayList<String> fields) {
+		item = null;
+		error = null;
+
+		if(fields.size() < 2 || fields.size() > 4) {
+			error = "expected a name, a price and optionally a code and active flag";
+			return;
+		}
+
+		String name = fields.get(0);
+		if(name.equals("")) {
+			error = "the name is blank";
+			return;
+		}
+		if(name.length() > MAX_NAME_LENGTH) {
+			error = "the name is longer than " + MAX_NAME_LENGTH + " characters";
+			return;
+		}
+
+		long price;
+		try {
+			price = Money.parse(fields.get(1));
+		} catch(NumberFormatException ex) {
+			error = "\"" + fields.get(1) + "\" isn't a price";
+			return;
+		}
+		if(price < 0) {
+			error = "the price can't be " + fields.get(1);
+			return;
+		}
+
+		long code = 0;
+		if(fields.size() > 2 && !fields.get(2).equals("")) {
+			try {
+				code = Long.parseLong(fields.get(2));
+			} catch(NumberFormatException ex) {
+				code = -1;
+			}
+
+			if(code <= 0) {
+				error = "\"" + fields.get(2) + "\" isn't a code, codes are whole numbers above zero";
+				return;
+			}
+		}
+
+		boolean active = true;
+		if(fields.size() > 3 && !fields.get(3).equals("")) {
+			String flag = fields.get(3).toLowerCase();
+			if(flag.equals("false") || flag.equals("no") || flag.equals("0"))
+				active = false;
+			else if(!flag.equals("true") && !flag.equals("yes") && !flag.equals("1")) {
+				error = "\"" + fields.get(3) + "\" isn't true or false";
+				return;
+			}
+		}
+
+		item = new InventoryItem();
+		item.setName(name);
+		item.setPrice(price);
+		item.setCode(code);
+		item.setActive(active);
+	}
+
+	// Splits a line at the commas that aren't in quotes, trimming each field
+	private static ArrayList<String> split(String line) {
+		ArrayList<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+
+			if(quoted) {
+				if(c != '"')
+					field.append(c);
+				else if(i + 1 < line.length() && line.charAt(i + 1) == '"')
+					field.append(line.charAt(++i));
+				else
+					quoted = false;
+			}
+			else if(c == '"')
+				quoted = true;
+			else if(c == ',') {
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			}
+			else
+				field.append(c);
+		}
+
+		fields.add(field.toString().trim());
+		return fields;
+	}
+}
@@ -10,15 +10,20 @@ public class InventoryItem {
 	// Variables
 	private int id;
 	private String name;
-	private double defaultPrice;
+	// The default price in cents
+	private long defaultPrice;
 	private Boolean isActive;
 	
+	// The PLU or barcode number a scanner reads for the item, 0 if it hasn't got one
+	private long code;
+	
 	// Constructor
 	public InventoryItem() {
 		id = 0;
 		name = "";
 		defaultPrice = 0;
 		isActive = true;
+		code = 0;
 	}
 	
 	// Getters and setters
@@ -38,11 +43,11 @@ public class InventoryItem {
 		name = value;
 	}
 	
-	public double getPrice() {
+	public long getPrice() {
 		return defaultPrice;
 	}
 	
-	public void setPrice(double value) {
+	public void setPrice(long value) {
 		defaultPrice = value;
 	}
 	
@@ -53,5 +58,13 @@ public class InventoryItem {
 	public void setActive(Boolean value) {
 		isActive = value;
 	}
+	
+	public long getCode() {
+		return code;
+	}
+	
+	public void setCode(long value) {
+		code = value;
+	}
 
 }
@@ -2,36 +2,47 @@
 // InventoryTableModel.java			Author: Justin Brown
 //
 // Extends the AbstractTableModel class and provides a customized
-// table model for use in the UI.
+// table model for use in the UI. Values are handed to the table as
+// they are, the table's renderers format them. A row's values are
+// made the first time it is drawn and kept until its item changes,
+// so repainting doesn't box the id and price again. Rows are kept in
+// an index by item id, so a changed item is found and redrawn without
+// touching the rest of the table.
 //////////////////////////////////////////////////////////////////////
 
-import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 import javax.swing.table.AbstractTableModel;
 
 
 public class InventoryTableModel extends AbstractTableModel {
-	// Hold our currency formatter
-	private NumberFormat currencyFormat;
-	
 	// Our table format and data
 	private String[] columnNames;
+	private Class<?>[] columnClasses;
 	
 	// Stores the item data
     private List<InventoryItem> data;    
     
+    // The values shown in each row, null until the row is first drawn
+    private ArrayList<Object[]> values;
+    
+    // The row each item id is in
+    private HashMap<Integer, Integer> rowById;
+    
     // Constructor
     public InventoryTableModel() {
-    	// Seutp the currency format
-    	currencyFormat = NumberFormat.getCurrencyInstance();
-    	
     	// Set the column names for the table
     	columnNames = new String[]{ "ID", "Name", "Default Price", "Active?" };
+    	columnClasses = new Class<?>[]{ Integer.class, String.class, Long.class, Boolean.class };
     	
     	// Setup a new blank array list that holds the table data
     	data = new ArrayList<InventoryItem>();
+    	values = new ArrayList<Object[]>();
+    	rowById = new HashMap<Integer, Integer>();
     }
 	
     /*
@@ -63,39 +74,86 @@ public class InventoryTableModel extends AbstractTableModel {
 	 */
 	@Override
 	public Object getValueAt(int row, int col) {
-		switch(col){
-			// Column 1 is the name
-			case 1:
-				return data.get(row).getName();
-				
-			// Column 2 is the default price
-			case 2:
-				return currencyFormat.format(data.get(row).getPrice());
-				
-			// Column 3 isActive?
-			case 3:
-				return data.get(row).isActive();
-				
-			// Default is used for case 0 and anything else, return the ID
-			default:
-				return data.get(row).getID();
+		Object[] shown = values.get(row);
+		if(shown == null) {
+			// The ID, the name, the default price and whether it is active
+			InventoryItem item = data.get(row);
+			shown = new Object[]{ item.getID(), item.getName(), item.getPrice(), item.isActive() };
+			values.set(row, shown);
 		}
+		
+		return shown[col];
 	}
 	
 	/*
-	 * Used to add a new row to the table 
+	 * Used to add a new row to the table, or replace the row of an item already in it
 	 */
 	public void setValueAt(Object value, int row, int col) {
-		InventoryItem item = (InventoryItem)value;
+		upsert((InventoryItem)value);
+    }
+	
+	/*
+	 * Replaces the whole table with a list of items, the table is told once
+	 */
+	public void setRows(List<InventoryItem> items) {
+		data = new ArrayList<InventoryItem>(items);
+		values = new ArrayList<Object[]>(Collections.<Object[]>nCopies(data.size(), null));
 		
-		data.add(item);
+		rowById.clear();
+		for(int row = 0; row < data.size(); row++) {
+			rowById.put(data.get(row).getID(), row);
+		}
 		
-		// Make sure the table display updates
-        fireTableRowsInserted(row, row);
-    }
+		fireTableDataChanged();
+	}
+	
+	/*
+	 * Adds an item at the end of the table, or replaces its row if it is already there.
+	 * The row is only redrawn if something shown in it has changed.
+	 */
+	public void upsert(InventoryItem item) {
+		Integer row = rowById.get(item.getID());
+		
+		if(row == null) {
+			data.add(item);
+			values.add(null);
+			rowById.put(item.getID(), data.size() - 1);
+			fireTableRowsInserted(data.size() - 1, data.size() - 1);
+			return;
+		}
+		
+		InventoryItem previous = data.set(row, item);
+		if(!sameDisplay(previous, item)) {
+			values.set(row, null);
+			fireTableRowsUpdated(row, row);
+		}
+	}
 	
+	/*
+	 * Removes the row of an item, does nothing if it isn't in the table
+	 */
+	public void remove(int id) {
+		Integer row = rowById.remove(id);
+		if(row == null)
+			return;
+		
+		data.remove((int) row);
+		values.remove((int) row);
+		
+		// The rows below move up one
+		for(int i = row; i < data.size(); i++) {
+			rowById.put(data.get(i).getID(), i);
+		}
+		
+		fireTableRowsDeleted(row, row);
+	}
+	
+	/*
+	 * Returns the type of the values in a column, the table picks its renderer by it
+	 */
+	@Override
 	public Class<?> getColumnClass(int c) {
-        return getValueAt(0, c).getClass();
+        return columnClasses[c];
     }
 	
 	/*
@@ -104,13 +162,58 @@ public class InventoryTableModel extends AbstractTableModel {
 	public void reset() {
 		// Clear the arraylist
 		data.clear();
+		values.clear();
+		rowById.clear();
 		
 		// Make sure the table display updates
 		fireTableDataChanged();
 	}
 	
+	/*
+	 * Replaces the rows of a set of changed items. Items not in the table are left out.
+	 * Only the rows that look different are redrawn, neighbouring rows are told about together.
+	 */
+	public void updateRows(List<InventoryItem> items) {
+		int[] rows = new int[items.size()];
+		int count = 0;
+		
+		for(InventoryItem item : items) {
+			Integer row = rowById.get(item.getID());
+			if(row == null)
+				continue;
+			
+			InventoryItem previous = data.set(row, item);
+			if(!sameDisplay(previous, item)) {
+				values.set(row, null);
+				rows[count++] = row;
+			}
+		}
+		
+		Arrays.sort(rows, 0, count);
+		
+		int i = 0;
+		while(i < count) {
+			int first = rows[i];
+			int last = first;
+			
+			// Take in the rows that follow on
+			while(i + 1 < count && rows[i + 1] <= last + 1) {
+				last = rows[++i];
+			}
+			i++;
+			
+			fireTableRowsUpdated(first, last);
+		}
+	}
+	
 	public InventoryItem getRow(int row) {
 		return data.get(row);
 	}
+	
+	// Returns true if two versions of an item look the same in the table
+	private static boolean sameDisplay(InventoryItem a, InventoryItem b) {
+		return a.getID() == b.getID() && a.getName().equals(b.getName())
+				&& a.getPrice() == b.getPrice() && a.isActive().equals(b.isActive());
+	}
 
 }
@@ -4,30 +4,37 @@
 // Holds data for an item that appears on a transaction. Data
 // includes the item name, its price and the quantity of the item
 // purchased. Provides a convenient sub total method to quickly get
-// the sub total for the item.
+// the sub total for the item. Amounts are in cents.
 //////////////////////////////////////////////////////////////////////
 
 public class Item {
 	
 	// The variables
+	private int itemId;
 	private String name;
-	private double price;
+	private long price;
 	private int quantity;
 	
 	// Constructor
 	public Item() {
+		itemId = 0;
 		name ="";
 		price = 0;
 		quantity = 0;
 	}
 	
+	// Setter for the inventory item id, zero if the item isn't in the inventory
+	public void setItemID(int id) {
+		itemId = id;
+	}
+	
 	// Setter for the item name
 	public void setName(String n) {
 		name = n;
 	}
 	
-	// Setter for the item price
-	public void setPrice(double p) {
+	// Setter for the item price in cents
+	public void setPrice(long p) {
 		price = p;
 	}
 	
@@ -36,13 +43,18 @@ public class Item {
 		quantity = q;
 	}
 	
+	// Getter for the inventory item id
+	public int getItemID() {
+		return itemId;
+	}
+	
 	// Getter for the item name
 	public String getName() {
 		return name;
 	}
 	
-	// Getter for the item price
-	public double getPrice() {
+	// Getter for the item price in cents
+	public long getPrice() {
 		return price;
 	}
 	
@@ -52,9 +64,9 @@ public class Item {
 	}
 		
 	/*
-	 * Returns the sub total of the item as a double
+	 * Returns the sub total of the item in cents
 	 */
-	public double getSubTotal() {
+	public long getSubTotal() {
 		return price * quantity;
 	}
 	
@@ -0,0 +1,134 @@
+//////////////////////////////////////////////////////////////////////
+// ItemCodeMap.java			Author: Justin Brown
+//
+// Maps the codes a scanner reads to inventory items. The codes are
+// kept as plain longs in one array and the items in another, using
+// open addressing with linear probing, so a lookup is a hash and a
+// short walk along an array without boxing the code or following a
+// chain of entries. A code of 0 marks an empty slot, items without a
+// code aren't held. Not thread safe, the owner has to lock around it.
+//////////////////////////////////////////////////////////////////////
+
+public class ItemCodeMap {
+	// The code in each slot, 0 if the slot is empty, and the item stored with it
+	private long[] codes;
+	private InventoryItem[] items;
+	private int size;
+
+	// Constructor
+	public ItemCodeMap() {
+		clear();
+	}
+
+	// Removes every item
+	public void clear() {
+		codes = new long[16];
+		items = new InventoryItem[16];
+		size = 0;
+	}
+
+	// Returns the item with a code, or null if there isn't one
+	public InventoryItem get(long code) {
+		if(code == 0)
+			return null;
+
+		int mask = codes.length - 1;
+		for(int slot = slotFor(code, mask); codes[slot] != 0; slot = (slot + 1) & mask) {
+			if(codes[slot] == code)
+				return items[slot];
+		}
+
+		return null;
+	}
+
+	/*
+	 * Stores an item under a code, replacing whatever had the code before. A code of 0 is ignored.
+	 */
+	public void put(long code, InventoryItem item) {
+		if(code == 0)
+			return;
+
+		// Keep the table at most half full so the walks stay short
+		if((size + 1) * 2 > codes.length)
+			resize(codes.length * 2);
+
+		int mask = codes.length - 1;
+		int slot = slotFor(code, mask);
+		while(codes[slot] != 0 && codes[slot] != code) {
+			slot = (slot + 1) & mask;
+		}
+
+		if(codes[slot] == 0)
+			size++;
+
+		codes[slot] = code;
+		items[slot] = item;
+	}
+
+	/*
+	 * Removes the item with a code, does nothing if there isn't one
+	 */
+	public void remove(long code) {
+		if(code == 0)
+			return;
+
+		int mask = codes.length - 1;
+		int slot = slotFor(code, mask);
+		while(codes[slot] != code) {
+			if(codes[slot] == 0)
+				return;
+			slot = (slot + 1) & mask;
+		}
+
+		// Move later entries of the run back into the gap, so no walk stops short at it
+		int gap = slot;
+		for(slot = (gap + 1) & mask; codes[slot] != 0; slot = (slot + 1) & mask) {
+			int home = slotFor(codes[slot], mask);
+
+			// An entry can fill the gap if its home slot isn't between the gap and where it sits
+			if(((slot - home) & mask) >= ((slot - gap) & mask)) {
+				codes[gap] = codes[slot];
+				items[gap] = items[slot];
+				gap = slot;
+			}
+		}
+
+		codes[gap] = 0;
+		items[gap] = null;
+		size--;
+	}
+
+	// Returns the number of codes held
+	public int size() {
+		return size;
+	}
+
+	// Moves every entry into tables of a new size, which must be a power of two
+	private void resize(int capacity) {
+		long[] oldCodes = codes;
+		InventoryItem[] oldItems = items;
+
+		codes = new long[capacity];
+		items = new InventoryItem[capacity];
+
+		int mask = capacity - 1;
+		for(int i = 0; i < oldCodes.length; i++) {
+			if(oldCodes[i] == 0)
+				continue;
+
+			int slot = slotFor(oldCodes[i], mask);
+			while(codes[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+
+			codes[slot] = oldCodes[i];
+			items[slot] = oldItems[i];
+		}
+	}
+
+	// The slot a code's walk starts at. Barcodes share long prefixes, so the bits are mixed before masking.
+	private static int slotFor(long code, int mask) {
+		long h = code * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,162 @@
+//////////////////////////////////////////////////////////////////////
+// ItemNameIndex.java			Author: Justin Brown
+//
+// A sorted index of item names for type-ahead searching. The names
+// are kept in two parallel arrays ordered by their lower case form,
+// so the names starting with a prefix sit next to each other and the
+// first is found with a binary search. Adding or removing a name
+// shifts the arrays along rather than sorting them again. Not thread
+// safe, the owner has to lock around it.
+//////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+public class ItemNameIndex {
+	// The lower case form of each name, which the arrays are sorted by, and the names themselves
+	private String[] keys;
+	private String[] names;
+	private int size;
+
+	// Constructor
+	public ItemNameIndex() {
+		keys = new String[16];
+		names = new String[16];
+		size = 0;
+	}
+
+	/*
+	 * Replaces the contents of the index with a set of names, sorting them once
+	 */
+	public void build(Collection<String> values) {
+		String[] sorted = values.toArray(new String[values.size()]);
+		Arrays.sort(sorted, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return compareEntries(normalize(a), a, normalize(b), b);
+			}
+		});
+
+		keys = new String[Math.max(16, sorted.length)];
+		names = new String[keys.length];
+		size = 0;
+
+		for(String name : sorted) {
+			// Skip repeats, each name is only held once
+			if(size > 0 && names[size - 1].equals(name))
+				continue;
+
+			keys[size] = normalize(name);
+			names[size] = name;
+			size++;
+		}
+	}
+
+	/*
+	 * Adds a name, does nothing if it is already there
+	 */
+	public void add(String name) {
+		String key = normalize(name);
+		int pos = find(key, name);
+		if(pos >= 0)
+			return;
+
+		pos = -pos - 1;
+
+		// Grow the arrays when they are full
+		if(size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			names = Arrays.copyOf(names, size * 2);
+		}
+
+		System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+		System.arraycopy(names, pos, names, pos + 1, size - pos);
+		keys[pos] = key;
+		names[pos] = name;
+		size++;
+	}
+
+	/*
+	 * Removes a name, does nothing if it isn't there
+	 */
+	public void remove(String name) {
+		int pos = find(normalize(name), name);
+		if(pos < 0)
+			return;
+
+		System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+		System.arraycopy(names, pos + 1, names, pos, size - pos - 1);
+		size--;
+		keys[size] = null;
+		names[size] = null;
+	}
+
+	/*
+	 * Returns up to limit names that start with prefix, ignoring case, in order
+	 */
+	public String[] startingWith(String prefix, int limit) {
+		String key = normalize(prefix);
+
+		// The first entry that isn't less than the prefix
+		int low = 0;
+		int high = size;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(keys[mid].compareTo(key) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+
+		int end = low;
+		while(end < size && end - low < limit && keys[end].startsWith(key)) {
+			end++;
+		}
+
+		return Arrays.copyOfRange(names, low, end);
+	}
+
+	// Returns the number of names in the index
+	public int size() {
+		return size;
+	}
+
+	// Returns all the names in order
+	public ArrayList<String> toList() {
+		return new ArrayList<String>(Arrays.asList(names).subList(0, size));
+	}
+
+	/*
+	 * Binary searches for an entry. Returns its position, or -(insertion point) - 1 if it isn't there.
+	 */
+	private int find(String key, String name) {
+		int low = 0;
+		int high = size - 1;
+
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareEntries(keys[mid], names[mid], key, name);
+
+			if(cmp < 0)
+				low = mid + 1;
+			else if(cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -(low + 1);
+	}
+
+	// Orders entries by their lower case form, then by the name itself so names differing only in case both fit
+	private static int compareEntries(String keyA, String nameA, String keyB, String nameB) {
+		int cmp = keyA.compareTo(keyB);
+		return cmp != 0 ? cmp : nameA.compareTo(nameB);
+	}
+
+	// The form names are compared in
+	private static String normalize(String name) {
+		return name.trim().toLowerCase();
+	}
+}
@@ -0,0 +1,191 @@
+//////////////////////////////////////////////////////////////////////
+// ItemPicker.java			Author: Justin Brown
+//
+// An editable combo box for picking an inventory item by typing the
+// start of its name. Only the first few matching names are put in
+// the drop down, looked up through the register as each key is
+// typed, so the size of the catalog doesn't matter. The lookups run
+// in the background, answers to a search that has since been typed
+// past are thrown away. Action events
+// are only fired when an item is chosen or the typed name is
+// committed, not while the list is being refilled. Names longer than
+// a sale's line can hold can't be typed or pasted in.
+//////////////////////////////////////////////////////////////////////
+
+import java.awt.Toolkit;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.Callable;
+
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JComboBox;
+import javax.swing.JTextField;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DocumentFilter;
+
+
+public class ItemPicker extends JComboBox<String> {
+	private static final long serialVersionUID = 1L;
+
+	// Most names shown in the drop down
+	private static final int MAX_MATCHES = 12;
+
+	// Where the names are looked up, and what the lookups run on
+	private Register register;
+	private AsyncDatabase tasks;
+
+	// The text field the name is typed into
+	private JTextField editor;
+
+	// The text searched for last, and the message shown while there is nothing to pick
+	private String lastSearch;
+	private String message;
+
+	// Counts the searches asked for, only the answer to the latest is shown
+	private int searches;
+
+	// True while the list is being refilled
+	private boolean updating;
+
+	// Constructor, tasks runs the lookups in the background
+	public ItemPicker(AsyncDatabase tasks, Register register) {
+		this.tasks = tasks;
+		this.register = register;
+
+		setEditable(true);
+		setMaximumRowCount(MAX_MATCHES);
+
+		editor = (JTextField) getEditor().getEditorComponent();
+		((AbstractDocument) editor.getDocument()).setDocumentFilter(new LengthFilter(DatabaseManager.MAX_LINE_NAME_LENGTH));
+
+		// Search again whenever the typed text changes
+		editor.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyReleased(KeyEvent e) {
+				String text = editor.getText();
+				if(!text.equals(lastSearch))
+					showMatches(text, true);
+			}
+		});
+	}
+
+	/*
+	 * Searches again for the typed text, used when the inventory changes
+	 */
+	public void refresh() {
+		String text = editor.getText();
+
+		// Don't search for the message, start again from an empty field
+		if(message != null) {
+			message = null;
+			text = "";
+			fill(new String[0], text, false);
+		}
+
+		showMatches(text, false);
+	}
+
+	/*
+	 * Shows a message in place of a name, for when there is nothing to pick
+	 */
+	public void showMessage(String text) {
+		message = text;
+
+		// Any search still running is for a name, not the message
+		searches++;
+		lastSearch = text;
+		fill(new String[0], text, false);
+	}
+
+	// Returns the text typed in the field
+	public String getText() {
+		return editor.getText();
+	}
+
+	// Refilling the list doesn't count as picking an item
+	@Override
+	protected void fireActionEvent() {
+		if(!updating)
+			super.fireActionEvent();
+	}
+
+	/*
+	 * Keeps a document to a number of characters, cutting off and beeping at anything typed or pasted past it
+	 */
+	private static class LengthFilter extends DocumentFilter {
+		private int maxLength;
+
+		LengthFilter(int maxLength) {
+			this.maxLength = maxLength;
+		}
+
+		@Override
+		public void insertString(FilterBypass fb, int offset, String text, AttributeSet attrs) throws BadLocationException {
+			replace(fb, offset, 0, text, attrs);
+		}
+
+		@Override
+		public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+			if(text != null) {
+				int room = maxLength - (fb.getDocument().getLength() - length);
+				if(text.length() > room) {
+					Toolkit.getDefaultToolkit().beep();
+					text = text.substring(0, Math.max(room, 0));
+				}
+			}
+			super.replace(fb, offset, length, text, attrs);
+		}
+	}
+
+	/*
+	 * Looks up the names starting with the text in the background, then fills the drop down with them
+	 */
+	private void showMatches(final String text, final boolean popup) {
+		final int search = ++searches;
+		lastSearch = text;
+
+		tasks.submit(new Callable<String[]>() {
+			public String[] call() throws Exception {
+				return register.findActiveNames(text, MAX_MATCHES);
+			}
+		}, new DatabaseCallback<String[]>() {
+			public void succeeded(String[] matches) {
+				// Typed past while it was looked up, a later search will answer
+				if(search == searches)
+					fill(matches, editor.getText(), popup);
+			}
+
+			public void failed(Exception ex) {
+				// Nothing to pick from, the name can still be typed in
+				System.out.println("Unable to look up item names: " + ex.getMessage());
+			}
+		});
+	}
+
+	/*
+	 * Fills the drop down with names, leaving the text as typed
+	 */
+	private void fill(String[] matches, String text, boolean popup) {
+		// Replace the whole list at once rather than adding names one at a time
+		DefaultComboBoxModel<String> model = new DefaultComboBoxModel<String>(matches);
+		model.setSelectedItem(text);
+
+		updating = true;
+		try {
+			setModel(model);
+			editor.setText(text);
+		}
+		finally {
+			updating = false;
+		}
+
+		// Reopen the drop down so it is sized for the new list
+		if(popup && isShowing()) {
+			hidePopup();
+			if(matches.length > 0)
+				showPopup();
+		}
+	}
+}
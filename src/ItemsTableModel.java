@@ -2,10 +2,11 @@
 // ItemTableModel.java			Author: Justin Brown
 //
 // Extends the AbstractTableModel class and provides a customized
-// table model for use in the UI.
+// table model for use in the UI. Values are handed to the table as
+// they are, the table's renderers format them. A row's values are
+// made when it is added, so repainting doesn't box them again.
 //////////////////////////////////////////////////////////////////////
 
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,23 +14,23 @@ import javax.swing.table.AbstractTableModel;
 
 
 public class ItemsTableModel extends AbstractTableModel {
-	// Hold our currency formatter
-	private NumberFormat currencyFormat;
-	
 	// Our table format and data
 	private String[] columnNames;
+	private Class<?>[] columnClasses;
     private List<Item> data;
     
+    // The values shown in each row
+    private List<Object[]> values;
+    
     // Constructor
     public ItemsTableModel() {
-    	// Seutp the currency format
-    	currencyFormat = NumberFormat.getCurrencyInstance();
-    	
     	// Set the column names for the table
     	columnNames = new String[]{"Name", "Quantity", "Price", "Item Total"};
+    	columnClasses = new Class<?>[]{ String.class, Integer.class, Long.class, Long.class };
     	
     	// Setup a new blank array list that holds the table data
     	data = new ArrayList<Item>();
+    	values = new ArrayList<Object[]>();
     }
 	
     /*
@@ -61,24 +62,7 @@ public class ItemsTableModel extends AbstractTableModel {
 	 */
 	@Override
 	public Object getValueAt(int row, int col) {
-		switch(col){
-			// Column 1 is the quantity
-			case 1:
-				return data.get(row).getQuantity();
-				
-			// Column 2 is the price
-			case 2:
-				return currencyFormat.format(data.get(row).getPrice());
-				
-			// Column 3 is the sub total
-			case 3:
-				return currencyFormat.format(data.get(row).getSubTotal());
-				
-			// Default is used for case 0 and anything else, return the name
-			default:
-				return data.get(row).getName();
-		}
-		
+		return values.get(row)[col];
 	}
 	
 	/*
@@ -87,14 +71,36 @@ public class ItemsTableModel extends AbstractTableModel {
 	public void setValueAt(Object value, int row, int col) {
         
 		// Add the new item to our arraylist
-		data.add((Item) value);
+		Item item = (Item) value;
+		data.add(item);
+		values.add(valuesOf(item));
 		
 		// Make sure the table display updates
         fireTableRowsInserted(row, row);
     }
 	
+	/*
+	 * Adds several rows at once, the table is only told about them once
+	 */
+	public void addRows(List<Item> items) {
+		if(items.isEmpty())
+			return;
+		
+		int first = data.size();
+		data.addAll(items);
+		for(Item item : items) {
+			values.add(valuesOf(item));
+		}
+		
+		fireTableRowsInserted(first, data.size() - 1);
+	}
+	
+	/*
+	 * Returns the type of the values in a column, the table picks its renderer by it
+	 */
+	@Override
 	public Class<?> getColumnClass(int c) {
-        return getValueAt(0, c).getClass();
+        return columnClasses[c];
     }
 	
 	/*
@@ -103,9 +109,15 @@ public class ItemsTableModel extends AbstractTableModel {
 	public void reset() {
 		// Clear the arraylist
 		data.clear();
+		values.clear();
 		
 		// Make sure the table display updates
 		fireTableDataChanged();
 	}
+	
+	// Returns the values shown for an item: the name, the quantity, the price and the sub total
+	private static Object[] valuesOf(Item item) {
+		return new Object[]{ item.getName(), item.getQuantity(), item.getPrice(), item.getSubTotal() };
+	}
 
 }
@@ -0,0 +1,366 @@
+//////////////////////////////////////////////////////////////////////
+// LineItemCodec.java			Author: Justin Brown
+//
+// Writes and reads the items of a transaction in the text format
+// [name~~price~~qty],[name~~price~~qty]. Names are escaped with a
+// backslash so they can contain any of the delimiters, and text
+// written that way starts with a backslash to say so. The ITEMS
+// column written before the codec existed always starts with [ and
+// has its names as they were, backslashes included, so its names are
+// read without unescaping. Reading works straight off a stream and
+// parses the numbers as it goes, so a large transaction is decoded in
+// one pass without splitting it up first. An item that isn't
+// formatted correctly is dropped and reading picks up again at the
+// next item. The buffers are reused between calls, so an instance
+// must only be used by one thread at a time.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+public class LineItemCodec {
+	// Powers of ten that can be represented exactly as a double
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// Largest mantissa that converts to a double without rounding
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	// Marks the end of the stream
+	private static final int EOF = -1;
+
+	// Starts text whose names are escaped
+	private static final char ESCAPED_FORMAT = '\\';
+
+	// Read buffer
+	private char[] buffer;
+	private int position;
+	private int limit;
+	private Reader reader;
+
+	// True while reading text whose names are escaped
+	private boolean escaped;
+
+	// Holds the name being read, and a number that has to be parsed the slow way
+	private StringBuilder text;
+
+	// Constructor
+	public LineItemCodec() {
+		buffer = new char[8192];
+		text = new StringBuilder(64);
+	}
+
+	/*
+	 * Writes the items to out
+	 */
+	public void encode(List<Item> items, Appendable out) throws IOException {
+		out.append(ESCAPED_FORMAT);
+
+		for(int i = 0; i < items.size(); i++) {
+			Item item = items.get(i);
+
+			if(i != 0) {
+				out.append(','); // Add comma but not on the first item
+			}
+
+			out.append('[');
+			appendEscaped(item.getName(), out);
+			out.append("~~");
+			out.append(Money.toPlainString(item.getPrice()));
+			out.append("~~");
+			appendInt(item.getQuantity(), out);
+			out.append(']');
+		}
+	}
+
+	/*
+	 * Reads items from in and adds them to items. Items that aren't formatted
+	 * correctly are skipped. Returns the number of items added.
+	 */
+	public int decode(Reader in, List<Item> items) throws IOException {
+		reader = in;
+		position = 0;
+		limit = 0;
+
+		int added = 0;
+
+		try {
+			int c = next();
+			escaped = c == ESCAPED_FORMAT;
+			if(escaped)
+				c = next();
+
+			while(c != EOF) {
+				// Anything between items, the separating commas included, is ignored
+				if(c == '[') {
+					Item item = readItem();
+					if(item != null) {
+						items.add(item);
+						added++;
+					}
+				}
+
+				c = next();
+			}
+		} finally {
+			reader = null;
+		}
+
+		return added;
+	}
+
+	/*
+	 * Reads the fields of an item after its opening [. Returns null if it is malformed, having
+	 * skipped to its closing ] or to the [ of the next item, whichever comes first.
+	 */
+	private Item readItem() throws IOException {
+		// The name runs up to the first unescaped ~~, a ] before it ends an item with no price
+		text.setLength(0);
+		int c;
+		while(true) {
+			c = next();
+
+			if(c == EOF || c == ']')
+				return null;
+
+			if(c == '\\' && escaped) {
+				c = next();
+				if(c == EOF)
+					return null;
+				text.append((char) c);
+			} else if(c == '~') {
+				if(peek() == '~') {
+					next();
+					break;
+				}
+				text.append('~');
+			} else {
+				text.append((char) c);
+			}
+		}
+		String name = text.toString();
+
+		double price = readPrice();
+		if(Double.isNaN(price)) {
+			skipItem();
+			return null;
+		}
+
+		// The quantity runs up to the closing ]
+		long quantity = 0;
+		int digits = 0;
+		boolean negative = false;
+		if(peek() == '-') {
+			negative = true;
+			next();
+		}
+		while((c = next()) >= '0' && c <= '9') {
+			quantity = quantity * 10 + (c - '0');
+			digits++;
+
+			if(quantity > Integer.MAX_VALUE) {
+				skipItem();
+				return null;
+			}
+		}
+		if(c != ']' || digits == 0) {
+			if(c == '[')
+				unread();
+			else if(c != ']')
+				skipItem();
+			return null;
+		}
+
+		Item item = new Item();
+		item.setName(name);
+		item.setPrice(Money.fromDouble(price));
+		item.setQuantity((int) (negative ? -quantity : quantity));
+		return item;
+	}
+
+	/*
+	 * Reads a price up to and including the ~~ that ends it.
+	 * Returns NaN if it isn't a number, leaving a ] or [ that cut it short to be read again.
+	 */
+	private double readPrice() throws IOException {
+		text.setLength(0);
+
+		long mantissa = 0;
+		int significant = 0;
+		int exponent = 0;
+		int exponentSign = 1;
+		int exponentValue = 0;
+		int exponentDigits = 0;
+		boolean exponentSigned = false;
+		boolean negative = false;
+		boolean fraction = false;
+		boolean inExponent = false;
+		boolean exact = true;
+		int digits = 0;
+
+		int c;
+		while(true) {
+			c = next();
+
+			if(c == '~' && peek() == '~') {
+				next();
+				break;
+			}
+			if(c == EOF)
+				return Double.NaN;
+			if(c == ']' || c == '[') {
+				unread();
+				return Double.NaN;
+			}
+
+			text.append((char) c);
+
+			if(inExponent) {
+				if(c >= '0' && c <= '9') {
+					exponentValue = Math.min(exponentValue * 10 + (c - '0'), 1000);
+					exponentDigits++;
+				} else if((c == '-' || c == '+') && exponentDigits == 0 && !exponentSigned) {
+					exponentSigned = true;
+					if(c == '-')
+						exponentSign = -1;
+				} else {
+					return Double.NaN;
+				}
+			} else if(c >= '0' && c <= '9') {
+				digits++;
+
+				// Leading zeros don't count towards the precision
+				if(mantissa == 0 && c == '0') {
+					if(fraction)
+						exponent--;
+					continue;
+				}
+
+				if(significant < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					significant++;
+					if(fraction)
+						exponent--;
+				} else {
+					// Too many digits to keep exactly
+					exact = false;
+					if(!fraction)
+						exponent++;
+				}
+			} else if(c == '.' && !fraction) {
+				fraction = true;
+			} else if(c == '-' && digits == 0 && !negative) {
+				negative = true;
+			} else if((c == 'E' || c == 'e') && digits > 0) {
+				inExponent = true;
+			} else {
+				return Double.NaN;
+			}
+		}
+
+		if(digits == 0 || (inExponent && exponentDigits == 0))
+			return Double.NaN;
+
+		exponent += exponentSign * exponentValue;
+
+		// The mantissa and the power of ten are both exact, so one multiply or divide rounds correctly
+		if(exact && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+			double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+
+		// Otherwise leave it to the library
+		try {
+			return Double.parseDouble(text.toString());
+		} catch(NumberFormatException ex) {
+			return Double.NaN;
+		}
+	}
+
+	// Skips past the closing ] of a malformed item, or up to the [ of the next item if that comes first
+	private void skipItem() throws IOException {
+		int c;
+		while((c = peek()) != EOF && c != '[') {
+			next();
+			if(c == ']')
+				return;
+			if(c == '\\' && escaped)
+				next();
+		}
+	}
+
+	// Returns the next character from the stream
+	private int next() throws IOException {
+		if(position == limit && !fill())
+			return EOF;
+
+		return buffer[position++];
+	}
+
+	// Steps back over the character next just returned, which is still in the buffer
+	private void unread() {
+		position--;
+	}
+
+	// Returns the next character from the stream without moving past it
+	private int peek() throws IOException {
+		if(position == limit && !fill())
+			return EOF;
+
+		return buffer[position];
+	}
+
+	// Reads the next block of the stream into the buffer
+	private boolean fill() throws IOException {
+		int read;
+		do {
+			read = reader.read(buffer, 0, buffer.length);
+		} while(read == 0);
+
+		if(read < 0)
+			return false;
+
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	// Writes a name, escaping the characters used as delimiters
+	private static void appendEscaped(String name, Appendable out) throws IOException {
+		for(int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			if(c == '\\' || c == '~' || c == '[' || c == ']' || c == ',')
+				out.append('\\');
+
+			out.append(c);
+		}
+	}
+
+	// Writes an int without creating a string for it
+	private static void appendInt(int value, Appendable out) throws IOException {
+		if(value < 0) {
+			out.append('-');
+
+			// The most negative int has no positive counterpart
+			if(value == Integer.MIN_VALUE) {
+				out.append("2147483648");
+				return;
+			}
+			value = -value;
+		}
+
+		int divisor = 1;
+		while(value / divisor >= 10) {
+			divisor *= 10;
+		}
+
+		while(divisor > 0) {
+			out.append((char) ('0' + value / divisor % 10));
+			divisor /= 10;
+		}
+	}
+}
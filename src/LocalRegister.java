@@ -0,0 +1,98 @@
+//////////////////////////////////////////////////////////////////////
+// LocalRegister.java			Author: Justin Brown
+//
+// A register on a CheckoutEngine in this program, with a basket of
+// its own. Lookups are answered from the engine's inventory cache
+// and the sale is kept in the basket, so only committing, the
+// history and reports touch the journal or the database.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LocalRegister implements Register {
+	// What the register runs on, and the sale being rung up
+	private CheckoutEngine engine;
+	private Basket basket;
+
+	// Constructor
+	public LocalRegister(CheckoutEngine engine) {
+		this.engine = engine;
+		basket = engine.openBasket();
+	}
+
+	public InventoryItem scan(long code) {
+		return engine.scan(code);
+	}
+
+	public InventoryItem findByName(String name) {
+		return engine.getInventory().findByName(name);
+	}
+
+	public String[] findActiveNames(String prefix, int limit) {
+		return engine.getInventory().findActiveNames(prefix, limit);
+	}
+
+	public Item addLine(String name, long price, int quantity) {
+		return engine.addLine(basket, name, price, quantity);
+	}
+
+	public ArrayList<Item> addItems(List<InventoryItem> items) {
+		return engine.addItems(basket, items);
+	}
+
+	public ArrayList<Item> getItems() {
+		return basket.getItems();
+	}
+
+	public boolean isEmpty() {
+		return basket.isEmpty();
+	}
+
+	public long getSubTotal() {
+		return basket.getSubTotal();
+	}
+
+	public long getSalesTax() {
+		return basket.getSalesTax();
+	}
+
+	public long getGrandTotal() {
+		return basket.getGrandTotal();
+	}
+
+	public void clear() {
+		basket.clear();
+	}
+
+	public Transaction commit() throws IOException, SQLException {
+		return engine.commitSale(basket);
+	}
+
+	public int[] getHistorySize() throws SQLException {
+		return engine.getHistorySize();
+	}
+
+	public ArrayList<Transaction> getHistory(int afterId) throws SQLException {
+		return engine.getHistory(afterId);
+	}
+
+	public ArrayList<Transaction> getHistoryPage(int maxId, Transaction after, int offset, int limit) throws SQLException {
+		return engine.getHistoryPage(maxId, after, offset, limit);
+	}
+
+	public Transaction loadReceipt(int id) throws SQLException {
+		return engine.loadReceipt(id);
+	}
+
+	public SalesReport runReport(long from, long minTotal, long maxTotal) throws SQLException {
+		return engine.runReport(from, minTotal, maxTotal);
+	}
+
+	// The journal writes the sales it holds to the database, the database itself is left open
+	public void close(long timeoutMs) {
+		engine.close(timeoutMs);
+	}
+}
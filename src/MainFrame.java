@@ -1,9 +1,16 @@
 //////////////////////////////////////////////////////////////////////
 // MainFrame.java			Author: Justin Brown
 //
-// The main class of the program. Initializes the UI, sets up the
-// data, writes to and loads data from the database and responds to UI
-// events.
+// The main class of the program. Initializes the UI and responds to
+// UI events. The sales, inventory and reports behind it are run by a
+// CheckoutEngine, this is one register using it.
+//
+// Started with --connect host:port it is instead one of a
+// StoreServer's registers, for when the server holds the database:
+// items are looked up and sales rung up, saved, listed and reported
+// on there. Add --secret-file path if the server asks for its shared
+// secret. The inventory can't be changed from a connected register,
+// so its tab and the import are turned off.
 //////////////////////////////////////////////////////////////////////
 
 import java.awt.Color;
@@ -17,18 +24,19 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.sql.Clob;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.text.DateFormat;
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.Callable;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -42,36 +50,64 @@ import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.JComboBox;
 
 
 public class MainFrame extends JFrame {	
-	// Database
+	// Database, null when connected to a store server
 	private DatabaseManager dbManager;
 	
-	// The transaction currently being entered
-	private Transaction currentTransaction;
+	// Runs the database work, or the store server's, off the event dispatch thread
+	private AsyncDatabase asyncDb;
+	
+	// Runs the sale and the item lookups off the event dispatch thread, one at a time in the order they were asked for
+	private AsyncDatabase registerTasks;
+	
+	// Rings up, saves and reports on the sales, null when connected to a store server
+	private CheckoutEngine engine;
+	
+	// The engine's inventory, kept in memory and written through to the database
+	private InventoryCache inventory;
+	
+	// The register the sale currently being entered is rung up on, on the engine or the store server
+	private Register register;
+	
+	// Items scanned since the items table was last updated, added together once per frame
+	private ArrayList<InventoryItem> pendingScans;
+	private Timer scanTimer;
+	
+	// How long scans are gathered before the transaction is updated, about one screen refresh
+	private final int SCAN_FRAME_MS = 16;
+	
+	// How often a connected register looks for the sales the other registers have saved
+	private final int HISTORY_REFRESH_MS = 3000;
 	
 	// Reporting variables
-	private double totalRevenue;
-	private double totalSalesTax;
+	private long totalRevenue;
+	private long totalSalesTax;
 	
-	// Hold our currency formatter
-	private NumberFormat currencyFormat;
+	// Shared by the tables, they keep the text of the values they have drawn
+	private CachedFormatRenderer currencyRenderer;
+	private CachedFormatRenderer dateRenderer;
 	
 	// Variables for UI
 	private JPanel contentPane;
 	private JTabbedPane tabbedPane;
-	private JComboBox comboItemName;
+	private ItemPicker comboItemName;
 	private JButton btnAddItem;
 	private JButton btnSavePrint;
 	private JTable tableTransactions;	
 	private JTextField textItemPrice; 
 	private JTextField textItemQuantity;
+	private JTextField textScanCode;
+	private JLabel lblScanStatus;
 	private JTable tableItems;
 	private JLabel lblSubTotalValue;
 	private JLabel lblSalesTaxValue;
@@ -84,11 +120,44 @@ public class MainFrame extends JFrame {
 	private JTextField textAddItemPrice;
 	private JTable tableInventory;
 	private JLabel lblReportGeneratedAt;
+	private JLabel lblWorking;
 
 	/**
 	 * Launch the application.
 	 */
 	public static void main(String[] args) {
+		String host = null;
+		int port = StoreProtocol.DEFAULT_PORT;
+		byte[] secret = null;
+		
+		try {
+			for(int i = 0; i + 1 < args.length; i += 2) {
+				if(args[i].equals("--connect")) {
+					String address = args[i + 1];
+					int colon = address.lastIndexOf(':');
+					host = colon < 0 ? address : address.substring(0, colon);
+					if(colon >= 0)
+						port = Integer.parseInt(address.substring(colon + 1));
+				} else if(args[i].equals("--secret-file")) {
+					secret = StoreProtocol.readSecret(new File(args[i + 1]));
+				} else {
+					throw new IllegalArgumentException(args[i]);
+				}
+			}
+			if(args.length % 2 != 0)
+				throw new IllegalArgumentException(args[args.length - 1]);
+		} catch(IllegalArgumentException ex) {
+			System.out.println("Usage: MainFrame [--connect host:port] [--secret-file path]");
+			System.exit(1);
+		} catch(IOException ex) {
+			System.out.println("Unable to read the shared secret: " + ex.getMessage());
+			System.exit(1);
+		}
+		
+		final String storeHost = host;
+		final int storePort = port;
+		final byte[] storeSecret = secret;
+		
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
 				
@@ -107,7 +176,7 @@ public class MainFrame extends JFrame {
 				
 				// Setup the MainFrame
 				try {
-					MainFrame frame = new MainFrame();
+					MainFrame frame = new MainFrame(storeHost, storePort, storeSecret);
 					frame.setVisible(true);
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -117,41 +186,41 @@ public class MainFrame extends JFrame {
 	}
 	
 	/**
-	 * Constructor.
+	 * Constructor, for a register with the database to itself.
 	 */
 	public MainFrame() {
-		// Try to create our database manager object
-		try {
-			dbManager = new DatabaseManager();
-			
-		// Catch any exceptions and display an error message.
-		} catch (InstantiationException e) {
-			JOptionPane.showMessageDialog(null, e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
-		} catch (IllegalAccessException e) {
-			JOptionPane.showMessageDialog(null, e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
-		} catch (ClassNotFoundException e) {
-			JOptionPane.showMessageDialog(null, "Database driver not found: " + e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
-		}
-		finally	{
-			// If the database wasn't created or we can't connect to it display an error message and exit the application
-			if(dbManager == null || !dbManager.connect())
-			{
-				JOptionPane.showMessageDialog(null, "Unable to connect to database.", "Database Error", JOptionPane.ERROR_MESSAGE);
-				System.exit(0);
-			}
-		}		
+		this(null, 0, null);
+	}
+	
+	/**
+	 * Constructor. Given a host the register is one of the store server's there, secret may be null if the
+	 * server doesn't ask for one. Without one it opens the database itself.
+	 */
+	public MainFrame(String host, int port, byte[] secret) {
+		if(host == null)
+			openDatabase();
+		else
+			connect(host, port, secret);
+		
+		// Saving a sale waits on the disk, and everything waits on the network when connected
+		registerTasks = new AsyncDatabase("Register", 1);
 		
 		// Set the icon for the program
 		setIconImage(Toolkit.getDefaultToolkit().getImage("icon.png"));
 		
-		// Setup our transaction object, we will reuse this for all new transactions
-		currentTransaction = new Transaction();
-		
-		// Setup currency format
-		currencyFormat = NumberFormat.getCurrencyInstance();
+		// Scans are queued as they arrive and added to the transaction together
+		pendingScans = new ArrayList<InventoryItem>();
+		scanTimer = new Timer(SCAN_FRAME_MS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				addScannedItems();
+			}
+		});
+		scanTimer.setRepeats(false);
 		
 		// Setup UI
 		setupUI();
+		if(host != null)
+			setTitle(getTitle() + " - " + host + ":" + port);
 		
 		// Setup the event listeners
 		
@@ -167,7 +236,9 @@ public class MainFrame extends JFrame {
 				
 					// Display the receipt for the selected transaction
 					TransactionsTableModel model = (TransactionsTableModel)tableTransactions.getModel();
-					displayReceipt(model.getRow(row));
+					Transaction t = model.getRow(row);
+					if(t != null)
+						displayReceipt(t);
 				}
 			}
 		});
@@ -187,71 +258,134 @@ public class MainFrame extends JFrame {
         			JOptionPane.showMessageDialog(null, "Please enter values for the name, price and quantity.", "Error", JOptionPane.ERROR_MESSAGE);
         		} else {
         			// Try to parse in the inputs
+        			final long price;
+        			final int quantity;
         			try {
-	        			// Setup the new item
-	        			Item item = new Item();
-	        			
-	        			// Set the item data to the input data
-	        			item.setName(itemName);
-	        			item.setPrice(Double.parseDouble(textItemPrice.getText()));
-	        			item.setQuantity(Integer.parseInt(textItemQuantity.getText()));
-	        			
-	        			// Add the item to our current transaction
-	        			currentTransaction.addItem(item);
-	        			
-	        			// Run the calculate on the transaction so its current
-	        			currentTransaction.calculate();
-	        			
-	        			// Add the item to the UI table
-	        			tableItems.getModel().setValueAt(item, 0, 0);
-	        			
-	        			// Update the totals on the UI
-	        			updateTotals();
-	        			
-	        			// Clear the input fields
-	        			textItemQuantity.setText("");
+	        			price = Money.parse(textItemPrice.getText());
+	        			quantity = Integer.parseInt(textItemQuantity.getText());
 	        			
 	        		// Catch any parse errors and display a message to the user
         			} catch (NumberFormatException e) {
         				JOptionPane.showMessageDialog(null, "Please enter a valid number for the price and quantity.", "Error", JOptionPane.ERROR_MESSAGE);
-        			}        			
+        				return;
+        			}
+        			
+        			// Add the item to the sale, which keeps its totals current
+        			final String name = itemName;
+        			registerTasks.submit(new Callable<Item>() {
+        				public Item call() throws Exception {
+        					return register.addLine(name, price, quantity);
+        				}
+        			}, new DatabaseCallback<Item>() {
+        				public void succeeded(Item item) {
+        					// Add the item to the UI table
+        					tableItems.getModel().setValueAt(item, 0, 0);
+        					
+        					// Update the totals on the UI
+        					updateTotals();
+        					
+        					// Clear the input fields
+        					textItemQuantity.setText("");
+        				}
+        				
+        				public void failed(Exception ex) {
+        					// The register turns down a line out of range, saying why
+        					if(ex instanceof IllegalArgumentException)
+        						JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        					else
+        						JOptionPane.showMessageDialog(null, "Unable to add the item: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        				}
+        			});
         		}
         	}
         });
 		
+		// A scanner types the code and presses enter, look it up and queue the item
+		textScanCode.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				String text = textScanCode.getText().trim();
+				textScanCode.setText("");
+				
+				if(text.equals(""))
+					return;
+				
+				// Not a number, so not a code either
+				final long code;
+				try {
+					code = Long.parseLong(text);
+				} catch(NumberFormatException ex) {
+					unknownCode(text);
+					return;
+				}
+				
+				final String scanned = text;
+				registerTasks.submit(new Callable<InventoryItem>() {
+					public InventoryItem call() throws Exception {
+						return register.scan(code);
+					}
+				}, new DatabaseCallback<InventoryItem>() {
+					public void succeeded(InventoryItem item) {
+						// Don't stop the scanning with a dialog, just say so and carry on
+						if(item == null) {
+							unknownCode(scanned);
+							return;
+						}
+						
+						lblScanStatus.setText(item.getName());
+						pendingScans.add(item);
+						
+						// The first scan of a burst starts the timer, the rest join it
+						if(!scanTimer.isRunning())
+							scanTimer.start();
+					}
+					
+					public void failed(Exception ex) {
+						Toolkit.getDefaultToolkit().beep();
+						lblScanStatus.setText("Unable to look up " + scanned);
+						System.out.println("Unable to look up " + scanned + ": " + ex.getMessage());
+					}
+				});
+			}
+		});
+		
 		// Listen for clicks on the save & print receipt button
 		btnSavePrint.addActionListener(new ActionListener() {
         	public void actionPerformed(ActionEvent e) {
         		
-        		// Make sure the current transaction has at least one item entered, otherwise display an error message
-        		if(currentTransaction.getItems().size() <= 0) {
-        			JOptionPane.showMessageDialog(null, "Please add items to the transaction before saving it.", "Error", JOptionPane.ERROR_MESSAGE);
-        		} else {
+        		// Include anything scanned in the last moment
+        		addScannedItems();
         		
-	        		// Update the date on the transaction
-	        		currentTransaction.setDate(new Date());
-	        		
-	        		// Add the transaction to the UI        		
-	        		tableTransactions.getModel().setValueAt(currentTransaction, 0, 0);
-	        		
-	        		// Generate the receipt
-	        		displayReceipt(currentTransaction);
-	        		
-	        		// Save the transaction to the data file
-	        		saveTransaction(currentTransaction);	        		
-	        		
-	        		// Reset the current transaction
-	        		resetTransaction();
-	        		
-	        		// Refresh transactions table
-	        		refreshTransactionsTable();
-        		}
+        		// Save the sale once the lines asked for before it are in, then show its receipt and start the next
+        		saveTransaction();
         	}
         });
 		
-		refreshTransactionsTable();		
-		refreshInventoryTable();
-		refreshItemComboBox();
+		loadTransactionsTable();
+		
+		if(engine != null) {
+			loadSalesStore();
+			
+			// Show the journalled sales as they reach the database
+			engine.addSaleListener(new ChangeListener() {
+				public void stateChanged(ChangeEvent event) {
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							refreshTransactionsTable();
+						}
+					});
+				}
+			});
+		} else {
+			// The server doesn't say when sales are saved, by this register or another, so look for them now and then
+			Timer historyTimer = new Timer(HISTORY_REFRESH_MS, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					refreshTransactionsTable();
+				}
+			});
+			historyTimer.start();
+		}
+		
+		loadInventory();
 		
 		
         // Add a listener for when the application closes
@@ -265,70 +399,187 @@ public class MainFrame extends JFrame {
 	} // End of constructor
 	
 	/*
-	 * This method saves a transaction to the data file.
-	 * It formats the data in a way that can be parsed in again later.
+	 * Opens the database and the sale journal for this register alone, exits if it can't
 	 */
-	public void saveTransaction(Transaction transaction) {
+	private void openDatabase() {
+		// Try to create our database manager object
 		try {
-			String itemBlob = "";
-			// Loop through each item and add it to the item string
-			for(int i = 0; i < transaction.getItems().size(); i++) {
-				if(i != 0) {
-					itemBlob += ","; // Add comma but not on the first item 	
-				}
-				
-				itemBlob += "["; // Start of item
-				
-				// Add the data
-				itemBlob += transaction.getItems().get(i).getName() + "~~";
-				itemBlob += transaction.getItems().get(i).getPrice() + "~~";
-				itemBlob += String.valueOf(transaction.getItems().get(i).getQuantity());
-				
-				itemBlob += "]"; // End of item
-			}
-			
-			String psStr = "INSERT INTO " + dbManager.getDbName() + "." + dbManager.TABLE_TRANSACTIONS +
-			"(DATE, SUBTOTAL, SALES_TAX, GRAND_TOTAL, ITEMS) " +
-			"VALUES ('" + Timestamp.valueOf(transaction.getDateFormatted()) + "', " +
-			transaction.getSubTotal() + ", " +
-			transaction.getSalesTax() + ", " +
-			transaction.getGrandTotal() + ", " +
-			"'" + itemBlob + "')";
-			
-			PreparedStatement ps = dbManager.getConnection().prepareStatement(psStr);
-			ps.executeUpdate();
-			ps.close();
+			dbManager = new DatabaseManager();
 			
-			System.out.println("Saved to database.");
+		// Catch any exceptions and display an error message.
+		} catch (InstantiationException e) {
+			JOptionPane.showMessageDialog(null, e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+		} catch (IllegalAccessException e) {
+			JOptionPane.showMessageDialog(null, e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+		} catch (ClassNotFoundException e) {
+			JOptionPane.showMessageDialog(null, "Database driver not found: " + e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+		}
+		finally	{
+			// If the database wasn't created or we can't connect to it display an error message and exit the application
+			if(dbManager == null || !dbManager.connect())
+			{
+				JOptionPane.showMessageDialog(null, "Unable to connect to database.", "Database Error", JOptionPane.ERROR_MESSAGE);
+				System.exit(0);
+			}
+		}		
+		
+		// Database work runs on its own threads, leaving a pooled connection free for background jobs
+		asyncDb = new AsyncDatabase(dbManager, 3);
+		
+		// Sales are journalled to disk and written to the database in batches, replay any the database missed
+		engine = new CheckoutEngine(dbManager, new File(dbManager.getDbName() + ".journal"));
+		inventory = engine.getInventory();
+		try {
+			engine.open();
+		} catch(Exception e) {
+			JOptionPane.showMessageDialog(null, "Unable to open the sale journal: " + e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+			System.exit(0);
 		}
-		catch (SQLException ex) {
-			JOptionPane.showMessageDialog(null, "Unable to save the transaction to database.", "Error", JOptionPane.ERROR_MESSAGE);
+		
+		// The sale is rung up on a basket of the engine's, it is emptied and reused for each new sale
+		register = new LocalRegister(engine);
+	}
+	
+	/*
+	 * Connects to a store server for a register that shares it with others, exits if it can't
+	 */
+	private void connect(String host, int port, byte[] secret) {
+		try {
+			register = new RemoteRegister(host, port, secret);
+		} catch(IOException e) {
+			JOptionPane.showMessageDialog(null, "Unable to connect to the store server at " + host + ":" + port + ".\n\r" + e.getMessage(), "Store Server Error", JOptionPane.ERROR_MESSAGE);
+			System.exit(0);
 		}
 		
+		// The server is asked for the history, receipts and reports on these threads, there is no database here
+		asyncDb = new AsyncDatabase("Store server", 3);
+	}
+	
+	/*
+	 * This method saves the sale being rung up to the sale journal, or the store server's, in the background.
+	 * Once it is safe on disk its receipt is shown and the next sale started, the journal writes it to the
+	 * database in the background and the recent transactions display picks it up from there. If it can't be
+	 * saved it is kept on screen so it isn't lost.
+	 */
+	public void saveTransaction() {
+		// One save at a time, a second click would only find the basket empty
+		btnSavePrint.setEnabled(false);
+		
+		registerTasks.submit(new Callable<Transaction>() {
+			public Transaction call() throws Exception {
+				return register.commit();
+			}
+		}, new DatabaseCallback<Transaction>() {
+			public void succeeded(Transaction sale) {
+				btnSavePrint.setEnabled(true);
+				
+				// Generate the receipt
+				displayReceipt(sale);
+				
+				// The basket is empty now, clear the screen for the next sale
+				clearTransaction();
+			}
+			
+			public void failed(Exception ex) {
+				btnSavePrint.setEnabled(true);
+				
+				// An empty basket, or a line the register won't save, says why
+				if(ex instanceof IllegalArgumentException)
+					JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+				else
+					JOptionPane.showMessageDialog(null, "Unable to save the transaction: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
 	}
 
 	/*
 	 * Resets the current transaction data, removing any items added and resetting the totals
 	 */
 	public void resetTransaction() {
+		// Scans not yet added belong to the transaction being cleared
+		pendingScans.clear();
+		scanTimer.stop();
+		
+		// Empty the sale, if the store server can't it is left on screen as it is
+		registerTasks.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				register.clear();
+				return null;
+			}
+		}, new DatabaseCallback<Void>() {
+			public void succeeded(Void result) {
+				clearTransaction();
+			}
+			
+			public void failed(Exception ex) {
+				JOptionPane.showMessageDialog(null, "Unable to clear the transaction: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	
+	/*
+	 * Clears the items table and totals once the register's sale is empty
+	 */
+	private void clearTransaction() {
 		// Reset our items table
 		((ItemsTableModel) tableItems.getModel()).reset();
 		
-		// Create a new transaction
-		currentTransaction = new Transaction();
-		
 		// Update the UI
 		updateTotals();
 	}
 	
+	/*
+	 * Says a scanned code isn't an item's, without stopping the scanning with a dialog
+	 */
+	private void unknownCode(String text) {
+		Toolkit.getDefaultToolkit().beep();
+		lblScanStatus.setText("Unknown code " + text);
+	}
+	
+	/*
+	 * Adds the items scanned since the last call to the current transaction. The totals are worked out
+	 * and the items table and totals redrawn once for the lot, however many were scanned.
+	 */
+	private void addScannedItems() {
+		scanTimer.stop();
+		
+		if(pendingScans.isEmpty())
+			return;
+		
+		// Scans arriving from here on start the next burst
+		final ArrayList<InventoryItem> scans = pendingScans;
+		pendingScans = new ArrayList<InventoryItem>();
+		
+		registerTasks.submit(new Callable<ArrayList<Item>>() {
+			public ArrayList<Item> call() throws Exception {
+				return register.addItems(scans);
+			}
+		}, new DatabaseCallback<ArrayList<Item>>() {
+			public void succeeded(ArrayList<Item> items) {
+				((ItemsTableModel) tableItems.getModel()).addRows(items);
+				updateTotals();
+			}
+			
+			public void failed(Exception ex) {
+				// Some may have been added before it failed, show the transaction as it stands
+				ItemsTableModel model = (ItemsTableModel) tableItems.getModel();
+				model.reset();
+				model.addRows(register.getItems());
+				updateTotals();
+				
+				JOptionPane.showMessageDialog(null, "Unable to add the scanned items: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	
 	/*
 	 * Update the totals of the current transaction
 	 */
 	public void updateTotals() {
 		// Update the totals on the UI
-		lblSubTotalValue.setText(currencyFormat.format(currentTransaction.getSubTotal()));
-		lblSalesTaxValue.setText(currencyFormat.format(currentTransaction.getSalesTax()));
-		lblGrandTotalValue.setText(currencyFormat.format(currentTransaction.getGrandTotal()));
+		lblSubTotalValue.setText(Money.format(register.getSubTotal()));
+		lblSalesTaxValue.setText(Money.format(register.getSalesTax()));
+		lblGrandTotalValue.setText(Money.format(register.getGrandTotal()));
 	}
 	
 	/*
@@ -336,7 +587,18 @@ public class MainFrame extends JFrame {
 	 */
 	public void exit() {
 		try {
-		    dbManager.getConnection().close();
+			// Let a sale being saved finish, then give the journal a chance to write the sales it holds,
+			// any it can't are replayed next time
+			if(!registerTasks.shutdown(10000))
+				System.out.println("Register work still running at exit.");
+			register.close(10000);
+			
+			// Let any database work in progress finish before closing the database
+			if(!asyncDb.shutdown(10000))
+				System.out.println("Database work still running at exit.");
+			
+			if(dbManager != null)
+				dbManager.close();
 		    
 		} catch (SQLException e) {
 			JOptionPane.showMessageDialog(null, "An error occured: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -346,7 +608,38 @@ public class MainFrame extends JFrame {
 	/*
 	 * Takes a transaction as a parameter and creates a new tab on the UI with the receipt details
 	 */
-	public void displayReceipt(Transaction t) {		
+	public void displayReceipt(final Transaction t) {		
+		// Transactions read from the history only hold their totals, load the items first
+		if(t.getID() > 0 && t.getItems().isEmpty()) {
+			asyncDb.submit(new Callable<Transaction>() {
+				public Transaction call() throws Exception {
+					return register.loadReceipt(t.getID());
+				}
+			}, new DatabaseCallback<Transaction>() {
+				public void succeeded(Transaction loaded) {
+					// The receipt may have been opened twice while loading
+					if(t.getItems().isEmpty()) {
+						for(Item item : loaded.getItems()) {
+							t.addItem(item);
+						}
+					}
+					
+					showReceipt(t);
+				}
+				
+				public void failed(Exception ex) {
+					JOptionPane.showMessageDialog(null, "Unable to load the items for this transaction.\n\r" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+				}
+			});
+		} else {
+			showReceipt(t);
+		}
+	}
+	
+	/*
+	 * Creates the receipt tab for a transaction that has its items
+	 */
+	private void showReceipt(Transaction t) {
 		// Add a new tab
         JPanel receiptPanel = new JPanel();
         tabbedPane.addTab("Receipt", null, receiptPanel, null);
@@ -371,6 +664,7 @@ public class MainFrame extends JFrame {
 		receiptPanel.add(lblDate);
 		
 		JTable listItems = new JTable(new ItemsTableModel());
+		listItems.setDefaultRenderer(Long.class, currencyRenderer);
 		listItems.setFillsViewportHeight(true);
 		listItems.setEnabled(false);
 		
@@ -397,18 +691,18 @@ public class MainFrame extends JFrame {
 		lblGrandTotal1.setBounds(301, 135, 86, 14);
 		receiptPanel.add(lblGrandTotal1);
 		
-		JLabel lblGrandTotalValue = new JLabel(currencyFormat.format(t.getGrandTotal()));
+		JLabel lblGrandTotalValue = new JLabel(Money.format(t.getGrandTotal()));
 		lblGrandTotalValue.setFont(new Font("Tahoma", Font.BOLD, 11));
 		lblGrandTotalValue.setHorizontalAlignment(SwingConstants.RIGHT);
 		lblGrandTotalValue.setBounds(402, 135, 103, 14);
 		receiptPanel.add(lblGrandTotalValue);
 		
-		JLabel lblSalesTaxValue = new JLabel(currencyFormat.format(t.getSalesTax()));
+		JLabel lblSalesTaxValue = new JLabel(Money.format(t.getSalesTax()));
 		lblSalesTaxValue.setHorizontalAlignment(SwingConstants.RIGHT);
 		lblSalesTaxValue.setBounds(402, 94, 103, 14);
 		receiptPanel.add(lblSalesTaxValue);
 		
-		JLabel lblSubTotalValue = new JLabel(currencyFormat.format(t.getSubTotal()));
+		JLabel lblSubTotalValue = new JLabel(Money.format(t.getSubTotal()));
 		lblSubTotalValue.setHorizontalAlignment(SwingConstants.RIGHT);
 		lblSubTotalValue.setBounds(402, 69, 103, 14);
 		receiptPanel.add(lblSubTotalValue);
@@ -430,6 +724,10 @@ public class MainFrame extends JFrame {
 	 * Setup all the default UI elements
 	 */
 	public void setupUI() {
+		// Setup the renderers the tables share
+		currencyRenderer = new CachedFormatRenderer(new CentsFormat(), SwingConstants.RIGHT);
+		dateRenderer = new CachedFormatRenderer(DateFormat.getInstance(), SwingConstants.LEFT);
+		
 		// Setup the JFrame
 		setResizable(false);		
 		setTitle("Project 2");
@@ -443,6 +741,28 @@ public class MainFrame extends JFrame {
 		JMenu menuFile = new JMenu("File");
 		menuBar.add(menuFile);
 		
+		final JMenuItem menuButtonImport = new JMenuItem("Import Inventory...");
+		menuButtonImport.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent a) {
+				JFileChooser chooser = new JFileChooser();
+				chooser.setDialogTitle("Import Inventory (name, price, code, active)");
+				if(chooser.showOpenDialog(MainFrame.this) != JFileChooser.APPROVE_OPTION)
+					return;
+				
+				// One import at a time
+				menuButtonImport.setEnabled(false);
+				importInventory(chooser.getSelectedFile(), new Runnable() {
+					public void run() {
+						menuButtonImport.setEnabled(true);
+					}
+				});
+			}
+		});
+		menuFile.add(menuButtonImport);
+		
+		// A connected register can't change the store server's inventory
+		menuButtonImport.setEnabled(engine != null);
+		
 		JMenuItem menButtonExit = new JMenuItem("Exit");
 		menButtonExit.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent a) {
@@ -471,7 +791,9 @@ public class MainFrame extends JFrame {
 		setContentPane(contentPane);
 		contentPane.setLayout(null);
 		
-		tableTransactions = new JTable(new TransactionsTableModel());
+		tableTransactions = new JTable(new TransactionsTableModel(asyncDb, register));
+		tableTransactions.setDefaultRenderer(Date.class, dateRenderer);
+		tableTransactions.setDefaultRenderer(Long.class, currencyRenderer);
 		tableTransactions.setPreferredScrollableViewportSize(new Dimension(500, 30));
 		tableTransactions.setFillsViewportHeight(true);		
 		
@@ -488,6 +810,19 @@ public class MainFrame extends JFrame {
         lblRecentEntries.setBounds(10, 360, 95, 14);
         contentPane.add(lblRecentEntries);
         
+        // Shown while the database is busy in the background
+        lblWorking = new JLabel("");
+        lblWorking.setHorizontalAlignment(SwingConstants.RIGHT);
+        lblWorking.setFont(new Font("Calibri", Font.ITALIC, 11));
+        lblWorking.setBounds(334, 360, 200, 14);
+        contentPane.add(lblWorking);
+        
+        asyncDb.addChangeListener(new ChangeListener() {
+        	public void stateChanged(ChangeEvent event) {
+        		lblWorking.setText(asyncDb.getInFlight() > 0 ? "Working..." : "");
+        	}
+        });
+        
         tabbedPane = new JTabbedPane(JTabbedPane.TOP);
         tabbedPane.setBounds(10, 11, 524, 338);
         contentPane.add(tabbedPane);
@@ -526,6 +861,20 @@ public class MainFrame extends JFrame {
         tabTransactionPanel.add(textItemQuantity);
         textItemQuantity.setColumns(10);
         
+        JLabel lblScanCode = new JLabel("Scan Code");
+        lblScanCode.setBounds(260, 79, 80, 14);
+        tabTransactionPanel.add(lblScanCode);
+        
+        textScanCode = new JTextField();
+        textScanCode.setToolTipText("Scan or type an item code and press enter");
+        textScanCode.setBounds(345, 76, 160, 20);
+        tabTransactionPanel.add(textScanCode);
+        textScanCode.setColumns(10);
+        
+        lblScanStatus = new JLabel("");
+        lblScanStatus.setBounds(345, 101, 160, 14);
+        tabTransactionPanel.add(lblScanStatus);
+        
         JLabel lblSubTotal = new JLabel("Sub Total:");
         lblSubTotal.setBounds(345, 170, 70, 14);
         tabTransactionPanel.add(lblSubTotal);
@@ -571,6 +920,7 @@ public class MainFrame extends JFrame {
         tabTransactionPanel.add(btnClear);
         
         tableItems = new JTable(new ItemsTableModel());
+        tableItems.setDefaultRenderer(Long.class, currencyRenderer);
         tableItems.setFillsViewportHeight(true);
         
         JScrollPane scrollPaneItemTable = new JScrollPane(tableItems);
@@ -590,7 +940,7 @@ public class MainFrame extends JFrame {
         btnClearAllItems.setBounds(345, 276, 160, 23);
         tabTransactionPanel.add(btnClearAllItems);
         
-        comboItemName = new JComboBox();
+        comboItemName = new ItemPicker(registerTasks, register);
         comboItemName.addActionListener(new ActionListener() {
         	public void actionPerformed(ActionEvent event) {
         		String name = (String)comboItemName.getSelectedItem();
@@ -599,31 +949,37 @@ public class MainFrame extends JFrame {
         		if(name == null || name.equals(""))
         			return;
         		
-        		// Try to load the default price for this item
-        		try {
-        			// Setup the query
-        			String query = "SELECT (DEFAULT_PRICE) FROM " + dbManager.getDbName() + "." + dbManager.TABLE_INVENTORY +
-        					" WHERE NAME = '" + name + "'";
-        			
-        			// Execute it
-        			PreparedStatement ps = dbManager.getConnection().prepareStatement(query);
-        			ResultSet result = ps.executeQuery();
-        			
-        			
-        			while(result.next()) {
+        		// Look up the default price for this item
+        		final String picked = name;
+        		registerTasks.submit(new Callable<InventoryItem>() {
+        			public InventoryItem call() throws Exception {
+        				return register.findByName(picked);
+        			}
+        		}, new DatabaseCallback<InventoryItem>() {
+        			public void succeeded(InventoryItem item) {
+        				// Something else may have been picked while it was looked up
+        				if(!picked.equals(comboItemName.getSelectedItem()))
+        					return;
+        				
+        				// A name that isn't in the inventory is sold at whatever price is typed in
+        				if(item == null) {
+        					textItemPrice.setText("");
+        					return;
+        				}
+        				
         				// Add the default price into the item price text field
-        				textItemPrice.setText(String.format("%.2f", result.getDouble("DEFAULT_PRICE")));
+        				textItemPrice.setText(Money.toPlainString(item.getPrice()));
+        				
+        				// Request the window to set focus to the quantity field
+        				textItemQuantity.requestFocusInWindow();
         			}
         			
-        			// Request the window to set focus to the quantity field
-        			textItemQuantity.requestFocusInWindow();
-        			
-        			result.close();
-        			ps.close();
-        			
-        		} catch(SQLException e) {
-        			JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        		}
+        			public void failed(Exception ex) {
+        				// Sold at whatever price is typed in
+        				if(picked.equals(comboItemName.getSelectedItem()))
+        					textItemPrice.setText("");
+        			}
+        		});
         	}
         });
         comboItemName.setBounds(147, 51, 268, 20);
@@ -705,29 +1061,18 @@ public class MainFrame extends JFrame {
         comboReportByValue.setBounds(156, 84, 327, 20);
         tabReportPanel.add(comboReportByValue);
         
-        JButton btnGenerate = new JButton("Generate");
+        final JButton btnGenerate = new JButton("Generate");
         
         // Listener to generate a report when the button is clicked
         btnGenerate.addActionListener(new ActionListener() {
         	public void actionPerformed(ActionEvent event) {
-        		String query = "SELECT * FROM " + dbManager.getDbName() + "." + dbManager.TABLE_TRANSACTIONS;
-        				
-        		String byDate = (String)comboReportByDate.getSelectedItem();
-        		String byValue = (String)comboReportByValue.getSelectedItem();
-        		
-        		// Check if we need to use a where clause
-        		if(!byDate.equals("All") || !byValue.equals("All"))
-        		{
-        			query += " WHERE";
-        		}
-        		
-        		// Used to calculate the dates
-        		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        		// Used to calculate the dates, "All" starts from the beginning of time
         		Date pastDate = new Date();
+        		Timestamp from = new Timestamp(0);
         		long DAY_IN_MS = 1000 * 60 * 60 * 24;
         		long HOUR_IN_MS = 1000 * 60 * 60;
         		
-        		// Add the appropriate date where clause if necessary
+        		// Work out the start date if necessary
         		switch(comboReportByDate.getSelectedIndex()) {
         			case 0:
         				// Do nothing, this is the all option
@@ -736,44 +1081,33 @@ public class MainFrame extends JFrame {
         			// Last Hour
         			case 1:        				
         				// Subtract one hour from the current time
-        				pastDate = new Date(pastDate.getTime() - HOUR_IN_MS);
-        				
-        				query += " DATE >= '" + Timestamp.valueOf(dateFormat.format(pastDate)) + "'";
+        				from = new Timestamp(pastDate.getTime() - HOUR_IN_MS);
         				break;
         				
         			// Last Day
         			case 2:
-        				pastDate = new Date(pastDate.getTime() - DAY_IN_MS);
-        				
-        				query += " DATE >= '" + Timestamp.valueOf(dateFormat.format(pastDate)) + "'";
+        				from = new Timestamp(pastDate.getTime() - DAY_IN_MS);
         				break;
         				
         			// Last Week
         			case 3:
-        				pastDate = new Date(pastDate.getTime() - (7 * DAY_IN_MS));
-        				
-        				query += " DATE >= '" + Timestamp.valueOf(dateFormat.format(pastDate)) + "'";
+        				from = new Timestamp(pastDate.getTime() - (7 * DAY_IN_MS));
         				break;
         				
         			// Last Month
         			case 4:
-        				pastDate = new Date(pastDate.getTime() - (30 * DAY_IN_MS));
-        				
-        				query += " DATE >= '" + Timestamp.valueOf(dateFormat.format(pastDate)) + "'";
+        				from = new Timestamp(pastDate.getTime() - (30 * DAY_IN_MS));
         				break;
         				
         			// Last Year
         			case 5:
-        				pastDate = new Date(pastDate.getTime() - (365 * DAY_IN_MS));
-        				
-        				query += " DATE >= '" + Timestamp.valueOf(dateFormat.format(pastDate)) + "'";
+        				from = new Timestamp(pastDate.getTime() - (365 * DAY_IN_MS));
         				break;
         		}
         		
-        		// Add the AND keyword if we have both a date & value to limit by
-        		if(comboReportByDate.getSelectedIndex() != 0 && comboReportByValue.getSelectedIndex() != 0)
-					query += " AND";
-				
+        		// The grand total range in cents, "All" matches every value
+        		long min = DatabaseManager.NO_MINIMUM;
+        		long max = DatabaseManager.NO_MAXIMUM;
         		
         		switch(comboReportByValue.getSelectedIndex()) {
         			// All
@@ -783,59 +1117,61 @@ public class MainFrame extends JFrame {
         			
         			// < $100
         			case 1:        				
-        				query += " GRAND_TOTAL < 100.00";
+        				max = 10000;
         				break;
         				
         			// $100 - $500
         			case 2:
-        				query += " GRAND_TOTAL >= 100.00 AND GRAND_TOTAL < 500.00";
+        				min = 10000;
+        				max = 50000;
         				break;
         				
         			// $500 - $1000
         			case 3:
-        				query += " GRAND_TOTAL >= 500.00 AND GRAND_TOTAL < 1000.00";
+        				min = 50000;
+        				max = 100000;
         				break;
         				
         			// $1000+
         			case 4:
-        				query += " GRAND_TOTAL >= 1000.00";
+        				min = 100000;
         				break;
         		}
         		
-        		PreparedStatement ps;
-        		try {
-        			// Prepare and run the query
-        			ps = dbManager.getConnection().prepareStatement(query);
-        			ResultSet results = ps.executeQuery();
-        			
-        			// Setup the number counters
-        			int numberOfTransactions = 0;
-            		double netincome = 0;
-        			totalRevenue = 0;
-        			totalSalesTax = 0;
-        			
-        			// Loop through and add the numbers to our totals
-        			while(results.next()) {
-        				numberOfTransactions++;
+        		final Timestamp fromDate = from;
+        		final long minTotal = min;
+        		final long maxTotal = max;
+        		
+        		// Only one report at a time
+        		btnGenerate.setEnabled(false);
+        		
+        		// Run the report
+        		asyncDb.submit(new Callable<SalesReport>() {
+        			public SalesReport call() throws Exception {
+        				return register.runReport(fromDate.getTime(), minTotal, maxTotal);
+        			}
+        		}, new DatabaseCallback<SalesReport>() {
+        			public void succeeded(SalesReport report) {
+        				btnGenerate.setEnabled(true);
+        				
+        				totalRevenue = report.getTotalRevenue();
+        				totalSalesTax = report.getTotalSalesTax();
+        				long netincome = report.getNetIncome();
         				
-        				totalRevenue += results.getDouble("GRAND_TOTAL");
-        				totalSalesTax += results.getDouble("SALES_TAX");
+        				// Update the report ui elements
+        				numberOfTransactionsValue.setText(NumberFormat.getIntegerInstance().format(report.getNumberOfTransactions()));
+        				lblRevenueValue.setText(Money.format(totalRevenue));
+        				lblNetSalesTaxValue.setText(Money.format(totalSalesTax));
+        				lblNetIncomeValue.setText(Money.format(netincome));
+        				lblReportGeneratedAt.setText("Generated At: " + new Date().toString());
         			}
-        			// Calculate net income
-        			netincome = totalRevenue - totalSalesTax;
-        		
-        			// Update the report ui elements
-        			numberOfTransactionsValue.setText(NumberFormat.getIntegerInstance().format(numberOfTransactions));
-            		lblRevenueValue.setText(currencyFormat.format(totalRevenue));
-            		lblNetSalesTaxValue.setText(currencyFormat.format(totalSalesTax));
-            		lblNetIncomeValue.setText(currencyFormat.format(netincome));
-            		lblReportGeneratedAt.setText("Generated At: " + new Date().toString());
-            	
-            	// Catch any SQL errors
-        		} catch(SQLException e) {
-        			JOptionPane.showMessageDialog(null, "An error occured generating the report:\n\r" + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        			return;
-        		}        		
+        			
+        			// Catch any SQL errors
+        			public void failed(Exception ex) {
+        				btnGenerate.setEnabled(true);
+        				JOptionPane.showMessageDialog(null, "An error occured generating the report:\n\r" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        			}
+        		});
         	}
         });
         btnGenerate.setBounds(156, 115, 89, 23);
@@ -858,6 +1194,12 @@ public class MainFrame extends JFrame {
         
         JPanel tabInventoryPanel = new JPanel();
         tabbedPane.addTab("Inventory", null, tabInventoryPanel, null);
+        
+        // A connected register can't change the store server's inventory
+        if(engine == null) {
+        	tabbedPane.setEnabledAt(tabbedPane.getTabCount() - 1, false);
+        	tabbedPane.setToolTipTextAt(tabbedPane.getTabCount() - 1, "The inventory is kept by the store server");
+        }
         tabInventoryPanel.setLayout(null);
         
         JLabel lblInventory = new JLabel("Item Inventory");
@@ -900,52 +1242,40 @@ public class MainFrame extends JFrame {
         				return;
         			}
         			
-        			double price;
+        			final long price;
         			try {
-        				price = Double.parseDouble(textAddItemPrice.getText());
+        				price = Money.parse(textAddItemPrice.getText());
         			} catch(NumberFormatException e) {
         				JOptionPane.showMessageDialog(null, "You must enter a valid default price.", "Error", JOptionPane.ERROR_MESSAGE);
         				return;
         			}
         			
-        			String query = "INSERT INTO " + dbManager.getDbName() + "." + dbManager.TABLE_INVENTORY +
-        				" (NAME, DEFAULT_PRICE) " +
-        				"VALUES('" + textAddItemName.getText() + "', " +
-        				price + ")";
+        			final String name = textAddItemName.getText();
         			
-        			try {
-        				// Get a prepared statement, the 2nd argument allows us to get the id of the inserted row
-						PreparedStatement ps = dbManager.getConnection().prepareStatement(query, PreparedStatement.RETURN_GENERATED_KEYS);
-						ps.executeUpdate();
-						
-						
-						ResultSet rs = ps.getGeneratedKeys();
-						
-						while(rs.next()) {
-							int id = rs.getInt(1);
-							
-							InventoryItem addedItem = new InventoryItem();
-							addedItem.setID(id);
-							addedItem.setName(textAddItemName.getText());
-							addedItem.setPrice(price);
-							addedItem.setActive(true);							
-							
-							// Set the active column
-							tableInventory.getModel().setValueAt(addedItem, 0, 0);
-						}
-						
-						ps.close();
-						
-						// Clear the fields
-						textAddItemName.setText("");
-						textAddItemPrice.setText("");
-						
-						// Refresh the combo box that holds the inventory items
-						refreshItemComboBox();
-						
-					} catch (SQLException e) {
-						JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-					}
+        			// Insert the item, it comes back with its new id
+        			asyncDb.submit(new DatabaseTask<InventoryItem>() {
+        				public InventoryItem run(DatabaseManager db) throws SQLException {
+        					return inventory.addItem(name, price, 0);
+        				}
+        			}, new DatabaseCallback<InventoryItem>() {
+        				public void succeeded(InventoryItem addedItem) {
+        					// Add it to the inventory table
+        					((InventoryTableModel)tableInventory.getModel()).upsert(addedItem);
+        					
+        					// Clear the fields, unless something else has been typed in the meantime
+        					if(textAddItemName.getText().equals(name)) {
+        						textAddItemName.setText("");
+        						textAddItemPrice.setText("");
+        					}
+        					
+        					// Refresh the combo box that holds the inventory items
+        					refreshItemComboBox();
+        				}
+        				
+        				public void failed(Exception ex) {
+        					JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        				}
+        			});
         		} catch (NumberFormatException e) {
         			JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         		}
@@ -965,11 +1295,11 @@ public class MainFrame extends JFrame {
         tableInventory.getColumnModel().getColumn(2).setPreferredWidth(81);
         tableInventory.getColumnModel().getColumn(3).setPreferredWidth(100);
         
-        // Setup the display of the inventory table
-        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
-        centerRenderer.setHorizontalAlignment(JLabel.CENTER);
-        tableInventory.getColumnModel().getColumn(0).setCellRenderer(centerRenderer);
-        tableInventory.getColumnModel().getColumn(2).setCellRenderer(centerRenderer);
+        // Setup the display of the inventory table, the id and price are centered
+        NumberFormat idFormat = NumberFormat.getIntegerInstance();
+        idFormat.setGroupingUsed(false);
+        tableInventory.getColumnModel().getColumn(0).setCellRenderer(new CachedFormatRenderer(idFormat, JLabel.CENTER));
+        tableInventory.getColumnModel().getColumn(2).setCellRenderer(new CachedFormatRenderer(new CentsFormat(), JLabel.CENTER));
         
         // Listen for double clicks on the inventory table
  		// This will allow for editing of the inventory item
@@ -1007,32 +1337,7 @@ public class MainFrame extends JFrame {
         			return;
         		}
         		
-        		// Loop through the rows and attempt to update them
-        		for(int row : rows) {
-        			InventoryTableModel model = (InventoryTableModel)tableInventory.getModel();
-        			InventoryItem item = model.getRow(row);
-        			
-        			// If the item is already active no need to update database, just continue to next row
-        			if(item.isActive())
-        				continue;
-        			
-        			String query = "UPDATE " + dbManager.getDbName() + "." + dbManager.TABLE_INVENTORY +
-        					" SET ACTIVE = 1" +
-        					" WHERE ITEM_ID = " + item.getID();
-        			
-        			PreparedStatement ps;
-					try {
-						ps = dbManager.getConnection().prepareStatement(query);
-						ps.executeUpdate();
-						ps.close();
-					} catch (SQLException e) {
-						JOptionPane.showMessageDialog(null, "Unable to activate \"" + item.getName() + "\"\n\r" + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-					}        			
-        		}
-        		
-        		// Refresh the ui displays
-        		refreshInventoryTable();
-        		refreshItemComboBox();
+        		setItemsActive(selectedInventoryIds(rows), true);
         	}
         });
         btnActivateSelected.setBounds(126, 276, 129, 23);
@@ -1051,38 +1356,59 @@ public class MainFrame extends JFrame {
         			return;
         		}
         		
-        		// Loop through the rows and attempt to update them
-        		for(int row : rows) {
-        			InventoryTableModel model = (InventoryTableModel)tableInventory.getModel();
-        			InventoryItem item = model.getRow(row);
-        			
-        			// If the item is already inactive no need to update database, just continue to next row
-        			if(!item.isActive())
-        				continue;
-        			
-        			String query = "UPDATE " + dbManager.getDbName() + "." + dbManager.TABLE_INVENTORY +
-        					" SET ACTIVE = 0" +
-        					" WHERE ITEM_ID = " + item.getID();
-        			
-        			PreparedStatement ps;
-					try {
-						ps = dbManager.getConnection().prepareStatement(query);
-						ps.executeUpdate();
-						ps.close();
-					} catch (SQLException e) {
-						JOptionPane.showMessageDialog(null, "Unable to deactivate \"" + item.getName() + "\"\n\r" + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-					}        			
-        		}
-        		
-
-        		// Update the ui displays
-        		refreshInventoryTable();
-        		refreshItemComboBox();
+        		setItemsActive(selectedInventoryIds(rows), false);
         	}
         });
         btnDeactivateSelected.setBounds(265, 276, 150, 23);
         tabInventoryPanel.add(btnDeactivateSelected);
         
+        JButton btnChangePrice = new JButton("Change Price");
+        
+        // Listener to change the price of the selected items
+        btnChangePrice.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent event) {
+        		int[] rows = tableInventory.getSelectedRows();
+        		
+        		if(rows.length <= 0)
+        		{
+        			JOptionPane.showMessageDialog(null, "Please select the items to change the price of from above.", "Error", JOptionPane.ERROR_MESSAGE);
+        			return;
+        		}
+        		
+        		String text = JOptionPane.showInputDialog(null,
+        				"New price for the " + rows.length + " selected items, or a change such as +0.50, -0.25, +10% or -15%",
+        				"Change Price", JOptionPane.QUESTION_MESSAGE);
+        		if(text == null || text.trim().equals(""))
+        			return;
+        		
+        		final PriceChange change;
+        		try {
+        			change = PriceChange.parse(text);
+        		} catch(NumberFormatException e) {
+        			JOptionPane.showMessageDialog(null, "Please enter a price, or a change such as +0.50 or -10%.", "Error", JOptionPane.ERROR_MESSAGE);
+        			return;
+        		}
+        		
+        		final int[] ids = selectedInventoryIds(rows);
+        		asyncDb.submit(new DatabaseTask<ArrayList<InventoryItem>>() {
+        			public ArrayList<InventoryItem> run(DatabaseManager db) throws SQLException {
+        				return inventory.changePrices(ids, change);
+        			}
+        		}, new DatabaseCallback<ArrayList<InventoryItem>>() {
+        			public void succeeded(ArrayList<InventoryItem> changed) {
+        				// Only the changed rows are redrawn
+        				((InventoryTableModel)tableInventory.getModel()).updateRows(changed);
+        			}
+        			
+        			public void failed(Exception ex) {
+        				JOptionPane.showMessageDialog(null, "Unable to change the prices.\n\r" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        			}
+        		});
+        	}
+        });
+        btnChangePrice.setBounds(20, 276, 100, 23);
+        tabInventoryPanel.add(btnChangePrice);
+        
         JLabel lblDoubleClickAn = new JLabel("Double click an item below to edit it");
         lblDoubleClickAn.setHorizontalAlignment(SwingConstants.RIGHT);
         lblDoubleClickAn.setFont(new Font("Calibri", Font.BOLD, 11));
@@ -1092,6 +1418,43 @@ public class MainFrame extends JFrame {
         
 	}
 	
+	/*
+	 * Returns the ids of the inventory items in a set of table rows
+	 */
+	private int[] selectedInventoryIds(int[] rows) {
+		InventoryTableModel model = (InventoryTableModel)tableInventory.getModel();
+		
+		int[] ids = new int[rows.length];
+		for(int i = 0; i < rows.length; i++) {
+			ids[i] = model.getRow(rows[i]).getID();
+		}
+		return ids;
+	}
+	
+	/*
+	 * Activates or deactivates a set of inventory items in the background, all in one transaction.
+	 * Only the rows that changed are redrawn.
+	 */
+	private void setItemsActive(final int[] ids, final boolean active) {
+		asyncDb.submit(new DatabaseTask<ArrayList<InventoryItem>>() {
+			public ArrayList<InventoryItem> run(DatabaseManager db) throws SQLException {
+				return inventory.setItemsActive(ids, active);
+			}
+		}, new DatabaseCallback<ArrayList<InventoryItem>>() {
+			public void succeeded(ArrayList<InventoryItem> changed) {
+				((InventoryTableModel)tableInventory.getModel()).updateRows(changed);
+				
+				// Items joining or leaving the sale list change the names offered
+				if(!changed.isEmpty())
+					refreshItemComboBox();
+			}
+			
+			public void failed(Exception ex) {
+				JOptionPane.showMessageDialog(null, "Unable to " + (active ? "activate" : "deactivate") + " the items.\n\r" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	
 	/*
 	 * Takes a transaction as a parameter and creates a new tab on the UI with the receipt details
 	 */
@@ -1137,17 +1500,26 @@ public class MainFrame extends JFrame {
 		lblItemDefaultPrice.setBounds(10, 119, 86, 14);
 		editItemPanel.add(lblItemDefaultPrice);
 		
-		final JTextField textItemPrice = new JTextField(Double.toString(item.getPrice()));
+		final JTextField textItemPrice = new JTextField(Money.toPlainString(item.getPrice()));
 		textItemPrice.setBounds(100, 117, 86, 20);
 		textItemPrice.setColumns(10);
 		editItemPanel.add(textItemPrice);
 		
+		JLabel lblItemCode = new JLabel("Code:");
+		lblItemCode.setBounds(10, 144, 86, 14);
+		editItemPanel.add(lblItemCode);
+		
+		final JTextField textItemCode = new JTextField(item.getCode() == 0 ? "" : Long.toString(item.getCode()));
+		textItemCode.setBounds(100, 142, 86, 20);
+		textItemCode.setColumns(10);
+		editItemPanel.add(textItemCode);
+		
 		JLabel lblIsActive = new JLabel("Active?");
-		lblIsActive.setBounds(10, 144, 103, 14);
+		lblIsActive.setBounds(10, 169, 103, 14);
 		editItemPanel.add(lblIsActive);
 		
 		final JCheckBox checkItemActive = new JCheckBox();
-		checkItemActive.setBounds(100, 140, 20, 20);
+		checkItemActive.setBounds(100, 165, 20, 20);
 		checkItemActive.setSelected(item.isActive());
 		editItemPanel.add(checkItemActive);
 		
@@ -1162,32 +1534,51 @@ public class MainFrame extends JFrame {
     			}				
 				
 				int id = Integer.parseInt(textItemID.getText());
-				int activeValue = checkItemActive.isSelected() ? 1 : 0;
-				double price;
+				long price;
 				try {
-					price = Double.parseDouble(textItemPrice.getText());
+					price = Money.parse(textItemPrice.getText());
 				} catch(NumberFormatException e) {
 					JOptionPane.showMessageDialog(null, "Please enter a valid price. " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
 					return;
-				}			
-				
-				String query = "UPDATE " + dbManager.getDbName() + "." + dbManager.TABLE_INVENTORY +
-						" SET NAME = '" + textItemName.getText() + "', " +
-						"DEFAULT_PRICE = " + price + ", " +
-						"ACTIVE = " + activeValue + " " +
-						"WHERE ITEM_ID = " + id;
+				}
 				
-				PreparedStatement ps;
-				try {
-					ps = dbManager.getConnection().prepareStatement(query);
-					ps.executeUpdate();
-					ps.close();
-				} catch (SQLException e) {
-					JOptionPane.showMessageDialog(null, "Unable to update the inventory item.\n\r" + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);					
+				// The code is optional, left blank the item has none
+				long code = 0;
+				if(!textItemCode.getText().trim().equals("")) {
+					try {
+						code = Long.parseLong(textItemCode.getText().trim());
+					} catch(NumberFormatException e) {
+						code = -1;
+					}
+					
+					if(code <= 0) {
+						JOptionPane.showMessageDialog(null, "Please enter a valid code, a whole number above zero.", "Error", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
 				}
 				
-				refreshInventoryTable();
-				refreshItemComboBox();
+				final InventoryItem updated = new InventoryItem();
+				updated.setID(id);
+				updated.setName(textItemName.getText());
+				updated.setPrice(price);
+				updated.setActive(checkItemActive.isSelected());
+				updated.setCode(code);
+				
+				asyncDb.submit(new DatabaseTask<InventoryItem>() {
+					public InventoryItem run(DatabaseManager db) throws SQLException {
+						return inventory.updateItem(updated);
+					}
+				}, new DatabaseCallback<InventoryItem>() {
+					public void succeeded(InventoryItem saved) {
+						// Only the edited row is redrawn
+						((InventoryTableModel)tableInventory.getModel()).upsert(saved);
+						refreshItemComboBox();
+					}
+					
+					public void failed(Exception ex) {
+						JOptionPane.showMessageDialog(null, "Unable to update the inventory item.\n\r" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+					}
+				});
 				
 				// Close the tab
 				tabbedPane.remove(tabbedPane.getSelectedIndex());
@@ -1210,174 +1601,159 @@ public class MainFrame extends JFrame {
        
 	}
 	
+	/*
+	 * Points the recent transactions display at the saved transactions.
+	 * Only the rows being displayed are read from the database.
+	 */
+	private void loadTransactionsTable() {
+		((TransactionsTableModel)tableTransactions.getModel()).load();
+	}
+	
+	/*
+	 * Appends any transactions newer than the last one loaded to the recent transactions display.
+	 * The table is never reloaded, only rows past the model's high-water mark are read.
+	 */
 	private void refreshTransactionsTable() {
-		// Load the transactions from the database into the recent transactions display
-		try {
-			// reset the table
-			TransactionsTableModel model = (TransactionsTableModel)tableTransactions.getModel();
-			model.reset();
-			
-			// Our query, select transactions ordered by date
-			String strPs = "SELECT * FROM " + dbManager.getDbName() + "." + dbManager.TABLE_TRANSACTIONS +
-					" ORDER BY DATE ASC";
-			
-			// Use a prepared statement to execute on the database
-			PreparedStatement ps = dbManager.getConnection().prepareStatement(strPs);
-			ResultSet result = ps.executeQuery();
-			
-			// Loop through the results
-			while(result.next()) {
-				// Create a new transaction to store the information in
-				Transaction t = new Transaction();
-				
-				// Set the data
-				t.setDate(result.getTimestamp("DATE"));
-				t.setSubTotal(result.getDouble("SUBTOTAL"));
-				t.setSalesTax(result.getDouble("SALES_TAX"));
-				t.setGrandTotal(result.getDouble("GRAND_TOTAL"));
-				
-				// Read in the items
-				Clob items = result.getClob("ITEMS");
-				
-				// Read the items from the clob into a string
-				String itemStr = items.getSubString(1, (int) items.length());
-				
-				// Loop through the items and add them to the transaction
-				String[] segments = itemStr.split(",");
-				String item;
-				for(int i = 0; i < segments.length; i++){
-					item = segments[i];
-					
-					// Make sure its formatted correctly
-					if(item.startsWith("[") && item.endsWith("]")) {
-						
-						// Split off the surrounding [ & ]
-						item = item.substring(1);
-						item = item.substring(0, item.length() - 1);
-						
-						// Split the item string into segments
-						String itemSegments[] = item.split("~~");
-						
-						// If there aren't three segments something is wrong, just go the next one
-						if(itemSegments.length != 3){
-							continue;
-						}
-						
-						// Load the data into a new item
-						Item it = new Item();
-						it.setName(itemSegments[0]);
-						
-						// try to parse the data into double & int respectively
-						try {
-							it.setPrice(Double.parseDouble(itemSegments[1]));
-							it.setQuantity(Integer.parseInt(itemSegments[2]));
-							
-						// If it isn't formatted right go to the next item
-						} catch (NumberFormatException ex) {
-							continue;
-						}
-						
-						// Add the item to the transaction
-						t.addItem(it);
-					}
-				}				
-				
-				// Add the transaction to the recent transactions table
-				tableTransactions.getModel().setValueAt(t, 0, 0);
+		((TransactionsTableModel)tableTransactions.getModel()).loadNewer();
+	}
+	
+	/*
+	 * Reads every sale saved into memory in the background.
+	 * Reports use it once it is loaded, until then they read the database.
+	 */
+	private void loadSalesStore() {
+		asyncDb.submit(new DatabaseTask<Integer>() {
+			public Integer run(DatabaseManager db) throws SQLException {
+				return engine.loadSalesStore();
+			}
+		}, new DatabaseCallback<Integer>() {
+			public void succeeded(Integer added) {
+				SalesStore store = engine.getSalesStore();
+				System.out.println("Sales store: " + store.size() + " sales, " + store.getLineCount() + " items.");
 			}
 			
-			// Close the statement
-			ps.close();
-			
-		}
-		catch(SQLException ex) {
-			System.out.println(ex.getMessage());
-		}
+			public void failed(Exception ex) {
+				System.out.println("Unable to load the sales store: " + ex.getMessage());
+			}
+		});
 	}
 	
-	private void refreshInventoryTable() {
-		// Load the item inventory into the table
-		try {
-			// reset the table
-			InventoryTableModel model = (InventoryTableModel)tableInventory.getModel();
-			model.reset();
-			
-			// Setup the query
-			String query = "SELECT * FROM " + dbManager.getDbName() + "." + dbManager.TABLE_INVENTORY;
-			
-			// Execute it
-			PreparedStatement ps = dbManager.getConnection().prepareStatement(query);
-			ResultSet results = ps.executeQuery();
+	/*
+	 * Imports an inventory CSV file in the background, showing how far it has got in place of the
+	 * working message. The inventory displays are filled again once, when it is done.
+	 */
+	private void importInventory(final File file, final Runnable done) {
+		final ImportProgress progress = new ImportProgress() {
+			public void checking(int items) {
+				showImportProgress("Checking " + items + " items...");
+			}
 			
-			// Loop through each row from the query results
-			while(results.next()) {
-				InventoryItem item = new InventoryItem();
-				
-				item.setID(results.getInt("ITEM_ID"));
-				item.setName(results.getString("NAME"));
-				item.setPrice(results.getDouble("DEFAULT_PRICE"));
-				item.setActive(results.getBoolean("ACTIVE"));				
-				
-				tableInventory.getModel().setValueAt(item, 0, 0);				
+			public void importing(int items, int total) {
+				showImportProgress("Imported " + items + " of " + total + " items...");
+			}
+		};
+		
+		asyncDb.submit(new DatabaseTask<Integer>() {
+			public Integer run(DatabaseManager db) throws SQLException {
+				try {
+					return inventory.importItems(file, progress);
+				} catch(IOException ex) {
+					throw new SQLException(ex.getMessage(), ex);
+				}
+			}
+		}, new DatabaseCallback<Integer>() {
+			public void succeeded(Integer count) {
+				done.run();
+				refreshInventoryTable();
+				refreshItemComboBox();
+				JOptionPane.showMessageDialog(null, count + " items were added to the inventory.", "Import Inventory", JOptionPane.INFORMATION_MESSAGE);
 			}
-					
-			results.close();
-			ps.close();
 			
-		} catch(SQLException e) {
-			JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			public void failed(Exception ex) {
+				done.run();
+				JOptionPane.showMessageDialog(null, "Unable to import " + file.getName() + ".\n\r" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	
+	// Shows a progress message from the import thread
+	private void showImportProgress(final String message) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if(asyncDb.getInFlight() > 0)
+					lblWorking.setText(message);
+			}
+		});
+	}
+	
+	/*
+	 * Reads the inventory into memory in the background, then fills the inventory displays
+	 */
+	private void loadInventory() {
+		// A store server has its inventory loaded already, there is only the picker to fill
+		if(engine == null) {
+			refreshItemComboBox();
+			return;
 		}
+		
+		asyncDb.submit(new DatabaseTask<Void>() {
+			public Void run(DatabaseManager db) throws SQLException {
+				engine.loadInventory();
+				return null;
+			}
+		}, new DatabaseCallback<Void>() {
+			public void succeeded(Void result) {
+				refreshInventoryTable();
+				refreshItemComboBox();
+			}
+			
+			public void failed(Exception ex) {
+				JOptionPane.showMessageDialog(null, "Unable to load the inventory: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	
+	private void refreshInventoryTable() {
+		// Show every item in the inventory, the table is told once rather than a row at a time
+		InventoryTableModel model = (InventoryTableModel)tableInventory.getModel();
+		model.setRows(inventory.getItems());
 	}
 	
 	private void refreshItemComboBox() {
-		// Load the item inventory into the table
-		try {
-			// Setup the query
-			String query = "SELECT (NAME) FROM " + dbManager.getDbName() + "." + dbManager.TABLE_INVENTORY +
-					" WHERE ACTIVE = 1" +
-					" ORDER BY NAME ASC";
-			
-			// Execute it
-			PreparedStatement ps = dbManager.getConnection().prepareStatement(query);
-			ResultSet results = ps.executeQuery();
-			
-			// Setup an array list to hold the names
-			ArrayList<String> itemNames = new ArrayList<String>();
-			
-			// Loop through each row from the query results
-			while(results.next()) {
-				itemNames.add(results.getString("NAME"));
+		// Check if there are any items to pick from
+		registerTasks.submit(new Callable<String[]>() {
+			public String[] call() throws Exception {
+				return register.findActiveNames("", 1);
 			}
-					
-			// Remove all the previous items in the combobox
-			comboItemName.removeAllItems();
-
-			// Check if we are actually adding any items now
-			if(itemNames.size() > 0)
-			{			
-				// If so make sure the combobox is enabled
-				comboItemName.setEnabled(true);
-				btnAddItem.setEnabled(true);
-				
-				// And add the items
-				for(String str : itemNames) {
-				   comboItemName.addItem(str);
-				}
-			// Else there are no items to add
-			} else {
-				// Display a message in the combo box asking for an item to be added to inventory
-				comboItemName.addItem("Please add at least 1 active item to the inventory.");
-				
-				// Disable the combobox
-				comboItemName.setEnabled(false);
-				btnAddItem.setEnabled(false);
+		}, new DatabaseCallback<String[]>() {
+			public void succeeded(String[] names) {
+				showItemComboBox(names.length > 0);
+			}
+			
+			public void failed(Exception ex) {
+				System.out.println("Unable to look up item names: " + ex.getMessage());
+				showItemComboBox(false);
 			}
+		});
+	}
+	
+	private void showItemComboBox(boolean anyItems) {
+		if(anyItems)
+		{			
+			// If so make sure the picker is enabled
+			comboItemName.setEnabled(true);
+			btnAddItem.setEnabled(true);
 			
-			results.close();
-			ps.close();
+			// And show the names matching what has been typed
+			comboItemName.refresh();
+		// Else there are no items to pick
+		} else {
+			// Display a message in the picker asking for an item to be added to inventory
+			comboItemName.showMessage("Please add at least 1 active item to the inventory.");
 			
-		} catch(SQLException e) {
-			JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			// Disable the picker
+			comboItemName.setEnabled(false);
+			btnAddItem.setEnabled(false);
 		}
 	}
 }
@@ -0,0 +1,77 @@
+//////////////////////////////////////////////////////////////////////
+// Money.java			Author: Justin Brown
+//
+// Amounts of money are held as a long number of cents everywhere in
+// the program and the database, so adding them up is exact and as
+// fast as adding whole numbers. This class turns them to and from
+// text and works out rates such as sales tax. Rates are given in
+// basis points, hundredths of a percent, and the result is rounded
+// to the nearest cent with halves rounded away from zero.
+//////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+
+public class Money {
+	// Basis points in a whole, a rate of 10000 is 100%
+	public static final int BASIS_POINTS = 10000;
+
+	// Formats amounts in the local currency, made once per thread as it isn't thread safe
+	private static final ThreadLocal<NumberFormat> currencyFormat = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return NumberFormat.getCurrencyInstance();
+		}
+	};
+
+	// Constructor, only static methods
+	private Money() {
+	}
+
+	/*
+	 * Returns an amount as currency, such as $1,234.50
+	 */
+	public static String format(long cents) {
+		return currencyFormat.get().format(BigDecimal.valueOf(cents, 2));
+	}
+
+	/*
+	 * Returns an amount as a plain number with two decimal places, such as 1234.50, for editing and saving as text
+	 */
+	public static String toPlainString(long cents) {
+		return BigDecimal.valueOf(cents, 2).toPlainString();
+	}
+
+	/*
+	 * Reads an amount typed as a number such as 4.99, rounding it to the cent.
+	 * Throws NumberFormatException if it isn't a number or is too large.
+	 */
+	public static long parse(String text) {
+		try {
+			return new BigDecimal(text.trim()).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+		} catch(ArithmeticException ex) {
+			throw new NumberFormatException("\"" + text + "\" is too large an amount.");
+		}
+	}
+
+	/*
+	 * Converts an amount held as a double, as it was before amounts were kept in cents, rounding it to the cent
+	 * with halves rounded away from zero, as applyRate and parse do. The double is read as the shortest decimal
+	 * that gives it back, so 1.005 is 101 cents, where multiplying by 100 first would give 100.4999... and 100.
+	 * Migration 10 converts the database's amounts with this too, so the two always agree.
+	 */
+	public static long fromDouble(double value) {
+		return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}
+
+	/*
+	 * Returns a rate of an amount in basis points, rounded to the cent with halves rounded away from zero.
+	 * 800 basis points of $10.05 is 80.4 cents, which is 80 cents.
+	 */
+	public static long applyRate(long cents, int basisPoints) {
+		long scaled = Math.abs(cents) * basisPoints;
+		long rounded = (scaled + BASIS_POINTS / 2) / BASIS_POINTS;
+		return cents < 0 ? -rounded : rounded;
+	}
+}
@@ -0,0 +1,81 @@
+//////////////////////////////////////////////////////////////////////
+// PriceChange.java			Author: Justin Brown
+//
+// A change to apply to the default price of a set of items, typed in
+// as one of:
+//     4.99     set every price to 4.99
+//     +0.50    raise every price by 50 cents, -0.50 lowers it
+//     +10%     raise every price by 10 percent, -10% lowers it
+// New prices are rounded to the cent and can't go below zero.
+//////////////////////////////////////////////////////////////////////
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class PriceChange {
+	// The kinds of change
+	private static final int SET = 0;
+	private static final int ADD = 1;
+	private static final int PERCENT = 2;
+
+	private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
+
+	private int kind;
+
+	// The price or amount added in cents, or the percentage
+	private long cents;
+	private BigDecimal percent;
+
+	// Constructor, use parse
+	private PriceChange(int kind, long cents, BigDecimal percent) {
+		this.kind = kind;
+		this.cents = cents;
+		this.percent = percent;
+	}
+
+	/*
+	 * Reads a change typed in by the user, throws NumberFormatException if it isn't one
+	 */
+	public static PriceChange parse(String text) {
+		String value = text.trim();
+
+		if(value.endsWith("%"))
+			return new PriceChange(PERCENT, 0, new BigDecimal(value.substring(0, value.length() - 1).trim()));
+
+		if(value.startsWith("+") || value.startsWith("-"))
+			return new PriceChange(ADD, Money.parse(value), null);
+
+		long price = Money.parse(value);
+		if(price < 0)
+			throw new NumberFormatException("A price can't be below zero.");
+
+		return new PriceChange(SET, price, null);
+	}
+
+	/*
+	 * Returns a price in cents after the change, rounded to the cent with halves rounded up.
+	 * Throws IllegalArgumentException if it would go below zero.
+	 */
+	public long apply(long price) {
+		long changed;
+		switch(kind) {
+			case ADD:
+				changed = price + cents;
+				break;
+
+			case PERCENT:
+				changed = BigDecimal.valueOf(price).multiply(ONE_HUNDRED.add(percent))
+						.divide(ONE_HUNDRED, 0, RoundingMode.HALF_UP).longValue();
+				break;
+
+			default:
+				changed = cents;
+				break;
+		}
+
+		if(changed < 0)
+			throw new IllegalArgumentException("The change would take a price of " + Money.format(price) + " below zero.");
+
+		return changed;
+	}
+}
@@ -0,0 +1,100 @@
+//////////////////////////////////////////////////////////////////////
+// Register.java			Author: Justin Brown
+//
+// What a register's UI works with: looking items up, ringing a sale
+// up and saving it, and looking back through the sales and reports.
+// A LocalRegister runs it all on a CheckoutEngine over the database
+// in this program, a RemoteRegister asks a StoreServer for it, so the
+// same UI can be the only register or one of many.
+//
+// The lookups and the methods that change the sale are called from
+// one thread at a time, in order. They may wait on the disk or the
+// server, so a UI calls them off its event thread, as it does the
+// history, receipt and report methods, which may be called from any
+// thread. What the sale holds and its totals can be read from any
+// thread without waiting.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public interface Register {
+
+	/*
+	 * Returns the active item with a scanner code, or null if there is none
+	 */
+	public InventoryItem scan(long code) throws IOException;
+
+	/*
+	 * Returns the item with a name, or null if there is none
+	 */
+	public InventoryItem findByName(String name) throws IOException;
+
+	/*
+	 * Returns up to limit active item names starting with prefix, ignoring case, in alphabetical order
+	 */
+	public String[] findActiveNames(String prefix, int limit) throws IOException;
+
+	/*
+	 * Adds a line to the sale at the price charged. Returns the line added.
+	 */
+	public Item addLine(String name, long price, int quantity) throws IOException;
+
+	/*
+	 * Adds one of each of a list of scanned items to the sale at their default prices. Returns the lines added,
+	 * in the same order. If it throws some may have been added, getItems says which.
+	 */
+	public ArrayList<Item> addItems(List<InventoryItem> items) throws IOException;
+
+	// Returns the lines of the sale
+	public ArrayList<Item> getItems();
+
+	// Returns true if the sale has no lines
+	public boolean isEmpty();
+
+	// Getters for the totals of the sale
+	public long getSubTotal();
+	public long getSalesTax();
+	public long getGrandTotal();
+
+	// Empties the sale
+	public void clear() throws IOException;
+
+	/*
+	 * Saves the sale and starts the next one. Returns the sale with its lines for its receipt, its id is set once
+	 * it reaches the database. If it can't be saved it is left as it was.
+	 */
+	public Transaction commit() throws IOException, SQLException;
+
+	/*
+	 * Returns the id of the last sale saved and the number saved up to it
+	 */
+	public int[] getHistorySize() throws IOException, SQLException;
+
+	/*
+	 * Returns the sales saved after an id, oldest first, with their totals but not their lines
+	 */
+	public ArrayList<Transaction> getHistory(int afterId) throws IOException, SQLException;
+
+	/*
+	 * Returns a page of the sales with an id up to maxId, most recent first, as CheckoutEngine.getHistoryPage does
+	 */
+	public ArrayList<Transaction> getHistoryPage(int maxId, Transaction after, int offset, int limit) throws IOException, SQLException;
+
+	/*
+	 * Returns a saved sale with its lines, for showing its receipt
+	 */
+	public Transaction loadReceipt(int id) throws IOException, SQLException;
+
+	/*
+	 * Totals the sales from a time up to now with a grand total from minTotal up to but not including maxTotal
+	 */
+	public SalesReport runReport(long from, long minTotal, long maxTotal) throws IOException, SQLException;
+
+	/*
+	 * Finishes with the register, waiting up to timeoutMs for the sales saved to be made safe
+	 */
+	public void close(long timeoutMs);
+}
@@ -0,0 +1,172 @@
+//////////////////////////////////////////////////////////////////////
+// RemoteRegister.java			Author: Justin Brown
+//
+// A register on a StoreServer, for when another program holds the
+// store's database. It opens two connections: the sale is rung up
+// and items looked up on one, from one thread at a time, and the
+// history, receipts and reports are read on the other, one request at
+// a time, so a long report doesn't hold up the next scan. The server
+// keeps the basket, the lines and totals are kept here as well to
+// print on the receipt, where any thread can read them without
+// waiting on the server.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RemoteRegister implements Register {
+	// The connection the sale is rung up on, and the one the history and reports are read on
+	private StoreClient sale;
+	private StoreClient reads;
+
+	// The lines and totals of the sale, as the server added them, only touched holding the register's lock
+	private ArrayList<Item> lines;
+	private long subTotal;
+	private long salesTax;
+	private long grandTotal;
+
+	/*
+	 * Connects to a store server, secret may be null if it doesn't ask for one
+	 */
+	public RemoteRegister(String host, int port, byte[] secret) throws IOException {
+		sale = new StoreClient(host, port, secret);
+		try {
+			reads = new StoreClient(host, port, secret);
+		} catch(IOException ex) {
+			sale.close();
+			throw ex;
+		}
+
+		lines = new ArrayList<Item>();
+	}
+
+	public InventoryItem scan(long code) throws IOException {
+		return sale.findByCode(code);
+	}
+
+	public InventoryItem findByName(String name) throws IOException {
+		return sale.findByName(name);
+	}
+
+	public String[] findActiveNames(String prefix, int limit) throws IOException {
+		return sale.findActiveNames(prefix, limit);
+	}
+
+	public Item addLine(String name, long price, int quantity) throws IOException {
+		sale.addLine(name, price, quantity);
+
+		Item item = new Item();
+		item.setName(name);
+		item.setPrice(price);
+		item.setQuantity(quantity);
+		added(item);
+		return item;
+	}
+
+	// Each item is scanned again by its code, one taken out of sale since it was looked up isn't added
+	public ArrayList<Item> addItems(List<InventoryItem> items) throws IOException {
+		ArrayList<Item> added = new ArrayList<Item>(items.size());
+		for(InventoryItem found : items) {
+			Item line = sale.scan(found.getCode(), 1);
+			if(line != null) {
+				added(line);
+				added.add(line);
+			}
+		}
+		return added;
+	}
+
+	public synchronized ArrayList<Item> getItems() {
+		return new ArrayList<Item>(lines);
+	}
+
+	public synchronized boolean isEmpty() {
+		return lines.isEmpty();
+	}
+
+	public synchronized long getSubTotal() {
+		return subTotal;
+	}
+
+	public synchronized long getSalesTax() {
+		return salesTax;
+	}
+
+	public synchronized long getGrandTotal() {
+		return grandTotal;
+	}
+
+	public void clear() throws IOException {
+		sale.clear();
+
+		synchronized(this) {
+			lines = new ArrayList<Item>();
+			subTotal = 0;
+			salesTax = 0;
+			grandTotal = 0;
+		}
+	}
+
+	public Transaction commit() throws IOException {
+		Transaction committed = sale.commit();
+
+		synchronized(this) {
+			for(Item item : lines) {
+				committed.addItem(item);
+			}
+
+			lines = new ArrayList<Item>();
+			subTotal = 0;
+			salesTax = 0;
+			grandTotal = 0;
+		}
+		return committed;
+	}
+
+	// Keeps a line the server added, and the totals it sent back with it
+	private synchronized void added(Item line) {
+		lines.add(line);
+		subTotal = sale.getSubTotal();
+		salesTax = sale.getSalesTax();
+		grandTotal = sale.getGrandTotal();
+	}
+
+	public int[] getHistorySize() throws IOException {
+		synchronized(reads) {
+			return reads.getHistorySize();
+		}
+	}
+
+	public ArrayList<Transaction> getHistory(int afterId) throws IOException {
+		synchronized(reads) {
+			return reads.getHistory(afterId);
+		}
+	}
+
+	public ArrayList<Transaction> getHistoryPage(int maxId, Transaction after, int offset, int limit) throws IOException {
+		synchronized(reads) {
+			return reads.getHistoryPage(maxId, after, offset, limit);
+		}
+	}
+
+	public Transaction loadReceipt(int id) throws IOException {
+		synchronized(reads) {
+			return reads.loadReceipt(id);
+		}
+	}
+
+	public SalesReport runReport(long from, long minTotal, long maxTotal) throws IOException {
+		synchronized(reads) {
+			return reads.runReport(from, minTotal, maxTotal);
+		}
+	}
+
+	// The server has the sale once commit returns, there is nothing to wait for
+	public void close(long timeoutMs) {
+		sale.close();
+		synchronized(reads) {
+			reads.close();
+		}
+	}
+}
@@ -0,0 +1,607 @@
+//////////////////////////////////////////////////////////////////////
+// SaleJournal.java			Author: Justin Brown
+//
+// A write-behind journal in front of the transactions table. A sale
+// is appended to a local file and forced to disk before it is
+// acknowledged, then a background writer copies the journalled sales
+// into the database in batches, one commit per batch. The sequence
+// number of the last sale written is committed with each batch, so
+// on startup every sale in the journal past it is written again and
+// none is lost or saved twice. Appends made while another append is
+// forcing the file are covered by the next force, so many sales can
+// share one disk flush.
+//
+// A sale with a line the database can't hold is turned down as it is
+// appended. One the database still refuses for its data, such as an
+// item that isn't in the inventory, would otherwise be retried for
+// ever and hold up every sale behind it, so it is set aside instead:
+// written to a rejected file next to the journal, in the same record
+// layout, and passed over. Any other failure is retried.
+//
+// Each record is laid out as:
+//     int length, long sequence, byte[length] sale, int crc32
+// A record cut short by a crash fails its check and is dropped along
+// with anything after it, it was never acknowledged. A sale is its
+// time, its totals and then its lines, amounts in cents.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+public class SaleJournal {
+	// Most sales written to the database in one commit
+	private static final int MAX_BATCH = 250;
+
+	// Once everything in the journal is in the database it is emptied if it has grown past this size
+	private static final long TRUNCATE_AFTER_BYTES = 1024 * 1024;
+
+	// How long the writer waits before trying again when the database is unavailable
+	private static final long RETRY_DELAY_MS = 2000;
+
+	// A record longer than this can only be a damaged length
+	private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+	// Bytes in a record around the sale itself: length, sequence and checksum
+	private static final int RECORD_OVERHEAD = 4 + 8 + 4;
+
+	// The journal file, and where sales the database refuses are set aside
+	private File file;
+	private File rejectedFile;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+
+	// Where the journalled sales end up
+	private DatabaseManager dbManager;
+
+	// End of the last complete record in the file
+	private long length;
+
+	// Sequence numbers: the next to hand out, the last forced to disk and the last written to the database
+	private long nextSequence;
+	private long forcedSequence;
+	private long writtenSequence;
+
+	// True while an append is forcing the file
+	private boolean forcing;
+
+	// Sales in the journal that haven't been written to the database yet, in sequence order
+	private LinkedList<Entry> pending;
+
+	// Copies the pending sales into the database
+	private Thread writer;
+	private boolean closed;
+
+	// Told after each batch is written, on the writer thread
+	private ArrayList<ChangeListener> listeners;
+
+	// Statistics
+	private long appendCount;
+	private long forceCount;
+	private long batchCount;
+	private long rejectedCount;
+
+	// A journalled sale and its sequence number
+	private static class Entry {
+		long sequence;
+		Transaction transaction;
+
+		Entry(long sequence, Transaction transaction) {
+			this.sequence = sequence;
+			this.transaction = transaction;
+		}
+	}
+
+	// Constructor
+	public SaleJournal(File file, DatabaseManager db) {
+		this.file = file;
+		this.dbManager = db;
+		rejectedFile = new File(file.getPath() + ".rejected");
+
+		pending = new LinkedList<Entry>();
+		listeners = new ArrayList<ChangeListener>();
+	}
+
+	/*
+	 * Opens the journal, queues any sales the database hasn't got yet and starts the writer.
+	 * Returns the number of sales replayed from the journal.
+	 */
+	public synchronized int open() throws IOException, SQLException {
+		writtenSequence = dbManager.getJournalCheckpoint();
+		long lastSequence = writtenSequence;
+
+		// Read the complete records, anything after the last one is a torn write
+		if(file.exists()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+			try {
+				while(true) {
+					int size;
+					try {
+						size = in.readInt();
+					} catch(EOFException ex) {
+						break;
+					}
+
+					Entry entry = readRecord(in, size);
+					if(entry == null)
+						break;
+
+					length += RECORD_OVERHEAD + size;
+					lastSequence = Math.max(lastSequence, entry.sequence);
+
+					if(entry.sequence > writtenSequence)
+						pending.add(entry);
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+
+		// Drop the torn tail so new records follow the last good one
+		if(channel.size() > length) {
+			System.out.println("Sale journal: dropping " + (channel.size() - length) + " bytes of an incomplete record.");
+			channel.truncate(length);
+			channel.force(false);
+		}
+
+		nextSequence = lastSequence + 1;
+		forcedSequence = lastSequence;
+
+		int replayed = pending.size();
+		if(replayed > 0)
+			System.out.println("Sale journal: replaying " + replayed + " sales not yet in the database.");
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeBehind();
+			}
+		}, "Sale journal writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		return replayed;
+	}
+
+	/*
+	 * Appends a sale to the journal and returns once it is on disk. From then on the sale
+	 * will reach the database even if the program stops, its id is set when it does.
+	 * The transaction must not be changed after it is appended.
+	 */
+	public void append(Transaction t) throws IOException {
+		ArrayList<Transaction> sales = new ArrayList<Transaction>(1);
+		sales.add(t);
+		appendAll(sales);
+	}
+
+	/*
+	 * Appends several sales to the journal with one write and returns once they are all on disk,
+	 * so a batch of sales costs one force however many there are. Either every sale is appended
+	 * or, if an exception is thrown, none of them is. Throws IllegalArgumentException if a line
+	 * has a name the database can't hold.
+	 */
+	public void appendAll(List<Transaction> sales) throws IOException {
+		if(sales.isEmpty())
+			return;
+
+		// Build the records before taking the lock
+		ArrayList<byte[]> encoded = new ArrayList<byte[]>(sales.size());
+		int size = 0;
+		for(Transaction t : sales) {
+			check(t);
+			byte[] sale = encode(t);
+			encoded.add(sale);
+			size += RECORD_OVERHEAD + sale.length;
+		}
+		ByteBuffer records = ByteBuffer.allocate(size);
+		long sequence;
+
+		synchronized(this) {
+			if(closed)
+				throw new IOException("The sale journal is closed.");
+
+			long first = nextSequence;
+			sequence = first - 1;
+
+			for(byte[] sale : encoded) {
+				sequence++;
+				putRecord(records, sequence, sale);
+			}
+			records.flip();
+
+			// Written in sequence order, the file only grows while the lock is held
+			long start = length;
+			try {
+				while(records.hasRemaining()) {
+					length += channel.write(records, length);
+				}
+			} catch(IOException ex) {
+				// Don't leave half a record for the next one to follow
+				length = start;
+				channel.truncate(start);
+				throw ex;
+			}
+
+			nextSequence = sequence + 1;
+			appendCount += sales.size();
+
+			// The writer may copy them to the database straight away, the sales are only acknowledged once forced
+			for(int i = 0; i < sales.size(); i++) {
+				pending.add(new Entry(first + i, sales.get(i)));
+			}
+			notifyAll();
+		}
+
+		// Wait for a force that covers the last record, or do one if nobody else is
+		while(true) {
+			long target;
+
+			synchronized(this) {
+				while(forcing && forcedSequence < sequence) {
+					waitQuietly();
+				}
+
+				if(forcedSequence >= sequence)
+					return;
+
+				// Everything written so far is covered by this force
+				forcing = true;
+				target = nextSequence - 1;
+			}
+
+			// Other appends carry on writing while the disk is flushed
+			boolean forced = false;
+			try {
+				channel.force(false);
+				forced = true;
+			}
+			finally {
+				synchronized(this) {
+					forcing = false;
+					if(forced) {
+						forcedSequence = Math.max(forcedSequence, target);
+						forceCount++;
+					}
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	// Adds a listener told after each batch of sales is written to the database, on the writer thread
+	public synchronized void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	// Returns the number of sales that haven't reached the database yet
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	// Returns the number of sales the database refused and that were set aside in the rejected file
+	public synchronized long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	// Returns a one line summary of the statistics
+	public synchronized String getStatistics() {
+		return String.format("appends %d, forces %d, batches %d, pending %d, rejected %d",
+				appendCount, forceCount, batchCount, pending.size(), rejectedCount);
+	}
+
+	/*
+	 * Stops taking sales and waits up to timeoutMs for the writer to copy the pending ones to the database.
+	 * Anything it doesn't get to is replayed on the next start.
+	 */
+	public void close(long timeoutMs) {
+		synchronized(this) {
+			if(closed)
+				return;
+
+			closed = true;
+			notifyAll();
+		}
+
+		try {
+			writer.join(timeoutMs);
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized(this) {
+			System.out.println("Sale journal: " + getStatistics());
+
+			try {
+				channel.close();
+				raf.close();
+			} catch(IOException ex) {
+				System.out.println(ex.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Runs on the writer thread, copying the pending sales into the database a batch at a time
+	 */
+	private void writeBehind() {
+		ArrayList<Entry> entries = new ArrayList<Entry>(MAX_BATCH);
+		ArrayList<Transaction> batch = new ArrayList<Transaction>(MAX_BATCH);
+
+		while(true) {
+			long lastSequence;
+
+			synchronized(this) {
+				while(pending.isEmpty() && !closed) {
+					waitQuietly();
+				}
+
+				if(pending.isEmpty())
+					return;
+
+				// Leave the sales queued until they are committed, so a failed batch is tried again
+				entries.clear();
+				batch.clear();
+				lastSequence = 0;
+				for(Entry entry : pending) {
+					if(batch.size() == MAX_BATCH)
+						break;
+
+					entries.add(entry);
+					batch.add(entry.transaction);
+					lastSequence = entry.sequence;
+				}
+			}
+
+			boolean saved = false;
+			try {
+				try {
+					dbManager.saveTransactions(batch, lastSequence);
+					saved = true;
+				} catch(SQLException ex) {
+					if(!isDataError(ex))
+						throw ex;
+
+					// Something in the batch will never go in, write the sales one at a time to find it
+					writeEachAlone(entries);
+				}
+			} catch(Exception ex) {
+				System.out.println("Sale journal: unable to write " + batch.size() + " sales, will retry: " + ex.getMessage());
+
+				synchronized(this) {
+					// Give up on the database at exit, the journal still holds the sales
+					if(closed)
+						return;
+				}
+
+				try {
+					Thread.sleep(RETRY_DELAY_MS);
+				} catch(InterruptedException ie) {
+					return;
+				}
+				continue;
+			}
+
+			if(saved)
+				written(batch.size(), lastSequence);
+		}
+	}
+
+	/*
+	 * Writes sales to the database one at a time, setting aside any it refuses for their data and moving
+	 * the checkpoint past them. Throws the first other failure, the sales from there on stay queued.
+	 */
+	private void writeEachAlone(List<Entry> entries) throws SQLException, IOException {
+		ArrayList<Transaction> single = new ArrayList<Transaction>(1);
+
+		for(Entry entry : entries) {
+			single.clear();
+			single.add(entry.transaction);
+
+			try {
+				dbManager.saveTransactions(single, entry.sequence);
+			} catch(SQLException ex) {
+				if(!isDataError(ex))
+					throw ex;
+
+				reject(entry, ex);
+				dbManager.saveTransactions(new ArrayList<Transaction>(0), entry.sequence);
+			}
+
+			written(1, entry.sequence);
+		}
+	}
+
+	/*
+	 * Appends a sale the database refused to the rejected file and forces it, so it can be looked at
+	 * and rung up again by hand. Only once it is on disk is it passed over.
+	 */
+	private void reject(Entry entry, SQLException reason) throws IOException {
+		byte[] sale = encode(entry.transaction);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + sale.length);
+		putRecord(record, entry.sequence, sale);
+
+		FileOutputStream out = new FileOutputStream(rejectedFile, true);
+		try {
+			out.write(record.array());
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+
+		synchronized(this) {
+			rejectedCount++;
+		}
+		System.out.println("Sale journal: the database refused sale " + entry.sequence + ", set aside in "
+				+ rejectedFile.getName() + ": " + reason.getMessage());
+	}
+
+	/*
+	 * Takes sales the database has, or that were set aside, off the front of the queue and tells the listeners
+	 */
+	private void written(int count, long lastSequence) {
+		ArrayList<ChangeListener> notify;
+
+		synchronized(this) {
+			for(int i = 0; i < count; i++) {
+				pending.removeFirst();
+			}
+
+			writtenSequence = lastSequence;
+			batchCount++;
+
+			// Everything journalled is in the database, start the file again rather than let it grow
+			if(pending.isEmpty() && !forcing && length > TRUNCATE_AFTER_BYTES) {
+				try {
+					channel.truncate(0);
+					length = 0;
+				} catch(IOException ex) {
+					System.out.println("Sale journal: unable to truncate: " + ex.getMessage());
+				}
+			}
+
+			notify = new ArrayList<ChangeListener>(listeners);
+		}
+
+		ChangeEvent event = new ChangeEvent(this);
+		for(ChangeListener listener : notify) {
+			listener.stateChanged(event);
+		}
+	}
+
+	/*
+	 * Returns whether the database refused a write for its data or a constraint, SQL state classes 22
+	 * and 23, which trying again won't change
+	 */
+	private static boolean isDataError(SQLException ex) {
+		for(SQLException next = ex; next != null; next = next.getNextException()) {
+			String state = next.getSQLState();
+			if(state != null && (state.startsWith("22") || state.startsWith("23")))
+				return true;
+		}
+		return false;
+	}
+
+	// Checks every line of a sale has a name the database can hold, throws IllegalArgumentException if not
+	private static void check(Transaction t) {
+		for(Item item : t.getItems()) {
+			String name = item.getName();
+			if(name == null || name.length() == 0 || name.length() > DatabaseManager.MAX_LINE_NAME_LENGTH)
+				throw new IllegalArgumentException("A line's name must be 1 to " + DatabaseManager.MAX_LINE_NAME_LENGTH + " characters.");
+		}
+	}
+
+	// Puts a record in a buffer: its length, sequence, the sale and a checksum of the sequence and sale
+	private static void putRecord(ByteBuffer records, long sequence, byte[] sale) {
+		CRC32 crc = new CRC32();
+		int start = records.position();
+		records.putInt(sale.length);
+		records.putLong(sequence);
+		records.put(sale);
+		crc.update(records.array(), start + 4, 8 + sale.length);
+		records.putInt((int) crc.getValue());
+	}
+
+	/*
+	 * Reads the rest of a record whose length has been read. Returns null if it is incomplete or damaged.
+	 */
+	private Entry readRecord(DataInputStream in, int size) throws IOException {
+		if(size < 0 || size > MAX_RECORD_BYTES)
+			return null;
+
+		byte[] body = new byte[8 + size];
+		int checksum;
+
+		try {
+			in.readFully(body);
+			checksum = in.readInt();
+		} catch(EOFException ex) {
+			return null;
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		if((int) crc.getValue() != checksum)
+			return null;
+
+		DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+		long sequence = record.readLong();
+
+		return new Entry(sequence, decode(record));
+	}
+
+	// Waits to be notified, keeping the interrupt for the caller
+	private void waitQuietly() {
+		try {
+			wait();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Writes out the parts of a sale that are saved to the database
+	private byte[] encode(Transaction t) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + t.getItems().size() * 32);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeLong(t.getTime());
+		out.writeLong(t.getSubTotal());
+		out.writeLong(t.getSalesTax());
+		out.writeLong(t.getGrandTotal());
+
+		out.writeInt(t.getItems().size());
+		for(Item item : t.getItems()) {
+			out.writeInt(item.getItemID());
+			out.writeUTF(item.getName());
+			out.writeLong(item.getPrice());
+			out.writeInt(item.getQuantity());
+		}
+
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	// Reads back a sale written by encode
+	private Transaction decode(DataInputStream in) throws IOException {
+		Transaction t = new Transaction();
+
+		t.setTime(in.readLong());
+		t.setSubTotal(in.readLong());
+		t.setSalesTax(in.readLong());
+		t.setGrandTotal(in.readLong());
+
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			Item item = new Item();
+			item.setItemID(in.readInt());
+			item.setName(in.readUTF());
+			item.setPrice(in.readLong());
+			item.setQuantity(in.readInt());
+
+			t.addItem(item);
+		}
+
+		return t;
+	}
+}
@@ -0,0 +1,60 @@
+//////////////////////////////////////////////////////////////////////
+// SalesReport.java			Author: Justin Brown
+//
+// Holds the totals of a sales report: the number of transactions
+// found, the revenue they brought in and the sales tax collected,
+// in cents.
+//////////////////////////////////////////////////////////////////////
+
+public class SalesReport {
+
+	// Variables
+	private int numberOfTransactions;
+	private long totalRevenue;
+	private long totalSalesTax;
+
+	// Constructor
+	public SalesReport() {
+		numberOfTransactions = 0;
+		totalRevenue = 0;
+		totalSalesTax = 0;
+	}
+
+	/*
+	 * Adds a transaction's totals to the report
+	 */
+	public void add(long grandTotal, long salesTax) {
+		numberOfTransactions++;
+		totalRevenue += grandTotal;
+		totalSalesTax += salesTax;
+	}
+
+	/*
+	 * Adds totals that were already added up elsewhere to the report
+	 */
+	public void add(int transactions, long revenue, long salesTax) {
+		numberOfTransactions += transactions;
+		totalRevenue += revenue;
+		totalSalesTax += salesTax;
+	}
+
+	// Getter for the number of transactions
+	public int getNumberOfTransactions() {
+		return numberOfTransactions;
+	}
+
+	// Getter for the total revenue
+	public long getTotalRevenue() {
+		return totalRevenue;
+	}
+
+	// Getter for the total sales tax
+	public long getTotalSalesTax() {
+		return totalSalesTax;
+	}
+
+	// Net income is the revenue less the sales tax collected
+	public long getNetIncome() {
+		return totalRevenue - totalSalesTax;
+	}
+}
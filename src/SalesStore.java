@@ -0,0 +1,331 @@
+//////////////////////////////////////////////////////////////////////
+// SalesStore.java			Author: Justin Brown
+//
+// Holds the sales history in memory as columns of numbers rather
+// than as Transaction objects: one array of times, one of each total
+// and so on, with the items of every sale in a second set of columns
+// the sales point into, which receipts are read from. The columns are
+// split into chunks of a fixed size, growing means adding a chunk and
+// nothing is ever copied. A filter or sum over the sales runs down
+// plain arrays of longs, and a sale costs a few dozen bytes however
+// many are held. Item names are kept once each and referred to by
+// their number.
+//
+// Each chunk keeps the earliest and latest time of its sales, so a
+// report over a span of time skips every chunk wholly outside it.
+// Sales mostly arrive in time order, as they are saved, but two
+// registers committing at once can be saved the other way round, so
+// a sale out of order only widens its own chunk's span.
+// All methods are synchronized, a report waits for an append and the
+// other way around. Sales read from the database are gathered in a
+// store of their own first and added with appendAll, so the store is
+// only held while they are copied in.
+//////////////////////////////////////////////////////////////////////
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class SalesStore {
+	// Rows in a chunk, a power of two so a row's chunk and place in it are a shift and a mask
+	private static final int CHUNK_BITS = 13;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// The sale columns, the first line of each sale is the index of its first row in the line columns
+	private int[][] ids;
+	private long[][] times;
+	private long[][] subTotals;
+	private long[][] salesTaxes;
+	private long[][] grandTotals;
+	private int[][] firstLines;
+	private int saleCount;
+
+	// The line columns, names are kept once each and referred to by their number
+	private int[][] lineItemIds;
+	private int[][] lineNames;
+	private long[][] linePrices;
+	private int[][] lineQuantities;
+	private int lineCount;
+
+	private ArrayList<String> names;
+	private HashMap<String, Integer> nameNumbers;
+
+	// The earliest and latest time in each chunk of sales
+	private long[] minTimes;
+	private long[] maxTimes;
+
+	// Highest transaction id held
+	private int lastTransactionId;
+
+	// Constructor
+	public SalesStore() {
+		clear();
+	}
+
+	/*
+	 * Empties the store
+	 */
+	public synchronized void clear() {
+		ids = new int[1][];
+		times = new long[1][];
+		subTotals = new long[1][];
+		salesTaxes = new long[1][];
+		grandTotals = new long[1][];
+		firstLines = new int[1][];
+		minTimes = new long[1];
+		maxTimes = new long[1];
+		saleCount = 0;
+
+		lineItemIds = new int[1][];
+		lineNames = new int[1][];
+		linePrices = new long[1][];
+		lineQuantities = new int[1][];
+		lineCount = 0;
+
+		names = new ArrayList<String>();
+		nameNumbers = new HashMap<String, Integer>();
+
+		lastTransactionId = 0;
+	}
+
+	/*
+	 * Adds a saved sale without its items, they are added after it by appendLine. Returns false and
+	 * leaves the store alone if a sale with this id or a later one is already held.
+	 */
+	public synchronized boolean append(int id, long time, long subTotal, long salesTax, long grandTotal) {
+		if(id <= lastTransactionId)
+			return false;
+
+		int chunk = saleCount >>> CHUNK_BITS;
+		if(chunk == ids.length)
+			growSales();
+
+		if(ids[chunk] == null) {
+			ids[chunk] = new int[CHUNK_SIZE];
+			times[chunk] = new long[CHUNK_SIZE];
+			subTotals[chunk] = new long[CHUNK_SIZE];
+			salesTaxes[chunk] = new long[CHUNK_SIZE];
+			grandTotals[chunk] = new long[CHUNK_SIZE];
+			firstLines[chunk] = new int[CHUNK_SIZE];
+		}
+
+		if((saleCount & CHUNK_MASK) == 0) {
+			minTimes[chunk] = time;
+			maxTimes[chunk] = time;
+		} else {
+			minTimes[chunk] = Math.min(minTimes[chunk], time);
+			maxTimes[chunk] = Math.max(maxTimes[chunk], time);
+		}
+
+		int row = saleCount & CHUNK_MASK;
+		ids[chunk][row] = id;
+		times[chunk][row] = time;
+		subTotals[chunk][row] = subTotal;
+		salesTaxes[chunk][row] = salesTax;
+		grandTotals[chunk][row] = grandTotal;
+		firstLines[chunk][row] = lineCount;
+
+		saleCount++;
+		lastTransactionId = id;
+		return true;
+	}
+
+	/*
+	 * Adds an item to the last sale appended
+	 */
+	public synchronized void appendLine(int itemId, String name, long price, int quantity) {
+		int chunk = lineCount >>> CHUNK_BITS;
+		if(chunk == lineItemIds.length)
+			growLines();
+
+		if(lineItemIds[chunk] == null) {
+			lineItemIds[chunk] = new int[CHUNK_SIZE];
+			lineNames[chunk] = new int[CHUNK_SIZE];
+			linePrices[chunk] = new long[CHUNK_SIZE];
+			lineQuantities[chunk] = new int[CHUNK_SIZE];
+		}
+
+		Integer number = nameNumbers.get(name);
+		if(number == null) {
+			number = names.size();
+			names.add(name);
+			nameNumbers.put(name, number);
+		}
+
+		int row = lineCount & CHUNK_MASK;
+		lineItemIds[chunk][row] = itemId;
+		lineNames[chunk][row] = number;
+		linePrices[chunk][row] = price;
+		lineQuantities[chunk][row] = quantity;
+
+		lineCount++;
+	}
+
+	/*
+	 * Adds the sales held by another store that come after the last one held here, with their items,
+	 * and returns how many. The other store mustn't be in use by anything else, it is read without being locked.
+	 */
+	public synchronized int appendAll(SalesStore from) {
+		int count = 0;
+		for(int index = 0; index < from.saleCount; index++) {
+			int chunk = index >>> CHUNK_BITS;
+			int row = index & CHUNK_MASK;
+
+			if(!append(from.ids[chunk][row], from.times[chunk][row], from.subTotals[chunk][row],
+					from.salesTaxes[chunk][row], from.grandTotals[chunk][row]))
+				continue;
+
+			count++;
+			int end = index + 1 < from.saleCount ? from.firstLine(index + 1) : from.lineCount;
+			for(int line = from.firstLines[chunk][row]; line < end; line++) {
+				int lineChunk = line >>> CHUNK_BITS;
+				int lineRow = line & CHUNK_MASK;
+
+				appendLine(from.lineItemIds[lineChunk][lineRow], from.names.get(from.lineNames[lineChunk][lineRow]),
+						from.linePrices[lineChunk][lineRow], from.lineQuantities[lineChunk][lineRow]);
+			}
+		}
+		return count;
+	}
+
+	// Returns the number of sales held
+	public synchronized int size() {
+		return saleCount;
+	}
+
+	// Returns the number of items held across all the sales
+	public synchronized int getLineCount() {
+		return lineCount;
+	}
+
+	// Returns the highest transaction id held, or 0 if there are none
+	public synchronized int getLastTransactionId() {
+		return lastTransactionId;
+	}
+
+	// Getter for the time of the sale at an index, in milliseconds
+	public synchronized long getTime(int index) {
+		return times[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	// Getter for the grand total of the sale at an index
+	public synchronized long getGrandTotal(int index) {
+		return grandTotals[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	/*
+	 * Returns the sale with a transaction id as a transaction with its items, or null if it isn't held.
+	 * A sale saved before its items were moved to the transaction_items table is held without them.
+	 */
+	public synchronized Transaction find(int id) {
+		// The ids only go up, so they can be searched like the times
+		int low = 0;
+		int high = saleCount;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(ids[middle >>> CHUNK_BITS][middle & CHUNK_MASK] < id)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		if(low == saleCount || ids[low >>> CHUNK_BITS][low & CHUNK_MASK] != id)
+			return null;
+
+		return get(low);
+	}
+
+	/*
+	 * Returns the sale at an index as a transaction with its items, index 0 is the oldest
+	 */
+	private Transaction get(int index) {
+		int chunk = index >>> CHUNK_BITS;
+		int row = index & CHUNK_MASK;
+
+		Transaction t = new Transaction();
+		t.setID(ids[chunk][row]);
+		t.setTime(times[chunk][row]);
+		t.setSubTotal(subTotals[chunk][row]);
+		t.setSalesTax(salesTaxes[chunk][row]);
+		t.setGrandTotal(grandTotals[chunk][row]);
+
+		int end = index + 1 < saleCount ? firstLine(index + 1) : lineCount;
+		for(int line = firstLines[chunk][row]; line < end; line++) {
+			int lineChunk = line >>> CHUNK_BITS;
+			int lineRow = line & CHUNK_MASK;
+
+			Item item = new Item();
+			item.setItemID(lineItemIds[lineChunk][lineRow]);
+			item.setName(names.get(lineNames[lineChunk][lineRow]));
+			item.setPrice(linePrices[lineChunk][lineRow]);
+			item.setQuantity(lineQuantities[lineChunk][lineRow]);
+			t.addItem(item);
+		}
+
+		return t;
+	}
+
+	/*
+	 * Totals the sales from one time up to but not including another, with a grand total
+	 * from minTotal up to but not including maxTotal, the same as DatabaseManager.generateReport.
+	 */
+	public synchronized SalesReport report(long from, long to, long minTotal, long maxTotal) {
+		int count = 0;
+		long revenue = 0;
+		long salesTax = 0;
+
+		// Run down each chunk's columns in turn
+		for(int chunk = 0; (chunk << CHUNK_BITS) < saleCount; chunk++) {
+			// None of its sales are in the span
+			if(maxTimes[chunk] < from || minTimes[chunk] >= to)
+				continue;
+
+			int rows = Math.min(CHUNK_SIZE, saleCount - (chunk << CHUNK_BITS));
+			long[] chunkTimes = times[chunk];
+			long[] chunkTotals = grandTotals[chunk];
+			long[] chunkTaxes = salesTaxes[chunk];
+
+			for(int i = 0; i < rows; i++) {
+				long total = chunkTotals[i];
+				long time = chunkTimes[i];
+				if(time >= from && time < to && total >= minTotal && total < maxTotal) {
+					count++;
+					revenue += total;
+					salesTax += chunkTaxes[i];
+				}
+			}
+		}
+
+		SalesReport report = new SalesReport();
+		report.add(count, revenue, salesTax);
+		return report;
+	}
+
+	// Returns the first line of the sale at an index
+	private int firstLine(int index) {
+		return firstLines[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	// Makes room for more chunks of sales, only the lists of chunks are copied
+	private void growSales() {
+		int chunks = ids.length * 2;
+		ids = Arrays.copyOf(ids, chunks);
+		times = Arrays.copyOf(times, chunks);
+		subTotals = Arrays.copyOf(subTotals, chunks);
+		salesTaxes = Arrays.copyOf(salesTaxes, chunks);
+		grandTotals = Arrays.copyOf(grandTotals, chunks);
+		firstLines = Arrays.copyOf(firstLines, chunks);
+		minTimes = Arrays.copyOf(minTimes, chunks);
+		maxTimes = Arrays.copyOf(maxTimes, chunks);
+	}
+
+	// Makes room for more chunks of lines
+	private void growLines() {
+		int chunks = lineItemIds.length * 2;
+		lineItemIds = Arrays.copyOf(lineItemIds, chunks);
+		lineNames = Arrays.copyOf(lineNames, chunks);
+		linePrices = Arrays.copyOf(linePrices, chunks);
+		lineQuantities = Arrays.copyOf(lineQuantities, chunks);
+	}
+}
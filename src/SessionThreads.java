@@ -0,0 +1,56 @@
+//////////////////////////////////////////////////////////////////////
+// SessionThreads.java			Author: Justin Brown
+//
+// Hands out an executor that starts a thread per task, for work that
+// spends nearly all its time waiting, such as a register's session
+// waiting on its socket. On Java 21 and later the threads are virtual
+// so thousands cost little more than their stacks. The program is
+// built for Java 17, so the virtual thread executor is looked up by
+// reflection, and on older runtimes daemon platform threads are used
+// instead. Work run on them should hand anything that holds a monitor
+// for long, such as a JDBC call, to a platform thread pool.
+//////////////////////////////////////////////////////////////////////
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class SessionThreads {
+	// Only a factory
+	private SessionThreads() {
+	}
+
+	/*
+	 * Returns an executor that runs each task on a new thread, virtual if the runtime has them.
+	 * Platform threads are named with the prefix and numbered.
+	 */
+	public static ExecutorService newExecutor(final String prefix) {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch(Exception ex) {
+			// Not there before Java 21
+		}
+
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix + " " + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	// Returns true if newExecutor hands out virtual threads
+	public static boolean isVirtual() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch(NoSuchMethodException ex) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+//////////////////////////////////////////////////////////////////////
+// StatementCache.java			Author: Justin Brown
+//
+// Keeps the prepared statements of one database connection so each
+// named statement is only compiled the first time it is used. The
+// statements are owned by the cache, callers close their result sets
+// but never the statements themselves.
+//////////////////////////////////////////////////////////////////////
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+public class StatementCache {
+	// The connection the statements belong to
+	private Connection connection;
+
+	// Where the sql for each statement name is looked up
+	private DatabaseManager dbManager;
+
+	// Statements prepared so far, by name
+	private HashMap<String, PreparedStatement> statements;
+
+	// Constructor
+	public StatementCache(Connection conn, DatabaseManager db) {
+		connection = conn;
+		dbManager = db;
+		statements = new HashMap<String, PreparedStatement>();
+	}
+
+	/*
+	 * Returns the named statement, preparing it if this is the first time it is used.
+	 * Parameters set by a previous caller are cleared.
+	 */
+	public PreparedStatement get(String name) throws SQLException {
+		PreparedStatement ps = statements.get(name);
+
+		if(ps == null) {
+			String sql = dbManager.getStatementSql(name);
+			if(sql == null)
+				throw new SQLException("Unknown statement: " + name);
+
+			if(dbManager.returnsGeneratedKeys(name))
+				ps = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
+			else
+				ps = connection.prepareStatement(sql);
+
+			statements.put(name, ps);
+		} else {
+			ps.clearParameters();
+		}
+
+		return ps;
+	}
+
+	// Getter for the connection
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/*
+	 * Closes all the statements, the connection is left open
+	 */
+	public void close() {
+		for(PreparedStatement ps : statements.values()) {
+			try {
+				ps.close();
+			} catch(SQLException ex) {
+				System.out.println(ex.getMessage());
+			}
+		}
+
+		statements.clear();
+	}
+}
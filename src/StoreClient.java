@@ -0,0 +1,324 @@
+//////////////////////////////////////////////////////////////////////
+// StoreClient.java			Author: Justin Brown
+//
+// A register's connection to a StoreServer. Each method sends one
+// request and waits for its reply, the server keeps the register's
+// basket and this keeps the totals it last sent back. Not thread
+// safe, a register that wants several requests going at once opens
+// several connections. Nothing here holds a monitor while it waits
+// on the socket, so a connection can be used from a virtual thread.
+// A request the server turns down throws an IOException with the
+// server's message and the connection carries on, any other
+// IOException means the connection is lost.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+
+public class StoreClient {
+	// The connection
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	// The basket on the server, as of the last reply
+	private int lineCount;
+	private long subTotal;
+	private long salesTax;
+	private long grandTotal;
+
+	/*
+	 * Connects to a store server that doesn't need the shared secret, such as one on this machine
+	 */
+	public StoreClient(String host, int port) throws IOException {
+		this(host, port, null);
+	}
+
+	/*
+	 * Connects to a store server and checks it speaks the same protocol. If the server asks for the shared
+	 * secret the register proves it knows it, a server that asks when secret is null is turned down.
+	 */
+	public StoreClient(String host, int port, byte[] secret) throws IOException {
+		socket = new Socket(host, port);
+		try {
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			out.writeInt(StoreProtocol.MAGIC);
+			out.writeInt(StoreProtocol.VERSION);
+			readStatus();
+
+			if(in.readBoolean()) {
+				if(secret == null)
+					throw new IOException("The store server needs the shared secret.");
+
+				byte[] challenge = new byte[StoreProtocol.CHALLENGE_LENGTH];
+				in.readFully(challenge);
+				out.write(StoreProtocol.answer(secret, challenge));
+				readStatus();
+			}
+		} catch(IOException ex) {
+			socket.close();
+			throw ex;
+		}
+	}
+
+	/*
+	 * Returns the active item with a scanner code, or null if there is none
+	 */
+	public InventoryItem findByCode(long code) throws IOException {
+		out.writeByte(StoreProtocol.FIND_CODE);
+		out.writeLong(code);
+
+		if(readStatus() == StoreProtocol.NOT_FOUND)
+			return null;
+		return StoreProtocol.readItem(in);
+	}
+
+	/*
+	 * Returns the active item with a name, or null if there is none
+	 */
+	public InventoryItem findByName(String name) throws IOException {
+		out.writeByte(StoreProtocol.FIND_NAME);
+		out.writeUTF(name);
+
+		if(readStatus() == StoreProtocol.NOT_FOUND)
+			return null;
+		return StoreProtocol.readItem(in);
+	}
+
+	/*
+	 * Returns up to limit active item names starting with prefix, ignoring case, in alphabetical order
+	 */
+	public String[] findActiveNames(String prefix, int limit) throws IOException {
+		out.writeByte(StoreProtocol.NAMES);
+		out.writeUTF(prefix);
+		out.writeInt(limit);
+
+		readStatus();
+		String[] names = new String[in.readInt()];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = in.readUTF();
+		}
+		return names;
+	}
+
+	/*
+	 * Adds the item with a scanner code to the basket at its default price. Returns the line added,
+	 * or null if there is no active item with the code.
+	 */
+	public Item scan(long code, int quantity) throws IOException {
+		out.writeByte(StoreProtocol.SCAN);
+		out.writeLong(code);
+		out.writeInt(quantity);
+
+		if(readStatus() == StoreProtocol.NOT_FOUND)
+			return null;
+
+		Item line = StoreProtocol.readLine(in);
+		readTotals();
+		return line;
+	}
+
+	/*
+	 * Adds a line to the basket at the price charged. A name in the inventory is linked to its item.
+	 */
+	public void addLine(String name, long price, int quantity) throws IOException {
+		out.writeByte(StoreProtocol.ADD_LINE);
+		out.writeUTF(name);
+		out.writeLong(price);
+		out.writeInt(quantity);
+
+		readStatus();
+		readTotals();
+	}
+
+	// Empties the basket
+	public void clear() throws IOException {
+		out.writeByte(StoreProtocol.CLEAR);
+
+		readStatus();
+		lineCount = 0;
+		subTotal = 0;
+		salesTax = 0;
+		grandTotal = 0;
+	}
+
+	/*
+	 * Saves the sale in the basket and empties it. Returns the sale with its time and totals once it is safe,
+	 * its id isn't known until the server writes it to the database. If it can't be saved it stays in the basket.
+	 */
+	public Transaction commit() throws IOException {
+		out.writeByte(StoreProtocol.COMMIT);
+
+		readStatus();
+		Transaction sale = new Transaction();
+		sale.setTime(in.readLong());
+		StoreProtocol.readTotals(in, sale);
+
+		lineCount = 0;
+		subTotal = 0;
+		salesTax = 0;
+		grandTotal = 0;
+		return sale;
+	}
+
+	/*
+	 * Returns the sales saved after an id, oldest first, with their totals but not their items
+	 */
+	public ArrayList<Transaction> getHistory(int afterId) throws IOException {
+		out.writeByte(StoreProtocol.HISTORY);
+		out.writeInt(afterId);
+
+		readStatus();
+		int count = in.readInt();
+		ArrayList<Transaction> sales = new ArrayList<Transaction>(count);
+		for(int i = 0; i < count; i++) {
+			sales.add(StoreProtocol.readSale(in));
+		}
+		return sales;
+	}
+
+	/*
+	 * Returns the id of the last sale saved and the number saved up to it, as CheckoutEngine.getHistorySize does
+	 */
+	public int[] getHistorySize() throws IOException {
+		out.writeByte(StoreProtocol.HISTORY_SIZE);
+
+		readStatus();
+		return new int[]{ in.readInt(), in.readInt() };
+	}
+
+	/*
+	 * Returns a page of the sales with an id up to maxId, most recent first, as CheckoutEngine.getHistoryPage does
+	 */
+	public ArrayList<Transaction> getHistoryPage(int maxId, Transaction after, int offset, int limit) throws IOException {
+		out.writeByte(StoreProtocol.HISTORY_PAGE);
+		out.writeInt(maxId);
+		out.writeInt(after == null ? 0 : after.getID());
+		out.writeLong(after == null ? 0 : after.getTime());
+		out.writeInt(offset);
+		out.writeInt(limit);
+
+		readStatus();
+		int count = in.readInt();
+		ArrayList<Transaction> sales = new ArrayList<Transaction>(count);
+		for(int i = 0; i < count; i++) {
+			sales.add(StoreProtocol.readSale(in));
+		}
+		return sales;
+	}
+
+	/*
+	 * Returns a saved sale with its items, for showing its receipt
+	 */
+	public Transaction loadReceipt(int id) throws IOException {
+		out.writeByte(StoreProtocol.RECEIPT);
+		out.writeInt(id);
+
+		readStatus();
+		Transaction sale = new Transaction();
+		sale.setID(id);
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			sale.addItem(StoreProtocol.readLine(in));
+		}
+		sale.calculate();
+		return sale;
+	}
+
+	/*
+	 * Totals the sales from a time up to now with a grand total from minTotal up to but not including maxTotal,
+	 * as CheckoutEngine.runReport does
+	 */
+	public SalesReport runReport(long from, long minTotal, long maxTotal) throws IOException {
+		out.writeByte(StoreProtocol.REPORT);
+		out.writeLong(from);
+		out.writeLong(minTotal);
+		out.writeLong(maxTotal);
+
+		readStatus();
+		SalesReport report = new SalesReport();
+		report.add(in.readInt(), in.readLong(), in.readLong());
+		return report;
+	}
+
+	/*
+	 * Adds a new active item to the inventory and returns it with its id. A code of 0 means it has none.
+	 */
+	public InventoryItem addItem(String name, long price, long code) throws IOException {
+		out.writeByte(StoreProtocol.ADD_ITEM);
+		out.writeUTF(name);
+		out.writeLong(price);
+		out.writeLong(code);
+
+		readStatus();
+		return StoreProtocol.readItem(in);
+	}
+
+	// Returns the number of lines in the basket
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	// Getter for the sub total of the basket
+	public long getSubTotal() {
+		return subTotal;
+	}
+
+	// Getter for the sales tax of the basket
+	public long getSalesTax() {
+		return salesTax;
+	}
+
+	// Getter for the grand total of the basket
+	public long getGrandTotal() {
+		return grandTotal;
+	}
+
+	/*
+	 * Tells the server the register is done and closes the connection. The basket is dropped.
+	 */
+	public void close() {
+		try {
+			out.writeByte(StoreProtocol.QUIT);
+			readStatus();
+		} catch(IOException ex) {
+			// Closing anyway
+		}
+
+		try {
+			socket.close();
+		} catch(IOException ex) {
+			System.out.println(ex.getMessage());
+		}
+	}
+
+	/*
+	 * Sends the request written so far and reads the status of its reply. Returns OK or NOT_FOUND,
+	 * an error is thrown with the server's message.
+	 */
+	private byte readStatus() throws IOException {
+		out.flush();
+
+		byte status = in.readByte();
+		if(status == StoreProtocol.ERROR)
+			throw new IOException(in.readUTF());
+
+		return status;
+	}
+
+	// Reads the totals of the basket after a line was added to it
+	private void readTotals() throws IOException {
+		lineCount++;
+		subTotal = in.readLong();
+		salesTax = in.readLong();
+		grandTotal = in.readLong();
+	}
+}
@@ -0,0 +1,190 @@
+//////////////////////////////////////////////////////////////////////
+// StoreProtocol.java			Author: Justin Brown
+//
+// The binary protocol registers use to talk to a StoreServer over
+// TCP. A client opens with the magic number and the version, the
+// server answers with a status and a boolean saying whether it needs
+// the store's shared secret. If it does, a random challenge of
+// CHALLENGE_LENGTH bytes follows, the client answers with the
+// HMAC-SHA256 of the challenge keyed with the secret, and the server
+// answers with a status and closes the connection if it is wrong.
+// After that the client sends one request at a time and reads its
+// reply before sending the next.
+//
+// A request is one op byte followed by its arguments. A reply is one
+// status byte followed by what the op returns when it is OK, nothing
+// when it is NOT_FOUND, and a message when it is ERROR. Numbers are
+// big endian as DataOutputStream writes them, strings are modified
+// UTF-8 with a two byte length, amounts are in cents.
+//
+//     FIND_CODE  long code                  -> item
+//     FIND_NAME  string name                -> item
+//     SCAN       long code, int quantity    -> line, totals
+//     ADD_LINE   string name, long price,
+//                int quantity               -> totals
+//     CLEAR                                 -> nothing
+//     COMMIT                                -> long time, totals
+//     HISTORY    int afterId                -> int count, count sales
+//     RECEIPT    int id                     -> int count, count lines
+//     REPORT     long from, long minTotal,
+//                long maxTotal              -> int transactions,
+//                                              long revenue, long tax
+//     ADD_ITEM   string name, long price,
+//                long code                  -> item
+//     QUIT                                  -> nothing, then closed
+//     NAMES      string prefix, int limit   -> int count, count strings
+//     HISTORY_SIZE                          -> int lastId, int count
+//     HISTORY_PAGE int maxId, int afterId,
+//                long afterTime, int offset,
+//                int limit                  -> int count, count sales
+//
+// NAMES returns the active item names starting with the prefix, in
+// alphabetical order. HISTORY_SIZE and HISTORY_PAGE page back through
+// the sales as CheckoutEngine.getHistorySize and getHistoryPage do,
+// an afterId of 0 means the previous page's last sale isn't known.
+//
+// An item is int id, string name, long price, long code. A line is
+// string name, long price, int quantity. Totals are long sub total,
+// long sales tax, long grand total. A sale is int id, long time and
+// its totals.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class StoreProtocol {
+	// Opens every connection, "P2ST", followed by the version
+	public static final int MAGIC = 0x50325354;
+	public static final int VERSION = 2;
+
+	// The random bytes a server challenges a register with, and the shortest shared secret it accepts
+	public static final int CHALLENGE_LENGTH = 16;
+	public static final int MIN_SECRET_LENGTH = 16;
+
+	// The port a server listens on unless told otherwise
+	public static final int DEFAULT_PORT = 7070;
+
+	// Requests
+	public static final byte FIND_CODE = 1;
+	public static final byte FIND_NAME = 2;
+	public static final byte SCAN = 3;
+	public static final byte ADD_LINE = 4;
+	public static final byte CLEAR = 5;
+	public static final byte COMMIT = 6;
+	public static final byte HISTORY = 7;
+	public static final byte RECEIPT = 8;
+	public static final byte REPORT = 9;
+	public static final byte ADD_ITEM = 10;
+	public static final byte QUIT = 11;
+	public static final byte NAMES = 12;
+	public static final byte HISTORY_SIZE = 13;
+	public static final byte HISTORY_PAGE = 14;
+
+	// Reply statuses
+	public static final byte OK = 0;
+	public static final byte NOT_FOUND = 1;
+	public static final byte ERROR = 2;
+
+	// Only constants and helpers
+	private StoreProtocol() {
+	}
+
+	/*
+	 * Reads a shared secret from a file, its first line with the spaces around it trimmed.
+	 * Throws an IOException if it is shorter than MIN_SECRET_LENGTH.
+	 */
+	public static byte[] readSecret(File file) throws IOException {
+		String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		int end = text.indexOf('\n');
+		byte[] secret = (end < 0 ? text : text.substring(0, end)).trim().getBytes(StandardCharsets.UTF_8);
+
+		if(secret.length < MIN_SECRET_LENGTH)
+			throw new IOException("The shared secret in " + file + " must be at least " + MIN_SECRET_LENGTH + " bytes.");
+		return secret;
+	}
+
+	// Returns the answer to a challenge, the HMAC-SHA256 of it keyed with the shared secret
+	public static byte[] answer(byte[] secret, byte[] challenge) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+			return mac.doFinal(challenge);
+		} catch(GeneralSecurityException ex) {
+			// Every Java runtime has HmacSHA256
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	// Writes an inventory item
+	public static void writeItem(DataOutputStream out, InventoryItem item) throws IOException {
+		out.writeInt(item.getID());
+		out.writeUTF(item.getName());
+		out.writeLong(item.getPrice());
+		out.writeLong(item.getCode());
+	}
+
+	// Reads an inventory item, it is always active
+	public static InventoryItem readItem(DataInputStream in) throws IOException {
+		InventoryItem item = new InventoryItem();
+		item.setID(in.readInt());
+		item.setName(in.readUTF());
+		item.setPrice(in.readLong());
+		item.setCode(in.readLong());
+		item.setActive(true);
+		return item;
+	}
+
+	// Writes a line of a sale
+	public static void writeLine(DataOutputStream out, Item item) throws IOException {
+		out.writeUTF(item.getName());
+		out.writeLong(item.getPrice());
+		out.writeInt(item.getQuantity());
+	}
+
+	// Reads a line of a sale
+	public static Item readLine(DataInputStream in) throws IOException {
+		Item item = new Item();
+		item.setName(in.readUTF());
+		item.setPrice(in.readLong());
+		item.setQuantity(in.readInt());
+		return item;
+	}
+
+	// Writes the totals of a sale
+	public static void writeTotals(DataOutputStream out, long subTotal, long salesTax, long grandTotal) throws IOException {
+		out.writeLong(subTotal);
+		out.writeLong(salesTax);
+		out.writeLong(grandTotal);
+	}
+
+	// Reads the totals of a sale into a transaction
+	public static void readTotals(DataInputStream in, Transaction t) throws IOException {
+		t.setSubTotal(in.readLong());
+		t.setSalesTax(in.readLong());
+		t.setGrandTotal(in.readLong());
+	}
+
+	// Writes a saved sale without its items
+	public static void writeSale(DataOutputStream out, Transaction t) throws IOException {
+		out.writeInt(t.getID());
+		out.writeLong(t.getTime());
+		writeTotals(out, t.getSubTotal(), t.getSalesTax(), t.getGrandTotal());
+	}
+
+	// Reads a saved sale without its items
+	public static Transaction readSale(DataInputStream in) throws IOException {
+		Transaction t = new Transaction();
+		t.setID(in.readInt());
+		t.setTime(in.readLong());
+		readTotals(in, t);
+		return t;
+	}
+}
@@ -0,0 +1,802 @@
+//////////////////////////////////////////////////////////////////////
+// StoreServer.java			Author: Justin Brown
+//
+// Runs a store's database for many registers at once. Derby is
+// embedded, so only one program can open the database, and this is
+// it: registers connect to it over TCP with a StoreClient and speak
+// StoreProtocol to it. Each connection is a session on its own thread,
+// virtual where the runtime has them, with its own basket, all sharing
+// one CheckoutEngine. Lookups are answered from the inventory cache
+// on the session's thread. Database reads are handed to a small pool
+// of platform threads, since JDBC holds monitors that would pin a
+// virtual thread's carrier. Commits are queued to one committer that
+// takes whatever has queued up while it was busy and journals it with
+// a single write and force, so the more registers commit at once the
+// more sales share each trip to the disk.
+//
+// Out of the box it only listens on the loopback address. Registers
+// on other machines need a shared secret, a line of at least 16
+// bytes in a file that each register is given a copy of: with
+// --secret-file every register has to prove it knows the secret as it
+// connects, and the server won't listen anywhere else without one.
+// Lines are checked by the engine as they go in a basket, one it
+// turns down is answered with its reason.
+//
+//     java -cp project2-1.0.jar:derby.jar StoreServer --port 7070 --bind 0.0.0.0 --secret-file store.secret
+//
+// The database and its journal are opened in the current directory,
+// as the program opens them. Stop the server with Ctrl-C, it writes
+// the journalled sales to the database before it exits.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class StoreServer {
+	// Platform threads for database reads, the pool holds one more connection for the journal's writer
+	private static final int DATABASE_THREADS = 3;
+
+	// Most sales journalled in one write
+	private static final int MAX_COMMIT_BATCH = 500;
+
+	// How often an idle committer checks whether the server is stopping
+	private static final long COMMIT_POLL_MS = 100;
+
+	// Connections the operating system may hold waiting to be accepted
+	private static final int ACCEPT_BACKLOG = 1024;
+
+	// How long the journal is given to write its sales to the database when the server stops
+	private static final long CLOSE_TIMEOUT_MS = 10000;
+
+	// The most names or sales sent back for one request
+	private static final int MAX_NAMES = 100;
+	private static final int MAX_PAGE = 1000;
+
+	// What the registers share
+	private CheckoutEngine engine;
+
+	// The secret registers prove they know as they connect, null if they needn't
+	private byte[] secret;
+	private SecureRandom random;
+
+	// Threads the sessions run on, and the threads they hand database reads to
+	private ExecutorService sessions;
+	private ExecutorService database;
+
+	// Sales waiting for the committer, only added to while the server isn't stopping
+	private LinkedBlockingQueue<PendingCommit> commits;
+	private Thread committer;
+
+	// Where registers connect, and the sockets of the sessions open now
+	private ServerSocket serverSocket;
+	private Set<Socket> openSockets;
+	private volatile boolean stopping;
+
+	// Statistics, only touched by the committer
+	private long committedCount;
+	private long batchCount;
+
+	// A sale waiting to be committed, the session waits on it until the committer is done with it
+	private static class PendingCommit {
+		Basket basket;
+		Transaction sale;
+		Exception failure;
+		CountDownLatch done = new CountDownLatch(1);
+
+		PendingCommit(Basket basket) {
+			this.basket = basket;
+		}
+	}
+
+	public static void main(String[] args) {
+		int port = StoreProtocol.DEFAULT_PORT;
+		String bind = "127.0.0.1";
+		byte[] secret = null;
+
+		try {
+			for(int i = 0; i + 1 < args.length; i += 2) {
+				if(args[i].equals("--port"))
+					port = Integer.parseInt(args[i + 1]);
+				else if(args[i].equals("--bind"))
+					bind = args[i + 1];
+				else if(args[i].equals("--secret-file"))
+					secret = StoreProtocol.readSecret(new File(args[i + 1]));
+				else
+					throw new IllegalArgumentException(args[i]);
+			}
+			if(args.length % 2 != 0)
+				throw new IllegalArgumentException(args[args.length - 1]);
+		} catch(IllegalArgumentException ex) {
+			System.out.println("Usage: StoreServer [--port n] [--bind address] [--secret-file path]");
+			System.exit(1);
+		} catch(IOException ex) {
+			System.out.println("Unable to read the shared secret: " + ex.getMessage());
+			System.exit(1);
+		}
+
+		final DatabaseManager dbManager;
+		try {
+			dbManager = new DatabaseManager();
+		} catch(Exception ex) {
+			System.out.println("Database driver not found: " + ex.getMessage());
+			System.exit(1);
+			return;
+		}
+		if(!dbManager.connect()) {
+			System.out.println("Unable to connect to database.");
+			System.exit(1);
+		}
+
+		final StoreServer server = new StoreServer(dbManager, new File(dbManager.getDbName() + ".journal"), secret);
+		try {
+			server.start(InetAddress.getByName(bind), port);
+		} catch(Exception ex) {
+			System.out.println("Unable to start the store server: " + ex.getMessage());
+			System.exit(1);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				server.stop();
+				try {
+					dbManager.close();
+				} catch(Exception ex) {
+					System.out.println(ex.getMessage());
+				}
+			}
+		}, "Store server shutdown"));
+
+		server.serve();
+	}
+
+	// Constructor, for registers on this machine only
+	public StoreServer(DatabaseManager db, File journalFile) {
+		this(db, journalFile, null);
+	}
+
+	/*
+	 * Constructor, journalFile is where sales are journalled before they reach the database. Registers have to
+	 * prove they know the secret as they connect, if it isn't null.
+	 */
+	public StoreServer(DatabaseManager db, File journalFile, byte[] secret) {
+		this.secret = secret;
+		random = new SecureRandom();
+		engine = new CheckoutEngine(db, journalFile);
+		commits = new LinkedBlockingQueue<PendingCommit>();
+		openSockets = Collections.synchronizedSet(new HashSet<Socket>());
+	}
+
+	// Getter for the engine the sessions share
+	public CheckoutEngine getEngine() {
+		return engine;
+	}
+
+	/*
+	 * Opens the journal, reads the inventory and the sales into memory, starts the committer and starts
+	 * listening. A port of 0 picks a free one, getPort returns it. Registers can connect once it returns,
+	 * they are served once serve is called. Without a secret it only listens on a loopback address.
+	 */
+	public void start(InetAddress bind, int port) throws Exception {
+		if(secret == null && !bind.isLoopbackAddress())
+			throw new IOException("Listening on " + bind.getHostAddress() + " needs a shared secret, so the registers there can be checked.");
+
+		engine.open();
+		engine.loadInventory();
+		int sales = engine.loadSalesStore();
+
+		database = Executors.newFixedThreadPool(DATABASE_THREADS, new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Store database " + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sessions = SessionThreads.newExecutor("Store session");
+
+		committer = new Thread(new Runnable() {
+			public void run() {
+				commitQueued();
+			}
+		}, "Store committer");
+		committer.start();
+
+		serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(new InetSocketAddress(bind, port), ACCEPT_BACKLOG);
+
+		System.out.println("Store server listening on " + bind.getHostAddress() + ":" + getPort() + " with "
+				+ engine.getInventory().getActiveCount() + " items and " + sales + " sales, sessions on "
+				+ (SessionThreads.isVirtual() ? "virtual" : "platform") + " threads"
+				+ (secret == null ? "" : ", registers need the shared secret"));
+	}
+
+	// Returns the port the server is listening on
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/*
+	 * Accepts registers until the server is stopped, starting a session for each
+	 */
+	public void serve() {
+		while(!stopping) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch(IOException ex) {
+				if(!stopping)
+					System.out.println("Unable to accept a register: " + ex.getMessage());
+				continue;
+			}
+
+			sessions.execute(new Session(socket));
+		}
+	}
+
+	/*
+	 * Stops accepting registers, closes the sessions, commits any sales already queued and gives the journal
+	 * time to write its sales to the database. The database is left open.
+	 */
+	public void stop() {
+		synchronized(commits) {
+			if(stopping)
+				return;
+			stopping = true;
+		}
+
+		try {
+			serverSocket.close();
+		} catch(IOException ex) {
+			System.out.println(ex.getMessage());
+		}
+
+		// A session's reads fail once its socket is closed, a session waiting on a commit still gets its answer
+		ArrayList<Socket> open;
+		synchronized(openSockets) {
+			open = new ArrayList<Socket>(openSockets);
+		}
+		for(Socket socket : open) {
+			closeQuietly(socket);
+		}
+
+		try {
+			committer.join();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		sessions.shutdown();
+		database.shutdown();
+		engine.close(CLOSE_TIMEOUT_MS);
+
+		System.out.println("Store server stopped, " + committedCount + " sales committed in " + batchCount + " batches");
+	}
+
+	/*
+	 * Queues the sale in a basket for the committer and waits for it to be journalled. Returns the sale.
+	 */
+	private Transaction commit(Basket basket) throws Exception {
+		PendingCommit pending = new PendingCommit(basket);
+		synchronized(commits) {
+			if(stopping)
+				throw new IOException("The store server is stopping.");
+			commits.add(pending);
+		}
+
+		pending.done.await();
+		if(pending.failure != null)
+			throw pending.failure;
+
+		return pending.sale;
+	}
+
+	/*
+	 * Runs on the committer thread. Takes the sales queued while the last batch was being written, up to
+	 * MAX_COMMIT_BATCH, and commits them together. Returns once the server is stopping and the queue is empty.
+	 */
+	private void commitQueued() {
+		ArrayList<PendingCommit> batch = new ArrayList<PendingCommit>();
+
+		while(true) {
+			// Nothing is queued after stopping is set, so an empty queue then stays empty
+			if(stopping && commits.isEmpty())
+				return;
+
+			PendingCommit first;
+			try {
+				first = commits.poll(COMMIT_POLL_MS, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException ex) {
+				continue;
+			}
+			if(first == null)
+				continue;
+
+			batch.add(first);
+			commits.drainTo(batch, MAX_COMMIT_BATCH - 1);
+			commitBatch(batch);
+			batch.clear();
+		}
+	}
+
+	// Commits a batch of sales with one journal write and tells each session how its sale went
+	private void commitBatch(List<PendingCommit> batch) {
+		ArrayList<Basket> baskets = new ArrayList<Basket>(batch.size());
+		for(PendingCommit pending : batch) {
+			baskets.add(pending.basket);
+		}
+
+		try {
+			ArrayList<Transaction> sales = engine.commitSales(baskets);
+			for(int i = 0; i < batch.size(); i++) {
+				batch.get(i).sale = sales.get(i);
+			}
+
+			committedCount += sales.size();
+			batchCount++;
+		} catch(Exception ex) {
+			// Every sale is back in its basket, each register can try again
+			for(PendingCommit pending : batch) {
+				pending.failure = ex;
+			}
+		}
+		finally {
+			for(PendingCommit pending : batch) {
+				pending.done.countDown();
+			}
+		}
+	}
+
+	/*
+	 * Runs a database read on a platform thread and waits for it. Whatever it throws is thrown here.
+	 */
+	private <T> T onDatabase(Callable<T> work) throws Exception {
+		try {
+			return database.submit(work).get();
+		} catch(ExecutionException ex) {
+			if(ex.getCause() instanceof Exception)
+				throw (Exception) ex.getCause();
+			throw ex;
+		}
+	}
+
+	// Closes a socket, ignoring errors
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch(IOException ex) {
+			// Nothing more to do with it
+		}
+	}
+
+	// A register's connection, answering its requests one at a time
+	private class Session implements Runnable {
+		private Socket socket;
+		private Basket basket;
+
+		private DataInputStream in;
+		private DataOutputStream out;
+
+		// Each reply is built here then sent whole, so a failure part way through can still be answered
+		private ByteArrayOutputStream replyBytes;
+		private DataOutputStream reply;
+
+		Session(Socket socket) {
+			this.socket = socket;
+			basket = engine.openBasket();
+			replyBytes = new ByteArrayOutputStream();
+			reply = new DataOutputStream(replyBytes);
+		}
+
+		public void run() {
+			openSockets.add(socket);
+			try {
+				// A stop that started before the socket was added has already closed the others
+				if(stopping)
+					return;
+
+				socket.setTcpNoDelay(true);
+				in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+				if(!greet())
+					return;
+
+				while(answer(in.readByte())) {
+					// Next request
+				}
+			} catch(EOFException ex) {
+				// The register went away
+			} catch(SocketException ex) {
+				// Closed by either end
+			} catch(IOException ex) {
+				if(!stopping)
+					System.out.println("Register " + socket.getRemoteSocketAddress() + ": " + ex.getMessage());
+			}
+			finally {
+				openSockets.remove(socket);
+				closeQuietly(socket);
+			}
+		}
+
+		/*
+		 * Checks the register speaks the same protocol and, if the server has a secret, that it knows it.
+		 * Returns false if it doesn't.
+		 */
+		private boolean greet() throws IOException {
+			int magic = in.readInt();
+			int version = in.readInt();
+
+			replyBytes.reset();
+			if(magic != StoreProtocol.MAGIC) {
+				error("Not a register.");
+				send();
+				return false;
+			}
+			if(version != StoreProtocol.VERSION) {
+				error("Register protocol version " + version + " isn't supported, this server speaks " + StoreProtocol.VERSION + ".");
+				send();
+				return false;
+			}
+
+			reply.writeByte(StoreProtocol.OK);
+			reply.writeBoolean(secret != null);
+			if(secret == null) {
+				send();
+				return true;
+			}
+
+			// A new challenge each time, so an answer overheard once is no use again
+			byte[] challenge = new byte[StoreProtocol.CHALLENGE_LENGTH];
+			random.nextBytes(challenge);
+			reply.write(challenge);
+			send();
+
+			byte[] expected = StoreProtocol.answer(secret, challenge);
+			byte[] answer = new byte[expected.length];
+			in.readFully(answer);
+
+			replyBytes.reset();
+			boolean known = MessageDigest.isEqual(expected, answer);
+			if(known) {
+				reply.writeByte(StoreProtocol.OK);
+			} else {
+				error("The register doesn't know the store's shared secret.");
+				System.out.println("Register " + socket.getRemoteSocketAddress() + " didn't know the shared secret.");
+			}
+			send();
+
+			return known;
+		}
+
+		/*
+		 * Reads the arguments of a request, carries it out and sends the reply. Returns false once the
+		 * register has quit. A request that fails is answered with an error and the session carries on,
+		 * one that can't be read ends it.
+		 */
+		private boolean answer(byte op) throws IOException {
+			replyBytes.reset();
+
+			switch(op) {
+			case StoreProtocol.FIND_CODE:
+				long code = in.readLong();
+				InventoryItem scanned = engine.scan(code);
+				if(scanned == null) {
+					reply.writeByte(StoreProtocol.NOT_FOUND);
+				} else {
+					reply.writeByte(StoreProtocol.OK);
+					StoreProtocol.writeItem(reply, scanned);
+				}
+				break;
+
+			case StoreProtocol.FIND_NAME:
+				String name = in.readUTF();
+				InventoryItem named = engine.getInventory().findByName(name);
+				if(named == null || !named.isActive()) {
+					reply.writeByte(StoreProtocol.NOT_FOUND);
+				} else {
+					reply.writeByte(StoreProtocol.OK);
+					StoreProtocol.writeItem(reply, named);
+				}
+				break;
+
+			case StoreProtocol.SCAN:
+				scan(in.readLong(), in.readInt());
+				break;
+
+			case StoreProtocol.ADD_LINE:
+				addLine(in.readUTF(), in.readLong(), in.readInt());
+				break;
+
+			case StoreProtocol.CLEAR:
+				basket.clear();
+				reply.writeByte(StoreProtocol.OK);
+				break;
+
+			case StoreProtocol.COMMIT:
+				commitBasket();
+				break;
+
+			case StoreProtocol.HISTORY:
+				history(in.readInt());
+				break;
+
+			case StoreProtocol.RECEIPT:
+				receipt(in.readInt());
+				break;
+
+			case StoreProtocol.REPORT:
+				report(in.readLong(), in.readLong(), in.readLong());
+				break;
+
+			case StoreProtocol.ADD_ITEM:
+				addItem(in.readUTF(), in.readLong(), in.readLong());
+				break;
+
+			case StoreProtocol.NAMES:
+				String prefix = in.readUTF();
+				String[] names = engine.getInventory().findActiveNames(prefix, Math.max(0, Math.min(in.readInt(), MAX_NAMES)));
+				reply.writeByte(StoreProtocol.OK);
+				reply.writeInt(names.length);
+				for(String n : names) {
+					reply.writeUTF(n);
+				}
+				break;
+
+			case StoreProtocol.HISTORY_SIZE:
+				historySize();
+				break;
+
+			case StoreProtocol.HISTORY_PAGE:
+				historyPage(in.readInt(), in.readInt(), in.readLong(), in.readInt(), in.readInt());
+				break;
+
+			case StoreProtocol.QUIT:
+				reply.writeByte(StoreProtocol.OK);
+				send();
+				return false;
+
+			default:
+				throw new IOException("Unknown request " + op + ".");
+			}
+
+			send();
+			return true;
+		}
+
+		// Adds the item with a scanner code to the basket
+		private void scan(long code, int quantity) throws IOException {
+			InventoryItem found = engine.scan(code);
+			if(found == null) {
+				reply.writeByte(StoreProtocol.NOT_FOUND);
+				return;
+			}
+			Item line;
+			try {
+				line = engine.addItem(basket, found, quantity);
+			} catch(IllegalArgumentException ex) {
+				error(ex.getMessage());
+				return;
+			}
+
+			reply.writeByte(StoreProtocol.OK);
+			StoreProtocol.writeLine(reply, line);
+			writeTotals();
+		}
+
+		// Adds a line to the basket at the price the register charged
+		private void addLine(String name, long price, int quantity) throws IOException {
+			try {
+				engine.addLine(basket, name, price, quantity);
+			} catch(IllegalArgumentException ex) {
+				error(ex.getMessage());
+				return;
+			}
+
+			reply.writeByte(StoreProtocol.OK);
+			writeTotals();
+		}
+
+		// Commits the sale in the basket along with whatever else is being committed
+		private void commitBasket() throws IOException {
+			if(basket.isEmpty()) {
+				error("There are no items in the basket.");
+				return;
+			}
+
+			try {
+				Transaction sale = commit(basket);
+				reply.writeByte(StoreProtocol.OK);
+				reply.writeLong(sale.getTime());
+				StoreProtocol.writeTotals(reply, sale.getSubTotal(), sale.getSalesTax(), sale.getGrandTotal());
+			} catch(Exception ex) {
+				error("Unable to save the sale: " + ex.getMessage());
+			}
+		}
+
+		// Sends the sales saved after an id
+		private void history(final int afterId) throws IOException {
+			try {
+				ArrayList<Transaction> sales = onDatabase(new Callable<ArrayList<Transaction>>() {
+					public ArrayList<Transaction> call() throws Exception {
+						return engine.getHistory(afterId);
+					}
+				});
+
+				reply.writeByte(StoreProtocol.OK);
+				reply.writeInt(sales.size());
+				for(Transaction t : sales) {
+					StoreProtocol.writeSale(reply, t);
+				}
+			} catch(Exception ex) {
+				failed(ex);
+			}
+		}
+
+		// Sends the id of the last sale saved and the number saved up to it
+		private void historySize() throws IOException {
+			try {
+				int[] size = onDatabase(new Callable<int[]>() {
+					public int[] call() throws Exception {
+						return engine.getHistorySize();
+					}
+				});
+
+				reply.writeByte(StoreProtocol.OK);
+				reply.writeInt(size[0]);
+				reply.writeInt(size[1]);
+			} catch(Exception ex) {
+				failed(ex);
+			}
+		}
+
+		// Sends a page of the sales saved up to maxId, most recent first
+		private void historyPage(final int maxId, int afterId, long afterTime, final int offset, final int limit) throws IOException {
+			if(offset < 0 || limit < 1 || limit > MAX_PAGE) {
+				error("A page must start at 0 or later and hold 1 to " + MAX_PAGE + " sales.");
+				return;
+			}
+
+			// Only the previous page's last sale's id and time are needed to find the page after it
+			Transaction last = null;
+			if(afterId > 0) {
+				last = new Transaction();
+				last.setID(afterId);
+				last.setTime(afterTime);
+			}
+
+			final Transaction after = last;
+			try {
+				ArrayList<Transaction> sales = onDatabase(new Callable<ArrayList<Transaction>>() {
+					public ArrayList<Transaction> call() throws Exception {
+						return engine.getHistoryPage(maxId, after, offset, limit);
+					}
+				});
+
+				reply.writeByte(StoreProtocol.OK);
+				reply.writeInt(sales.size());
+				for(Transaction t : sales) {
+					StoreProtocol.writeSale(reply, t);
+				}
+			} catch(Exception ex) {
+				failed(ex);
+			}
+		}
+
+		// Sends the lines of a saved sale
+		private void receipt(final int id) throws IOException {
+			try {
+				Transaction sale = onDatabase(new Callable<Transaction>() {
+					public Transaction call() throws Exception {
+						return engine.loadReceipt(id);
+					}
+				});
+
+				reply.writeByte(StoreProtocol.OK);
+				reply.writeInt(sale.getItems().size());
+				for(Item item : sale.getItems()) {
+					StoreProtocol.writeLine(reply, item);
+				}
+			} catch(Exception ex) {
+				failed(ex);
+			}
+		}
+
+		// Sends a sales report
+		private void report(final long from, final long minTotal, final long maxTotal) throws IOException {
+			try {
+				SalesReport report = onDatabase(new Callable<SalesReport>() {
+					public SalesReport call() throws Exception {
+						return engine.runReport(from, minTotal, maxTotal);
+					}
+				});
+
+				reply.writeByte(StoreProtocol.OK);
+				reply.writeInt(report.getNumberOfTransactions());
+				reply.writeLong(report.getTotalRevenue());
+				reply.writeLong(report.getTotalSalesTax());
+			} catch(Exception ex) {
+				failed(ex);
+			}
+		}
+
+		// Adds an item to the inventory
+		private void addItem(final String name, final long price, final long code) throws IOException {
+			if(name.trim().equals("") || name.length() > DatabaseManager.MAX_ITEM_NAME_LENGTH) {
+				error("An item's name must be 1 to " + DatabaseManager.MAX_ITEM_NAME_LENGTH + " characters.");
+				return;
+			}
+			if(price < 0 || price > CheckoutEngine.MAX_PRICE) {
+				error("An item's price must be from " + Money.format(0) + " to " + Money.format(CheckoutEngine.MAX_PRICE) + ".");
+				return;
+			}
+			if(code < 0) {
+				error("An item's code can't be negative.");
+				return;
+			}
+
+			try {
+				InventoryItem item = onDatabase(new Callable<InventoryItem>() {
+					public InventoryItem call() throws Exception {
+						return engine.getInventory().addItem(name, price, code);
+					}
+				});
+
+				reply.writeByte(StoreProtocol.OK);
+				StoreProtocol.writeItem(reply, item);
+			} catch(Exception ex) {
+				failed(ex);
+			}
+		}
+
+		// Writes the totals of the basket
+		private void writeTotals() throws IOException {
+			StoreProtocol.writeTotals(reply, basket.getSubTotal(), basket.getSalesTax(), basket.getGrandTotal());
+		}
+
+		// Replaces whatever has been written of the reply with an error
+		private void error(String message) throws IOException {
+			replyBytes.reset();
+			reply.writeByte(StoreProtocol.ERROR);
+			reply.writeUTF(message);
+		}
+
+		// Answers a request that failed with its exception's message
+		private void failed(Exception ex) throws IOException {
+			error(ex.getMessage() == null ? ex.toString() : ex.getMessage());
+		}
+
+		// Sends the reply built up
+		private void send() throws IOException {
+			replyBytes.writeTo(out);
+			out.flush();
+		}
+	}
+}
@@ -4,28 +4,39 @@
 // Holds data for a transaction, either past or present. Data
 // includes the list of items purchased, the sub total of the purchase
 // the sales tax, the grand total and the date the transaction took
-// place.
+// place. Amounts are in cents and the date is kept as milliseconds
+// since 1970, so a transaction read from the history is a handful of
+// numbers and an empty item list. The items' sub totals are kept added
+// up as lines are added, removed and changed, so the totals are
+// worked out in the same time however many items there are.
 //////////////////////////////////////////////////////////////////////
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 
 public class Transaction {
-	// Used to calculate sales tax
-	private final double SALES_TAX = 0.08;
+	// Used to calculate sales tax, 8% in basis points
+	private static final int SALES_TAX_RATE = 800;
 	
-	// Formatter for saving the date to the database
-	private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	// Formatters for showing the date and writing it out in full, shared by every transaction
+	private static final DateTimeFormatter displayFormat =
+			DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT).withZone(ZoneId.systemDefault());
+	private static final DateTimeFormatter dateFormat =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
 	
 	// Variables
+	private int id;
 	private ArrayList<Item> items;
-	private double subTotal;
-	private double salesTax;
-	private double grandTotal;
-	private Date date;
+	private long itemsTotal;
+	private long subTotal;
+	private long salesTax;
+	private long grandTotal;
+	private long time;
 	
 	// Constructor
 	public Transaction() {
@@ -33,30 +44,58 @@ public class Transaction {
 		// Setup a blank arraylist for the items
 		items = new ArrayList<Item>();
 		
-		// Set all the values to zero
+		// Set all the values to zero, an id of zero means the transaction hasn't been saved
+		id = 0;
+		itemsTotal = 0;
 		subTotal = 0;
 		salesTax = 0;
 		grandTotal = 0;
 		
 		// Set the date to now
-		date = new Date();
+		time = System.currentTimeMillis();
 	}
 
 	// Add an item to the transaction
 	public void addItem(Item i) { 
 		items.add(i);
+		itemsTotal += i.getSubTotal();
 	}
 	
-	// Getter for the items
+	// Remove the item at a line of the transaction and return it
+	public Item removeItem(int index) {
+		Item removed = items.remove(index);
+		itemsTotal -= removed.getSubTotal();
+		return removed;
+	}
+	
+	/*
+	 * Replace the item at a line of the transaction and return the one it replaced. A line is changed by
+	 * setting a changed copy of its item, an item already in the transaction mustn't be changed in place.
+	 */
+	public Item setItem(int index, Item i) {
+		Item replaced = items.set(index, i);
+		itemsTotal += i.getSubTotal() - replaced.getSubTotal();
+		return replaced;
+	}
+	
+	// Getter for the items, add, remove and change them through the transaction so its totals are kept
 	public ArrayList<Item> getItems() {
 		return items;
 	}
 	
 	/*
-	 * Calculate the sub total of all the items
+	 * Calculate the sub total of all the items, from the total kept as they were added
 	 */
 	public void calculateSubTotal() {
-		double runningTotal = 0;
+		subTotal = itemsTotal;
+	}
+	
+	/*
+	 * Adds up the items again and returns true if the totals match them. Only for checking,
+	 * the totals are kept up to date as the items change.
+	 */
+	public boolean verifyTotals() {
+		long runningTotal = 0;
 		
 		// Loop through the items
 		for(Iterator<Item> i = items.iterator(); i.hasNext();) {
@@ -65,16 +104,28 @@ public class Transaction {
 			runningTotal += i.next().getSubTotal();
 		}
 		
-		// Override the previous value we stored with the new total
-		subTotal = runningTotal;
+		return runningTotal == itemsTotal && subTotal == itemsTotal
+				&& salesTax == Money.applyRate(subTotal, SALES_TAX_RATE) && grandTotal == subTotal + salesTax;
+	}
+	
+	/*
+	 * Adds up the items again and calculates the totals from them, for when verifyTotals finds they don't match
+	 */
+	public void recalculate() {
+		itemsTotal = 0;
+		for(Iterator<Item> i = items.iterator(); i.hasNext();) {
+			itemsTotal += i.next().getSubTotal();
+		}
+		
+		calculate();
 	}
 	
 	/*
 	 * Calculate the sales tax
 	 */
 	public void calculateSalesTax() {
-		// Sales tax is equal to sub total multiplied by the tax rate
-		salesTax = subTotal * SALES_TAX;
+		// Sales tax is the tax rate of the sub total, rounded to the nearest cent with halves rounded up
+		salesTax = Money.applyRate(subTotal, SALES_TAX_RATE);
 	}
 	
 	/*
@@ -84,54 +135,74 @@ public class Transaction {
 		grandTotal = subTotal + salesTax;
 	}	
 
+	// Getter for the transaction id
+	public int getID() {
+		return id;
+	}
+	
+	// Setter for the transaction id
+	public void setID(int value) {
+		id = value;
+	}
+	
 	// Getter for the sub total
-	public double getSubTotal() {
+	public long getSubTotal() {
 		return subTotal;
 	}
 	
 	// Getter for the grand total
-	public double getGrandTotal() {
+	public long getGrandTotal() {
 		return grandTotal;
 	}
 
 	// Getter for the sales tax
-	public double getSalesTax() {
+	public long getSalesTax() {
 		return salesTax;
 	}	
 	
 	// Getter for the date
 	public String getDate() {
-		return DateFormat.getInstance().format(date);
-	}	
+		return displayFormat.format(Instant.ofEpochMilli(time));
+	}
+	
+	// Getter for the date in milliseconds
+	public long getTime() {
+		return time;
+	}
 	
 	// Return a formatted date string
 	public String getDateFormatted() {
-		return dateFormat.format(date);
+		return dateFormat.format(Instant.ofEpochMilli(time));
 	}
 	
 	// Setter for the sub total
-	public void setSubTotal(double value) {
+	public void setSubTotal(long value) {
 		subTotal = value;
 	}
 	
 	// Setter for the sales tax
-	public void setSalesTax(double value) {
+	public void setSalesTax(long value) {
 		salesTax = value;
 	}
 	
 	// Setter for the grand total
-	public void setGrandTotal(double value) {
+	public void setGrandTotal(long value) {
 		grandTotal = value;
 	}
 	
 	// Setter for the date
 	public void setDate(Date d) {
-		date = d;
+		time = d.getTime();
+	}
+	
+	// Setter for the date in milliseconds
+	public void setTime(long value) {
+		time = value;
 	}
 	
 	/*
 	 * Processes each of the three calculations needed to get the correct totals
-	 * for the transaction based on its current items list.
+	 * for the transaction based on its current items list. Each takes the same time however many items there are.
 	 */
 	public void calculate() {
 		calculateSubTotal();
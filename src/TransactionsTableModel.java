@@ -2,32 +2,85 @@
 // TransactionTableModel.java			Author: Justin Brown
 //
 // Extends the AbstractTableModel class and provides a customized
-// table model for use in the UI.
+// table model for use in the UI. Transactions are read through the
+// register a page at a time as the table asks for them, so only the
+// rows being displayed are held in memory. Pages are read in the
+// background, their rows stay blank until they arrive. A page that
+// can't be read stays blank for a few seconds before it is asked for
+// again, rather than on every repaint. Values are
+// handed to the table as they are, the table's renderers format them.
+// Each row's values are made once, when the row arrives, so painting
+// the table over and over doesn't make a new date and boxed amounts
+// for every cell each time.
 //////////////////////////////////////////////////////////////////////
 
-import java.text.NumberFormat;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.swing.Timer;
 import javax.swing.table.AbstractTableModel;
 
 
 public class TransactionsTableModel extends AbstractTableModel {
+	// Number of transactions read from the database at a time
+	private static final int PAGE_SIZE = 100;
+
+	// Most pages kept in memory, the least recently used page is dropped first
+	private static final int MAX_PAGES = 20;
 
-	// Hold our currency formatter
-	private NumberFormat currencyFormat;
+	// How long a page that couldn't be read is left blank before it is asked for again
+	private static final int PAGE_RETRY_MS = 5000;
+
+	// Runs the reads in the background, and the register the transactions are read through
+	private AsyncDatabase asyncDb;
+	private Register register;
 	
 	// Our table format and data
 	private String[] columnNames;
-    private ArrayList<Transaction> data;
+	private Class<?>[] columnClasses;
     
-    public TransactionsTableModel() {
-    	// Setup the currency format
-    	currencyFormat = NumberFormat.getCurrencyInstance();
+	// Transactions added since the model was loaded, oldest first
+    private ArrayList<Row> recent;
+
+    // The history, transactions with an id up to historyMaxId, read a page at a time
+    private int historyMaxId;
+    private int historyCount;
+    private Map<Integer, ArrayList<Row>> pages;
+
+    // Pages that have been asked for but haven't arrived yet, and pages that failed with when to ask again
+    private HashSet<Integer> pendingPages;
+    private HashMap<Integer, Long> failedPages;
+
+    // Highest transaction id in the model
+    private int lastTransactionId;
+
+    public TransactionsTableModel(AsyncDatabase db, Register register) {
+    	asyncDb = db;
+    	this.register = register;
+    	pendingPages = new HashSet<Integer>();
+    	failedPages = new HashMap<Integer, Long>();
     	
     	// Setup the column names used in this table model
     	columnNames = new String[]{"Date", "Subtotal", "Sales Tax", "Grand Total"};
+    	columnClasses = new Class<?>[]{ Date.class, Long.class, Long.class, Long.class };
     	
-    	// Blank arraylist to store the list of transactions
-    	data = new ArrayList<Transaction>();
+    	// Blank arraylist to store the new transactions
+    	recent = new ArrayList<Row>();
+
+    	// Access ordered map so the eldest entry is the least recently used page
+    	pages = new LinkedHashMap<Integer, ArrayList<Row>>(MAX_PAGES, 0.75f, true) {
+    		@Override
+    		protected boolean removeEldestEntry(Map.Entry<Integer, ArrayList<Row>> eldest) {
+    			return size() > MAX_PAGES;
+    		}
+    	};
     }
 	
     /*
@@ -39,11 +92,11 @@ public class TransactionsTableModel extends AbstractTableModel {
 	}
 
 	/*
-	 * Returns the number of rows based on the data arraylist size
+	 * Returns the number of rows, the new transactions plus the history
 	 */
 	@Override
 	public int getRowCount() {
-		return data.size();
+		return recent.size() + historyCount;
 	}
 	
 	/*
@@ -59,68 +112,219 @@ public class TransactionsTableModel extends AbstractTableModel {
 	 */
 	@Override
 	public Object getValueAt(int row, int col) {
-		// Invert the row so the last transactions shows first
-		// Do this because we want this table to display the most recent first
-		row = data.size() - 1 - row;
-		
-		switch(col){
-			// Column 1 return the sub total
-			case 1:
-				return currencyFormat.format(data.get(row).getSubTotal());
-				
-			// Column 2 return the sales tax
-			case 2:
-				return currencyFormat.format(data.get(row).getSalesTax());
-				
-			// Column 3 return the grand total
-			case 3:
-				return currencyFormat.format(data.get(row).getGrandTotal());
-				
-			// Column 0 or default return the date
-			default:
-				return data.get(row).getDate();
-		}
+		Row r = findRow(row);
+
+		// The page hasn't been read yet, leave the row blank
+		if(r == null)
+			return null;
 		
+		return r.values[col];
 	}
 	
 	/*
 	 * Used to add a new row to the table 
 	 */
 	public void setValueAt(Object value, int row, int col) {
+		Transaction t = (Transaction) value;
 		
 		// Add the new item to our arraylist
-		data.add((Transaction) value);
+		recent.add(new Row(t));
+		lastTransactionId = Math.max(lastTransactionId, t.getID());
 		
 		// Make sure the table display updates
         fireTableRowsInserted(row, row);
     }
 	
+	/*
+	 * Returns the type of the values in a column, the table picks its renderer by it
+	 */
+	@Override
 	public Class<?> getColumnClass(int c) {
-        return getValueAt(0, c).getClass();
+        return columnClasses[c];
     }
 	
 	/*
-	 * Clear the table
+	 * Points the model at the transactions currently in the database.
+	 * Only the count is read here, the rows are read as the table displays them.
 	 */
-	public void reset() {
-		// Clear the arraylist
-		data.clear();
+	public void load() {
+		asyncDb.submit(new Callable<int[]>() {
+			public int[] call() throws Exception {
+				return register.getHistorySize();
+			}
+		}, new DatabaseCallback<int[]>() {
+			public void succeeded(int[] result) {
+				pages.clear();
+				pendingPages.clear();
+				failedPages.clear();
 		
-		// Make sure the table display updates
-		fireTableDataChanged();
+				historyMaxId = result[0];
+
+				// Anything added before the count was taken is part of the history now
+				for(int i = recent.size() - 1; i >= 0; i--) {
+					if(recent.get(i).transaction.getID() <= historyMaxId)
+						recent.remove(i);
+				}
+
+				historyCount = result[1];
+				lastTransactionId = Math.max(lastTransactionId, historyMaxId);
+
+				// Make sure the table display updates
+				fireTableDataChanged();
+			}
+
+			public void failed(Exception ex) {
+				System.out.println(ex.getMessage());
+			}
+		});
+	}
+
+	/*
+	 * Adds the transactions saved since the last one in the model
+	 */
+	public void loadNewer() {
+		final int after = lastTransactionId;
+
+		asyncDb.submit(new Callable<ArrayList<Transaction>>() {
+			public ArrayList<Transaction> call() throws Exception {
+				return register.getHistory(after);
+			}
+		}, new DatabaseCallback<ArrayList<Transaction>>() {
+			public void succeeded(ArrayList<Transaction> added) {
+				int count = 0;
+
+				// Skip any that were added to the model while we were loading
+				for(Transaction t : added) {
+					if(t.getID() > lastTransactionId) {
+						recent.add(new Row(t));
+						lastTransactionId = t.getID();
+						count++;
+					}
+				}
+
+				// The newest show first, so the new rows are at the top
+				if(count > 0)
+					fireTableRowsInserted(0, count - 1);
+			}
+
+			public void failed(Exception ex) {
+				System.out.println(ex.getMessage());
+			}
+		});
+	}
+
+	// Getter for the highest transaction id in the model
+	public int getLastTransactionId() {
+		return lastTransactionId;
 	}
 
 	/*
-	 * Returns the transaction at a given row
+	 * Returns the transaction at a given row, the most recent transaction is row 0.
+	 * Returns null if the page it is on hasn't been read yet.
 	 */
 	public Transaction getRow(int row){
-		// Again use the inversion so we return the correct transaction
-		return data.get(data.size() - 1- row);
+		Row r = findRow(row);
+		return r == null ? null : r.transaction;
+	}
+
+	// Returns a row with its values, or null if the page it is on hasn't been read yet
+	private Row findRow(int row) {
+		// Invert the row so the last transactions shows first
+		if(row < recent.size())
+			return recent.get(recent.size() - 1 - row);
+
+		row -= recent.size();
+
+		ArrayList<Row> page = getPage(row / PAGE_SIZE);
+		if(page == null || row % PAGE_SIZE >= page.size())
+			return null;
+
+		return page.get(row % PAGE_SIZE);
 	}
 	
-	// Getter for the data
-	public ArrayList<Transaction> getData() {
-		return data;
+	/*
+	 * Returns a page of the history, or null and asks for it to be read if it isn't in memory
+	 */
+	private ArrayList<Row> getPage(final int index) {
+		ArrayList<Row> page = pages.get(index);
+		if(page != null || pendingPages.contains(index))
+			return page;
+
+		// Leave a page that failed blank until it is time to try again
+		Long retryAt = failedPages.get(index);
+		if(retryAt != null) {
+			if(System.currentTimeMillis() < retryAt)
+				return null;
+			failedPages.remove(index);
+		}
+
+		// If the previous page is in memory we can seek straight past its last row
+		ArrayList<Row> previous = pages.get(index - 1);
+		Transaction last = null;
+		if(previous != null && previous.size() == PAGE_SIZE)
+			last = previous.get(PAGE_SIZE - 1).transaction;
+
+		final Transaction after = last;
+		final int maxId = historyMaxId;
+
+		pendingPages.add(index);
+		asyncDb.submit(new Callable<ArrayList<Transaction>>() {
+			public ArrayList<Transaction> call() throws Exception {
+				return register.getHistoryPage(maxId, after, index * PAGE_SIZE, PAGE_SIZE);
+			}
+		}, new DatabaseCallback<ArrayList<Transaction>>() {
+			public void succeeded(ArrayList<Transaction> result) {
+				// Ignore pages of a history that has since been reloaded
+				if(!pendingPages.remove(index) || maxId != historyMaxId)
+					return;
+
+				ArrayList<Row> rows = new ArrayList<Row>(result.size());
+				for(Transaction t : result) {
+					rows.add(new Row(t));
+				}
+				pages.put(index, rows);
+				repaintPage(index);
+			}
+
+			public void failed(Exception ex) {
+				if(!pendingPages.remove(index) || maxId != historyMaxId)
+					return;
+
+				System.out.println("Unable to read page " + index + " of the transactions, trying again shortly: " + ex.getMessage());
+				failedPages.put(index, System.currentTimeMillis() + PAGE_RETRY_MS);
+
+				// Repainting the page then asks for it again, if it is still shown and the history hasn't been reloaded
+				Timer retry = new Timer(PAGE_RETRY_MS, new ActionListener() {
+					public void actionPerformed(ActionEvent e) {
+						if(maxId == historyMaxId && failedPages.remove(index) != null)
+							repaintPage(index);
+					}
+				});
+				retry.setRepeats(false);
+				retry.start();
+			}
+		});
+
+		return null;
+	}
+
+	// Tells the table the rows of a page of the history have changed
+	private void repaintPage(int index) {
+		int first = recent.size() + index * PAGE_SIZE;
+		int last = Math.min(first + PAGE_SIZE, getRowCount()) - 1;
+		if(last >= first)
+			fireTableRowsUpdated(first, last);
+	}
+
+	// A transaction in the table and the values shown in its columns
+	private static class Row {
+		private final Transaction transaction;
+		private final Object[] values;
+
+		public Row(Transaction t) {
+			transaction = t;
+			values = new Object[]{ new Date(t.getTime()), t.getSubTotal(), t.getSalesTax(), t.getGrandTotal() };
+		}
 	}
 	
 }
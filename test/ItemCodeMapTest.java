@@ -0,0 +1,134 @@
+//////////////////////////////////////////////////////////////////////
+// ItemCodeMapTest.java			Author: Justin Brown
+//
+// Runs random puts and removes against an ItemCodeMap and a HashMap
+// side by side and checks they always hold the same items. The codes
+// come from a small range so the walks run into each other, and the
+// map is emptied and refilled so it resizes along the way.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ItemCodeMapTest {
+	@Test
+	public void matchesAHashMapThroughRandomPutsAndRemoves() {
+		Random random = new Random(13);
+		ItemCodeMap map = new ItemCodeMap();
+		HashMap<Long, InventoryItem> expected = new HashMap<Long, InventoryItem>();
+
+		for(int round = 0; round < 20; round++) {
+			// Some rounds fill the map well past its first size, some nearly empty it
+			int range = 1 + random.nextInt(round % 2 == 0 ? 2000 : 60);
+			double removes = round % 3 == 0 ? 0.7 : 0.3;
+
+			for(int op = 0; op < 3000; op++) {
+				long code = random.nextInt(range) - range / 4;
+
+				if(random.nextDouble() < removes) {
+					map.remove(code);
+					expected.remove(code);
+				}
+				else {
+					InventoryItem item = item(code);
+					map.put(code, item);
+					if(code != 0)
+						expected.put(code, item);
+				}
+
+				if(op % 100 == 0)
+					assertSameItems(expected, map, range);
+			}
+
+			assertSameItems(expected, map, range);
+		}
+	}
+
+	@Test
+	public void keepsEveryItemInACollidingRunWhenOneIsRemoved() {
+		Random random = new Random(7);
+
+		for(int round = 0; round < 200; round++) {
+			ItemCodeMap map = new ItemCodeMap();
+			HashMap<Long, InventoryItem> expected = new HashMap<Long, InventoryItem>();
+
+			// Up to half full, which is as full as it gets before it resizes
+			for(int i = 0; i < 8; i++) {
+				long code = 1 + random.nextInt(40);
+				InventoryItem item = item(code);
+				map.put(code, item);
+				expected.put(code, item);
+			}
+
+			// Remove them in a random order, checking the rest are still found after each
+			Long[] codes = expected.keySet().toArray(new Long[0]);
+			for(int i = codes.length - 1; i >= 0; i--) {
+				int pick = random.nextInt(i + 1);
+				Long code = codes[pick];
+				codes[pick] = codes[i];
+
+				map.remove(code);
+				expected.remove(code);
+				assertSameItems(expected, map, 41);
+			}
+		}
+	}
+
+	@Test
+	public void ignoresCodeZero() {
+		ItemCodeMap map = new ItemCodeMap();
+		map.put(0, item(0));
+		assertEquals(0, map.size());
+		assertNull(map.get(0));
+
+		map.remove(0);
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void clearEmptiesTheMap() {
+		ItemCodeMap map = new ItemCodeMap();
+		for(long code = 1; code <= 100; code++) {
+			map.put(code, item(code));
+		}
+		assertEquals(100, map.size());
+
+		map.clear();
+		assertEquals(0, map.size());
+		for(long code = 1; code <= 100; code++) {
+			assertNull(map.get(code));
+		}
+
+		map.put(5, item(5));
+		assertEquals(5, map.get(5).getCode());
+	}
+
+	// Checks the map holds exactly the expected items, looking up every code in the range it was drawn from
+	private static void assertSameItems(HashMap<Long, InventoryItem> expected, ItemCodeMap map, int range) {
+		assertEquals(expected.size(), map.size());
+
+		for(Map.Entry<Long, InventoryItem> entry : expected.entrySet()) {
+			assertSame(entry.getValue(), map.get(entry.getKey()), "code " + entry.getKey());
+		}
+
+		for(long code = -range; code <= range; code++) {
+			if(!expected.containsKey(code))
+				assertNull(map.get(code), "code " + code);
+		}
+	}
+
+	// Makes an item with a code
+	private static InventoryItem item(long code) {
+		InventoryItem item = new InventoryItem();
+		item.setCode(code);
+		item.setName("Item " + code);
+		return item;
+	}
+}
@@ -0,0 +1,41 @@
+//////////////////////////////////////////////////////////////////////
+// ItemPickerTest.java			Author: Justin Brown
+//
+// Types and pastes names into an ItemPicker and checks no more of a
+// name gets in than a sale's line can hold. Nothing is shown, so it
+// runs without a display.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import javax.swing.JTextField;
+
+import org.junit.jupiter.api.Test;
+
+public class ItemPickerTest {
+	@Test
+	public void holdsNoMoreThanALineCan() throws Exception {
+		ItemPicker picker = new ItemPicker(null, null);
+		JTextField editor = (JTextField) picker.getEditor().getEditorComponent();
+		String longest = name(DatabaseManager.MAX_LINE_NAME_LENGTH);
+
+		// Pasted in whole, only as much as fits is kept
+		editor.setText(name(200));
+		assertEquals(longest, picker.getText());
+
+		// Typed on the end of a full name, nothing more goes in
+		editor.getDocument().insertString(editor.getDocument().getLength(), "y", null);
+		assertEquals(longest, picker.getText());
+
+		// Typed over part of it, the part replaced makes room
+		editor.getDocument().remove(0, 3);
+		editor.getDocument().insertString(0, "Milk", null);
+		assertEquals(DatabaseManager.MAX_LINE_NAME_LENGTH, picker.getText().length());
+		assertEquals("Mil", picker.getText().substring(0, 3));
+	}
+
+	// Returns a name of some length
+	private static String name(int length) {
+		return new String(new char[length]).replace('\0', 'x');
+	}
+}
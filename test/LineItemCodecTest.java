@@ -0,0 +1,241 @@
+//////////////////////////////////////////////////////////////////////
+// LineItemCodecTest.java			Author: Justin Brown
+//
+// Round trips items through LineItemCodec and feeds it ITEMS text as
+// the original program wrote it, malformed items included.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LineItemCodecTest {
+	private LineItemCodec codec = new LineItemCodec();
+
+	@Test
+	public void roundTripsNamesWithEveryDelimiter() throws IOException {
+		ArrayList<Item> items = new ArrayList<Item>();
+		items.add(item("Plain", 199, 1));
+		items.add(item("Tilde ~ and ~~ twice", 250, 2));
+		items.add(item("Brackets [x], commas, and \\ backslash", 1, 3));
+		items.add(item("~", 0, -1));
+		items.add(item("", 123456789012L, Integer.MAX_VALUE));
+
+		ArrayList<Item> decoded = decode(encode(items));
+
+		assertEquals(items.size(), decoded.size());
+		for(int i = 0; i < items.size(); i++) {
+			assertSame(items.get(i), decoded.get(i));
+		}
+	}
+
+	@Test
+	public void roundTripsRandomItems() throws IOException {
+		Random random = new Random(42);
+		String alphabet = "ab~[],\\ 9.";
+
+		for(int round = 0; round < 200; round++) {
+			ArrayList<Item> items = new ArrayList<Item>();
+			for(int i = random.nextInt(6); i > 0; i--) {
+				StringBuilder name = new StringBuilder();
+				for(int j = random.nextInt(10); j > 0; j--) {
+					name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				}
+				items.add(item(name.toString(), random.nextInt(1000000) - 1000, random.nextInt(100)));
+			}
+
+			ArrayList<Item> decoded = decode(encode(items));
+			assertEquals(items.size(), decoded.size());
+			for(int i = 0; i < items.size(); i++) {
+				assertSame(items.get(i), decoded.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void readsTheOriginalFormat() throws IOException {
+		ArrayList<Item> decoded = decode("[Milk~~2.49~~1],[Bread~~1.0~~2],[Eggs~~10.5~~12]");
+
+		assertEquals(3, decoded.size());
+		assertSame(item("Milk", 249, 1), decoded.get(0));
+		assertSame(item("Bread", 100, 2), decoded.get(1));
+		assertSame(item("Eggs", 1050, 12), decoded.get(2));
+	}
+
+	@Test
+	public void keepsBackslashesInOriginalNames() throws IOException {
+		ArrayList<Item> decoded = decode("[C:\\Temp~~1.5~~1],[a\\~~2.0~~1],[\\\\~~3.0~~1]");
+
+		assertEquals(3, decoded.size());
+		assertSame(item("C:\\Temp", 150, 1), decoded.get(0));
+		assertSame(item("a\\", 200, 1), decoded.get(1));
+		assertSame(item("\\\\", 300, 1), decoded.get(2));
+	}
+
+	@Test
+	public void keepsSingleTildesInNames() throws IOException {
+		ArrayList<Item> decoded = decode("[a~b~~1.0~~1],[~x~~2.0~~1]");
+
+		assertEquals(2, decoded.size());
+		assertSame(item("a~b", 100, 1), decoded.get(0));
+		assertSame(item("~x", 200, 1), decoded.get(1));
+	}
+
+	@Test
+	public void dropsOnlyAnItemWithNoDelimiters() throws IOException {
+		ArrayList<Item> decoded = decode("[First~~1.0~~1],[Broken],[Next~~2.0~~2],[Last~~3.0~~3]");
+
+		assertEquals(3, decoded.size());
+		assertSame(item("First", 100, 1), decoded.get(0));
+		assertSame(item("Next", 200, 2), decoded.get(1));
+		assertSame(item("Last", 300, 3), decoded.get(2));
+	}
+
+	@Test
+	public void dropsOnlyAnItemMissingItsQuantity() throws IOException {
+		ArrayList<Item> decoded = decode("[First~~1.0],[Next~~2.0~~2],[Bad~~x~~1],[Last~~3.0~~3]");
+
+		assertEquals(2, decoded.size());
+		assertSame(item("Next", 200, 2), decoded.get(0));
+		assertSame(item("Last", 300, 3), decoded.get(1));
+	}
+
+	@Test
+	public void dropsOnlyAnItemMissingItsClosingBracket() throws IOException {
+		ArrayList<Item> decoded = decode("[First~~1.0~~1,[Next~~2.0~~2],[Cut~~3.0,[Last~~3.0~~3]");
+
+		assertEquals(2, decoded.size());
+		assertSame(item("Next", 200, 2), decoded.get(0));
+		assertSame(item("Last", 300, 3), decoded.get(1));
+	}
+
+	@Test
+	public void dropsATruncatedLastItem() throws IOException {
+		String whole = "[First~~1.0~~1],[Second~~2.25~~4]";
+
+		// Every cut inside the second item loses it and nothing else
+		for(int cut = whole.indexOf(",[") + 1; cut < whole.length(); cut++) {
+			ArrayList<Item> decoded = decode(whole.substring(0, cut));
+
+			assertEquals(1, decoded.size(), whole.substring(0, cut));
+			assertSame(item("First", 100, 1), decoded.get(0));
+		}
+		assertEquals(2, decode(whole).size());
+	}
+
+	@Test
+	public void dropsAnItemWithATrailingEscape() throws IOException {
+		ArrayList<Item> items = new ArrayList<Item>();
+		items.add(item("First", 100, 1));
+		String encoded = encode(items) + ",[Cut\\";
+
+		ArrayList<Item> decoded = decode(encoded);
+		assertEquals(1, decoded.size());
+	}
+
+	@Test
+	public void parsesPricesAsTheLibraryDoes() throws IOException {
+		String[] prices = {
+			"0", "0.0", "-0.5", "0.005", "0.015", "1.005", "2.675", "19.99", "1e2", "1.5E-1", "1E+2",
+			"123456789012345.67", "1234567890123456.78", "98765432109876543.21", "0.1234567890123456789",
+			"12345678901234567890123", "9007199254740993", "4.35", "1.0E7", "0.000000000000000000000001"
+		};
+
+		for(String price : prices) {
+			ArrayList<Item> decoded = decode("[Item~~" + price + "~~1]");
+
+			assertEquals(1, decoded.size(), price);
+			assertEquals(Money.fromDouble(Double.parseDouble(price)), decoded.get(0).getPrice(), price);
+		}
+	}
+
+	@Test
+	public void dropsPricesThatArentNumbers() throws IOException {
+		String[] prices = { "", "-", ".", "1.2.3", "1e", "e5", "1-2", "$1.00", "1,00", "--1" };
+
+		for(String price : prices) {
+			ArrayList<Item> decoded = decode("[Item~~" + price + "~~1],[Ok~~1.0~~1]");
+
+			assertEquals(1, decoded.size(), price);
+			assertEquals("Ok", decoded.get(0).getName(), price);
+		}
+	}
+
+	@Test
+	public void dropsQuantitiesOutOfRange() throws IOException {
+		ArrayList<Item> decoded = decode("[Big~~1.0~~2147483648],[Max~~1.0~~2147483647],[Min~~1.0~~-2147483647]");
+
+		assertEquals(2, decoded.size());
+		assertEquals(Integer.MAX_VALUE, decoded.get(0).getQuantity());
+		assertEquals(-Integer.MAX_VALUE, decoded.get(1).getQuantity());
+	}
+
+	@Test
+	public void readsAcrossBufferBoundaries() throws IOException {
+		ArrayList<Item> items = new ArrayList<Item>();
+		for(int i = 0; i < 2000; i++) {
+			items.add(item("Item ~ " + i + " [,]", i * 7, i % 5 + 1));
+		}
+
+		// A reader that hands out a few characters at a time splits every field somewhere
+		final String encoded = encode(items);
+		Reader trickle = new Reader() {
+			private int position = 0;
+
+			public int read(char[] buffer, int offset, int length) {
+				if(position == encoded.length())
+					return -1;
+
+				int count = Math.min(Math.min(length, 3), encoded.length() - position);
+				encoded.getChars(position, position + count, buffer, offset);
+				position += count;
+				return count;
+			}
+
+			public void close() {
+			}
+		};
+
+		ArrayList<Item> decoded = new ArrayList<Item>();
+		codec.decode(trickle, decoded);
+
+		assertEquals(items.size(), decoded.size());
+		for(int i = 0; i < items.size(); i++) {
+			assertSame(items.get(i), decoded.get(i));
+		}
+	}
+
+	// Makes an item
+	private static Item item(String name, long price, int quantity) {
+		Item item = new Item();
+		item.setName(name);
+		item.setPrice(price);
+		item.setQuantity(quantity);
+		return item;
+	}
+
+	// Checks two items have the same name, price and quantity
+	private static void assertSame(Item expected, Item actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getPrice(), actual.getPrice(), expected.getName());
+		assertEquals(expected.getQuantity(), actual.getQuantity(), expected.getName());
+	}
+
+	private String encode(ArrayList<Item> items) throws IOException {
+		StringBuilder out = new StringBuilder();
+		codec.encode(items, out);
+		return out.toString();
+	}
+
+	private ArrayList<Item> decode(String text) throws IOException {
+		ArrayList<Item> items = new ArrayList<Item>();
+		codec.decode(new StringReader(text), items);
+		return items;
+	}
+}
@@ -0,0 +1,93 @@
+//////////////////////////////////////////////////////////////////////
+// LocalRegisterTest.java			Author: Justin Brown
+//
+// Rings sales up through a LocalRegister, as the UI does when it
+// holds the database itself, and checks it turns down the same lines
+// a StoreServer does, with a message saying why, before any of them
+// reach the basket or the journal.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class LocalRegisterTest {
+	private TestDatabase database;
+	private CheckoutEngine engine;
+
+	@AfterEach
+	public void closeDatabase() throws Exception {
+		if(engine != null)
+			engine.close(0);
+		engine = null;
+
+		if(database != null)
+			database.close();
+		database = null;
+	}
+
+	@Test
+	public void turnsDownLinesOutOfRange() throws Exception {
+		LocalRegister register = openRegister();
+		String longName = new String(new char[DatabaseManager.MAX_LINE_NAME_LENGTH + 72]).replace('\0', 'x');
+
+		assertLineRefused(register, longName, 50, 1, "A line's name must be 1 to " + DatabaseManager.MAX_LINE_NAME_LENGTH + " characters.");
+		assertLineRefused(register, " ", 50, 1, "A line's name must be 1 to " + DatabaseManager.MAX_LINE_NAME_LENGTH + " characters.");
+		assertLineRefused(register, "Refund", -100, 1, "The price must be from $0.00 to $1,000,000.00.");
+		assertLineRefused(register, "Yacht", CheckoutEngine.MAX_PRICE + 1, 1, "The price must be from $0.00 to $1,000,000.00.");
+		assertLineRefused(register, "Gum", 50, 0, "The quantity must be from 1 to " + CheckoutEngine.MAX_QUANTITY + ".");
+		assertLineRefused(register, "Gum", 50, CheckoutEngine.MAX_QUANTITY + 1, "The quantity must be from 1 to " + CheckoutEngine.MAX_QUANTITY + ".");
+		assertTrue(register.isEmpty());
+
+		// The most it allows is still allowed
+		register.addLine("Yacht", CheckoutEngine.MAX_PRICE, 1);
+		assertEquals(CheckoutEngine.MAX_PRICE, register.getSubTotal());
+	}
+
+	@Test
+	public void turnsDownASaleWithABadLineAndKeepsIt() throws Exception {
+		LocalRegister register = openRegister();
+		register.addLine("Gum", 50, 1);
+
+		// A line put in the basket some other way is caught as the sale is committed
+		final Item bad = new Item();
+		bad.setName(new String(new char[DatabaseManager.MAX_LINE_NAME_LENGTH + 1]).replace('\0', 'x'));
+		bad.setPrice(50);
+		bad.setQuantity(1);
+		ArrayList<Item> lines = new ArrayList<Item>();
+		lines.add(bad);
+		final Basket basket = engine.openBasket();
+		basket.add(lines);
+
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			public void execute() throws Throwable {
+				engine.commitSale(basket);
+			}
+		});
+		assertEquals(1, basket.getLineCount());
+		assertEquals(0, engine.getHistorySize()[1]);
+	}
+
+	// Opens an engine without a journal on the test database, and a register on it
+	private LocalRegister openRegister() throws Exception {
+		database = new TestDatabase();
+		engine = new CheckoutEngine(database.getDatabase(), null);
+		engine.loadInventory();
+		return new LocalRegister(engine);
+	}
+
+	private static void assertLineRefused(final LocalRegister register, final String name, final long price, final int quantity, String message) {
+		IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, new Executable() {
+			public void execute() throws Throwable {
+				register.addLine(name, price, quantity);
+			}
+		});
+		assertEquals(message, ex.getMessage());
+	}
+}
@@ -0,0 +1,107 @@
+//////////////////////////////////////////////////////////////////////
+// MoneyTest.java			Author: Justin Brown
+//
+// Pins how amounts are rounded to the cent: rates, typed amounts and
+// doubles from before amounts were kept in cents all round halves
+// away from zero. Negative amounts are refunds, so each is checked on
+// both sides of zero.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class MoneyTest {
+	@Test
+	public void appliesARateRoundingToTheNearestCent() {
+		// 8% of $10.05 is 80.4 cents, of $10.07 it is 80.56
+		assertEquals(80, Money.applyRate(1005, 800));
+		assertEquals(81, Money.applyRate(1007, 800));
+		assertEquals(0, Money.applyRate(6, 800));
+		assertEquals(1, Money.applyRate(7, 800));
+		assertEquals(0, Money.applyRate(0, 800));
+		assertEquals(1005, Money.applyRate(1005, Money.BASIS_POINTS));
+	}
+
+	@Test
+	public void appliesARateToARefundAsTheNegativeOfTheSale() {
+		long[] amounts = { 1, 6, 7, 50, 150, 1005, 1007, 6250, 123456789 };
+		int[] rates = { 100, 800, 825, 5000 };
+
+		for(long cents : amounts) {
+			for(int rate : rates) {
+				assertEquals(-Money.applyRate(cents, rate), Money.applyRate(-cents, rate), cents + " at " + rate);
+			}
+		}
+	}
+
+	@Test
+	public void roundsHalfCentsAwayFromZeroWhenApplyingARate() {
+		// 1% of 50 cents and of $1.50 are exactly half a cent over
+		assertEquals(1, Money.applyRate(50, 100));
+		assertEquals(-1, Money.applyRate(-50, 100));
+		assertEquals(2, Money.applyRate(150, 100));
+		assertEquals(-2, Money.applyRate(-150, 100));
+
+		// Half of a cent, and 8% of $62.50 which comes out even
+		assertEquals(1, Money.applyRate(1, 5000));
+		assertEquals(-1, Money.applyRate(-1, 5000));
+		assertEquals(500, Money.applyRate(6250, 800));
+	}
+
+	@Test
+	public void parsesTypedAmountsRoundingHalvesAwayFromZero() {
+		assertEquals(499, Money.parse("4.99"));
+		assertEquals(1200, Money.parse(" 12 "));
+		assertEquals(-1200, Money.parse("-12"));
+		assertEquals(0, Money.parse("0.004"));
+		assertEquals(1, Money.parse("0.005"));
+		assertEquals(-1, Money.parse("-0.005"));
+		assertEquals(268, Money.parse("2.675"));
+		assertEquals(-268, Money.parse("-2.675"));
+		assertEquals(1500, Money.parse("1.5E1"));
+	}
+
+	@Test
+	public void rejectsTextThatIsntAnAmount() {
+		String[] bad = { "", "abc", "4.99.1", "$4.99", "1e30" };
+
+		for(final String text : bad) {
+			assertThrows(NumberFormatException.class, new Executable() {
+				public void execute() {
+					Money.parse(text);
+				}
+			}, text);
+		}
+	}
+
+	@Test
+	public void convertsDoublesRoundingHalvesAwayFromZero() {
+		// 0.125 is exactly 12.5 cents. 1.005, 0.005 and 2.675 are a little under their halves as doubles, but are
+		// read as the decimals they were written as.
+		assertEquals(13, Money.fromDouble(0.125));
+		assertEquals(-13, Money.fromDouble(-0.125));
+		assertEquals(101, Money.fromDouble(1.005));
+		assertEquals(-101, Money.fromDouble(-1.005));
+		assertEquals(1, Money.fromDouble(0.005));
+		assertEquals(-1, Money.fromDouble(-0.005));
+		assertEquals(268, Money.fromDouble(2.675));
+		assertEquals(-268, Money.fromDouble(-2.675));
+		assertEquals(1999, Money.fromDouble(19.99));
+		assertEquals(-1999, Money.fromDouble(-19.99));
+		assertEquals(0, Money.fromDouble(0.0));
+	}
+
+	@Test
+	public void writesAmountsWithTwoDecimalPlaces() {
+		assertEquals("1234.50", Money.toPlainString(123450));
+		assertEquals("-0.05", Money.toPlainString(-5));
+		assertEquals("0.00", Money.toPlainString(0));
+
+		for(long cents = -1000; cents <= 1000; cents += 7) {
+			assertEquals(cents, Money.parse(Money.toPlainString(cents)));
+		}
+	}
+}
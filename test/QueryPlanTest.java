@@ -0,0 +1,60 @@
+//////////////////////////////////////////////////////////////////////
+// QueryPlanTest.java			Author: Justin Brown
+//
+// Fills a database with items and sales and checks the queries that
+// should use an index are planned to, so a change to a query or an
+// index that loses one fails here instead of going unnoticed.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class QueryPlanTest {
+	private TestDatabase database;
+
+	@AfterEach
+	public void closeDatabase() throws Exception {
+		if(database != null)
+			database.close();
+		database = null;
+	}
+
+	@Test
+	public void hotQueriesUseTheirIndexesWhenEmpty() throws Exception {
+		database = new TestDatabase();
+
+		ArrayList<String> problems = database.getDatabase().checkQueryPlans();
+		assertTrue(problems.isEmpty(), String.join("\n", problems));
+	}
+
+	@Test
+	public void hotQueriesUseTheirIndexesWithData() throws Exception {
+		database = new TestDatabase();
+		DatabaseManager db = database.getDatabase();
+
+		for(int i = 0; i < 500; i++) {
+			db.addInventoryItem("Item " + i, 100 + i, 1000 + i);
+		}
+
+		ArrayList<Transaction> sales = new ArrayList<Transaction>();
+		for(int i = 0; i < 2000; i++) {
+			Transaction t = new Transaction();
+			Item item = new Item();
+			item.setName("Item " + i % 500);
+			item.setPrice(100 + i % 500);
+			item.setQuantity(1 + i % 3);
+			t.addItem(item);
+			t.calculate();
+			t.setTime(1500000000000L + i * 60000L);
+			sales.add(t);
+		}
+		db.saveTransactions(sales, 0);
+
+		ArrayList<String> problems = db.checkQueryPlans();
+		assertTrue(problems.isEmpty(), String.join("\n", problems));
+	}
+}
@@ -0,0 +1,142 @@
+//////////////////////////////////////////////////////////////////////
+// RemoteRegisterTest.java			Author: Justin Brown
+//
+// Rings sales up through a RemoteRegister on a StoreServer as the UI
+// does when it is started with --connect, then pages back through
+// the history, loads a receipt and runs a report the same way.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class RemoteRegisterTest {
+	// How long the journal is given to write a sale to the database
+	private static final long SAVE_TIMEOUT_MS = 30000;
+
+	private TestDatabase database;
+	private StoreServer server;
+	private Thread serving;
+	private RemoteRegister register;
+
+	@AfterEach
+	public void stopServer() throws Exception {
+		if(register != null)
+			register.close(0);
+		register = null;
+
+		if(server != null) {
+			server.stop();
+			serving.join();
+		}
+		server = null;
+
+		if(database != null)
+			database.close();
+		database = null;
+	}
+
+	@Test
+	public void ringsUpAndLooksBackThroughTheServer() throws Exception {
+		database = new TestDatabase();
+		DatabaseManager db = database.getDatabase();
+		db.addInventoryItem("Milk", 249, 5);
+		db.addInventoryItem("Bread", 199, 6);
+		db.addInventoryItem("Butter", 350, 7);
+		startServer();
+
+		register = new RemoteRegister("127.0.0.1", server.getPort(), null);
+		assertArrayEquals(new String[]{ "Bread", "Butter" }, register.findActiveNames("b", 10));
+		assertEquals(350, register.findByName("Butter").getPrice());
+		assertNull(register.scan(99));
+
+		// A burst of scans, then a line typed in
+		ArrayList<InventoryItem> scanned = new ArrayList<InventoryItem>();
+		scanned.add(register.scan(5));
+		scanned.add(register.scan(6));
+		assertEquals(2, register.addItems(scanned).size());
+		register.addLine("Flowers", 1000, 2);
+		assertEquals(249 + 199 + 2000, register.getSubTotal());
+
+		Transaction sale = register.commit();
+		assertTrue(register.isEmpty());
+		assertEquals(3, sale.getItems().size());
+		assertEquals("Flowers", sale.getItems().get(2).getName());
+		assertEquals(249 + 199 + 2000, sale.getSubTotal());
+
+		int[] size = waitForSales(1);
+		assertEquals(1, size[1]);
+
+		ArrayList<Transaction> page = register.getHistoryPage(size[0], null, 0, 10);
+		assertEquals(1, page.size());
+		assertEquals(sale.getGrandTotal(), page.get(0).getGrandTotal());
+		assertEquals(1, register.getHistory(0).size());
+		assertEquals(0, register.getHistory(size[0]).size());
+
+		Transaction receipt = register.loadReceipt(page.get(0).getID());
+		assertEquals(3, receipt.getItems().size());
+		assertEquals("Milk", receipt.getItems().get(0).getName());
+		assertEquals(2, receipt.getItems().get(2).getQuantity());
+
+		SalesReport report = register.runReport(0, DatabaseManager.NO_MINIMUM, DatabaseManager.NO_MAXIMUM);
+		assertEquals(1, report.getNumberOfTransactions());
+		assertEquals(sale.getGrandTotal(), report.getTotalRevenue());
+	}
+
+	@Test
+	public void pagesBackThroughTheHistoryByKey() throws Exception {
+		database = new TestDatabase();
+		database.getDatabase().addInventoryItem("Gum", 50, 1);
+		startServer();
+
+		register = new RemoteRegister("127.0.0.1", server.getPort(), null);
+		for(int i = 1; i <= 5; i++) {
+			register.addLine("Gum", 50, i);
+			register.commit();
+		}
+		int[] size = waitForSales(5);
+
+		// Most recent first, the second page found from the last sale of the first
+		ArrayList<Transaction> first = register.getHistoryPage(size[0], null, 0, 3);
+		ArrayList<Transaction> second = register.getHistoryPage(size[0], first.get(2), 3, 3);
+		assertEquals(3, first.size());
+		assertEquals(2, second.size());
+
+		ArrayList<Transaction> all = new ArrayList<Transaction>(first);
+		all.addAll(second);
+		for(int i = 0; i < all.size(); i++) {
+			assertEquals(size[0] - i, all.get(i).getID());
+		}
+	}
+
+	// Waits for the journal to write a number of sales to the database, returns the history's size
+	private int[] waitForSales(int count) throws Exception {
+		long deadline = System.currentTimeMillis() + SAVE_TIMEOUT_MS;
+		int[] size = register.getHistorySize();
+		while(size[1] < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+			size = register.getHistorySize();
+		}
+		return size;
+	}
+
+	// Starts a server on the test database and serves registers on a thread of its own
+	private void startServer() throws Exception {
+		server = new StoreServer(database.getDatabase(), database.file("Project2DB.journal"));
+		server.start(InetAddress.getLoopbackAddress(), 0);
+
+		serving = new Thread(new Runnable() {
+			public void run() {
+				server.serve();
+			}
+		}, "Test store server");
+		serving.start();
+	}
+}
@@ -0,0 +1,366 @@
+//////////////////////////////////////////////////////////////////////
+// SaleJournalTest.java			Author: Justin Brown
+//
+// Writes sales to a journal, then cuts the file at record boundaries
+// and part way through records, or damages it, and replays it into a
+// fresh database to check exactly the complete records get there,
+// and that a sale the database refuses is set aside rather than
+// holding up the rest.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class SaleJournalTest {
+	// Long enough for the writer to copy a few sales to the database
+	private static final long CLOSE_TIMEOUT_MS = 30000;
+
+	// Bytes in a record around the sale: length, sequence and checksum
+	private static final int RECORD_OVERHEAD = 4 + 8 + 4;
+
+	// The database the test is using, only one can be open at a time
+	private TestDatabase database;
+
+	@AfterEach
+	public void closeDatabase() throws Exception {
+		if(database != null)
+			database.close();
+		database = null;
+	}
+
+	@Test
+	public void replaysEveryRecordIntoAFreshDatabase() throws Exception {
+		ArrayList<Transaction> sales = makeSales(3);
+		byte[] journal = journal(sales);
+
+		assertSales(sales, replay(journal, 3));
+	}
+
+	@Test
+	public void replaysUpToACutAtARecordBoundary() throws Exception {
+		ArrayList<Transaction> sales = makeSales(3);
+		byte[] journal = journal(sales);
+		int[] starts = recordStarts(journal);
+
+		assertSales(sales.subList(0, 2), replay(cut(journal, starts[2]), 2));
+		assertSales(sales.subList(0, 0), replay(cut(journal, 0), 0));
+	}
+
+	@Test
+	public void dropsATornLastRecord() throws Exception {
+		ArrayList<Transaction> sales = makeSales(3);
+		byte[] journal = journal(sales);
+		int[] starts = recordStarts(journal);
+
+		// Inside the length, the sequence, the sale and the checksum of the last record
+		int[] cuts = { starts[2] + 2, starts[2] + 9, starts[2] + 20, journal.length - 2 };
+		for(int at : cuts) {
+			newDatabase();
+			File file = database.file("Project2DB.journal");
+			Files.write(file.toPath(), cut(journal, at));
+
+			SaleJournal replayed = new SaleJournal(file, database.getDatabase());
+			assertEquals(2, replayed.open(), "cut at " + at);
+
+			// The torn bytes are gone, so the next sale follows the last complete one
+			assertEquals(starts[2], file.length(), "cut at " + at);
+			Transaction next = makeSale(99);
+			replayed.append(next);
+			replayed.close(CLOSE_TIMEOUT_MS);
+
+			ArrayList<Transaction> expected = new ArrayList<Transaction>(sales.subList(0, 2));
+			expected.add(next);
+			assertSales(expected, readSales(database.getDatabase()));
+
+			// And the file reads back whole
+			assertSales(expected, replay(Files.readAllBytes(file.toPath()), 3));
+		}
+	}
+
+	@Test
+	public void stopsAtADamagedRecord() throws Exception {
+		ArrayList<Transaction> sales = makeSales(3);
+		byte[] journal = journal(sales);
+		int[] starts = recordStarts(journal);
+
+		byte[] damaged = journal.clone();
+		damaged[starts[1] + 14]++;
+
+		assertSales(sales.subList(0, 1), replay(damaged, 1));
+	}
+
+	@Test
+	public void replaysOnlySalesPastTheCheckpoint() throws Exception {
+		newDatabase();
+		File file = database.file("Project2DB.journal");
+		ArrayList<Transaction> sales = makeSales(3);
+
+		SaleJournal journal = new SaleJournal(file, database.getDatabase());
+		assertEquals(0, journal.open());
+		journal.appendAll(sales.subList(0, 2));
+		journal.close(CLOSE_TIMEOUT_MS);
+		assertEquals(2, database.getDatabase().getJournalCheckpoint());
+
+		// Everything in the file is in the database, reopening writes nothing twice
+		journal = new SaleJournal(file, database.getDatabase());
+		assertEquals(0, journal.open());
+		journal.append(sales.get(2));
+		journal.close(CLOSE_TIMEOUT_MS);
+
+		assertEquals(3, database.getDatabase().getJournalCheckpoint());
+		assertSales(sales, readSales(database.getDatabase()));
+	}
+
+	@Test
+	public void turnsDownALineTheDatabaseCantHold() throws Exception {
+		newDatabase();
+		final SaleJournal journal = new SaleJournal(database.file("Project2DB.journal"), database.getDatabase());
+		journal.open();
+
+		final Transaction sale = makeSale(1);
+		sale.getItems().get(0).setName(new String(new char[200]).replace('\0', 'x'));
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			public void execute() throws Throwable {
+				journal.append(sale);
+			}
+		});
+
+		assertEquals(0, journal.getPendingCount());
+		journal.close(CLOSE_TIMEOUT_MS);
+	}
+
+	@Test
+	public void setsAsideASaleTheDatabaseRefuses() throws Exception {
+		newDatabase();
+		File file = database.file("Project2DB.journal");
+		ArrayList<Transaction> sales = makeSales(3);
+
+		// A line for an item that isn't in the inventory breaks a foreign key
+		sales.get(1).getItems().get(0).setItemID(999);
+
+		SaleJournal journal = new SaleJournal(file, database.getDatabase());
+		journal.open();
+		journal.appendAll(sales);
+		journal.close(CLOSE_TIMEOUT_MS);
+
+		// The sales either side of it still reach the database, and the checkpoint moves past all three
+		ArrayList<Transaction> saved = new ArrayList<Transaction>();
+		saved.add(sales.get(0));
+		saved.add(sales.get(2));
+		assertSales(saved, readSales(database.getDatabase()));
+		assertEquals(1, journal.getRejectedCount());
+		assertEquals(3, database.getDatabase().getJournalCheckpoint());
+
+		// The refused sale is kept in the rejected file, laid out as the journal lays it out
+		byte[] rejected = Files.readAllBytes(database.file("Project2DB.journal.rejected").toPath());
+		assertEquals(1, recordStarts(rejected).length);
+
+		// And it isn't tried again
+		journal = new SaleJournal(file, database.getDatabase());
+		assertEquals(0, journal.open());
+		journal.close(CLOSE_TIMEOUT_MS);
+	}
+
+	@Test
+	public void readsASaleLaidOutAsDocumented() throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		long time = 1300000000000L;
+
+		// Its time, totals and lines, amounts in cents
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(time);
+		out.writeLong(1234);
+		out.writeLong(99);
+		out.writeLong(1333);
+		out.writeInt(2);
+		out.writeInt(0);
+		out.writeUTF("Milk");
+		out.writeLong(217);
+		out.writeInt(2);
+		out.writeInt(0);
+		out.writeUTF("Bread");
+		out.writeLong(800);
+		out.writeInt(1);
+		out.close();
+		writeRecord(file, 1, bytes.toByteArray());
+
+		ArrayList<Transaction> replayed = replay(file.toByteArray(), 1);
+		assertEquals(1, replayed.size());
+
+		Transaction sale = replayed.get(0);
+		assertEquals(time, sale.getTime());
+		assertEquals(1234, sale.getSubTotal());
+		assertEquals(99, sale.getSalesTax());
+		assertEquals(1333, sale.getGrandTotal());
+		assertEquals(2, sale.getItems().size());
+		assertEquals("Milk", sale.getItems().get(0).getName());
+		assertEquals(217, sale.getItems().get(0).getPrice());
+		assertEquals(2, sale.getItems().get(0).getQuantity());
+		assertEquals("Bread", sale.getItems().get(1).getName());
+		assertEquals(800, sale.getItems().get(1).getPrice());
+
+		// And a sale journalled now reads back the same way
+		Transaction journalled = makeSale(7);
+		assertSales(listOf(journalled), replay(journal(listOf(journalled)), 1));
+	}
+
+	/*
+	 * Journals sales through a database of their own, some one at a time and some together,
+	 * and returns the journal file
+	 */
+	private byte[] journal(List<Transaction> sales) throws Exception {
+		newDatabase();
+		File file = database.file("Project2DB.journal");
+
+		SaleJournal journal = new SaleJournal(file, database.getDatabase());
+		journal.open();
+		if(!sales.isEmpty())
+			journal.append(sales.get(0));
+		journal.appendAll(sales.subList(Math.min(1, sales.size()), sales.size()));
+		journal.close(CLOSE_TIMEOUT_MS);
+
+		assertEquals(sales.size(), readSales(database.getDatabase()).size());
+		return Files.readAllBytes(file.toPath());
+	}
+
+	/*
+	 * Opens a journal file with a fresh database, checks how many sales it replays, waits for them to be
+	 * written and returns the sales in the database
+	 */
+	private ArrayList<Transaction> replay(byte[] contents, int expected) throws Exception {
+		newDatabase();
+		File file = database.file("Project2DB.journal");
+		Files.write(file.toPath(), contents);
+
+		SaleJournal journal = new SaleJournal(file, database.getDatabase());
+		assertEquals(expected, journal.open());
+		journal.close(CLOSE_TIMEOUT_MS);
+
+		return readSales(database.getDatabase());
+	}
+
+	// Returns every sale in a database with its items, oldest first
+	private static ArrayList<Transaction> readSales(DatabaseManager db) throws Exception {
+		ArrayList<Transaction> sales = db.loadTransactionsAfter(0);
+		for(Transaction t : sales) {
+			db.loadTransactionItems(t);
+		}
+		return sales;
+	}
+
+	// Returns where each record in a journal starts
+	private static int[] recordStarts(byte[] journal) {
+		ArrayList<Integer> starts = new ArrayList<Integer>();
+		int at = 0;
+		while(at < journal.length) {
+			starts.add(at);
+			int size = ((journal[at] & 0xFF) << 24) | ((journal[at + 1] & 0xFF) << 16) | ((journal[at + 2] & 0xFF) << 8) | (journal[at + 3] & 0xFF);
+			at += RECORD_OVERHEAD + size;
+		}
+		assertEquals(journal.length, at);
+
+		int[] result = new int[starts.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = starts.get(i);
+		}
+		return result;
+	}
+
+	// Returns the first length bytes of a journal
+	private static byte[] cut(byte[] journal, int length) {
+		byte[] part = new byte[length];
+		System.arraycopy(journal, 0, part, 0, length);
+		return part;
+	}
+
+	// Writes a record as the journal lays it out
+	private static void writeRecord(ByteArrayOutputStream file, long sequence, byte[] sale) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(sequence);
+		out.write(sale);
+		out.close();
+		byte[] body = bytes.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		DataOutputStream record = new DataOutputStream(file);
+		record.writeInt(sale.length);
+		record.write(body);
+		record.writeInt((int) crc.getValue());
+		record.flush();
+	}
+
+	// Closes the test's database, if it has one, and makes a new one
+	private TestDatabase newDatabase() throws Exception {
+		closeDatabase();
+		database = new TestDatabase();
+		return database;
+	}
+
+	// Makes count sales with different items and times
+	private static ArrayList<Transaction> makeSales(int count) {
+		ArrayList<Transaction> sales = new ArrayList<Transaction>();
+		for(int i = 0; i < count; i++) {
+			sales.add(makeSale(i));
+		}
+		return sales;
+	}
+
+	// Makes a sale of a few items, numbered so each is different
+	private static Transaction makeSale(int number) {
+		Transaction t = new Transaction();
+		for(int i = 0; i <= number % 3; i++) {
+			Item item = new Item();
+			item.setName("Item " + number + "." + i);
+			item.setPrice(100 * number + 7 * i + 1);
+			item.setQuantity(i + 1);
+			t.addItem(item);
+		}
+
+		t.calculate();
+		t.setTime(1500000000000L + number * 60000L);
+		return t;
+	}
+
+	private static ArrayList<Transaction> listOf(Transaction t) {
+		ArrayList<Transaction> list = new ArrayList<Transaction>();
+		list.add(t);
+		return list;
+	}
+
+	// Checks two lists of sales have the same times, totals and items
+	private static void assertSales(List<Transaction> expected, List<Transaction> actual) {
+		assertEquals(expected.size(), actual.size());
+
+		for(int i = 0; i < expected.size(); i++) {
+			Transaction e = expected.get(i);
+			Transaction a = actual.get(i);
+
+			assertArrayEquals(new long[] { e.getTime(), e.getSubTotal(), e.getSalesTax(), e.getGrandTotal() },
+					new long[] { a.getTime(), a.getSubTotal(), a.getSalesTax(), a.getGrandTotal() }, "sale " + i);
+			assertEquals(e.getItems().size(), a.getItems().size(), "sale " + i);
+			for(int j = 0; j < e.getItems().size(); j++) {
+				assertEquals(e.getItems().get(j).getName(), a.getItems().get(j).getName());
+				assertEquals(e.getItems().get(j).getPrice(), a.getItems().get(j).getPrice());
+				assertEquals(e.getItems().get(j).getQuantity(), a.getItems().get(j).getQuantity());
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+//////////////////////////////////////////////////////////////////////
+// SalesStoreTest.java			Author: Justin Brown
+//
+// Loads saved sales into a SalesStore and checks its reports add up
+// the same as the database's, that the receipts it holds match the
+// database's, that loading again only adds the sales saved since,
+// and that sales saved out of time order are still reported.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SalesStoreTest {
+	private static final long START = 1500000000000L;
+	private static final long HOUR = 3600000L;
+
+	private TestDatabase database;
+
+	@AfterEach
+	public void closeDatabase() throws Exception {
+		if(database != null)
+			database.close();
+		database = null;
+	}
+
+	@Test
+	public void reportsTheSameAsTheDatabase() throws Exception {
+		database = new TestDatabase();
+		DatabaseManager db = database.getDatabase();
+		Random random = new Random(21);
+
+		db.saveTransactions(makeSales(random, 0, 1500), 0);
+
+		SalesStore store = new SalesStore();
+		assertEquals(1500, db.loadSales(store));
+		assertEquals(1500, store.size());
+
+		long[][] ranges = {
+			{ DatabaseManager.NO_MINIMUM, DatabaseManager.NO_MAXIMUM },
+			{ 10000, 50000 },
+			{ 0, 1234 },
+			{ -5000, 0 },
+			{ 2500, DatabaseManager.NO_MAXIMUM }
+		};
+		for(int hours = 0; hours <= 1500; hours += 250) {
+			for(long[] range : ranges) {
+				long from = START + hours * HOUR;
+				assertSameReport(db.generateReport(new Timestamp(from), range[0], range[1]),
+						store.report(from, Long.MAX_VALUE, range[0], range[1]), hours + "h " + range[0] + " to " + range[1]);
+			}
+		}
+	}
+
+	@Test
+	public void holdsTheSameReceiptsAsTheDatabase() throws Exception {
+		database = new TestDatabase();
+		DatabaseManager db = database.getDatabase();
+		Random random = new Random(8);
+
+		ArrayList<Transaction> sales = makeSales(random, 0, 30);
+		db.saveTransactions(sales, 0);
+
+		// Loaded in two goes, so some come through appendAll onto sales already held
+		SalesStore store = new SalesStore();
+		db.loadSales(store);
+		ArrayList<Transaction> more = makeSales(random, 30, 10);
+		db.saveTransactions(more, 0);
+		db.loadSales(store);
+		sales.addAll(more);
+
+		int lines = 0;
+		for(Transaction sale : sales) {
+			Transaction expected = new Transaction();
+			expected.setID(sale.getID());
+			db.loadTransactionItems(expected);
+			lines += expected.getItems().size();
+
+			Transaction held = store.find(sale.getID());
+			assertEquals(sale.getTime(), held.getTime());
+			assertEquals(sale.getSubTotal(), held.getSubTotal());
+			assertEquals(sale.getGrandTotal(), held.getGrandTotal());
+			assertEquals(expected.getItems().size(), held.getItems().size());
+			for(int i = 0; i < expected.getItems().size(); i++) {
+				Item e = expected.getItems().get(i);
+				Item h = held.getItems().get(i);
+				assertEquals(e.getItemID(), h.getItemID());
+				assertEquals(e.getName(), h.getName());
+				assertEquals(e.getPrice(), h.getPrice());
+				assertEquals(e.getQuantity(), h.getQuantity());
+			}
+		}
+		assertEquals(lines, store.getLineCount());
+		assertNull(store.find(sales.get(sales.size() - 1).getID() + 1));
+	}
+
+	@Test
+	public void reportsSalesAppendedOutOfTimeOrder() throws Exception {
+		Random random = new Random(34);
+		SalesStore store = new SalesStore();
+
+		// Enough sales for a few chunks, each a minute on from the last but now and then saved before the one
+		// committed just ahead of it, and one from long ago
+		int count = 20000;
+		long[] times = new long[count];
+		long[] totals = new long[count];
+		for(int i = 0; i < count; i++) {
+			times[i] = START + i * 60000L;
+			if(i > 0 && random.nextInt(50) == 0) {
+				times[i] = times[i - 1];
+				times[i - 1] = START + i * 60000L;
+			}
+			totals[i] = random.nextInt(20000);
+		}
+		times[15000] = START - HOUR;
+
+		for(int i = 0; i < count; i++) {
+			store.append(i + 1, times[i], totals[i], 0, totals[i]);
+		}
+
+		long[][] spans = {
+			{ START - 2 * HOUR, START },
+			{ START, START + 100 * HOUR },
+			{ START + 150 * HOUR, START + 160 * HOUR },
+			{ START + 300 * HOUR, Long.MAX_VALUE },
+			{ 0, Long.MAX_VALUE }
+		};
+		for(long[] span : spans) {
+			int expectedCount = 0;
+			long expectedRevenue = 0;
+			for(int i = 0; i < count; i++) {
+				if(times[i] >= span[0] && times[i] < span[1] && totals[i] >= 1000) {
+					expectedCount++;
+					expectedRevenue += totals[i];
+				}
+			}
+
+			SalesReport report = store.report(span[0], span[1], 1000, DatabaseManager.NO_MAXIMUM);
+			assertEquals(expectedCount, report.getNumberOfTransactions(), span[0] + " to " + span[1]);
+			assertEquals(expectedRevenue, report.getTotalRevenue(), span[0] + " to " + span[1]);
+		}
+	}
+
+	@Test
+	public void loadsOnlyTheSalesSavedSince() throws Exception {
+		database = new TestDatabase();
+		DatabaseManager db = database.getDatabase();
+		Random random = new Random(5);
+
+		SalesStore store = new SalesStore();
+		assertEquals(0, db.loadSales(store));
+
+		db.saveTransactions(makeSales(random, 0, 40), 0);
+		assertEquals(40, db.loadSales(store));
+		assertEquals(0, db.loadSales(store));
+
+		ArrayList<Transaction> more = makeSales(random, 40, 25);
+		db.saveTransactions(more, 0);
+		assertEquals(25, db.loadSales(store));
+		assertEquals(65, store.size());
+		assertEquals(more.get(more.size() - 1).getID(), store.getLastTransactionId());
+
+		// A second store loaded from scratch holds the same
+		SalesStore fresh = new SalesStore();
+		assertEquals(65, db.loadSales(fresh));
+		assertSameReport(fresh.report(0, Long.MAX_VALUE, DatabaseManager.NO_MINIMUM, DatabaseManager.NO_MAXIMUM),
+				store.report(0, Long.MAX_VALUE, DatabaseManager.NO_MINIMUM, DatabaseManager.NO_MAXIMUM), "all");
+	}
+
+	// Makes count sales an hour apart, from the hour first on, with totals from refunds up to a few hundred dollars
+	private static ArrayList<Transaction> makeSales(Random random, int first, int count) {
+		ArrayList<Transaction> sales = new ArrayList<Transaction>();
+		for(int i = first; i < first + count; i++) {
+			Transaction t = new Transaction();
+			for(int line = 0; line <= i % 3; line++) {
+				Item item = new Item();
+				item.setName("Item " + (i + line) % 7);
+				item.setPrice(random.nextInt(60000) - 5000);
+				item.setQuantity(1 + random.nextInt(3));
+				t.addItem(item);
+			}
+			t.calculate();
+			t.setTime(START + i * HOUR + random.nextInt(60000));
+			sales.add(t);
+		}
+		return sales;
+	}
+
+	private static void assertSameReport(SalesReport expected, SalesReport actual, String message) {
+		assertEquals(expected.getNumberOfTransactions(), actual.getNumberOfTransactions(), message);
+		assertEquals(expected.getTotalRevenue(), actual.getTotalRevenue(), message);
+		assertEquals(expected.getTotalSalesTax(), actual.getTotalSalesTax(), message);
+	}
+}
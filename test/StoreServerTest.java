@@ -0,0 +1,168 @@
+//////////////////////////////////////////////////////////////////////
+// StoreServerTest.java			Author: Justin Brown
+//
+// Runs a StoreServer on a test database on a free loopback port and
+// rings sales up through StoreClients, checking what reaches the
+// database once the server has stopped.
+//////////////////////////////////////////////////////////////////////
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class StoreServerTest {
+	private static final byte[] SECRET = "correct horse battery staple".getBytes(StandardCharsets.UTF_8);
+
+	private TestDatabase database;
+	private StoreServer server;
+	private Thread serving;
+
+	@AfterEach
+	public void stopServer() throws Exception {
+		if(server != null) {
+			server.stop();
+			serving.join();
+		}
+		server = null;
+
+		if(database != null)
+			database.close();
+		database = null;
+	}
+
+	@Test
+	public void recordsAScanAgainstTheItemScanned() throws Exception {
+		database = new TestDatabase();
+		DatabaseManager db = database.getDatabase();
+
+		// Two items can share a name, the code tells them apart
+		InventoryItem small = db.addInventoryItem("Soda", 100, 11);
+		InventoryItem large = db.addInventoryItem("Soda", 250, 22);
+		startServer(null);
+
+		StoreClient client = new StoreClient("127.0.0.1", server.getPort());
+		assertEquals(250, client.scan(22, 2).getPrice());
+		client.commit();
+		assertEquals(100, client.scan(11, 1).getPrice());
+		client.commit();
+		client.close();
+		stopServerOnly();
+
+		ArrayList<Transaction> sales = db.loadTransactionsAfter(0);
+		assertEquals(2, sales.size());
+
+		db.loadTransactionItems(sales.get(0));
+		Item first = sales.get(0).getItems().get(0);
+		assertEquals(large.getID(), first.getItemID());
+		assertEquals(250, first.getPrice());
+		assertEquals(2, first.getQuantity());
+
+		db.loadTransactionItems(sales.get(1));
+		Item second = sales.get(1).getItems().get(0);
+		assertEquals(small.getID(), second.getItemID());
+		assertEquals(100, second.getPrice());
+	}
+
+	@Test
+	public void wontListenBeyondLoopbackWithoutASecret() throws Exception {
+		database = new TestDatabase();
+		final StoreServer open = new StoreServer(database.getDatabase(), database.file("Project2DB.journal"));
+
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Exception {
+				open.start(InetAddress.getByName("0.0.0.0"), 0);
+			}
+		});
+	}
+
+	@Test
+	public void letsInOnlyRegistersThatKnowTheSecret() throws Exception {
+		database = new TestDatabase();
+		database.getDatabase().addInventoryItem("Milk", 249, 5);
+		startServer(SECRET);
+
+		StoreClient client = new StoreClient("127.0.0.1", server.getPort(), SECRET);
+		assertEquals(249, client.findByCode(5).getPrice());
+		client.close();
+
+		assertRefused(null);
+		assertRefused("correct horse battery stapler".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void turnsDownLinesOutOfRange() throws Exception {
+		database = new TestDatabase();
+		startServer(null);
+
+		final StoreClient client = new StoreClient("127.0.0.1", server.getPort());
+		assertLineRefused(client, "Refund", -100, 1);
+		assertLineRefused(client, "Yacht", CheckoutEngine.MAX_PRICE + 1, 1);
+		assertLineRefused(client, "Gum", 50, 0);
+		assertLineRefused(client, "Gum", 50, CheckoutEngine.MAX_QUANTITY + 1);
+		assertLineRefused(client, " ", 50, 1);
+		assertLineRefused(client, new String(new char[DatabaseManager.MAX_LINE_NAME_LENGTH + 1]).replace('\0', 'x'), 50, 1);
+
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Exception {
+				client.addItem(new String(new char[DatabaseManager.MAX_ITEM_NAME_LENGTH + 1]).replace('\0', 'x'), 100, 0);
+			}
+		});
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Exception {
+				client.addItem("Gum", -1, 0);
+			}
+		});
+
+		// The session carries on, and the limits themselves are allowed
+		client.addLine("Yacht", CheckoutEngine.MAX_PRICE, 1);
+		client.addLine("Free sample", 0, CheckoutEngine.MAX_QUANTITY);
+		assertEquals(CheckoutEngine.MAX_PRICE, client.getSubTotal());
+		client.close();
+	}
+
+	// Checks a register with a secret, or none, is turned down as it connects
+	private void assertRefused(final byte[] secret) {
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Exception {
+				new StoreClient("127.0.0.1", server.getPort(), secret).close();
+			}
+		});
+	}
+
+	// Checks the server turns down a line
+	private static void assertLineRefused(final StoreClient client, final String name, final long price, final int quantity) {
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Exception {
+				client.addLine(name, price, quantity);
+			}
+		}, name + " at " + price + " x " + quantity);
+	}
+
+	// Starts a server on the test database and serves registers on a thread of its own
+	private void startServer(byte[] secret) throws Exception {
+		server = new StoreServer(database.getDatabase(), database.file("Project2DB.journal"), secret);
+		server.start(InetAddress.getLoopbackAddress(), 0);
+
+		serving = new Thread(new Runnable() {
+			public void run() {
+				server.serve();
+			}
+		}, "Test store server");
+		serving.start();
+	}
+
+	// Stops the server, writing its journalled sales to the database, and leaves the database open
+	private void stopServerOnly() throws Exception {
+		server.stop();
+		serving.join();
+		server = null;
+	}
+}
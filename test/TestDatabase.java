@@ -0,0 +1,70 @@
+//////////////////////////////////////////////////////////////////////
+// TestDatabase.java			Author: Justin Brown
+//
+// A new embedded Derby database for one test, in a temporary
+// directory of its own, thrown away by close. Derby reads its home
+// directory as it starts, so close shuts the engine down and the
+// next database starts it again. Only one can be open at a time.
+//////////////////////////////////////////////////////////////////////
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+public class TestDatabase {
+	private File home;
+	private DatabaseManager db;
+
+	// Makes the database and connects to it
+	public TestDatabase() throws Exception {
+		home = Files.createTempDirectory("project2-test").toFile();
+		System.setProperty("derby.system.home", home.getAbsolutePath());
+		System.setProperty("derby.stream.error.file", new File(home, "derby.log").getAbsolutePath());
+
+		db = new DatabaseManager();
+		if(!db.connect())
+			throw new SQLException("Unable to make the test database in " + home);
+	}
+
+	// Getter for the database
+	public DatabaseManager getDatabase() {
+		return db;
+	}
+
+	// Returns a file in the database's directory, which is deleted with it
+	public File file(String name) {
+		return new File(home, name);
+	}
+
+	/*
+	 * Closes the database, shuts Derby down and deletes the directory
+	 */
+	public void close() throws SQLException, IOException {
+		db.close();
+
+		try {
+			DriverManager.getConnection("jdbc:derby:;shutdown=true");
+		} catch(SQLException ex) {
+			// Derby always reports a shutdown as an exception, XJ015 is the one that means it went well
+			if(!"XJ015".equals(ex.getSQLState()))
+				throw ex;
+		}
+
+		delete(home);
+	}
+
+	// Deletes a file or a directory and everything in it
+	private static void delete(File file) throws IOException {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				delete(child);
+			}
+		}
+
+		if(!file.delete())
+			throw new IOException("Unable to delete " + file);
+	}
+}